@@ -0,0 +1,213 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.common.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An index of the checksums of files, keyed by their path and validated against their size, modification time
+ * and file key (the inode where the platform provides one), so that the checksum of an unchanged file is
+ * computed only once, even across restarts when the index is saved to a file.
+ * <p/>
+ * The checksums are the same CRC32 values as {@link ChecksumUtils#checksum(File)}, as they are compared with
+ * checksums computed elsewhere. A file modified within the timestamp granularity of the file system around the
+ * time its checksum was computed could be modified again without its modification time changing, so such a
+ * checksum is not kept in the index.
+ */
+public class ChecksumIndex {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(ChecksumIndex.class);
+
+    private static final long TIMESTAMP_GRANULARITY = 2000L;
+
+    private final File indexFile;
+    private Map<String, Entry> entries;
+    private boolean dirty;
+
+    /**
+     * Creates an index which is kept in memory only
+     */
+    public ChecksumIndex() {
+        this(null);
+    }
+
+    /**
+     * Creates an index which is loaded from and saved to the given file
+     */
+    public ChecksumIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Returns the checksum of the given file, only reading the file if it changed since its checksum was indexed
+     */
+    public long checksum(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        Entry current = stat(file);
+        synchronized (this) {
+            Entry entry = getEntries().get(path);
+            if (entry != null && entry.isSameFile(current)) {
+                return entry.checksum;
+            }
+        }
+        long start = System.currentTimeMillis();
+        current.checksum = ChecksumUtils.checksumFile(file);
+        synchronized (this) {
+            if (start - current.lastModified > TIMESTAMP_GRANULARITY && current.isSameFile(stat(file))) {
+                getEntries().put(path, current);
+            } else {
+                getEntries().remove(path);
+            }
+            dirty = true;
+        }
+        return current.checksum;
+    }
+
+    /**
+     * Saves the index to its file if it changed since it was loaded or last saved, leaving out the files which no
+     * longer exist. The index is written to a temporary file first, so that a crash while saving can not leave a
+     * truncated index behind.
+     */
+    public synchronized void save() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        purge();
+        if (!dirty) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : getEntries().entrySet()) {
+            properties.put(entry.getKey(), entry.getValue().toString());
+        }
+        File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                properties.store(os, "Updated on " + new Date());
+            } finally {
+                os.close();
+            }
+            if (!temp.renameTo(indexFile) && !(indexFile.delete() && temp.renameTo(indexFile))) {
+                throw new IOException("Unable to rename " + temp + " to " + indexFile);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        dirty = false;
+    }
+
+    /**
+     * Removes the entries of the files which no longer exist
+     */
+    public synchronized void purge() {
+        for (Iterator<String> it = getEntries().keySet().iterator(); it.hasNext(); ) {
+            if (!new File(it.next()).isFile()) {
+                it.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = load();
+        }
+        return entries;
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> answer = new HashMap<String, Entry>();
+        if (indexFile == null || !indexFile.isFile()) {
+            return answer;
+        }
+        Properties properties = new Properties();
+        try {
+            InputStream is = new FileInputStream(indexFile);
+            try {
+                properties.load(is);
+            } finally {
+                Closeables.closeQuietly(is);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to load checksum index " + indexFile + ". " + e, e);
+        }
+        for (String path : properties.stringPropertyNames()) {
+            Entry entry = Entry.parse(properties.getProperty(path));
+            if (entry != null) {
+                answer.put(path, entry);
+            }
+        }
+        return answer;
+    }
+
+    private static Entry stat(File file) throws IOException {
+        BasicFileAttributes attributes = java.nio.file.Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey != null ? fileKey.toString() : "");
+    }
+
+    static class Entry {
+        final long length;
+        final long lastModified;
+        final String fileKey;
+        long checksum;
+
+        Entry(long length, long lastModified, String fileKey) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        boolean isSameFile(Entry other) {
+            return length == other.length && lastModified == other.lastModified && fileKey.equals(other.fileKey);
+        }
+
+        static Entry parse(String value) {
+            String[] parts = value.split(":", 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                Entry entry = new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]);
+                entry.checksum = Long.parseLong(parts[0]);
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return checksum + ":" + length + ":" + lastModified + ":" + fileKey;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.common.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChecksumIndexTest {
+
+    private File file;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("checksum", ".jar");
+        indexFile = File.createTempFile("checksum", ".index");
+        indexFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        indexFile.delete();
+    }
+
+    @Test
+    public void testUnchangedFileIsNotRead() throws IOException {
+        long lastModified = System.currentTimeMillis() - 60000L;
+        write("The quick brown fox jumps over the lazy dog", lastModified);
+
+        ChecksumIndex index = new ChecksumIndex(indexFile);
+        Assert.assertEquals(0x414fa339, index.checksum(file));
+        index.save();
+
+        // same size and modification time, so the indexed checksum is returned without reading the file
+        write("The quick brown fox jumps over the lazy cat", lastModified);
+        index = new ChecksumIndex(indexFile);
+        Assert.assertEquals(0x414fa339, index.checksum(file));
+
+        file.setLastModified(lastModified + 1000L);
+        Assert.assertEquals(ChecksumUtils.checksumFile(file), index.checksum(file));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsNotIndexed() throws IOException {
+        write("The quick brown fox jumps over the lazy dog", System.currentTimeMillis());
+        long lastModified = file.lastModified();
+
+        ChecksumIndex index = new ChecksumIndex();
+        Assert.assertEquals(0x414fa339, index.checksum(file));
+
+        write("The quick brown fox jumps over the lazy cat", lastModified);
+        Assert.assertEquals(ChecksumUtils.checksumFile(file), index.checksum(file));
+    }
+
+    @Test
+    public void testSaveLeavesOutDeletedFiles() throws IOException {
+        long lastModified = System.currentTimeMillis() - 60000L;
+        write("The quick brown fox jumps over the lazy dog", lastModified);
+        File other = File.createTempFile("checksum", ".jar");
+        try {
+            Files.writeToFile(other, "jumps over the lazy dog".getBytes("UTF-8"));
+            other.setLastModified(lastModified);
+
+            ChecksumIndex index = new ChecksumIndex(indexFile);
+            index.checksum(file);
+            index.checksum(other);
+            index.save();
+            Assert.assertTrue(loadIndexFile().containsKey(other.getAbsolutePath()));
+
+            Assert.assertTrue(other.delete());
+            index = new ChecksumIndex(indexFile);
+            Assert.assertEquals(0x414fa339, index.checksum(file));
+            index.save();
+            Properties properties = loadIndexFile();
+            Assert.assertTrue(properties.containsKey(file.getAbsolutePath()));
+            Assert.assertFalse(properties.containsKey(other.getAbsolutePath()));
+        } finally {
+            other.delete();
+        }
+    }
+
+    @Test
+    public void testSaveReplacesTheIndexFile() throws IOException {
+        long lastModified = System.currentTimeMillis() - 60000L;
+        write("The quick brown fox jumps over the lazy dog", lastModified);
+        File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        Files.writeToFile(indexFile, "not an index".getBytes("UTF-8"));
+
+        ChecksumIndex index = new ChecksumIndex(indexFile);
+        Assert.assertEquals(0x414fa339, index.checksum(file));
+        index.save();
+        Assert.assertFalse(temp.exists());
+        Assert.assertEquals(1, loadIndexFile().size());
+
+        // the saved checksum is used without reading the file
+        write("The quick brown fox jumps over the lazy cat", lastModified);
+        Assert.assertEquals(0x414fa339, new ChecksumIndex(indexFile).checksum(file));
+    }
+
+    private Properties loadIndexFile() throws IOException {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream(indexFile);
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        return properties;
+    }
+
+    private void write(String content, long lastModified) throws IOException {
+        Files.writeToFile(file, content.getBytes("UTF-8"));
+        file.setLastModified(lastModified);
+    }
+}
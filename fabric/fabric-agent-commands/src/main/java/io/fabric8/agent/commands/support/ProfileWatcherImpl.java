@@ -29,6 +29,7 @@ import io.fabric8.api.ProfileService;
 import io.fabric8.api.Profiles;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
+import io.fabric8.common.util.ChecksumIndex;
 import io.fabric8.common.util.Closeables;
 import io.fabric8.deployer.JavaContainers;
 import io.fabric8.internal.Objects;
@@ -91,6 +92,7 @@ public class ProfileWatcherImpl extends AbstractComponent implements ProfileWatc
 
     private static final Logger LOG = LoggerFactory.getLogger(ProfileWatcherImpl.class);
     private static final String WATCHED_URL_FILE = "watched-urls.properties";
+    private static final String CHECKSUM_INDEX_FILE = "checksums.index";
 
     @Reference(referenceInterface = ConfigurationAdmin.class)
     private final ValidatingReference<ConfigurationAdmin> configurationAdmin = new ValidatingReference<ConfigurationAdmin>();
@@ -113,12 +115,14 @@ public class ProfileWatcherImpl extends AbstractComponent implements ProfileWatc
     private ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
     private boolean upload;
     private Set<String> missingChecksums = new HashSet<String>();
+    private volatile ChecksumIndex checksumIndex = new ChecksumIndex();
 
     public ProfileWatcherImpl() {
     }
 
     @Activate
     void activate(BundleContext bundleContext) {
+        checksumIndex = new ChecksumIndex(bundleContext.getDataFile(CHECKSUM_INDEX_FILE));
         start();
         activateComponent();
         load(bundleContext);
@@ -145,6 +149,11 @@ public class ProfileWatcherImpl extends AbstractComponent implements ProfileWatc
         } finally {
             Closeables.closeQuietly(bw);
         }
+        try {
+            checksumIndex.save();
+        } catch (IOException ex) {
+            LOG.warn("Error while saving the checksum index", ex);
+        }
     }
 
     void load(BundleContext bundleContext) {
@@ -237,7 +246,7 @@ public class ProfileWatcherImpl extends AbstractComponent implements ProfileWatc
                                         long modified = file.lastModified();
                                         if (oldModfied == null || modified != oldModfied) {
                                             localModified.put(file, modified);
-                                            Long fileChecksum = getFileChecksum(file);
+                                            Long fileChecksum = getFileChecksum(checksumIndex, file);
                                             if (fileChecksum != null && !fileChecksum.equals(checksum)) {
                                                 // lets keep track of local checksums in case we've already started the upload process
                                                 // and it takes the profile a little while to respond to uploaded jars and to
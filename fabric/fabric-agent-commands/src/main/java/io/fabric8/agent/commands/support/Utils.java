@@ -24,6 +24,7 @@ import io.fabric8.maven.util.Parser;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.Profile;
+import io.fabric8.common.util.ChecksumIndex;
 import io.fabric8.common.util.ChecksumUtils;
 
 import org.slf4j.Logger;
@@ -48,6 +49,18 @@ public class Utils {
         }
     }
 
+    /**
+     * Returns the checksum of the file through the given index, so that an unchanged file is not read again
+     */
+    public static Long getFileChecksum(ChecksumIndex checksumIndex, File file) {
+        try {
+            return checksumIndex.checksum(file);
+        } catch (IOException e) {
+            LOG.warn("Failed to get checksum of file: " + file.getAbsolutePath() + ". " + e, e);
+            return null;
+        }
+    }
+
     public static Properties findProfileChecksums(FabricService fabricService, Profile profile) {
         Properties checksums = null;
     	String versionId = profile.getVersion();
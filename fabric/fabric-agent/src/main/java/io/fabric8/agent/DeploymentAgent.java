@@ -16,7 +16,6 @@
 package io.fabric8.agent;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -34,6 +33,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -45,10 +45,12 @@ import io.fabric8.agent.download.StreamProvider;
 import io.fabric8.agent.internal.Macro;
 import io.fabric8.agent.service.Agent;
 import io.fabric8.agent.service.FeatureConfigInstaller;
+import io.fabric8.agent.service.ManifestCache;
+import io.fabric8.agent.service.ResolutionCache;
 import io.fabric8.agent.service.State;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
-import io.fabric8.common.util.ChecksumUtils;
+import io.fabric8.common.util.ChecksumIndex;
 import io.fabric8.common.util.Files;
 import io.fabric8.maven.MavenResolver;
 import io.fabric8.maven.MavenResolvers;
@@ -80,6 +82,8 @@ public class DeploymentAgent implements ManagedService {
 
     private static final String DEFAULT_DOWNLOAD_THREADS = "4";
     private static final String DOWNLOAD_THREADS = "io.fabric8.agent.download.threads";
+    private static final String RESOLUTION_CACHE = "resolution.cache";
+    private static final String DOWNLOAD_PREFETCH = "download.prefetch";
 
     private static final String KARAF_HOME = System.getProperty("karaf.home");
     private static final String KARAF_BASE = System.getProperty("karaf.base");
@@ -91,6 +95,8 @@ public class DeploymentAgent implements ManagedService {
     private static final String LIB_ENDORSED_PATH = LIB_PATH + File.separator + "endorsed";
 
     private static final String STATE_FILE = "state.json";
+    private static final String MANIFEST_CACHE_FILE = "manifests.cache";
+    private static final String CHECKSUM_INDEX_FILE = "checksums.index";
 
     private ServiceTracker<FabricService, FabricService> fabricService;
 
@@ -115,6 +121,10 @@ public class DeploymentAgent implements ManagedService {
     private volatile Collection<Resource> provisionList;
 
     private final State state = new State();
+    private final ResolutionCache resolutionCache = new ResolutionCache();
+    private final ManifestCache manifestCache;
+    private final ChecksumIndex checksumIndex;
+    private volatile DownloadManager lastDownloadManager;
 
     public DeploymentAgent(BundleContext bundleContext) throws IOException {
         this.bundleContext = bundleContext;
@@ -129,6 +139,8 @@ public class DeploymentAgent implements ManagedService {
         this.managedEndorsedLibs  = new Properties(bundleContext.getDataFile("endorsed.properties"));
         this.managedExtensionLibs  = new Properties(bundleContext.getDataFile("extension.properties"));
         this.managedEtcs = new Properties(bundleContext.getDataFile("etc.properties"));
+        this.manifestCache = new ManifestCache(bundleContext.getDataFile(MANIFEST_CACHE_FILE));
+        this.checksumIndex = new ChecksumIndex(bundleContext.getDataFile(CHECKSUM_INDEX_FILE));
         this.downloadExecutor = createDownloadExecutor();
 
         fabricService = new ServiceTracker<>(systemBundleContext, FabricService.class, new ServiceTrackerCustomizer<FabricService, FabricService>() {
@@ -183,6 +195,10 @@ public class DeploymentAgent implements ManagedService {
         // We can't wait for the threads to finish because the agent needs to be able to
         // update itself and this would cause a deadlock
         executor.shutdown();
+        DownloadManager manager = lastDownloadManager;
+        if (manager != null) {
+            manager.cancelPrefetch();
+        }
         downloadExecutor.shutdown();
         fabricService.close();
     }
@@ -196,7 +212,7 @@ public class DeploymentAgent implements ManagedService {
         for (String lib : dir.list()) {
             File f = new File(path, lib);
             if (f.exists() && f.isFile()) {
-                props.put(lib, Long.toString(ChecksumUtils.checksum(new FileInputStream(f))));
+                props.put(lib, Long.toString(checksumIndex.checksum(f)));
             }
         }
         props.save();
@@ -317,11 +333,19 @@ public class DeploymentAgent implements ManagedService {
         Mirror mirror = getMavenProxy(fabricService.getService());
         MavenResolver resolver = MavenResolvers.createMavenResolver(mirror, properties, "org.ops4j.pax.url.mvn");
         final DownloadManager manager = DownloadManagers.createDownloadManager(resolver, getDownloadExecutor());
+        // the downloads prefetched for the previous update would compete with the ones of this update
+        DownloadManager previous = lastDownloadManager;
+        if (previous != null) {
+            previous.cancelPrefetch();
+        }
+        lastDownloadManager = manager;
         manager.addListener(new DownloadCallback() {
             @Override
             public void downloaded(StreamProvider provider) throws Exception {
                 int pending = manager.pending();
-                updateStatus(pending > 0 ? "downloading (" + pending + " pending)" : "downloading", null);
+                updateStatus(pending > 0
+                        ? "downloading (" + pending + " pending, " + manager.transferred() + " downloaded, " + manager.transferRate() + " kB/s)"
+                        : "downloading", null);
             }
         });
 
@@ -391,7 +415,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File libFile = provider.getFile();
                         String libName = libFile.getName();
-                        Long checksum = ChecksumUtils.checksum(libFile);
+                        Long checksum = checksumIndex.checksum(libFile);
                         boolean update;
                         synchronized (lock) {
                             managedLibs.put(libName, "true");
@@ -411,7 +435,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File libFile = provider.getFile();
                         String libName = libFile.getName();
-                        Long checksum = ChecksumUtils.checksum(new FileInputStream(libFile));
+                        Long checksum = checksumIndex.checksum(libFile);
                         boolean update;
                         synchronized (lock) {
                             managedEndorsedLibs.put(libName, "true");
@@ -431,7 +455,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File libFile = provider.getFile();
                         String libName = libFile.getName();
-                        Long checksum = ChecksumUtils.checksum(libFile);
+                        Long checksum = checksumIndex.checksum(libFile);
                         boolean update;
                         synchronized (lock) {
                             managedExtensionLibs.put(libName, "true");
@@ -451,7 +475,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File etcFile = provider.getFile();
                         String etcName = etcFile.getName();
-                        Long checksum = ChecksumUtils.checksum(new FileInputStream(etcFile));
+                        Long checksum = checksumIndex.checksum(etcFile);
                         boolean update;
                         synchronized (lock) {
                             managedEtcs.put(etcName, "true");
@@ -561,6 +585,23 @@ public class DeploymentAgent implements ManagedService {
                 DeploymentAgent.this.state.replace(newState);
             }
         };
+        // the last resolution is reused when the inputs are unchanged, unless disabled in the agent configuration
+        if (Boolean.parseBoolean(properties.containsKey(RESOLUTION_CACHE) ? properties.get(RESOLUTION_CACHE) : "true")) {
+            agent.setResolutionCache(resolutionCache);
+        } else {
+            resolutionCache.clear();
+        }
+        agent.setManifestCache(manifestCache);
+        agent.setChecksumIndex(checksumIndex);
+        // the artifacts of the deployment are prefetched with at most as many downloads in flight as
+        // download threads, unless configured otherwise in the agent configuration (0 disables the prefetch)
+        String prefetch = properties.get(DOWNLOAD_PREFETCH);
+        if (prefetch == null) {
+            prefetch = getDownloadExecutor() instanceof ThreadPoolExecutor
+                    ? Integer.toString(((ThreadPoolExecutor) getDownloadExecutor()).getCorePoolSize())
+                    : DEFAULT_DOWNLOAD_THREADS;
+        }
+        agent.setMaxConcurrentPrefetches(Integer.parseInt(prefetch));
         agent.provision(
                 getPrefixedProperties(properties, "repository."),
                 getPrefixedProperties(properties, "feature."),
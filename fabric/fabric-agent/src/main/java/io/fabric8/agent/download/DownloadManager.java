@@ -15,6 +15,7 @@
  */
 package io.fabric8.agent.download;
 
+import java.util.Collection;
 import java.util.Map;
 
 public interface DownloadManager {
@@ -29,4 +30,28 @@ public interface DownloadManager {
 
     void removeListener(DownloadCallback listener);
 
+    /**
+     * Schedules the download of the given locations ahead of their use, keeping at most the given number
+     * of them in flight, and returns without waiting for them. Later downloads of the same locations reuse
+     * the prefetched artifacts.
+     */
+    void prefetch(Collection<String> locations, int maxConcurrentDownloads);
+
+    /**
+     * Stops the prefetches of this manager from starting any more downloads; the downloads in flight complete.
+     */
+    void cancelPrefetch();
+
+    /**
+     * Returns the number of artifacts actually transferred by the downloads of this manager, leaving out the
+     * downloads which reused an artifact downloaded before or found it in a local repository.
+     */
+    int transferred();
+
+    /**
+     * Returns the rate in kB/s of the transfers counted by {@link #transferred()}, over the time downloads were
+     * running.
+     */
+    long transferRate();
+
 }
@@ -18,12 +18,17 @@ package io.fabric8.agent.download.impl;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import io.fabric8.agent.download.DownloadCallback;
 import io.fabric8.agent.download.DownloadManager;
@@ -31,11 +36,17 @@ import io.fabric8.agent.download.Downloader;
 import io.fabric8.agent.download.StreamProvider;
 import io.fabric8.common.util.MultiException;
 import io.fabric8.maven.MavenResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static io.fabric8.agent.download.impl.DownloadManagerHelper.stripUrl;
 
 public class MavenDownloadManager implements DownloadManager {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MavenDownloadManager.class);
+
+    private static final long TIMESTAMP_GRANULARITY = 2000L;
+
     private final MavenResolver mavenResolver;
 
     private final ScheduledExecutorService executorService;
@@ -52,6 +63,15 @@ public class MavenDownloadManager implements DownloadManager {
 
     private volatile int allPending = 0;
 
+    private final List<Prefetch> prefetches = new CopyOnWriteArrayList<>();
+
+    // guarded by lock; the artifacts transferred by the downloads this manager ran, and the time they took
+    private int running;
+    private long activeSince;
+    private long activeTime;
+    private int transferred;
+    private long transferredBytes;
+
     public MavenDownloadManager(MavenResolver mavenResolver, ScheduledExecutorService executorService) {
         this.mavenResolver = mavenResolver;
         this.executorService = executorService;
@@ -87,6 +107,214 @@ public class MavenDownloadManager implements DownloadManager {
         listeners.remove(listener);
     }
 
+    @Override
+    public int transferred() {
+        synchronized (lock) {
+            return transferred;
+        }
+    }
+
+    @Override
+    public long transferRate() {
+        synchronized (lock) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(activeTime + (running > 0 ? System.nanoTime() - activeSince : 0));
+            return millis > 0 ? transferredBytes * 1000 / millis / 1024 : 0;
+        }
+    }
+
+    @Override
+    public void prefetch(Collection<String> locations, int maxConcurrentDownloads) {
+        startPrefetch(locations, maxConcurrentDownloads);
+    }
+
+    Prefetch startPrefetch(Collection<String> locations, int maxConcurrentDownloads) {
+        Prefetch prefetch = new Prefetch(locations, maxConcurrentDownloads);
+        prefetches.add(prefetch);
+        prefetch.next();
+        prefetch.checkFinished();
+        return prefetch;
+    }
+
+    @Override
+    public void cancelPrefetch() {
+        for (Prefetch prefetch : prefetches) {
+            prefetch.cancel();
+        }
+    }
+
+    /**
+     * Counts the time at least one download is running; called with the lock held when a new download is scheduled
+     */
+    private void transferStarted(AbstractDownloadTask task) {
+        if (running++ == 0) {
+            activeSince = System.nanoTime();
+        }
+        final long start = System.currentTimeMillis();
+        task.addListener(new FutureListener<AbstractDownloadTask>() {
+            @Override
+            public void operationComplete(AbstractDownloadTask future) {
+                transferFinished(future, start);
+            }
+        });
+    }
+
+    private void transferFinished(AbstractDownloadTask task, long start) {
+        long length = 0;
+        try {
+            File file = task.getFile();
+            // a file which was not written since the download started was found in a local repository
+            if (file != null && file.lastModified() >= start - TIMESTAMP_GRANULARITY) {
+                length = file.length();
+            }
+        } catch (IOException e) {
+            // reported to the callers of the download
+        }
+        synchronized (lock) {
+            if (--running == 0) {
+                activeTime += System.nanoTime() - activeSince;
+            }
+            if (length > 0) {
+                transferred++;
+                transferredBytes += length;
+            }
+        }
+    }
+
+    /**
+     * Downloads a set of locations in the background with a bounded number of them in flight, so that
+     * a large deployment does not flood the repositories while the resolution runs. Failed downloads
+     * have already been retried by the download tasks; they are only logged as the deployment reports
+     * the failure when it needs the artifact.
+     */
+    class Prefetch implements FutureListener<AbstractDownloadTask> {
+
+        private final Downloader downloader = createDownloader();
+        private final Queue<String> queued;
+        private final int total;
+        private final int maxInFlight;
+        private final long start = System.nanoTime();
+
+        // guarded by this
+        private int inFlight;
+        private int completed;
+        private int failed;
+        private int cancelled;
+        private boolean scheduling;
+        private boolean finished;
+
+        Prefetch(Collection<String> locations, int maxConcurrentDownloads) {
+            this.queued = new ArrayDeque<>(new LinkedHashSet<>(locations));
+            this.total = queued.size();
+            this.maxInFlight = Math.max(1, maxConcurrentDownloads);
+        }
+
+        void next() {
+            synchronized (this) {
+                // downloads already done complete while adding the listener, so only one thread schedules at a time
+                if (scheduling) {
+                    return;
+                }
+                scheduling = true;
+            }
+            while (true) {
+                String location;
+                synchronized (this) {
+                    if (inFlight >= maxInFlight || queued.isEmpty()) {
+                        scheduling = false;
+                        return;
+                    }
+                    location = queued.poll();
+                    inFlight++;
+                }
+                AbstractDownloadTask task = null;
+                try {
+                    downloader.download(location, null);
+                    synchronized (lock) {
+                        task = downloaded.get(location);
+                        if (task == null) {
+                            task = downloading.get(location);
+                        }
+                    }
+                } catch (MalformedURLException e) {
+                    LOGGER.debug("Unable to prefetch " + location, e);
+                }
+                if (task != null) {
+                    task.addListener(this);
+                } else {
+                    done(false);
+                }
+            }
+        }
+
+        /**
+         * Stops scheduling the locations which are still queued; the downloads in flight complete
+         */
+        void cancel() {
+            synchronized (this) {
+                cancelled += queued.size();
+                queued.clear();
+            }
+            checkFinished();
+        }
+
+        @Override
+        public void operationComplete(AbstractDownloadTask task) {
+            boolean success = true;
+            try {
+                task.getFile();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to prefetch " + task.getUrl(), e);
+                success = false;
+            }
+            done(success);
+            next();
+        }
+
+        private void done(boolean success) {
+            synchronized (this) {
+                inFlight--;
+                if (success) {
+                    completed++;
+                } else {
+                    failed++;
+                }
+            }
+            checkFinished();
+        }
+
+        void checkFinished() {
+            synchronized (this) {
+                if (finished || completed + failed + cancelled < total) {
+                    return;
+                }
+                finished = true;
+            }
+            prefetches.remove(this);
+            if (total == 0) {
+                return;
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Prefetched {} artifacts ({} failed, {} cancelled) in {} ms with up to {} downloads in flight, transferring at {} kB/s",
+                    completed, failed, cancelled, millis, maxInFlight, transferRate());
+        }
+
+        synchronized int getCompleted() {
+            return completed;
+        }
+
+        synchronized int getFailed() {
+            return failed;
+        }
+
+        synchronized int getCancelled() {
+            return cancelled;
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
+        }
+    }
+
     class MavenDownloader implements Downloader {
 
         private volatile int pending = 0;
@@ -126,6 +354,10 @@ public class MavenDownloadManager implements DownloadManager {
                 }
                 if (prev == null) {
                     downloading.put(location, task);
+                    // the artifact of a chained download is transferred by the downloads it chains
+                    if (!(task instanceof ChainedDownloadTask)) {
+                        transferStarted(task);
+                    }
                     executorService.execute(task);
                 } else {
                     task = prev;
@@ -18,6 +18,7 @@ package io.fabric8.agent.region;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -73,6 +74,7 @@ public class SubsystemResolver {
     private RegionDigraph digraph;
     private Subsystem root;
     private Map<Resource, List<Wire>> wiring;
+    private Set<String> locations;
 
     // Cached computed results
     private ResourceImpl environmentResource;
@@ -230,6 +232,32 @@ public class SubsystemResolver {
         return manager.getProviders();
     }
 
+    /**
+     * Releases the download manager of the update which resolved, keeping only the locations of the downloaded
+     * resources, so that the resolution can be kept for later updates without keeping their downloads alive.
+     * {@link #getProviders()} can not be used afterwards.
+     */
+    public void releaseDownloadManager() {
+        if (manager != null) {
+            locations = new HashSet<>(manager.getProviders().keySet());
+            manager = null;
+        }
+    }
+
+    /**
+     * Downloads the resources of a released resolution with the download manager of the current update
+     *
+     * @return the providers of the downloaded resources
+     */
+    public Map<String, StreamProvider> downloadResources(DownloadManager manager) throws Exception {
+        Downloader downloader = manager.createDownloader();
+        for (String location : locations) {
+            downloader.download(location, null);
+        }
+        downloader.await();
+        return manager.getProviders();
+    }
+
     public Map<Resource, List<Wire>> getWiring() {
         return wiring;
     }
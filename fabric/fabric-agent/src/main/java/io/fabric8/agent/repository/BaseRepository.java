@@ -16,16 +16,20 @@
 package io.fabric8.agent.repository;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import io.fabric8.agent.resolver.CapabilitySet;
 import io.fabric8.agent.resolver.RequirementImpl;
 import io.fabric8.agent.resolver.SimpleFilter;
 import org.osgi.framework.Constants;
+import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
@@ -37,10 +41,12 @@ public class BaseRepository implements Repository {
 
     protected final List<Resource> resources;
     protected final Map<String, CapabilitySet> capSets;
+    protected final ConcurrentMap<String, SimpleFilter> filters;
 
     public BaseRepository() {
         this.resources = new ArrayList<Resource>();
         this.capSets = new HashMap<String, CapabilitySet>();
+        this.filters = new ConcurrentHashMap<String, SimpleFilter>();
     }
 
     public BaseRepository(Collection<Resource> resources) {
@@ -57,6 +63,8 @@ public class BaseRepository implements Repository {
             if (set == null) {
                 if ("service-reference".equals(ns) || "osgi.service".equals(ns)) {
                     set = new CapabilitySet(Collections.singletonList("objectClass"));
+                } else if (PackageNamespace.PACKAGE_NAMESPACE.equals(ns)) {
+                    set = new CapabilitySet(Arrays.asList(ns, PackageNamespace.CAPABILITY_BUNDLE_SYMBOLICNAME_ATTRIBUTE));
                 } else {
                     set = new CapabilitySet(Collections.singletonList(ns));
                 }
@@ -81,10 +89,7 @@ public class BaseRepository implements Repository {
                 if (requirement instanceof RequirementImpl) {
                     sf = ((RequirementImpl) requirement).getFilter();
                 } else {
-                    String filter = requirement.getDirectives().get(Constants.FILTER_DIRECTIVE);
-                    sf = (filter != null)
-                            ? SimpleFilter.parse(filter)
-                            : new SimpleFilter(null, null, SimpleFilter.MATCH_ALL);
+                    sf = getFilter(requirement.getDirectives().get(Constants.FILTER_DIRECTIVE));
                 }
                 result.put(requirement, set.match(sf, true));
             } else {
@@ -93,4 +98,20 @@ public class BaseRepository implements Repository {
         }
         return result;
     }
+
+    /**
+     * Returns the parsed filter, parsing each distinct filter only once as the same requirements
+     * are looked up many times during a resolution
+     */
+    protected SimpleFilter getFilter(String filter) {
+        if (filter == null) {
+            return new SimpleFilter(null, null, SimpleFilter.MATCH_ALL);
+        }
+        SimpleFilter sf = filters.get(filter);
+        if (sf == null) {
+            sf = SimpleFilter.parse(filter);
+            filters.putIfAbsent(filter, sf);
+        }
+        return sf;
+    }
 }
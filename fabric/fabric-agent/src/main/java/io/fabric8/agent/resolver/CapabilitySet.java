@@ -186,7 +186,7 @@ public void dump()
             // For AND we calculate the intersection of each subfilter.
             // We can short-circuit the AND operation if there are no
             // remaining capabilities.
-            List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+            List<SimpleFilter> sfs = orderByIndex((List<SimpleFilter>) sf.getValue());
             for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
             {
                 matches = match(caps, sfs.get(i));
@@ -222,8 +222,23 @@ public void dump()
                 Set<Capability> existingCaps = index.get(sf.getValue());
                 if (existingCaps != null)
                 {
-                    matches.addAll(existingCaps);
-                    matches.retainAll(caps);
+                    if (caps == m_capSet)
+                    {
+                        matches.addAll(existingCaps);
+                    }
+                    else
+                    {
+                        // Intersect by iterating over the smaller of the two sets.
+                        Set<Capability> smaller = (existingCaps.size() < caps.size()) ? existingCaps : caps;
+                        Set<Capability> larger = (smaller == caps) ? existingCaps : caps;
+                        for (Capability cap : smaller)
+                        {
+                            if (larger.contains(cap))
+                            {
+                                matches.add(cap);
+                            }
+                        }
+                    }
                 }
             }
             else
@@ -234,7 +249,7 @@ public void dump()
                     Object lhs = cap.getAttributes().get(sf.getName());
                     if (lhs != null)
                     {
-                        if (compare(lhs, sf.getValue(), sf.getOperation()))
+                        if (compare(lhs, sf))
                         {
                             matches.add(cap);
                         }
@@ -246,6 +261,40 @@ public void dump()
         return matches;
     }
 
+    /**
+     * Moves the subfilter of an AND which selects the fewest capabilities through an
+     * index to the front, so that the remaining subfilters, such as version ranges,
+     * are only evaluated against the capabilities of that index bucket rather than
+     * against all the capabilities of the set.
+     */
+    private List<SimpleFilter> orderByIndex(List<SimpleFilter> sfs)
+    {
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        for (int i = 0; i < sfs.size(); i++)
+        {
+            SimpleFilter sub = sfs.get(i);
+            Map<Object, Set<Capability>> index = m_indices.get(sub.getName());
+            if ((sub.getOperation() == SimpleFilter.EQ) && (index != null))
+            {
+                Set<Capability> existingCaps = index.get(sub.getValue());
+                int size = (existingCaps != null) ? existingCaps.size() : 0;
+                if (size < bestSize)
+                {
+                    best = i;
+                    bestSize = size;
+                }
+            }
+        }
+        if (best <= 0)
+        {
+            return sfs;
+        }
+        List<SimpleFilter> ordered = new ArrayList<SimpleFilter>(sfs);
+        ordered.add(0, ordered.remove(best));
+        return ordered;
+    }
+
     public static boolean matches(Capability cap, SimpleFilter sf)
     {
         return matchesInternal(cap, sf) && matchMandatory(cap, sf);
@@ -298,7 +347,7 @@ public void dump()
             Object lhs = cap.getAttributes().get(sf.getName());
             if (lhs != null)
             {
-                matched = compare(lhs, sf.getValue(), sf.getOperation());
+                matched = compare(lhs, sf);
             }
         }
 
@@ -372,8 +421,11 @@ public void dump()
 
     private static final Class<?>[] STRING_CLASS = new Class[] { String.class };
 
-    private static boolean compare(Object lhs, Object rhsUnknown, int op)
+    private static boolean compare(Object lhs, SimpleFilter sf)
     {
+        Object rhsUnknown = sf.getValue();
+        int op = sf.getOperation();
+
         if (lhs == null)
         {
             return false;
@@ -405,7 +457,7 @@ public void dump()
             {
                 try
                 {
-                    rhs = coerceType(lhs, (String) rhsUnknown);
+                    rhs = coerceType(lhs, sf);
                 }
                 catch (Exception ex)
                 {
@@ -457,7 +509,7 @@ public void dump()
             Object rhs;
             try
             {
-                rhs = coerceType(lhs, (String) rhsUnknown);
+                rhs = coerceType(lhs, sf);
             }
             catch (Exception ex)
             {
@@ -491,7 +543,7 @@ public void dump()
         {
             for (Iterator iter = ((Collection) lhs).iterator(); iter.hasNext(); )
             {
-                if (compare(iter.next(), rhsUnknown, op))
+                if (compare(iter.next(), sf))
                 {
                     return true;
                 }
@@ -510,7 +562,7 @@ public void dump()
         // equality comparison.
         try
         {
-            return lhs.equals(coerceType(lhs, (String) rhsUnknown));
+            return lhs.equals(coerceType(lhs, sf));
         }
         catch (Exception ex)
         {
@@ -546,6 +598,20 @@ public void dump()
         return sb.toString();
     }
 
+    private static Object coerceType(Object lhs, SimpleFilter sf) throws Exception
+    {
+        // Filters are matched against many capabilities, so the value converted
+        // for the type of the last attribute is kept on the filter rather than
+        // calling the string constructor for each comparison.
+        Object rhs = sf.getCoercedValue(lhs.getClass());
+        if (rhs == null)
+        {
+            rhs = coerceType(lhs, (String) sf.getValue());
+            sf.setCoercedValue(lhs.getClass(), rhs);
+        }
+        return rhs;
+    }
+
     private static Object coerceType(Object lhs, String rhsString) throws Exception
     {
         // If the LHS expects a string, then we can just return
@@ -38,6 +38,9 @@ public class SimpleFilter
     private final String m_name;
     private final Object m_value;
     private final int m_op;
+    // The value converted to the type of the last attribute it was compared with,
+    // as an immutable {type, value} pair.
+    private volatile Object[] m_coerced;
 
     public SimpleFilter(String attr, Object value, int op)
     {
@@ -61,6 +64,17 @@ public class SimpleFilter
         return m_op;
     }
 
+    Object getCoercedValue(Class<?> type)
+    {
+        Object[] coerced = m_coerced;
+        return ((coerced != null) && (coerced[0] == type)) ? coerced[1] : null;
+    }
+
+    void setCoercedValue(Class<?> type, Object value)
+    {
+        m_coerced = new Object[] { type, value };
+    }
+
     public String toString()
     {
         String s = null;
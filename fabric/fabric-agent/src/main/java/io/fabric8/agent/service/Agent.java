@@ -25,12 +25,14 @@ import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,13 +43,23 @@ import io.fabric8.agent.download.DownloadCallback;
 import io.fabric8.agent.download.DownloadManager;
 import io.fabric8.agent.download.Downloader;
 import io.fabric8.agent.download.StreamProvider;
+import io.fabric8.agent.internal.Macro;
+import io.fabric8.agent.internal.Overrides;
+import io.fabric8.agent.model.BundleInfo;
+import io.fabric8.agent.model.ConfigFile;
+import io.fabric8.agent.model.Content;
+import io.fabric8.agent.model.Dependency;
 import io.fabric8.agent.model.Feature;
 import io.fabric8.agent.model.Repository;
 import io.fabric8.agent.repository.StaticRepository;
 import io.fabric8.agent.resolver.ResourceBuilder;
+import io.fabric8.common.util.ChecksumIndex;
 import io.fabric8.common.util.ChecksumUtils;
 import io.fabric8.common.util.MultiException;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Parser;
 import org.apache.felix.utils.version.VersionRange;
+import org.apache.felix.utils.version.VersionTable;
 import org.eclipse.equinox.region.Region;
 import org.eclipse.equinox.region.RegionDigraph;
 import org.eclipse.equinox.region.RegionFilterBuilder;
@@ -112,6 +124,10 @@ public class Agent {
 
     private final StateStorage storage;
     private EnumSet<Option> options = EnumSet.noneOf(Option.class);
+    private ResolutionCache resolutionCache;
+    private ManifestCache manifestCache;
+    private ChecksumIndex checksumIndex;
+    private int maxConcurrentPrefetches;
 
     public Agent(Bundle serviceBundle, BundleContext systemBundleContext, DownloadManager manager) {
         this(serviceBundle, systemBundleContext, manager, null, null, DEFAULT_FEATURE_RESOLUTION_RANGE, DEFAULT_BUNDLE_UPDATE_RANGE, UPDATE_SNAPSHOTS_CRC, null);
@@ -196,8 +212,13 @@ public class Agent {
                           Map<String, Map<VersionRange, Map<String, String>>> metadata
     ) throws Exception {
 
+        if (maxConcurrentPrefetches > 0) {
+            // start downloading everything the deployment is known to need rather than waiting for the resolution
+            // to reach each subsystem
+            manager.prefetch(getPrefetchLocations(allFeatures, features, bundles, overrides, optionals), maxConcurrentPrefetches);
+        }
 
-        Callable<Map<String, Resource>> res = loadResources(manager, metadata, optionals);
+        Callable<Map<String, Resource>> res = loadResources(manager, metadata, optionals, manifestCache);
 
         // TODO: requirements should be able to be assigned to a region
         Map<String, Set<String>> requirements = new HashMap<>();
@@ -221,6 +242,8 @@ public class Agent {
         request.stateChanges = Collections.emptyMap();
         request.options = options;
         request.metadata = metadata;
+        request.manifestCache = manifestCache;
+        request.checksumIndex = checksumIndex;
 
         Deployer.DeploymentState dstate = new Deployer.DeploymentState();
         // Service bundle
@@ -295,7 +318,9 @@ public class Agent {
                     if (jarUrl.startsWith("jar:")) {
                         String jar = jarUrl.substring("jar:".length(), jarUrl.indexOf("!/"));
                         jar = new URL(jar).getFile();
-                        long checksum = ChecksumUtils.checksumFile(new File(jar));
+                        long checksum = checksumIndex != null
+                                ? checksumIndex.checksum(new File(jar))
+                                : ChecksumUtils.checksumFile(new File(jar));
                         state.bundleChecksums.put(id, checksum);
                     }
                 } catch (Throwable t) {
@@ -323,8 +348,18 @@ public class Agent {
                         }
                     }
                 };
-                Deployer deployer = new Deployer(manager, callback);
+                Deployer deployer = new Deployer(manager, callback, resolutionCache);
                 deployer.deploy(dstate, request);
+                if (manifestCache != null) {
+                    manifestCache.save();
+                }
+                if (checksumIndex != null) {
+                    try {
+                        checksumIndex.save();
+                    } catch (IOException e) {
+                        LOGGER.warn("Error storing the checksum index", e);
+                    }
+                }
                 break;
             } catch (Deployer.PartialDeploymentException e) {
                 if (!prereqs.containsAll(e.getMissing())) {
@@ -353,6 +388,101 @@ public class Agent {
         return options;
     }
 
+    public void setResolutionCache(ResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
+    public ResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
+    public void setManifestCache(ManifestCache manifestCache) {
+        this.manifestCache = manifestCache;
+    }
+
+    public ManifestCache getManifestCache() {
+        return manifestCache;
+    }
+
+    /**
+     * Sets the number of artifacts downloaded at the same time ahead of the resolution, or 0 to disable it
+     */
+    public void setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+        this.maxConcurrentPrefetches = maxConcurrentPrefetches;
+    }
+
+    public int getMaxConcurrentPrefetches() {
+        return maxConcurrentPrefetches;
+    }
+
+    /**
+     * Returns the locations of the bundles and configuration files of the given features and their dependencies,
+     * along with the given bundles, overrides and optional resources
+     */
+    protected Set<String> getPrefetchLocations(Map<String, Feature> allFeatures,
+                                               Set<String> features,
+                                               Set<String> bundles,
+                                               Set<String> overrides,
+                                               Set<String> optionals) {
+        Set<String> locations = new LinkedHashSet<>();
+        Set<Feature> visited = new HashSet<>();
+        for (String feature : features) {
+            String[] parts = feature.split("/");
+            addPrefetchLocations(allFeatures, parts[0], parts.length > 1 ? parts[1] : null, visited, locations);
+        }
+        for (Clause bundle : Parser.parseClauses(bundles.toArray(new String[bundles.size()]))) {
+            locations.add(bundle.getName());
+        }
+        for (String override : overrides) {
+            locations.add(Overrides.extractUrl(override));
+        }
+        locations.addAll(optionals);
+        return locations;
+    }
+
+    private void addPrefetchLocations(Map<String, Feature> allFeatures, String name, String version,
+                                      Set<Feature> visited, Set<String> locations) {
+        VersionRange range;
+        if (version == null || version.isEmpty() || version.equals("0.0.0")) {
+            range = VersionRange.ANY_VERSION;
+        } else if (!version.startsWith("[") && !version.startsWith("(")) {
+            range = new VersionRange(Macro.transform(featureResolutionRange, version));
+        } else {
+            range = new VersionRange(version);
+        }
+        Feature best = null;
+        for (Feature feature : allFeatures.values()) {
+            if (feature.getName().equals(name) && range.contains(VersionTable.getVersion(feature.getVersion()))
+                    && (best == null || VersionTable.getVersion(feature.getVersion()).compareTo(VersionTable.getVersion(best.getVersion())) > 0)) {
+                best = feature;
+            }
+        }
+        if (best == null || !visited.add(best)) {
+            return;
+        }
+        List<Content> contents = new ArrayList<Content>(best.getConditional());
+        contents.add(best);
+        for (Content content : contents) {
+            for (BundleInfo bundle : content.getBundles()) {
+                locations.add(bundle.getLocation());
+            }
+            for (ConfigFile configFile : content.getConfigurationFiles()) {
+                locations.add(configFile.getLocation());
+            }
+            for (Dependency dependency : content.getDependencies()) {
+                addPrefetchLocations(allFeatures, dependency.getName(), dependency.getVersion(), visited, locations);
+            }
+        }
+    }
+
+    public void setChecksumIndex(ChecksumIndex checksumIndex) {
+        this.checksumIndex = checksumIndex;
+    }
+
+    public ChecksumIndex getChecksumIndex() {
+        return checksumIndex;
+    }
+
     abstract class BaseDeployCallback implements Deployer.DeployCallback {
 
         public void print(String message, int display) {
@@ -552,9 +682,18 @@ public class Agent {
                 Map<String, Map<VersionRange, Map<String, String>>> metadata,
                 Set<String> uris)
             throws MultiException, InterruptedException, MalformedURLException {
+        return loadResources(manager, metadata, uris, null);
+    }
+
+    public static Callable<Map<String, Resource>> loadResources(
+                DownloadManager manager,
+                Map<String, Map<VersionRange, Map<String, String>>> metadata,
+                Set<String> uris,
+                ManifestCache manifestCache)
+            throws MultiException, InterruptedException, MalformedURLException {
         final Map<String, Resource> resources = new HashMap<>();
         final Downloader downloader = manager.createDownloader();
-        final MetadataBuilder builder = new MetadataBuilder(metadata);
+        final MetadataBuilder builder = new MetadataBuilder(metadata, manifestCache);
         final DownloadCallback callback = new DownloadCallback() {
             @Override
             public void downloaded(StreamProvider provider) throws Exception {
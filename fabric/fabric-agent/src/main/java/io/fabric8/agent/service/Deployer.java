@@ -15,6 +15,7 @@
  */
 package io.fabric8.agent.service;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,6 +44,7 @@ import io.fabric8.agent.model.ConfigFile;
 import io.fabric8.agent.model.Feature;
 import io.fabric8.agent.region.SubsystemResolver;
 import io.fabric8.agent.utils.OsgiUtils;
+import io.fabric8.common.util.ChecksumIndex;
 import io.fabric8.common.util.ChecksumUtils;
 import io.fabric8.common.util.MultiException;
 import org.apache.felix.utils.version.VersionRange;
@@ -151,6 +153,8 @@ public class Deployer {
         String updateSnaphots;
         Repository globalRepository;
         Map<String, Map<VersionRange, Map<String, String>>> metadata;
+        ManifestCache manifestCache;
+        ChecksumIndex checksumIndex;
 
         Map<String, Set<String>> requirements;
         Map<String, Map<String, Constants.RequestedState>> stateChanges;
@@ -173,10 +177,19 @@ public class Deployer {
 
     private final DownloadManager manager;
     private final DeployCallback callback;
+    private final ResolutionCache resolutionCache;
 
     public Deployer(DownloadManager manager, DeployCallback callback) {
+        this(manager, callback, null);
+    }
+
+    /**
+     * @param resolutionCache the cache of the last resolution, or null to always resolve
+     */
+    public Deployer(DownloadManager manager, DeployCallback callback, ResolutionCache resolutionCache) {
         this.manager = manager;
         this.callback = callback;
+        this.resolutionCache = resolutionCache;
     }
 
     /**
@@ -205,13 +218,18 @@ public class Deployer {
         Map<String, Set<Bundle>> unmanagedBundles = apply(diff(dstate.bundlesPerRegion, dstate.state.managedBundles),
                 map(dstate.bundles));
 
-        // Resolve
-        SubsystemResolver resolver = new SubsystemResolver(manager);
-        resolver.prepare(
-                dstate.features.values(),
-                request.requirements,
-                apply(unmanagedBundles, adapt(BundleRevision.class))
-        );
+        // Resolve, unless the inputs are the same as the ones of the last resolution
+        String digest = resolutionCache != null ? ResolutionCache.digest(dstate, request, unmanagedBundles) : null;
+        SubsystemResolver resolver = resolutionCache != null ? resolutionCache.get(digest) : null;
+        boolean resolved = resolver != null;
+        if (!resolved) {
+            resolver = new SubsystemResolver(manager);
+            resolver.prepare(
+                    dstate.features.values(),
+                    request.requirements,
+                    apply(unmanagedBundles, adapt(BundleRevision.class))
+            );
+        }
         Set<String> prereqs = resolver.collectPrerequisites();
         if (!prereqs.isEmpty()) {
             for (Iterator<String> iterator = prereqs.iterator(); iterator.hasNext(); ) {
@@ -244,6 +262,8 @@ public class Deployer {
             newRequest.bundleUpdateRange = request.bundleUpdateRange;
             newRequest.featureResolutionRange = request.featureResolutionRange;
             newRequest.globalRepository = request.globalRepository;
+            newRequest.checksumIndex = request.checksumIndex;
+            newRequest.manifestCache = request.manifestCache;
             newRequest.options = request.options;
             newRequest.overrides = request.overrides;
             newRequest.requirements = copy(dstate.state.requirements);
@@ -256,15 +276,25 @@ public class Deployer {
             throw new PartialDeploymentException(prereqs);
         }
 
-        callback.phase("resolving");
-
-        resolver.resolve(
-                new MetadataBuilder(request.metadata),
-                request.overrides,
-                request.featureResolutionRange,
-                request.globalRepository);
+        Map<String, StreamProvider> providers;
+        if (!resolved) {
+            callback.phase("resolving");
+
+            resolver.resolve(
+                    new MetadataBuilder(request.metadata, request.manifestCache),
+                    request.overrides,
+                    request.featureResolutionRange,
+                    request.globalRepository);
+            providers = resolver.getProviders();
+            if (resolutionCache != null) {
+                resolutionCache.put(digest, resolver);
+            }
+        } else {
+            // The reused resolution does not keep the download manager of the update which resolved it,
+            // so download its resources again with the current one
+            providers = resolver.downloadResources(manager);
+        }
 
-        Map<String, StreamProvider> providers = resolver.getProviders();
         Map<String, Set<Resource>> featuresPerRegion = resolver.getFeaturesPerRegions();
         Map<String, Set<String>> installedFeatures = apply(featuresPerRegion, featureId());
         Map<String, Set<String>> newFeatures = diff(installedFeatures, dstate.state.installedFeatures);
@@ -312,7 +342,7 @@ public class Deployer {
         //
         // Compute deployment
         //
-        Deployer.Deployment deployment = computeDeployment(dstate, request, resolver);
+        Deployer.Deployment deployment = computeDeployment(dstate, request, resolver, providers);
 
         //
         // Compute the set of bundles to refresh
@@ -998,7 +1028,8 @@ public class Deployer {
     protected Deployment computeDeployment(
                     DeploymentState dstate,
                     DeploymentRequest request,
-                    SubsystemResolver resolver) throws IOException {
+                    SubsystemResolver resolver,
+                    Map<String, StreamProvider> providers) throws IOException {
 
         Deployment result = new Deployment();
 
@@ -1051,18 +1082,14 @@ public class Deployer {
                                 deployment.toUpdate.put(bundle, resource);
                             } else if (Constants.UPDATE_SNAPSHOTS_CRC.equalsIgnoreCase(request.updateSnaphots)) {
                                 // if the checksum are different
-                                try (
-                                        InputStream is = getBundleInputStream(resource, resolver.getProviders())
-                                ) {
-                                    long newCrc = ChecksumUtils.checksum(is);
-                                    long oldCrc = dstate.state.bundleChecksums.containsKey(bundle.getBundleId())
-                                                    ? dstate.state.bundleChecksums.get(bundle.getBundleId()) : 0L;
-                                    if (newCrc != oldCrc) {
-                                        LOGGER.debug("New snapshot available for " + bundle.getLocation());
-                                        deployment.toUpdate.put(bundle, resource);
-                                    }
-                                    result.bundleChecksums.put(bundle.getBundleId(), newCrc);
+                                long newCrc = getBundleChecksum(resource, providers, request.checksumIndex);
+                                long oldCrc = dstate.state.bundleChecksums.containsKey(bundle.getBundleId())
+                                                ? dstate.state.bundleChecksums.get(bundle.getBundleId()) : 0L;
+                                if (newCrc != oldCrc) {
+                                    LOGGER.debug("New snapshot available for " + bundle.getLocation());
+                                    deployment.toUpdate.put(bundle, resource);
                                 }
+                                result.bundleChecksums.put(bundle.getBundleId(), newCrc);
                             }
                         }
                         // We're done for this resource
@@ -1238,6 +1265,21 @@ public class Deployer {
     }
 
     protected InputStream getBundleInputStream(Resource resource, Map<String, StreamProvider> providers) throws IOException {
+        return new FileInputStream(getBundleFile(resource, providers));
+    }
+
+    /**
+     * Returns the checksum of the downloaded bundle, through the index when given so that an unchanged
+     * snapshot is not read again on each deployment
+     */
+    protected long getBundleChecksum(Resource resource, Map<String, StreamProvider> providers, ChecksumIndex checksumIndex) throws IOException {
+        if (checksumIndex != null) {
+            return checksumIndex.checksum(getBundleFile(resource, providers));
+        }
+        return ChecksumUtils.checksum(getBundleInputStream(resource, providers));
+    }
+
+    protected File getBundleFile(Resource resource, Map<String, StreamProvider> providers) throws IOException {
         String uri = getUri(resource);
         if (uri == null) {
             throw new IllegalStateException("Resource has no uri");
@@ -1246,7 +1288,7 @@ public class Deployer {
         if (provider == null) {
             throw new IllegalStateException("Resource " + uri + " has no StreamProvider");
         }
-        return new FileInputStream(provider.getFile());
+        return provider.getFile();
     }
 
 }
@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the manifest headers of the downloaded bundles on disk, so that building the resources of a deployment,
+ * after a restart of the agent or for a redeploy, does not need to open every jar again. An entry is only used
+ * while the downloaded file has the same size and modification time as when it was read. As with the
+ * {@link io.fabric8.common.util.ChecksumIndex}, the headers of a file modified within the timestamp granularity of
+ * the file system around the time its manifest was read are not cached, as the file could be rewritten with the
+ * same size without its modification time changing.
+ * <p/>
+ * The headers are cached rather than the resources built from them, as the resources are modified during the
+ * resolution and depend on the metadata overrides of the request, while building them from the headers is cheap.
+ * Only the entries used since the previous save are written back, so the cache does not grow with bundles which
+ * are no longer deployed.
+ */
+public class ManifestCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ManifestCache.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FORMAT = 1;
+    private static final long TIMESTAMP_GRANULARITY = 2000L;
+
+    private final File file;
+    private Map<String, Entry> entries;
+    private final Map<String, Entry> used = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    public ManifestCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns a copy of the cached headers of the given downloaded bundle, or null if they are unknown or the file
+     * changed since they were cached
+     */
+    public synchronized Map<String, String> getHeaders(String url, File bundle) {
+        Entry entry = getEntries().get(url);
+        if (entry != null && entry.length == bundle.length() && entry.lastModified == bundle.lastModified()) {
+            hits++;
+            used.put(url, entry);
+            return new HashMap<>(entry.headers);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches the headers read from the manifest of the given downloaded bundle
+     *
+     * @param start the time at which the manifest started to be read
+     */
+    public synchronized void putHeaders(String url, File bundle, Map<String, String> headers, long start) {
+        Entry entry = new Entry(bundle.length(), bundle.lastModified(), new HashMap<>(headers));
+        if (start - entry.lastModified > TIMESTAMP_GRANULARITY) {
+            getEntries().put(url, entry);
+            used.put(url, entry);
+        } else {
+            getEntries().remove(url);
+            used.remove(url);
+        }
+    }
+
+    /**
+     * Writes the entries used since the previous save to disk, if any
+     */
+    public synchronized void save() {
+        if (file == null || used.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Saving {} manifests ({} hits, {} misses)", used.size(), hits, misses);
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                dos.writeInt(FORMAT);
+                dos.writeInt(used.size());
+                for (Map.Entry<String, Entry> entry : used.entrySet()) {
+                    writeString(dos, entry.getKey());
+                    dos.writeLong(entry.getValue().length);
+                    dos.writeLong(entry.getValue().lastModified);
+                    dos.writeInt(entry.getValue().headers.size());
+                    for (Map.Entry<String, String> header : entry.getValue().headers.entrySet()) {
+                        writeString(dos, header.getKey());
+                        writeString(dos, header.getValue());
+                    }
+                }
+            } finally {
+                dos.close();
+            }
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+            entries = new HashMap<>(used);
+            used.clear();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save the manifest cache to " + file, e);
+            temp.delete();
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = load();
+        }
+        return entries;
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> answer = new HashMap<>();
+        if (file == null || !file.isFile()) {
+            return answer;
+        }
+        try {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (dis.readInt() != FORMAT) {
+                    return answer;
+                }
+                int count = dis.readInt();
+                for (int i = 0; i < count; i++) {
+                    String url = readString(dis);
+                    long length = dis.readLong();
+                    long lastModified = dis.readLong();
+                    int size = dis.readInt();
+                    Map<String, String> headers = new HashMap<>();
+                    for (int j = 0; j < size; j++) {
+                        headers.put(readString(dis), readString(dis));
+                    }
+                    answer.put(url, new Entry(length, lastModified, headers));
+                }
+            } finally {
+                dis.close();
+            }
+            LOGGER.debug("Loaded {} manifests from {}", answer.size(), file);
+        } catch (Exception e) {
+            LOGGER.warn("Ignoring the manifest cache " + file + " as it can not be read", e);
+            answer.clear();
+        }
+        return answer;
+    }
+
+    // headers such as Export-Package may exceed the 64k limit of writeUTF
+    private static void writeString(DataOutputStream dos, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static class Entry {
+        final long length;
+        final long lastModified;
+        final Map<String, String> headers;
+
+        Entry(long length, long lastModified, Map<String, String> headers) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.headers = headers;
+        }
+    }
+}
@@ -37,12 +37,34 @@ import static java.util.jar.JarFile.MANIFEST_NAME;
 public class MetadataBuilder {
 
     private final Map<String, Map<VersionRange, Map<String, String>>> metadata;
+    private final ManifestCache manifestCache;
 
     public MetadataBuilder(Map<String, Map<VersionRange, Map<String, String>>> metadata) {
+        this(metadata, null);
+    }
+
+    /**
+     * @param manifestCache the cache of the manifest headers, or null to always read the manifests
+     */
+    public MetadataBuilder(Map<String, Map<VersionRange, Map<String, String>>> metadata, ManifestCache manifestCache) {
         this.metadata = metadata;
+        this.manifestCache = manifestCache;
     }
 
     public Map<String, String> getMetadata(String url, File file) throws IOException {
+        if (manifestCache != null) {
+            Map<String, String> headers = manifestCache.getHeaders(url, file);
+            if (headers == null) {
+                long start = System.currentTimeMillis();
+                headers = readManifest(url, file);
+                manifestCache.putHeaders(url, file, headers, start);
+            }
+            return overrideHeaders(headers);
+        }
+        return overrideHeaders(readManifest(url, file));
+    }
+
+    private Map<String, String> readManifest(String url, File file) throws IOException {
         try (
                 InputStream is = new BufferedInputStream(new FileInputStream(file))
         ) {
@@ -55,7 +77,7 @@ public class MetadataBuilder {
                     for (Map.Entry attr : attributes.entrySet()) {
                         headers.put(attr.getKey().toString(), attr.getValue().toString());
                     }
-                    return overrideHeaders(headers);
+                    return headers;
                 }
             }
         }
@@ -22,6 +22,7 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 import io.fabric8.agent.resolver.CapabilitySet;
+import io.fabric8.agent.resolver.RequirementImpl;
 import io.fabric8.agent.resolver.SimpleFilter;
 import org.osgi.framework.Constants;
 import org.osgi.resource.Capability;
@@ -72,10 +73,15 @@ public final class RequirementSort {
     private static <T extends Resource> Set<T> collectDependencies(T resource, CapabilitySet capSet) {
         Set<T> result = new LinkedHashSet<>();
         for (Requirement requirement : resource.getRequirements(null)) {
-            String filter = requirement.getDirectives().get(Constants.FILTER_DIRECTIVE);
-            SimpleFilter sf = (filter != null)
-                    ? SimpleFilter.parse(filter)
-                    : new SimpleFilter(null, null, SimpleFilter.MATCH_ALL);
+            SimpleFilter sf;
+            if (requirement instanceof RequirementImpl) {
+                sf = ((RequirementImpl) requirement).getFilter();
+            } else {
+                String filter = requirement.getDirectives().get(Constants.FILTER_DIRECTIVE);
+                sf = (filter != null)
+                        ? SimpleFilter.parse(filter)
+                        : new SimpleFilter(null, null, SimpleFilter.MATCH_ALL);
+            }
             for (Capability cap : capSet.match(sf, true)) {
                 result.add((T) cap.getResource());
             }
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.service;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.fabric8.agent.model.Feature;
+import io.fabric8.agent.model.Features;
+import io.fabric8.agent.model.JaxbUtil;
+import io.fabric8.agent.region.SubsystemResolver;
+import io.fabric8.agent.repository.BaseRepository;
+import org.osgi.framework.Bundle;
+import org.osgi.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.fabric8.agent.resolver.ResourceUtils.getUri;
+
+/**
+ * Keeps the resolver of the last successful resolution along with a digest of its inputs, so that a deployment
+ * with the same inputs, such as the one following a change to the configuration of a profile only, can reuse the
+ * resolution rather than resolving everything again. Only the resolution is kept: the download manager of the
+ * update which resolved is released, and a deployment reusing the resolution downloads its resources with its
+ * own download manager.
+ * <p/>
+ * The digest covers the requirements, overrides, ranges and metadata of the request, the definitions of all the
+ * features, the resources of the global repository and the unmanaged bundles. Inputs which may change without
+ * their urls changing, such as snapshots when they are updated, can not be digested and are never cached.
+ */
+public class ResolutionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolutionCache.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private String digest;
+    private SubsystemResolver resolver;
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns the resolver of the last resolution if it had the given inputs, or null
+     */
+    synchronized SubsystemResolver get(String digest) {
+        if (digest != null && digest.equals(this.digest)) {
+            hits++;
+            LOGGER.info("Reusing the previous resolution as its inputs are unchanged ({} hits, {} misses)", hits, misses);
+            return resolver;
+        }
+        misses++;
+        LOGGER.info("Resolving as the inputs changed since the previous resolution ({} hits, {} misses)", hits, misses);
+        return null;
+    }
+
+    /**
+     * Keeps the resolver of a successful resolution of the given inputs, releasing its download manager
+     */
+    synchronized void put(String digest, SubsystemResolver resolver) {
+        this.digest = digest;
+        this.resolver = null;
+        if (digest != null) {
+            resolver.releaseDownloadManager();
+            this.resolver = resolver;
+        }
+    }
+
+    /**
+     * Forgets the last resolution
+     */
+    public synchronized void clear() {
+        digest = null;
+        resolver = null;
+    }
+
+    /**
+     * Returns the digest of the inputs of the resolution of the given request, or null if they can not be digested
+     */
+    static String digest(Deployer.DeploymentState dstate, Deployer.DeploymentRequest request, Map<String, Set<Bundle>> unmanagedBundles) {
+        try {
+            StringWriter writer = new StringWriter();
+            writer.append("requirements=").append(String.valueOf(sorted(request.requirements))).append('\n');
+            writer.append("overrides=").append(String.valueOf(sorted(request.overrides))).append('\n');
+            writer.append("featureResolutionRange=").append(request.featureResolutionRange).append('\n');
+            writer.append("bundleUpdateRange=").append(request.bundleUpdateRange).append('\n');
+            writer.append("updateSnapshots=").append(request.updateSnaphots).append('\n');
+            writer.append("metadata=").append(String.valueOf(sorted(request.metadata))).append('\n');
+
+            if (request.globalRepository != null) {
+                if (!(request.globalRepository instanceof BaseRepository)) {
+                    return null;
+                }
+                Set<String> uris = new TreeSet<>();
+                for (Resource resource : ((BaseRepository) request.globalRepository).getResources()) {
+                    uris.add(getUri(resource));
+                }
+                writer.append("repository=").append(String.valueOf(uris)).append('\n');
+            }
+
+            for (Map.Entry<String, Set<Bundle>> entry : new TreeMap<>(unmanagedBundles).entrySet()) {
+                Set<String> bundles = new TreeSet<>();
+                for (Bundle bundle : entry.getValue()) {
+                    bundles.add(bundle.getBundleId() + ":" + bundle.getLocation() + ":" + bundle.getLastModified());
+                }
+                writer.append("unmanaged.").append(entry.getKey()).append('=').append(String.valueOf(bundles)).append('\n');
+            }
+
+            List<Feature> features = new ArrayList<>(dstate.features.values());
+            Collections.sort(features, new Comparator<Feature>() {
+                @Override
+                public int compare(Feature f1, Feature f2) {
+                    return f1.getId().compareTo(f2.getId());
+                }
+            });
+            Features repository = new Features();
+            repository.getFeature().addAll(features);
+            JaxbUtil.marshal(repository, writer);
+
+            String inputs = writer.toString();
+            if (!Constants.UPDATE_SNAPSHOTS_NONE.equals(request.updateSnaphots) && inputs.contains("-SNAPSHOT")) {
+                LOGGER.debug("Not caching the resolution as snapshots may have changed");
+                return null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return new BigInteger(1, digest.digest(inputs.getBytes(UTF_8))).toString(16);
+        } catch (Exception e) {
+            LOGGER.debug("Unable to compute the digest of the resolution inputs", e);
+            return null;
+        }
+    }
+
+    private static Object sorted(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> answer = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                answer.put(String.valueOf(entry.getKey()), sorted(entry.getValue()));
+            }
+            return answer;
+        } else if (value instanceof Collection) {
+            Set<String> answer = new TreeSet<>();
+            for (Object item : (Collection<?>) value) {
+                answer.add(String.valueOf(item));
+            }
+            return answer;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.fabric8.agent.download.Downloader;
+import io.fabric8.common.util.Files;
+import io.fabric8.common.util.Filter;
+import io.fabric8.maven.MavenResolver;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MavenDownloadManagerTest {
+
+    private static final long TIMEOUT = 30;
+
+    private File directory;
+    private ScheduledExecutorService executor;
+    private StubResolver resolver;
+    private MavenDownloadManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("download-manager", "");
+        directory.delete();
+        directory.mkdirs();
+        executor = Executors.newScheduledThreadPool(8);
+        resolver = new StubResolver();
+        manager = new MavenDownloadManager(resolver, executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        resolver.release.countDown();
+        executor.shutdownNow();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testPrefetchKeepsAtMostTheGivenNumberOfDownloadsInFlight() throws Exception {
+        resolver.release.countDown();
+        List<String> locations = getLocations(20);
+        locations.add(locations.get(0));
+
+        MavenDownloadManager.Prefetch prefetch = manager.startPrefetch(locations, 3);
+        awaitFinished(prefetch);
+        assertEquals(20, prefetch.getCompleted());
+        assertEquals(0, prefetch.getFailed());
+        assertTrue("at most 3 downloads in flight but was " + resolver.maxRunning.get(), resolver.maxRunning.get() <= 3);
+        assertEquals(20, resolver.downloads.size());
+        for (AtomicInteger count : resolver.downloads.values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(20, manager.transferred());
+    }
+
+    @Test
+    public void testPrefetchedDownloadsAreReusedByDownloaders() throws Exception {
+        List<String> locations = getLocations(5);
+        MavenDownloadManager.Prefetch prefetch = manager.startPrefetch(locations, 2);
+
+        // the deployment downloads the same locations while the prefetch is still running
+        Downloader downloader = manager.createDownloader();
+        for (String location : locations) {
+            downloader.download(location, null);
+        }
+        downloader.download("mvn:test/other/1.0", null);
+        resolver.release.countDown();
+        downloader.await();
+        awaitFinished(prefetch);
+
+        assertEquals(5, prefetch.getCompleted());
+        assertEquals(6, resolver.downloads.size());
+        for (AtomicInteger count : resolver.downloads.values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(6, manager.getProviders().size());
+        assertEquals(6, manager.transferred());
+    }
+
+    @Test
+    public void testFailedAndLocalLocations() throws Exception {
+        resolver.release.countDown();
+        List<String> locations = getLocations(3);
+        locations.add("mvn:test/failing/1.0");
+        locations.add("mvn:test/local/1.0");
+
+        MavenDownloadManager.Prefetch prefetch = manager.startPrefetch(locations, 2);
+        awaitFinished(prefetch);
+        assertEquals(4, prefetch.getCompleted());
+        assertEquals(1, prefetch.getFailed());
+        // the artifact found in the local repository is not counted as transferred
+        assertEquals(3, manager.transferred());
+    }
+
+    @Test
+    public void testCancelledPrefetchStopsScheduling() throws Exception {
+        MavenDownloadManager.Prefetch prefetch = manager.startPrefetch(getLocations(10), 2);
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (resolver.running.get() < 2 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, resolver.running.get());
+
+        manager.cancelPrefetch();
+        resolver.release.countDown();
+        awaitFinished(prefetch);
+        assertEquals(2, prefetch.getCompleted());
+        assertEquals(8, prefetch.getCancelled());
+        assertEquals(2, resolver.downloads.size());
+    }
+
+    private static List<String> getLocations(int count) {
+        List<String> answer = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            answer.add("mvn:test/artifact" + i + "/1.0");
+        }
+        return answer;
+    }
+
+    private static void awaitFinished(MavenDownloadManager.Prefetch prefetch) throws InterruptedException {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (!prefetch.isFinished() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue("prefetch finished", prefetch.isFinished());
+    }
+
+    /**
+     * Writes a new file for every location once released, keeping track of the downloads running at the same time
+     */
+    private class StubResolver implements MavenResolver {
+
+        private final ConcurrentHashMap<String, AtomicInteger> downloads = new ConcurrentHashMap<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public File download(String url) throws IOException {
+            AtomicInteger count = new AtomicInteger();
+            AtomicInteger previous = downloads.putIfAbsent(url, count);
+            (previous != null ? previous : count).incrementAndGet();
+            int current = running.incrementAndGet();
+            while (true) {
+                int max = maxRunning.get();
+                if (current <= max || maxRunning.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+            try {
+                if (!release.await(TIMEOUT, TimeUnit.SECONDS)) {
+                    throw new IOException("Not released");
+                }
+                // give the other downloads a chance to overlap
+                Thread.sleep(20);
+                if (url.contains("failing")) {
+                    throw new IllegalStateException("Unable to resolve " + url);
+                }
+                File file = new File(directory, url.replaceAll("[:/]", "_"));
+                Files.writeToFile(file, new byte[1024]);
+                if (url.contains("local")) {
+                    file.setLastModified(System.currentTimeMillis() - 60000L);
+                }
+                return file;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public RepositorySystem getRepositorySystem() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RepositorySystemSession createSession() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<RemoteRepository> getRepositories() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public File resolveFile(Artifact artifact) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DependencyNode collectDependenciesForJar(File artifactFile, Filter<Dependency> excludeFilter) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
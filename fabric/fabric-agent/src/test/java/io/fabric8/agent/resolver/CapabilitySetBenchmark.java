@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.fabric8.agent.repository.BaseRepository;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * A simple benchmark of the provider lookups made while resolving a feature set of 500 bundles, each exporting
+ * and importing packages with version ranges, comparing the indexed lookups of a {@link BaseRepository} with a
+ * scan of all the capabilities of the namespace, which is what a requirement falls back to when none of its
+ * attributes are indexed.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class CapabilitySetBenchmark {
+    private static final int BUNDLES = 500;
+    private static final int EXPORTS = 10;
+    private static final int IMPORTS = 20;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testFindProviders() throws Exception {
+        List<Resource> resources = createResources();
+        List<Requirement> requirements = new ArrayList<Requirement>();
+        List<Capability> capabilities = new ArrayList<Capability>();
+        for (Resource resource : resources) {
+            requirements.addAll(resource.getRequirements(null));
+            capabilities.addAll(resource.getCapabilities(null));
+        }
+
+        BaseRepository repository = new BaseRepository(resources);
+        int indexed = 0;
+        int scanned = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            indexed = lookup(repository, requirements);
+            scanned = scan(capabilities, requirements);
+        }
+        if (indexed != scanned) {
+            throw new IllegalStateException("Indexed lookups found " + indexed + " providers but the scan found " + scanned);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            lookup(repository, requirements);
+        }
+        double indexedMillis = (System.nanoTime() - start) / 1000000.0 / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            scan(capabilities, requirements);
+        }
+        double scannedMillis = (System.nanoTime() - start) / 1000000.0 / ITERATIONS;
+
+        System.out.println(String.format("bundles: %d capabilities: %d requirements: %d providers: %d",
+                resources.size(), capabilities.size(), requirements.size(), indexed));
+        System.out.println(String.format("indexed: %8.2f ms scan: %8.2f ms", indexedMillis, scannedMillis));
+    }
+
+    protected static int lookup(BaseRepository repository, List<Requirement> requirements) {
+        int providers = 0;
+        for (Collection<Capability> caps : repository.findProviders(requirements).values()) {
+            providers += caps.size();
+        }
+        return providers;
+    }
+
+    protected static int scan(List<Capability> capabilities, List<Requirement> requirements) {
+        int providers = 0;
+        for (Requirement requirement : requirements) {
+            SimpleFilter sf = ((RequirementImpl) requirement).getFilter();
+            for (Capability capability : capabilities) {
+                if (requirement.getNamespace().equals(capability.getNamespace())
+                        && CapabilitySet.matches(capability, sf)) {
+                    providers++;
+                }
+            }
+        }
+        return providers;
+    }
+
+    protected static List<Resource> createResources() throws Exception {
+        List<Resource> resources = new ArrayList<Resource>();
+        for (int i = 0; i < BUNDLES; i++) {
+            StringBuilder exports = new StringBuilder();
+            for (int j = 0; j < EXPORTS; j++) {
+                if (j > 0) {
+                    exports.append(",");
+                }
+                exports.append(packageName(i, j)).append(";version=\"1.").append(i % 3).append(".0\"");
+            }
+            StringBuilder imports = new StringBuilder();
+            for (int j = 0; j < IMPORTS; j++) {
+                if (j > 0) {
+                    imports.append(",");
+                }
+                imports.append(packageName((i + 1 + j * 7) % BUNDLES, j % EXPORTS))
+                        .append(";version=\"[1.").append(j % 2).append(",2)\"");
+            }
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+            headers.put(Constants.BUNDLE_SYMBOLICNAME, "benchmark.bundle" + i);
+            headers.put(Constants.BUNDLE_VERSION, "1." + (i % 3) + ".0");
+            headers.put(Constants.EXPORT_PACKAGE, exports.toString());
+            headers.put(Constants.IMPORT_PACKAGE, imports.toString());
+            resources.add(ResourceBuilder.build("mvn:benchmark/bundle" + i + "/1.0", headers));
+        }
+        return resources;
+    }
+
+    private static String packageName(int bundle, int pkg) {
+        return "benchmark.bundle" + bundle + ".pkg" + pkg;
+    }
+}
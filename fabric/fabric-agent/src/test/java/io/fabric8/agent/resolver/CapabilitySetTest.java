@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.fabric8.agent.repository.BaseRepository;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CapabilitySetTest {
+
+    private static final int BUNDLES = 100;
+    private static final int EXPORTS = 10;
+    private static final int IMPORTS = 20;
+
+    @Test
+    public void testIndexedSubfilterIsNotFirst() {
+        CapabilitySet set = new CapabilitySet(Arrays.asList(
+                PackageNamespace.PACKAGE_NAMESPACE, PackageNamespace.CAPABILITY_BUNDLE_SYMBOLICNAME_ATTRIBUTE));
+        Capability a10 = addPackage(set, "a", "1.0", "bundle1");
+        Capability a20 = addPackage(set, "a", "2.0", "bundle2");
+        addPackage(set, "b", "1.0", "bundle1");
+
+        Set<Capability> matches = set.match(SimpleFilter.parse("(&(version>=1.0.0)(!(version>=2.0.0))(osgi.wiring.package=a))"), true);
+        assertEquals(Collections.singleton(a10), matches);
+
+        matches = set.match(SimpleFilter.parse("(&(version>=1.0.0)(osgi.wiring.package=a)(bundle-symbolic-name=bundle2))"), true);
+        assertEquals(Collections.singleton(a20), matches);
+
+        assertTrue(set.match(SimpleFilter.parse("(&(osgi.wiring.package=a)(osgi.wiring.package=b))"), true).isEmpty());
+        assertTrue(set.match(SimpleFilter.parse("(&(version>=1.0.0)(osgi.wiring.package=c))"), true).isEmpty());
+    }
+
+    @Test
+    public void testFilterIsReusedAcrossAttributeTypes() {
+        SimpleFilter sf = SimpleFilter.parse("(version>=1.5)");
+        assertTrue(CapabilitySet.matches(createCapability("version", new Version("2.0")), sf));
+        assertTrue(CapabilitySet.matches(createCapability("version", "2.0"), sf));
+        assertTrue(CapabilitySet.matches(createCapability("version", 2.0d), sf));
+        assertFalse(CapabilitySet.matches(createCapability("version", new Version("1.0")), sf));
+    }
+
+    @Test
+    public void testIndexedLookupsFindTheSameProvidersAsAScan() throws Exception {
+        List<Resource> resources = createResources();
+        List<Requirement> requirements = new ArrayList<Requirement>();
+        List<Capability> capabilities = new ArrayList<Capability>();
+        for (Resource resource : resources) {
+            requirements.addAll(resource.getRequirements(null));
+            capabilities.addAll(resource.getCapabilities(null));
+        }
+
+        Map<Requirement, Collection<Capability>> providers = new BaseRepository(resources).findProviders(requirements);
+        assertEquals(requirements.size(), providers.size());
+        int matched = 0;
+        for (Requirement requirement : requirements) {
+            Set<Capability> expected = scan(capabilities, requirement);
+            assertEquals(requirement.toString(), expected, new HashSet<Capability>(providers.get(requirement)));
+            if (!expected.isEmpty()) {
+                matched++;
+            }
+        }
+        // some imports are left without a provider by their version range
+        assertTrue(matched > 0 && matched < requirements.size());
+    }
+
+    private static Set<Capability> scan(List<Capability> capabilities, Requirement requirement) {
+        Set<Capability> answer = new HashSet<Capability>();
+        SimpleFilter sf = ((RequirementImpl) requirement).getFilter();
+        for (Capability capability : capabilities) {
+            if (requirement.getNamespace().equals(capability.getNamespace()) && CapabilitySet.matches(capability, sf)) {
+                answer.add(capability);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Creates bundles which export packages with versions and import the packages of other bundles with version ranges
+     */
+    private static List<Resource> createResources() throws Exception {
+        List<Resource> resources = new ArrayList<Resource>();
+        for (int i = 0; i < BUNDLES; i++) {
+            StringBuilder exports = new StringBuilder();
+            for (int j = 0; j < EXPORTS; j++) {
+                if (j > 0) {
+                    exports.append(",");
+                }
+                exports.append(packageName(i, j)).append(";version=\"1.").append(i % 3).append(".0\"");
+            }
+            StringBuilder imports = new StringBuilder();
+            for (int j = 0; j < IMPORTS; j++) {
+                if (j > 0) {
+                    imports.append(",");
+                }
+                imports.append(packageName((i + 1 + j * 7) % BUNDLES, j % EXPORTS))
+                        .append(";version=\"[1.").append(j % 2).append(",2)\"");
+            }
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+            headers.put(Constants.BUNDLE_SYMBOLICNAME, "test.bundle" + i);
+            headers.put(Constants.BUNDLE_VERSION, "1." + (i % 3) + ".0");
+            headers.put(Constants.EXPORT_PACKAGE, exports.toString());
+            headers.put(Constants.IMPORT_PACKAGE, imports.toString());
+            resources.add(ResourceBuilder.build("mvn:test/bundle" + i + "/1.0", headers));
+        }
+        return resources;
+    }
+
+    private static String packageName(int bundle, int pkg) {
+        return "test.bundle" + bundle + ".pkg" + pkg;
+    }
+
+    private Capability addPackage(CapabilitySet set, String name, String version, String bsn) {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(PackageNamespace.PACKAGE_NAMESPACE, name);
+        attrs.put(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, new Version(version));
+        attrs.put(PackageNamespace.CAPABILITY_BUNDLE_SYMBOLICNAME_ATTRIBUTE, bsn);
+        Capability cap = new CapabilityImpl(new ResourceImpl(), PackageNamespace.PACKAGE_NAMESPACE,
+                Collections.<String, String>emptyMap(), attrs);
+        set.addCapability(cap);
+        return cap;
+    }
+
+    private Capability createCapability(String name, Object value) {
+        return new CapabilityImpl(new ResourceImpl(), "test",
+                Collections.<String, String>emptyMap(), Collections.<String, Object>singletonMap(name, value));
+    }
+}
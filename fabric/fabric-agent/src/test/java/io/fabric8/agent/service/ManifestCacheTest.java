@@ -0,0 +1,103 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ManifestCacheTest {
+
+    File cacheFile;
+    File bundle;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheFile = File.createTempFile("manifests", ".cache");
+        cacheFile.delete();
+        bundle = File.createTempFile("bundle", ".jar");
+        write(bundle, "content");
+        bundle.setLastModified(System.currentTimeMillis() - 60000L);
+    }
+
+    @After
+    public void tearDown() {
+        cacheFile.delete();
+        bundle.delete();
+    }
+
+    @Test
+    public void testHeadersAreKeptAcrossInstances() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-SymbolicName", "test");
+        StringBuilder exports = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            exports.append("io.fabric8.test.pkg").append(i).append(";version=\"1.0\",");
+        }
+        headers.put("Export-Package", exports.toString());
+
+        ManifestCache cache = new ManifestCache(cacheFile);
+        assertNull(cache.getHeaders("mvn:test/test/1.0", bundle));
+        cache.putHeaders("mvn:test/test/1.0", bundle, headers, System.currentTimeMillis());
+        cache.save();
+
+        cache = new ManifestCache(cacheFile);
+        assertEquals(headers, cache.getHeaders("mvn:test/test/1.0", bundle));
+        assertNull(cache.getHeaders("mvn:test/other/1.0", bundle));
+
+        write(bundle, "updated content");
+        assertNull(cache.getHeaders("mvn:test/test/1.0", bundle));
+    }
+
+    @Test
+    public void testHeadersOfRecentlyModifiedFilesAreNotCached() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-SymbolicName", "test");
+
+        ManifestCache cache = new ManifestCache(cacheFile);
+        cache.putHeaders("mvn:test/test/1.0", bundle, headers, System.currentTimeMillis());
+        assertEquals(headers, cache.getHeaders("mvn:test/test/1.0", bundle));
+
+        // rewritten with the same length, possibly within the same second as the manifest is read
+        write(bundle, "CONTENT");
+        long start = System.currentTimeMillis();
+        bundle.setLastModified(start - 1000L);
+        cache.putHeaders("mvn:test/test/1.0", bundle, headers, start);
+        assertNull(cache.getHeaders("mvn:test/test/1.0", bundle));
+        cache.save();
+
+        cache = new ManifestCache(cacheFile);
+        assertNull(cache.getHeaders("mvn:test/test/1.0", bundle));
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.fabric8.agent.download.DownloadCallback;
+import io.fabric8.agent.download.DownloadManager;
+import io.fabric8.agent.download.Downloader;
+import io.fabric8.agent.download.StreamProvider;
+import io.fabric8.agent.model.Feature;
+import io.fabric8.agent.region.SubsystemResolver;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResolutionCacheTest {
+
+    @Test
+    public void testDigest() {
+        Map<String, Set<Bundle>> unmanaged = Collections.emptyMap();
+        String digest = ResolutionCache.digest(createState("1.0"), createRequest("a", "b"), unmanaged);
+        assertNotNull(digest);
+        assertEquals(digest, ResolutionCache.digest(createState("1.0"), createRequest("b", "a"), unmanaged));
+        assertNotEquals(digest, ResolutionCache.digest(createState("1.1"), createRequest("a", "b"), unmanaged));
+        assertNotEquals(digest, ResolutionCache.digest(createState("1.0"), createRequest("a", "c"), unmanaged));
+    }
+
+    @Test
+    public void testSnapshotsAreNotCached() {
+        Map<String, Set<Bundle>> unmanaged = Collections.emptyMap();
+        Deployer.DeploymentRequest request = createRequest("a", "b");
+        request.overrides = Collections.singleton("mvn:io.fabric8/test/1.0-SNAPSHOT");
+        assertNull(ResolutionCache.digest(createState("1.0"), request, unmanaged));
+        request.updateSnaphots = Constants.UPDATE_SNAPSHOTS_NONE;
+        assertNotNull(ResolutionCache.digest(createState("1.0"), request, unmanaged));
+    }
+
+    @Test
+    public void testCachedResolutionDoesNotKeepItsDownloadManager() throws Exception {
+        StubDownloadManager first = new StubDownloadManager();
+        first.providers.put("mvn:test/a/1.0", null);
+        first.providers.put("mvn:test/b/1.0", null);
+        SubsystemResolver resolver = new SubsystemResolver(first);
+
+        ResolutionCache cache = new ResolutionCache();
+        cache.put("digest", resolver);
+        assertSame(resolver, cache.get("digest"));
+        assertNull(cache.get("other"));
+
+        StubDownloadManager second = new StubDownloadManager();
+        Map<String, StreamProvider> providers = resolver.downloadResources(second);
+        assertSame(second.providers, providers);
+        assertEquals(first.providers.keySet(), new HashSet<>(second.downloads));
+        assertEquals(0, first.downloads.size());
+    }
+
+    private Deployer.DeploymentState createState(String version) {
+        Deployer.DeploymentState dstate = new Deployer.DeploymentState();
+        dstate.features = new HashMap<>();
+        for (String name : Arrays.asList("a", "b", "c")) {
+            Feature feature = new Feature(name, version);
+            dstate.features.put(feature.getId(), feature);
+        }
+        return dstate;
+    }
+
+    private Deployer.DeploymentRequest createRequest(String... features) {
+        Deployer.DeploymentRequest request = new Deployer.DeploymentRequest();
+        request.requirements = new HashMap<>();
+        Set<String> requirements = new LinkedHashSet<>();
+        for (String feature : features) {
+            requirements.add("feature:" + feature);
+        }
+        request.requirements.put(Constants.ROOT_REGION, requirements);
+        request.overrides = new HashSet<>();
+        request.featureResolutionRange = Constants.DEFAULT_FEATURE_RESOLUTION_RANGE;
+        request.bundleUpdateRange = Constants.DEFAULT_BUNDLE_UPDATE_RANGE;
+        request.updateSnaphots = Constants.DEFAULT_UPDATE_SNAPSHOTS;
+        request.metadata = new HashMap<>();
+        request.stateChanges = Collections.emptyMap();
+        request.options = EnumSet.noneOf(Constants.Option.class);
+        return request;
+    }
+
+    /**
+     * Records the locations downloaded, which are reported as provided
+     */
+    static class StubDownloadManager implements DownloadManager {
+
+        final Map<String, StreamProvider> providers = new HashMap<>();
+        final List<String> downloads = new ArrayList<>();
+
+        @Override
+        public int pending() {
+            return 0;
+        }
+
+        @Override
+        public Downloader createDownloader() {
+            return new Downloader() {
+                @Override
+                public int pending() {
+                    return 0;
+                }
+
+                @Override
+                public void await() {
+                }
+
+                @Override
+                public void download(final String location, DownloadCallback downloadCallback) {
+                    downloads.add(location);
+                    providers.put(location, new StreamProvider() {
+                        @Override
+                        public String getUrl() {
+                            return location;
+                        }
+
+                        @Override
+                        public File getFile() {
+                            return new File(location);
+                        }
+                    });
+                }
+            };
+        }
+
+        @Override
+        public Map<String, StreamProvider> getProviders() {
+            return providers;
+        }
+
+        @Override
+        public void addListener(DownloadCallback listener) {
+        }
+
+        @Override
+        public void removeListener(DownloadCallback listener) {
+        }
+
+        @Override
+        public void prefetch(Collection<String> locations, int maxConcurrentDownloads) {
+        }
+
+        @Override
+        public void cancelPrefetch() {
+        }
+
+        @Override
+        public int transferred() {
+            return 0;
+        }
+
+        @Override
+        public long transferRate() {
+            return 0;
+        }
+    }
+}
@@ -71,6 +71,17 @@ public final class Containers {
         return answer;
     }
 
+    /**
+     * Returns the containers which have the given profile in any version, looked up in the profile index of the
+     * data store if the fabric service has one rather than by reading the profiles of every container
+     */
+    public static List<Container> containersForProfile(String profileId, FabricService fabricService) {
+        if (fabricService.adapt(DataStore.class) == null) {
+            return containersForProfile(fabricService.getContainers(), profileId);
+        }
+        return Arrays.asList(fabricService.getAssociatedContainers(null, profileId));
+    }
+
     public static List<Container> containersForProfile(Container[] containers, String profileId, String versionId) {
         List<Container> answer = new ArrayList<Container>();
         if (profileId != null) {
@@ -268,16 +279,18 @@ public final class Containers {
      * Returns all the current alive or pending profiles for the given profile
      */
     public static List<Container> aliveOrPendingContainersForProfile(String profile, FabricService fabricService) {
-        Container[] allContainers = fabricService.getContainers();
-        return aliveOrPendingContainersForProfile(profile, allContainers);
+        return aliveOrPendingContainers(containersForProfile(profile, fabricService));
     }
 
     /**
      * Returns all the current alive or pending profiles for the given profile
      */
     public static List<Container> aliveOrPendingContainersForProfile(String profile, Container[] allContainers) {
+        return aliveOrPendingContainers(containersForProfile(allContainers, profile));
+    }
+
+    private static List<Container> aliveOrPendingContainers(List<Container> containers) {
         List<Container> answer = new ArrayList<Container>();
-        List<Container> containers = containersForProfile(allContainers, profile);
         for (Container container : containers) {
             boolean alive = container.isAlive();
             boolean provisioningPending = container.isProvisioningPending();
@@ -292,16 +305,18 @@ public final class Containers {
      * Returns all the current alive and successful containers for the given profile which have completed provisioning
      */
     public static List<Container> aliveAndSuccessfulContainersForProfile(String profile, FabricService fabricService) {
-        Container[] allContainers = fabricService.getContainers();
-        return aliveAndSuccessfulContainersForProfile(profile, allContainers);
+        return aliveAndSuccessfulContainers(containersForProfile(profile, fabricService));
     }
 
     /**
      * Returns all the current alive and successful containers for the given profile which have completed provisioning
      */
     public static List<Container> aliveAndSuccessfulContainersForProfile(String profile, Container[] allContainers) {
+        return aliveAndSuccessfulContainers(containersForProfile(allContainers, profile));
+    }
+
+    private static List<Container> aliveAndSuccessfulContainers(List<Container> containers) {
         List<Container> answer = new ArrayList<Container>();
-        List<Container> containers = containersForProfile(allContainers, profile);
         for (Container container : containers) {
             boolean aliveAndProvisionSuccess = isAliveAndProvisionSuccess(container);
             if (aliveAndProvisionSuccess) {
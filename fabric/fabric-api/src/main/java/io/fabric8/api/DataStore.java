@@ -66,6 +66,12 @@ public interface DataStore {
 
     void setContainerProfiles(String containerId, List<String> profileIds);
 
+    /**
+     * Gets the sorted ids of the containers which have the given profile directly in the given version, or in any
+     * version if the version is null. A container without any profiles has the default profile.
+     */
+    List<String> getContainersForProfile(String versionId, String profileId);
+
     boolean isContainerAlive(String id);
 
     void setContainerAlive(String id, boolean flag);
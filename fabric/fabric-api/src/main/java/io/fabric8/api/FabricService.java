@@ -52,6 +52,10 @@ public interface FabricService {
      */
     Container[] getContainers();
 
+    /**
+     * Gets the {@link Container}s which have the given profile directly in the given version, or in any version
+     * if the version is null.
+     */
     Container[] getAssociatedContainers(String versionId, String profileId);
     
     /**
@@ -663,12 +663,8 @@ public final class FabricManager implements FabricManagerMBean {
         Profile profile = version != null ? version.getRequiredProfile(profileId) : null;
         List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
         if (profile != null) {
-            for (Container c : fabricService.getContainers()) {
-                for (Profile p : c.getProfiles()) {
-                    if (p.equals(profile)) {
-                        answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
-                    }
-                }
+            for (Container c : fabricService.getAssociatedContainers(versionId, profileId)) {
+                answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
             }
         }
         return answer;
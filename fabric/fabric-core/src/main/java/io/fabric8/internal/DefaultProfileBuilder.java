@@ -54,6 +54,8 @@ public final class DefaultProfileBuilder extends AbstractBuilder<ProfileBuilder>
     private String versionId;
 	private String profileId;
 	private Map<String, byte[]> fileMapping = new HashMap<>();
+	// Parsed properties files, only valid while the file still maps to the same bytes
+	private Map<String, ProfileConfiguration> profileConfigurations = new HashMap<>();
 	private String lastModified;
 	private boolean isOverlay;
 	
@@ -62,6 +64,9 @@ public final class DefaultProfileBuilder extends AbstractBuilder<ProfileBuilder>
 		versionId = profile.getVersion();
 		profileId = profile.getId();
 		setFileConfigurations(profile.getFileConfigurations());
+		if (profile instanceof ProfileImpl) {
+		    profileConfigurations.putAll(((ProfileImpl) profile).getParsedProfileConfigurations());
+		}
         return this;
 	}
 
@@ -177,6 +182,15 @@ public final class DefaultProfileBuilder extends AbstractBuilder<ProfileBuilder>
         return this;
     }
 
+    /**
+     * Adds the given properties file so that a profile which inherits it unchanged does not need to parse it again
+     */
+    ProfileBuilder addFileConfiguration(String fileName, ProfileConfiguration profileConfig) {
+        fileMapping.put(fileName, profileConfig.getBytes());
+        profileConfigurations.put(fileName, profileConfig);
+        return this;
+    }
+
     @Override
     public ProfileBuilder deleteFileConfiguration(String fileName) {
         fileMapping.remove(fileName);
@@ -196,8 +210,7 @@ public final class DefaultProfileBuilder extends AbstractBuilder<ProfileBuilder>
 
     @Override
     public ProfileBuilder addConfiguration(String pid, Map<String, String> config) {
-        fileMapping.put(pid + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(config));
-        return this;
+        return addFileConfiguration(pid + Profile.PROPERTIES_SUFFIX, ProfileConfiguration.create(config));
     }
 
     @Override
@@ -226,7 +239,12 @@ public final class DefaultProfileBuilder extends AbstractBuilder<ProfileBuilder>
     }
 
     private Map<String, String> getConfigurationInternal(String pid) {
-        byte[] bytes = fileMapping.get(pid + Profile.PROPERTIES_SUFFIX);
+        String fileName = pid + Profile.PROPERTIES_SUFFIX;
+        byte[] bytes = fileMapping.get(fileName);
+        ProfileConfiguration profileConfig = profileConfigurations.get(fileName);
+        if (profileConfig != null && profileConfig.getBytes() == bytes) {
+            return new HashMap<>(profileConfig.getConfiguration());
+        }
         return new HashMap<>(DataStoreUtils.toMap(bytes));
     }
     
@@ -335,6 +353,6 @@ public final class DefaultProfileBuilder extends AbstractBuilder<ProfileBuilder>
 	@Override
 	public Profile getProfile() {
 		validate();
-		return new ProfileImpl(versionId, profileId, getParents(), fileMapping, lastModified, isOverlay);
+		return new ProfileImpl(versionId, profileId, getParents(), fileMapping, profileConfigurations, lastModified, isOverlay);
 	}
 }
@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.FabricException;
+import io.fabric8.api.Profile;
+import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.api.jmx.OverlayProfileCacheMBean;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of overlay profiles so that the inheritance hierarchy of a profile is only merged once for every
+ * distinct state of the profile and its ancestors.
+ * <p/>
+ * There is one entry per version, profile and environment which is only valid for the hash chain of the profile
+ * and its ancestors it was computed for; an overlay with a different hash chain replaces it. Concurrent callers
+ * asking for the same overlay wait for a single computation instead of serializing on a monitor.
+ */
+@ThreadSafe
+final class OverlayProfileCache implements OverlayProfileCacheMBean {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Returns the cached overlay of the given profile if it was computed for the same hash chain, otherwise
+     * the overlay is computed and cached
+     */
+    Profile getOverlayProfile(String versionId, String profileId, String environment, String hashChain, Callable<Profile> overlay) {
+        String key = versionId + "/" + profileId + "/" + environment;
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.hashChain.equals(hashChain)) {
+                hitCount.incrementAndGet();
+                return entry.getProfile();
+            }
+            Entry newEntry = new Entry(hashChain, overlay);
+            boolean added = entry == null ? entries.putIfAbsent(key, newEntry) == null : entries.replace(key, entry, newEntry);
+            if (added) {
+                missCount.incrementAndGet();
+                newEntry.task.run();
+                try {
+                    return newEntry.getProfile();
+                } catch (RuntimeException | Error e) {
+                    // do not cache a failure so the next call computes the overlay again
+                    entries.remove(key, newEntry);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests > 0 ? (double) hits / requests : 0.0;
+    }
+
+    @Override
+    public int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    private static class Entry {
+        private final String hashChain;
+        private final FutureTask<Profile> task;
+
+        Entry(String hashChain, Callable<Profile> overlay) {
+            this.hashChain = hashChain;
+            this.task = new FutureTask<>(overlay);
+        }
+
+        Profile getProfile() {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw FabricException.launderThrowable(e);
+            } catch (ExecutionException e) {
+                throw FabricException.launderThrowable(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.jcip.Immutable;
+import io.fabric8.utils.DataStoreUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A properties file of a profile together with its parsed content.
+ * <p/>
+ * The content is only parsed the first time it is needed and is then shared, rather than parsed again, by every
+ * profile which contains the same bytes, such as the overlays which inherit the file unchanged and the copies made
+ * with a {@link DefaultProfileBuilder}.
+ */
+@Immutable
+final class ProfileConfiguration {
+
+    private final byte[] bytes;
+    private volatile Map<String, String> configuration;
+
+    ProfileConfiguration(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    private ProfileConfiguration(byte[] bytes, Map<String, String> configuration) {
+        this.bytes = bytes;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Creates the properties file of the given configuration, which is copied so that later changes to it are
+     * not reflected
+     */
+    static ProfileConfiguration create(Map<String, String> configuration) {
+        Map<String, String> copy = Collections.unmodifiableMap(new HashMap<>(configuration));
+        return new ProfileConfiguration(DataStoreUtils.toBytes(copy), copy);
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the unmodifiable parsed content of the properties file
+     */
+    Map<String, String> getConfiguration() {
+        Map<String, String> answer = configuration;
+        if (answer == null) {
+            // parsing twice in a race is harmless as both results are equal
+            configuration = answer = DataStoreUtils.toMap(bytes);
+        }
+        return answer;
+    }
+
+    boolean isParsed() {
+        return configuration != null;
+    }
+}
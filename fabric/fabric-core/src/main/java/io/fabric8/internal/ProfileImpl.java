@@ -26,12 +26,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import io.fabric8.api.Constants;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.Profile;
 import io.fabric8.common.util.ChecksumUtils;
-import io.fabric8.utils.DataStoreUtils;
 
 /**
  * This immutable profile implementation.
@@ -43,12 +44,19 @@ final class ProfileImpl implements Profile {
     private final Map<String, String> attributes = new HashMap<>();
     private final List<String> parents = new ArrayList<>();
     private final Map<String, byte[]> fileConfigurations = new HashMap<>();
-    private final Map<String, Map<String, String>> configurations = new HashMap<>();
+    // Parsed on demand and shared with the profiles built from this one
+    private final ConcurrentMap<String, ProfileConfiguration> profileConfigurations = new ConcurrentHashMap<>();
+    private volatile Map<String, Map<String, String>> configurations;
+    private volatile String profileHash;
     private final boolean isOverlay;
     private final String lastModified;
 
     // Only the {@link ProfileBuilder} should construct this
     ProfileImpl(String versionId, String profileId, List<String> parents, Map<String, byte[]> fileConfigs, String lastModified, boolean isOverlay) {
+        this(versionId, profileId, parents, fileConfigs, Collections.<String, ProfileConfiguration>emptyMap(), lastModified, isOverlay);
+    }
+
+    ProfileImpl(String versionId, String profileId, List<String> parents, Map<String, byte[]> fileConfigs, Map<String, ProfileConfiguration> profileConfigs, String lastModified, boolean isOverlay) {
         this.profileId = profileId;
         this.versionId = versionId;
         this.lastModified = lastModified;
@@ -57,20 +65,20 @@ final class ProfileImpl implements Profile {
         // Parents
         this.parents.addAll(parents);
         
-        // File configurations and derived configurations
-        for (Entry<String, byte[]> entry : fileConfigs.entrySet()) {
-            String fileKey = entry.getKey();
-            byte[] bytes = entry.getValue();
-            fileConfigurations.put(fileKey, bytes);
-            if (fileKey.endsWith(Profile.PROPERTIES_SUFFIX)) {
-                String pid = fileKey.substring(0, fileKey.indexOf(Profile.PROPERTIES_SUFFIX));
-                configurations.put(pid, Collections.unmodifiableMap(DataStoreUtils.toMap(bytes)));
+        // File configurations, the configurations are derived from them when needed
+        fileConfigurations.putAll(fileConfigs);
+
+        // Reuse the parsed configurations which are still for the same file content
+        for (Entry<String, ProfileConfiguration> entry : profileConfigs.entrySet()) {
+            if (entry.getValue().getBytes() == fileConfigurations.get(entry.getKey())) {
+                profileConfigurations.put(entry.getKey(), entry.getValue());
             }
         }
         
         // Attributes are agent configuration with prefix 'attribute.'  
-        Map<String, String> agentConfig = configurations.get(Constants.AGENT_PID);
-        if (agentConfig != null) {
+        ProfileConfiguration agentConfiguration = getProfileConfiguration(Constants.AGENT_PID + Profile.PROPERTIES_SUFFIX);
+        if (agentConfiguration != null) {
+            Map<String, String> agentConfig = agentConfiguration.getConfiguration();
             int prefixLength = Profile.ATTRIBUTE_PREFIX.length();
             for (Entry<String, String> entry : agentConfig.entrySet()) {
                 String key = entry.getKey();
@@ -164,6 +172,13 @@ final class ProfileImpl implements Profile {
         return isOverlay;
     }
 
+    /**
+     * Returns the version of the profile content in the registry or null if the profile was not read from it
+     */
+    String getLastModified() {
+        return lastModified;
+    }
+
     @Override
     public Map<String, byte[]> getFileConfigurations() {
         return Collections.unmodifiableMap(fileConfigurations);
@@ -180,18 +195,70 @@ final class ProfileImpl implements Profile {
     }
 
     public Map<String, Map<String, String>> getConfigurations() {
-        return Collections.unmodifiableMap(configurations);
+        Map<String, Map<String, String>> answer = configurations;
+        if (answer == null) {
+            answer = new HashMap<>();
+            for (String fileKey : fileConfigurations.keySet()) {
+                if (fileKey.endsWith(Profile.PROPERTIES_SUFFIX)) {
+                    String pid = fileKey.substring(0, fileKey.indexOf(Profile.PROPERTIES_SUFFIX));
+                    answer.put(pid, getProfileConfiguration(fileKey).getConfiguration());
+                }
+            }
+            configurations = answer = Collections.unmodifiableMap(answer);
+        }
+        return answer;
     }
 
     @Override
     public Map<String, String> getConfiguration(String pid) {
-        Map<String, String> config = configurations.get(pid);
-        config = config != null ? config : Collections.<String, String> emptyMap();
-        return Collections.unmodifiableMap(config);
+        ProfileConfiguration profileConfig = getProfileConfiguration(pid + Profile.PROPERTIES_SUFFIX);
+        return profileConfig != null ? profileConfig.getConfiguration() : Collections.<String, String> emptyMap();
+    }
+
+    /**
+     * Returns the given file of this profile as a properties file or null if there is no such file; it is only
+     * parsed once no matter how often it is asked for
+     */
+    ProfileConfiguration getProfileConfiguration(String fileKey) {
+        ProfileConfiguration answer = profileConfigurations.get(fileKey);
+        if (answer == null) {
+            byte[] bytes = fileConfigurations.get(fileKey);
+            if (bytes == null) {
+                return null;
+            }
+            ProfileConfiguration profileConfig = new ProfileConfiguration(bytes);
+            answer = profileConfigurations.putIfAbsent(fileKey, profileConfig);
+            if (answer == null) {
+                answer = profileConfig;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the properties files which have been parsed so far keyed by the file name
+     */
+    Map<String, ProfileConfiguration> getParsedProfileConfigurations() {
+        Map<String, ProfileConfiguration> answer = new HashMap<>();
+        for (Entry<String, ProfileConfiguration> entry : profileConfigurations.entrySet()) {
+            if (entry.getValue().isParsed()) {
+                answer.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return answer;
     }
 
     @Override
     public String getProfileHash() {
+        // the profile is immutable, so the checksums of its embedded bundles are only computed once
+        String hash = profileHash;
+        if (hash == null) {
+            profileHash = hash = computeProfileHash();
+        }
+        return hash;
+    }
+
+    private String computeProfileHash() {
         StringBuilder answer = new StringBuilder();
         if (lastModified != null) {
             answer.append(lastModified);
@@ -322,7 +389,7 @@ final class ProfileImpl implements Profile {
         int result = profileId.hashCode();
         result = 31 * result + versionId.hashCode();
         result = 31 * result + parents.hashCode();
-        result = 31 * result + configurations.hashCode();
+        result = 31 * result + getConfigurations().hashCode();
         result = 31 * result + fileConfigurations.hashCode();
         return result;
     }
@@ -344,7 +411,7 @@ final class ProfileImpl implements Profile {
         if (!parents.equals(other.parents))
             return false;
 
-        if (!configurations.equals(other.configurations))
+        if (!getConfigurations().equals(other.getConfigurations()))
             return false;
 
         if (!fileConfigurations.keySet().equals(other.fileConfigurations.keySet()))
@@ -19,19 +19,19 @@ import io.fabric8.api.Container;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.FabricService;
-import io.fabric8.api.OptionsProvider;
 import io.fabric8.api.Profile;
-import io.fabric8.api.ProfileBuilder;
 import io.fabric8.api.ProfileRegistry;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.Profiles;
 import io.fabric8.api.RuntimeProperties;
 import io.fabric8.api.SystemProperties;
 import io.fabric8.api.Version;
+import io.fabric8.api.jmx.OverlayProfileCacheMBean;
 import io.fabric8.api.permit.PermitManager;
 import io.fabric8.api.scr.AbstractProtectedComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.api.visibility.VisibleForExternal;
+import io.fabric8.common.util.JMXUtils;
 import io.fabric8.utils.DataStoreUtils;
 
 import java.io.IOException;
@@ -39,7 +39,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.concurrent.Callable;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import io.fabric8.utils.FabricValidations;
 import org.apache.felix.scr.annotations.Activate;
@@ -47,6 +51,8 @@ import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.References;
 import org.apache.felix.scr.annotations.Service;
 import org.slf4j.Logger;
@@ -63,6 +69,10 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     private final ValidatingReference<ProfileRegistry> profileRegistry = new ValidatingReference<>();
     @Reference(referenceInterface = RuntimeProperties.class)
     private final ValidatingReference<RuntimeProperties> runtimeProperties = new ValidatingReference<>();
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC, bind = "bindMBeanServer", unbind = "unbindMBeanServer")
+    private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<>();
+
+    private final OverlayProfileCache overlayCache = new OverlayProfileCache();
 
     static class OverlayAudit {
         Map<String, Profile> overlayProfiles = new HashMap<String, Profile>();
@@ -174,39 +184,51 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     }
 
     @Override
-    public Profile getOverlayProfile(Profile profile) {
+    public Profile getOverlayProfile(final Profile profile) {
         assertValid();
-        Profile overlayProfile;
-        synchronized (this) {
-            if (profile.isOverlay()) {
-                LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
-                overlayProfile = profile;
-            } else {
-                String profileId = profile.getId();
-                String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
-                if (environment == null) {
-                    // lets default to the environment from the current active
-                    // set of profiles (e.g. docker or openshift)
-                    environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
-                }
-                Version version = getRequiredVersion(profile.getVersion());
-                ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
-                builder.addOptions(new OverlayOptionsProvider(version, profile, environment));
-                overlayProfile = builder.getProfile();
-
-                // Log the overlay profile difference
-                if (LOGGER.isDebugEnabled()) {
-                    OverlayAudit audit = getOverlayAudit();
-                    synchronized (audit) {
-                        Profile lastOverlay = audit.overlayProfiles.get(profileId);
-                        if (lastOverlay == null) {
-                            LOGGER.debug("Overlay" + Profiles.getProfileInfo(overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        } else if (!lastOverlay.equals(overlayProfile)) {
-                            LOGGER.debug("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        }
-                    }
+        if (profile.isOverlay()) {
+            LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
+            return profile;
+        }
+        String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
+        if (environment == null) {
+            // lets default to the environment from the current active
+            // set of profiles (e.g. docker or openshift)
+            environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
+        }
+        Version version = getRequiredVersion(profile.getVersion());
+        final OverlayOptionsProvider optionsProvider = new OverlayOptionsProvider(version, profile, environment);
+        String hashChain = optionsProvider.getHashChain();
+        if (hashChain == null) {
+            // a profile which is not stored in the registry can not be identified so it is not cached
+            return createOverlayProfile(profile, optionsProvider);
+        }
+        return overlayCache.getOverlayProfile(profile.getVersion(), profile.getId(), environment, hashChain, new Callable<Profile>() {
+            @Override
+            public Profile call() throws Exception {
+                return createOverlayProfile(profile, optionsProvider);
+            }
+        });
+    }
+
+    private Profile createOverlayProfile(Profile profile, OverlayOptionsProvider optionsProvider) {
+        String profileId = profile.getId();
+        // the default builder can take over the parsed configurations of the inherited profiles
+        DefaultProfileBuilder builder = new DefaultProfileBuilder();
+        builder.version(profile.getVersion()).identity(profileId);
+        Profile overlayProfile = optionsProvider.addOptions(builder).getProfile();
+
+        // Log the overlay profile difference
+        if (LOGGER.isDebugEnabled()) {
+            OverlayAudit audit = getOverlayAudit();
+            synchronized (audit) {
+                Profile lastOverlay = audit.overlayProfiles.get(profileId);
+                if (lastOverlay == null) {
+                    LOGGER.debug("Overlay" + Profiles.getProfileInfo(overlayProfile));
+                    audit.overlayProfiles.put(profileId, overlayProfile);
+                } else if (!lastOverlay.equals(overlayProfile)) {
+                    LOGGER.debug("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
+                    audit.overlayProfiles.put(profileId, overlayProfile);
                 }
             }
         }
@@ -256,15 +278,19 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
         }
     }
 
-    static class OverlayOptionsProvider implements OptionsProvider<ProfileBuilder> {
+    static class OverlayOptionsProvider {
 
         private final Version version;
         private final Profile self;
         private final String environment;
+        private List<Profile> inheritedProfiles;
 
         private static class SupplementControl {
             byte[] data;
-            Properties props;
+            // a properties file inherited unchanged, shared with the profile it comes from
+            ProfileConfiguration config;
+            // a properties file merged from several profiles
+            Map<String, String> props;
         }
 
         OverlayOptionsProvider(Version version, Profile self, String environment) {
@@ -273,61 +299,69 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
             this.environment = environment;
         }
 
-        @Override
-        public ProfileBuilder addOptions(ProfileBuilder builder) {
+        DefaultProfileBuilder addOptions(DefaultProfileBuilder builder) {
+            Map<String, SupplementControl> aggregate = getAggregate();
             builder.setAttributes(self.getAttributes());
-            builder.setFileConfigurations(getFileConfigurations());
-            builder.setConfigurations(getConfigurations());
+            builder.setFileConfigurations(getFileConfigurations(aggregate));
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                if (ctrl.config != null) {
+                    builder.addFileConfiguration(entry.getKey(), ctrl.config);
+                } else if (ctrl.props != null) {
+                    builder.addConfiguration(DataStoreUtils.stripSuffix(entry.getKey(), Profile.PROPERTIES_SUFFIX), ctrl.props);
+                }
+            }
             builder.setLastModified(getLastModified());
             builder.setOverlay(true);
             return builder;
         }
 
-        private Map<String, byte[]> getFileConfigurations() {
-            try {
-                Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-                for (Profile profile : getInheritedProfiles()) {
-                    supplement(profile, aggregate);
-                }
-
-                Map<String, byte[]> rc = new HashMap<String, byte[]>();
-                for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                    SupplementControl ctrl = entry.getValue();
-                    if (ctrl.props != null) {
-                        ctrl.data = DataStoreUtils.toBytes(ctrl.props);
-                    }
-                    rc.put(entry.getKey(), ctrl.data);
+        /**
+         * Returns the ids and hashes of the profile and all its ancestors which identify the content of the
+         * overlay, or null if any of them was not read from the profile registry
+         */
+        String getHashChain() {
+            StringBuilder sb = new StringBuilder();
+            for (Profile profile : getInheritedProfiles()) {
+                if (!(profile instanceof ProfileImpl) || ((ProfileImpl) profile).getLastModified() == null) {
+                    return null;
                 }
-                return rc;
-            } catch (Exception e) {
-                throw FabricException.launderThrowable(e);
+                sb.append(profile.getId()).append("=").append(profile.getProfileHash()).append(";");
             }
+            return sb.toString();
         }
 
-        private Map<String, Map<String, String>> getConfigurations() {
+        private Map<String, SupplementControl> getAggregate() {
             try {
                 Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
                 for (Profile profile : getInheritedProfiles()) {
                     supplement(profile, aggregate);
                 }
-
-                Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
-                for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                    SupplementControl ctrl = entry.getValue();
-                    if (ctrl.props != null) {
-                        rc.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), DataStoreUtils.toMap(ctrl.props));
-                    }
-                }
-                return rc;
+                return aggregate;
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
         }
 
+        private Map<String, byte[]> getFileConfigurations(Map<String, SupplementControl> aggregate) {
+            // the properties files are added with their parsed configuration
+            Map<String, byte[]> rc = new HashMap<String, byte[]>();
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                if (ctrl.config == null && ctrl.props == null) {
+                    rc.put(entry.getKey(), ctrl.data);
+                }
+            }
+            return rc;
+        }
+
         private List<Profile> getInheritedProfiles() {
-            List<Profile> profiles = new ArrayList<>();
-            fillParentProfiles(self, profiles);
-            return profiles;
+            if (inheritedProfiles == null) {
+                List<Profile> profiles = new ArrayList<>();
+                fillParentProfiles(self, profiles);
+                inheritedProfiles = profiles;
+            }
+            return inheritedProfiles;
         }
 
         private void fillParentProfiles(Profile profile, List<Profile> profiles) {
@@ -348,24 +382,32 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                 if (key.contains("#")) {
                     continue;
                 }
-                byte[] value = configs.get(key);
+                String valueKey = key;
                 if (environment != null && configs.containsKey(key + "#" + environment)) {
-                    value = configs.get(key + "#" + environment);
+                    valueKey = key + "#" + environment;
                 }
                 // we can use fine grained inheritance based updating if it's
                 // a properties file.
                 String fileName = key;
                 if (fileName.endsWith(".properties")) {
+                    ProfileConfiguration childConfig = getProfileConfiguration(profile, valueKey);
                     SupplementControl ctrl = aggregate.get(fileName);
                     if (ctrl != null) {
-                        // we can update the file..
-                        Properties childMap = DataStoreUtils.toProperties(value);
-                        if (childMap.remove(Profile.DELETED) != null) {
+                        // we can update the file, copying the inherited one the first time it changes
+                        if (ctrl.props == null) {
+                            ctrl.props = new HashMap<String, String>(ctrl.config.getConfiguration());
+                            ctrl.config = null;
+                        }
+                        Map<String, String> childMap = childConfig.getConfiguration();
+                        if (childMap.containsKey(Profile.DELETED)) {
                             ctrl.props.clear();
                         }
 
                         // Update the entries...
-                        for (Map.Entry<Object, Object> p : childMap.entrySet()) {
+                        for (Map.Entry<String, String> p : childMap.entrySet()) {
+                            if (Profile.DELETED.equals(p.getKey())) {
+                                continue;
+                            }
                             if (Profile.DELETED.equals(p.getValue())) {
                                 ctrl.props.remove(p.getKey());
                             } else {
@@ -376,18 +418,29 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                     } else {
                         // new file..
                         ctrl = new SupplementControl();
-                        ctrl.props = DataStoreUtils.toProperties(value);
+                        ctrl.config = childConfig;
                         aggregate.put(fileName, ctrl);
                     }
                 } else {
                     // not a properties file? we can only overwrite.
                     SupplementControl ctrl = new SupplementControl();
-                    ctrl.data = value;
+                    ctrl.data = configs.get(valueKey);
                     aggregate.put(fileName, ctrl);
                 }
             }
         }
 
+        /**
+         * Returns the given properties file of the given profile, which is only parsed once for a profile
+         * read from the registry
+         */
+        private static ProfileConfiguration getProfileConfiguration(Profile profile, String fileKey) {
+            if (profile instanceof ProfileImpl) {
+                return ((ProfileImpl) profile).getProfileConfiguration(fileKey);
+            }
+            return new ProfileConfiguration(profile.getFileConfiguration(fileKey));
+        }
+
         private String getLastModified() {
             StringBuilder sb = new StringBuilder();
             sb.append(self.getProfileHash());
@@ -416,4 +469,22 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     void unbindRuntimeProperties(RuntimeProperties service) {
         this.runtimeProperties.unbind(service);
     }
+
+    void bindMBeanServer(MBeanServer service) {
+        this.mbeanServer.bind(service);
+        try {
+            JMXUtils.registerMBean(new StandardMBean(overlayCache, OverlayProfileCacheMBean.class), service, new ObjectName(OverlayProfileCacheMBean.OBJECT_NAME));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to register the overlay profile cache MBean due " + e.getMessage() + ". This exception is ignored.");
+        }
+    }
+
+    void unbindMBeanServer(MBeanServer service) {
+        try {
+            JMXUtils.unregisterMBean(service, new ObjectName(OverlayProfileCacheMBean.OBJECT_NAME));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to unregister the overlay profile cache MBean due " + e.getMessage() + ". This exception is ignored.");
+        }
+        this.mbeanServer.unbind(service);
+    }
 }
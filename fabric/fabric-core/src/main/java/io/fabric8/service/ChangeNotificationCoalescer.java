@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.jcip.GuardedBy;
+import io.fabric8.api.jcip.ThreadSafe;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collapses bursts of change notifications into a single delivery.
+ * <p/>
+ * A delivery is made once no notification has been fired for the quiet period, or once the max delay has passed
+ * since the first notification of the burst, whichever comes first, so that a steady stream of changes still gets
+ * delivered. With a quiet period of zero a delivery is made as soon as the executor gets to it, which only collapses
+ * the notifications fired in the meantime.
+ * <p/>
+ * Deliveries run on the given executor; a notification fired while a delivery is running starts a new burst.
+ */
+@ThreadSafe
+final class ChangeNotificationCoalescer {
+
+    private static final transient Logger LOGGER = LoggerFactory.getLogger(ChangeNotificationCoalescer.class);
+
+    private final ScheduledExecutorService executor;
+    private final Runnable delivery;
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    @GuardedBy("this") private long quietPeriod;
+    @GuardedBy("this") private long maxDelay;
+    @GuardedBy("this") private boolean pending;
+    @GuardedBy("this") private long firstFired;
+    @GuardedBy("this") private long lastFired;
+    @GuardedBy("this") private long pendingFired;
+
+    ChangeNotificationCoalescer(ScheduledExecutorService executor, Runnable delivery, long quietPeriod, long maxDelay) {
+        this.executor = executor;
+        this.delivery = delivery;
+        configure(quietPeriod, maxDelay);
+    }
+
+    /**
+     * Sets the quiet period and the max delay in milliseconds; a max delay shorter than the quiet period is raised to it
+     */
+    synchronized void configure(long quietPeriod, long maxDelay) {
+        this.quietPeriod = Math.max(0, quietPeriod);
+        this.maxDelay = Math.max(this.quietPeriod, maxDelay);
+    }
+
+    /**
+     * Fires a notification which will be delivered with the others of its burst
+     */
+    synchronized void fire() {
+        fired.incrementAndGet();
+        long now = System.nanoTime();
+        lastFired = now;
+        pendingFired++;
+        if (!pending) {
+            pending = true;
+            firstFired = now;
+            schedule(quietPeriod);
+        }
+    }
+
+    /**
+     * Returns the number of notifications fired so far
+     */
+    long getFiredCount() {
+        return fired.get();
+    }
+
+    /**
+     * Returns the number of deliveries made so far
+     */
+    long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    @GuardedBy("this")
+    private void schedule(long delay) {
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    deliverIfQuiet();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the executor has been shut down
+            pending = false;
+        }
+    }
+
+    private void deliverIfQuiet() {
+        long count;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long quietUntil = lastFired + TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+            long deadline = firstFired + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+            if (now - quietUntil < 0 && now - deadline < 0) {
+                schedule(TimeUnit.NANOSECONDS.toMillis(Math.min(quietUntil - now, deadline - now)) + 1);
+                return;
+            }
+            count = pendingFired;
+            pendingFired = 0;
+            pending = false;
+        }
+        long total = delivered.incrementAndGet();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Delivering {} change notifications in one ({} fired and {} delivered in total)", count, fired.get(), total);
+        }
+        delivery.run();
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.DataStore;
+import io.fabric8.api.ZkDefs;
+import io.fabric8.api.jcip.GuardedBy;
+import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.zookeeper.ZkPath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the containers which have each profile of each version, so that the containers of a profile can be
+ * found without reading the profiles of every container.
+ * <p/>
+ * The index is built from the data store the first time it is used. After that the data store invalidates the
+ * containers whose version or profiles node changed, and only those containers are read again by the next lookup.
+ * A container without any profiles has the default profile, like {@link io.fabric8.internal.ContainerImpl#getProfiles()}.
+ */
+@ThreadSafe
+final class ContainerProfileIndex {
+
+    private static final String CONTAINERS_PREFIX = ZkPath.CONFIGS_CONTAINERS.getPath() + "/";
+    private static final String VERSIONS_PREFIX = ZkPath.CONFIG_VERSIONS.getPath() + "/";
+
+    private final Set<String> invalidated = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean stale = true;
+
+    @GuardedBy("this") private final Map<String, Assignment> assignments = new HashMap<String, Assignment>();
+    @GuardedBy("this") private final Map<String, Map<String, Set<String>>> versions = new HashMap<String, Map<String, Set<String>>>();
+
+    /**
+     * Returns the sorted ids of the containers which have the given profile in the given version, or in any
+     * version if the version is null
+     */
+    synchronized List<String> getContainers(DataStore dataStore, String versionId, String profileId) {
+        refresh(dataStore);
+        Set<String> answer = new HashSet<String>();
+        for (Map.Entry<String, Map<String, Set<String>>> entry : versions.entrySet()) {
+            if (versionId == null || versionId.equals(entry.getKey())) {
+                Set<String> containerIds = entry.getValue().get(profileId);
+                if (containerIds != null) {
+                    answer.addAll(containerIds);
+                }
+            }
+        }
+        List<String> sorted = new ArrayList<String>(answer);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Invalidates the containers whose assignment is stored in the given node
+     */
+    void invalidate(String path) {
+        if (path.startsWith(CONTAINERS_PREFIX)) {
+            // /fabric/configs/containers/{container}
+            String containerId = path.substring(CONTAINERS_PREFIX.length());
+            if (containerId.indexOf('/') < 0) {
+                invalidated.add(containerId);
+            }
+        } else if (path.startsWith(VERSIONS_PREFIX)) {
+            // /fabric/configs/versions/{version}/containers/{container}
+            String[] parts = path.substring(VERSIONS_PREFIX.length()).split("/");
+            if (parts.length == 3 && parts[1].equals("containers")) {
+                invalidated.add(parts[2]);
+            } else if (parts.length == 1 || (parts.length == 2 && parts[1].equals("containers"))) {
+                // a whole version or all its containers
+                invalidateAll();
+            }
+        } else if (path.equals(ZkPath.CONFIGS_CONTAINERS.getPath()) || path.equals(ZkPath.CONFIG_VERSIONS.getPath())) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Makes the next lookup build the whole index again
+     */
+    void invalidateAll() {
+        stale = true;
+    }
+
+    @GuardedBy("this")
+    private void refresh(DataStore dataStore) {
+        if (stale) {
+            stale = false;
+            invalidated.clear();
+            assignments.clear();
+            versions.clear();
+            try {
+                for (String containerId : dataStore.getContainers()) {
+                    update(dataStore, containerId);
+                }
+            } catch (RuntimeException e) {
+                stale = true;
+                throw e;
+            }
+        } else {
+            Iterator<String> iterator = invalidated.iterator();
+            while (iterator.hasNext()) {
+                String containerId = iterator.next();
+                iterator.remove();
+                try {
+                    update(dataStore, containerId);
+                } catch (RuntimeException e) {
+                    invalidated.add(containerId);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void update(DataStore dataStore, String containerId) {
+        Assignment previous = assignments.remove(containerId);
+        if (previous != null) {
+            Map<String, Set<String>> profiles = versions.get(previous.versionId);
+            for (String profileId : previous.profileIds) {
+                Set<String> containerIds = profiles.get(profileId);
+                containerIds.remove(containerId);
+                if (containerIds.isEmpty()) {
+                    profiles.remove(profileId);
+                }
+            }
+            if (profiles.isEmpty()) {
+                versions.remove(previous.versionId);
+            }
+        }
+
+        String versionId = dataStore.getContainerVersion(containerId);
+        if (versionId == null) {
+            // the container has been deleted
+            return;
+        }
+        Collection<String> profileIds = new HashSet<String>(dataStore.getContainerProfiles(containerId));
+        if (profileIds.isEmpty()) {
+            profileIds.add(ZkDefs.DEFAULT_PROFILE);
+        }
+        assignments.put(containerId, new Assignment(versionId, profileIds));
+        Map<String, Set<String>> profiles = versions.get(versionId);
+        if (profiles == null) {
+            profiles = new HashMap<String, Set<String>>();
+            versions.put(versionId, profiles);
+        }
+        for (String profileId : profileIds) {
+            Set<String> containerIds = profiles.get(profileId);
+            if (containerIds == null) {
+                containerIds = new HashSet<String>();
+                profiles.put(profileId, containerIds);
+            }
+            containerIds.add(containerId);
+        }
+    }
+
+    /**
+     * The version and profiles of a container
+     */
+    private static class Assignment {
+        private final String versionId;
+        private final Collection<String> profileIds;
+
+        Assignment(String versionId, Collection<String> profileIds) {
+            this.versionId = versionId;
+            this.profileIds = profileIds;
+        }
+    }
+}
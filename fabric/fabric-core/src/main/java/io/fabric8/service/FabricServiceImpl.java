@@ -18,7 +18,6 @@ package io.fabric8.service;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -298,12 +297,10 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
 	public Container[] getAssociatedContainers(String versionId, String profileId) {
 		assertValid();
         List<Container> containers = new ArrayList<>();
-        for (Container container : getContainers()) {
-        	for (Profile profile : Arrays.asList(container.getProfiles())) {
-            	if (profile.getId().equals(profileId)) {
-            		containers.add(container);
-            	}
-        	}
+        for (String containerId : dataStore.get().getContainersForProfile(versionId, profileId)) {
+            if (dataStore.get().hasContainer(containerId)) {
+                containers.add(getContainer(containerId));
+            }
         }
         return containers.toArray(new Container[containers.size()]);
 	}
@@ -884,8 +881,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
                 versionId = version.getId();
             }
         }
-        List<Container> containers = Containers.containersForProfile(getContainers(), profileId, versionId);
-        for (Container container : containers) {
+        for (Container container : getAssociatedContainers(versionId, profileId)) {
             String url = containerWebAppURL(webAppId, container.getId());
             if (url != null && url.length() > 0) {
                 return url;
@@ -1231,8 +1227,7 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
         FabricRequirements requirements = getRequirements();
         ProfileRequirements profileRequirements = requirements.getOrCreateProfileRequirement(profile);
         Integer minimumInstances = profileRequirements.getMinimumInstances();
-        List<Container> containers = Containers.containersForProfile(getContainers(), profile);
-        int containerCount = containers.size();
+        int containerCount = dataStore.get().getContainersForProfile(null, profile).size();
         int newCount = containerCount + numberOfInstances;
         if (newCount < 0) {
             newCount = 0;
@@ -18,10 +18,9 @@ package io.fabric8.service;
 import static io.fabric8.zookeeper.ZkPath.CONTAINER_DOMAIN;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
-import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getByteData;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildren;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
-import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedPath;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.setData;
 import io.fabric8.api.AutoScaleStatus;
 import io.fabric8.api.CreateContainerMetadata;
@@ -37,21 +36,26 @@ import io.fabric8.api.jcip.ThreadSafe;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.Closeables;
+import io.fabric8.common.util.Maps;
 import io.fabric8.common.util.ObjectUtils;
 import io.fabric8.common.util.Strings;
 import io.fabric8.internal.RequirementsJson;
 import io.fabric8.utils.Base64Encoder;
 import io.fabric8.utils.FabricVersionUtils;
 import io.fabric8.zookeeper.ZkPath;
+import io.fabric8.zookeeper.utils.InterpolationHelper;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -59,16 +63,20 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.zookeeper.KeeperException;
@@ -80,7 +88,7 @@ import org.slf4j.LoggerFactory;
  * A Zookeeper based implementation of {@link DataStore}.
  */
 @ThreadSafe
-@Component(label = "Fabric8 DataStore", policy = ConfigurationPolicy.IGNORE, immediate = true, metatype = true)
+@Component(label = "Fabric8 DataStore", policy = ConfigurationPolicy.OPTIONAL, immediate = true, metatype = true)
 @Service({ DataStore.class })
 public final class ZkDataStoreImpl extends AbstractComponent implements DataStore, PathChildrenCacheListener {
     
@@ -88,6 +96,13 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     
     private static final String JVM_OPTIONS_PATH = "/fabric/configs/io.fabric8.containers.jvmOptions";
     private static final String REQUIREMENTS_JSON_PATH = "/fabric/configs/io.fabric8.requirements.json";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String NOTIFICATION_QUIET_PERIOD = "notificationQuietPeriod";
+    private static final String NOTIFICATION_MAX_DELAY = "notificationMaxDelay";
+    private static final int DEFAULT_NOTIFICATION_QUIET_PERIOD = 250;
+    private static final int DEFAULT_NOTIFICATION_MAX_DELAY = 2000;
+    private static final String CACHE_LOAD_WINDOW = "cacheLoadWindow";
+    private static final int DEFAULT_CACHE_LOAD_WINDOW = 100;
     
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
@@ -96,33 +111,73 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     
     private final CopyOnWriteArrayList<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
     private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
-    private final ExecutorService callbacksExecutor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService callbacksExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ChangeNotificationCoalescer notifications = new ChangeNotificationCoalescer(callbacksExecutor, new Runnable() {
+        @Override
+        public void run() {
+            doRunCallbacks();
+        }
+    }, DEFAULT_NOTIFICATION_QUIET_PERIOD, DEFAULT_NOTIFICATION_MAX_DELAY);
+    private final ContainerProfileIndex profileIndex = new ContainerProfileIndex();
     private TreeCache configCache;
     private TreeCache containerCache;
 
+    @Property(name = NOTIFICATION_QUIET_PERIOD, label = "Notification Quiet Period", intValue = DEFAULT_NOTIFICATION_QUIET_PERIOD,
+            description = "The time in milliseconds without any change after which a burst of changes is notified")
+    private int notificationQuietPeriod = DEFAULT_NOTIFICATION_QUIET_PERIOD;
+    @Property(name = NOTIFICATION_MAX_DELAY, label = "Notification Max Delay", intValue = DEFAULT_NOTIFICATION_MAX_DELAY,
+            description = "The maximum time in milliseconds a change waits for the end of its burst before it is notified")
+    private int notificationMaxDelay = DEFAULT_NOTIFICATION_MAX_DELAY;
+    @Property(name = CACHE_LOAD_WINDOW, label = "Cache Load Window", intValue = DEFAULT_CACHE_LOAD_WINDOW,
+            description = "The maximum number of reads in flight while loading the caches; 0 loads them one node at a time")
+    private int cacheLoadWindow = DEFAULT_CACHE_LOAD_WINDOW;
+
     @Activate
-    void activate() throws Exception {
+    void activate(Map<String, ?> configuration) throws Exception {
+        configureNotifications(configuration);
+        cacheLoadWindow = Maps.integerValue(configuration, CACHE_LOAD_WINDOW, DEFAULT_CACHE_LOAD_WINDOW);
         activateInternal();
         activateComponent();
     }
 
+    @Modified
+    void modified(Map<String, ?> configuration) {
+        configureNotifications(configuration);
+    }
+
     @Deactivate
     void deactivate() {
         deactivateComponent();
         deactivateInternal();
     }
     
+    private void configureNotifications(Map<String, ?> configuration) {
+        notificationQuietPeriod = Maps.integerValue(configuration, NOTIFICATION_QUIET_PERIOD, DEFAULT_NOTIFICATION_QUIET_PERIOD);
+        notificationMaxDelay = Maps.integerValue(configuration, NOTIFICATION_MAX_DELAY, DEFAULT_NOTIFICATION_MAX_DELAY);
+        notifications.configure(notificationQuietPeriod, notificationMaxDelay);
+    }
+
     private void activateInternal() throws Exception {
+        profileIndex.invalidateAll();
+
         configCache = new TreeCache(curator.get(), ZkPath.CONFIGS.getPath(), true, false, true, cacheExecutor);
+        configureLoadMode(configCache);
         configCache.start(TreeCache.StartMode.NORMAL);
         configCache.getListenable().addListener(this);
 
         containerCache = new TreeCache(curator.get(), ZkPath.CONTAINERS.getPath(), true, false, true, cacheExecutor);
+        configureLoadMode(containerCache);
         containerCache.start(TreeCache.StartMode.NORMAL);
         containerCache.getListenable().addListener(this);
 
     }
 
+    private void configureLoadMode(TreeCache cache) {
+        if (cacheLoadWindow > 0) {
+            cache.setLoadMode(TreeCache.LoadMode.PIPELINED, cacheLoadWindow);
+        }
+    }
+
     private void deactivateInternal() {
         configCache.getListenable().removeListener(this);
         Closeables.closeQuietly(configCache);
@@ -153,6 +208,12 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             }
 
             PathChildrenCacheEvent.Type type = event.getType();
+            if (path != null) {
+                profileIndex.invalidate(path);
+            } else if (type == PathChildrenCacheEvent.Type.CONNECTION_RECONNECTED) {
+                profileIndex.invalidateAll();
+            }
+
             switch (type) {
                 case CHILD_ADDED:
                 case CHILD_REMOVED:
@@ -177,29 +238,32 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         }
 
         String runtimeIdentity = runtimeProperties.get().getRuntimeIdentity();
-        String currentVersion = getContainerVersion(runtimeIdentity);
-        return (path.startsWith(ZkPath.CONTAINERS.getPath()) && type.equals(PathChildrenCacheEvent.Type.CHILD_UPDATED)) ||
-                        path.equals(ZkPath.CONFIG_ENSEMBLES.getPath()) ||
-                        path.equals(ZkPath.CONFIG_ENSEMBLE_URL.getPath()) ||
-                        path.equals(ZkPath.CONFIG_ENSEMBLE_PASSWORD.getPath()) ||
-                        path.equals(ZkPath.CONFIG_CONTAINER.getPath(runtimeIdentity)) ||
-                        (currentVersion != null && path.equals(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(currentVersion, runtimeIdentity)));
+        if ((path.startsWith(ZkPath.CONTAINERS.getPath()) && type.equals(PathChildrenCacheEvent.Type.CHILD_UPDATED)) ||
+                path.equals(ZkPath.CONFIG_ENSEMBLES.getPath()) ||
+                path.equals(ZkPath.CONFIG_ENSEMBLE_URL.getPath()) ||
+                path.equals(ZkPath.CONFIG_ENSEMBLE_PASSWORD.getPath()) ||
+                path.equals(ZkPath.CONFIG_CONTAINER.getPath(runtimeIdentity))) {
+            return true;
+        }
+        // only read the version of this container for a change of the profiles of this container in some version
+        String versionsPrefix = ZkPath.CONFIG_VERSIONS.getPath() + "/";
+        String containerSuffix = "/containers/" + runtimeIdentity;
+        if (path.startsWith(versionsPrefix) && path.endsWith(containerSuffix)) {
+            String currentVersion = getCachedStringData(ZkPath.CONFIG_CONTAINER.getPath(runtimeIdentity));
+            return currentVersion != null && path.equals(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(currentVersion, runtimeIdentity));
+        }
+        return false;
     }
     
+    /**
+     * Notifies the configuration callbacks of a change; the notifications of a burst of changes are coalesced so
+     * that the callbacks run once for the whole burst.
+     */
     @Override
     public void fireChangeNotifications() {
-        runCallbacks();
+        notifications.fire();
     }
-    
-    private void runCallbacks() {
-        callbacksExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                doRunCallbacks();
-            }
-        });
-    }
-    
+
     private void doRunCallbacks() {
         assertValid();
         for (Runnable callback : callbacks) {
@@ -235,7 +299,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public List<String> getContainers() {
         assertValid();
         try {
-            return getChildrenSafe(curator.get(), ZkPath.CONFIGS_CONTAINERS.getPath());
+            return getChildren(configCache, ZkPath.CONFIGS_CONTAINERS.getPath());
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -251,11 +315,8 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public String getContainerParent(String containerId) {
         assertValid();
         try {
-            String parentName = getStringData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId));
+            String parentName = getCachedStringData(ZkPath.CONTAINER_PARENT.getPath(containerId));
             return parentName != null ? parentName.trim() : "";
-        } catch (KeeperException.NoNodeException e) {
-            // Ignore
-            return "";
         } catch (Throwable e) {
             throw FabricException.launderThrowable(e);
         }
@@ -270,16 +331,21 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             }
             // Wipe all config entries that are related to the container for all versions.
             ProfileService profileService = fabricService.adapt(ProfileService.class);
+            List<String> paths = new ArrayList<String>();
             for (String version : profileService.getVersions()) {
-                deleteSafe(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(version, containerId));
+                paths.add(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(version, containerId));
+            }
+            paths.add(ZkPath.CONFIG_CONTAINER.getPath(containerId));
+            paths.add(ZkPath.CONTAINER.getPath(containerId));
+            paths.add(ZkPath.CONTAINER_ALIVE.getPath(containerId));
+            paths.add(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+            paths.add(ZkPath.CONTAINER_PROVISION.getPath(containerId));
+            paths.add(ZkPath.CONTAINER_STATUS.getPath(containerId));
+            paths.add(ZkPath.AUTHENTICATION_CONTAINER.getPath(containerId));
+            for (String path : paths) {
+                deleteSafe(curator.get(), path);
+                refreshCachedNode(path);
             }
-            deleteSafe(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId));
-            deleteSafe(curator.get(), ZkPath.CONTAINER.getPath(containerId));
-            deleteSafe(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(containerId));
-            deleteSafe(curator.get(), ZkPath.CONTAINER_DOMAINS.getPath(containerId));
-            deleteSafe(curator.get(), ZkPath.CONTAINER_PROVISION.getPath(containerId));
-            deleteSafe(curator.get(), ZkPath.CONTAINER_STATUS.getPath(containerId));
-            deleteSafe(curator.get(), ZkPath.AUTHENTICATION_CONTAINER.getPath(containerId));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -301,9 +367,9 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 sb.append(profileId);
             }
 
-            setData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
-            setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
-            setData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId), parent);
+            setCachedData(ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
+            setCachedData(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
+            setCachedData(ZkPath.CONTAINER_PARENT.getPath(containerId), parent);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -340,7 +406,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             for (Map.Entry<String, String> entry : configuration.entrySet()) {
                 String key = entry.getKey();
                 String value = entry.getValue();
-                setData(curator.get(), ZkPath.CONTAINER_ENTRY.getPath(metadata.getContainerName(), key), value);
+                setCachedData(ZkPath.CONTAINER_ENTRY.getPath(metadata.getContainerName(), key), value);
             }
 
             // If no resolver specified but a resolver is already present in the registry, use the registry value
@@ -358,7 +424,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 resolver = ZkDefs.DEFAULT_RESOLVER;
             }
             // Set the resolver if not already set
-            setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), resolver);
+            setCachedData(ZkPath.CONTAINER_RESOLVER.getPath(containerId), resolver);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -368,7 +434,8 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public CreateContainerMetadata getContainerMetadata(String containerId, final ClassLoader classLoader) {
         assertValid();
         try {
-            byte[] encoded = getByteData(configCache, ZkPath.CONTAINER_METADATA.getPath(containerId));
+            ChildData childData = getCachedData(ZkPath.CONTAINER_METADATA.getPath(containerId));
+            byte[] encoded = childData != null ? childData.getData() : null;
             if (encoded == null) {
                 return null;
             }
@@ -396,7 +463,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         assertValid();
         //We encode the metadata so that they are more friendly to import/export.
         try {
-            setData(curator.get(), ZkPath.CONTAINER_METADATA.getPath(metadata.getContainerName()), Base64Encoder.encode(ObjectUtils.toBytes(metadata)));
+            setCachedData(ZkPath.CONTAINER_METADATA.getPath(metadata.getContainerName()), Base64Encoder.encode(ObjectUtils.toBytes(metadata)));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -419,8 +486,8 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             String oldVersionId = getStringData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId));
             String oldProfileIds = getStringData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(oldVersionId, containerId));
 
-            setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), oldProfileIds);
-            setData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
+            setCachedData(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), oldProfileIds);
+            setCachedData(ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -443,6 +510,12 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         }
     }
 
+    @Override
+    public List<String> getContainersForProfile(String versionId, String profileId) {
+        assertValid();
+        return profileIndex.getContainers(this, versionId, profileId);
+    }
+
     @Override
     public void setContainerProfiles(String containerId, List<String> profileIds) {
         assertValid();
@@ -458,7 +531,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 sb.append(profileId);
                 idset.add(profileId);
             }
-            setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
+            setCachedData(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -468,9 +541,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
     public boolean isContainerAlive(String id) {
         assertValid();
         try {
-            return exists(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id)) != null;
-        } catch (KeeperException.NoNodeException e) {
-            return false;
+            return getCachedData(ZkPath.CONTAINER_ALIVE.getPath(id)) != null;
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -481,9 +552,10 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         assertValid();
         try {
             if (flag) {
-                setData(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id), "alive");
+                setCachedData(ZkPath.CONTAINER_ALIVE.getPath(id), "alive");
             } else {
                 deleteSafe(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id));
+                refreshCachedNode(ZkPath.CONTAINER_ALIVE.getPath(id));
             }
         } catch (KeeperException.NoNodeException e) {
             // ignore
@@ -497,7 +569,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         assertValid();
         if (attribute == ContainerAttribute.Domains) {
             try {
-                List<String> list = curator.get().getChildren().forPath(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+                List<String> list = getChildren(containerCache, ZkPath.CONTAINER_DOMAINS.getPath(containerId));
                 Collections.sort(list);
                 StringBuilder sb = new StringBuilder();
                 for (String l : list) {
@@ -512,14 +584,15 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
             }
         } else {
             try {
+                String path = getAttributePath(containerId, attribute);
+                ChildData childData = getCachedData(path);
                 if (substituted) {
-                    return getSubstitutedPath(curator.get(), getAttributePath(containerId, attribute));
-                } else {
-                    return getStringData(curator.get(), getAttributePath(containerId, attribute));
-                }
-            } catch (KeeperException.NoNodeException e) {
-                if (mandatory) {
-                    throw FabricException.launderThrowable(e);
+                    byte[] data = childData != null ? childData.getData() : null;
+                    return data != null && data.length > 0 ? getSubstitutedData(new String(data, UTF_8)) : null;
+                } else if (childData != null) {
+                    return childData.getData() != null ? new String(childData.getData(), UTF_8) : null;
+                } else if (mandatory) {
+                    throw KeeperException.create(KeeperException.Code.NONODE, path);
                 }
                 return def;
             } catch (Exception e) {
@@ -536,8 +609,8 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         // TODO: something like ${zk:container/${zk:container/resolver}}
         if (attribute == ContainerAttribute.Resolver) {
             try {
-                setData(curator.get(), ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/" + value + "}");
-                setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), value);
+                setCachedData(ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/" + value + "}");
+                setCachedData(ZkPath.CONTAINER_RESOLVER.getPath(containerId), value);
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
@@ -549,7 +622,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                     String path = CONTAINER_DOMAIN.getPath(containerId, domain);
                     // add any missing domains
                     if (!zkSet.remove(domain)) {
-                        setData(curator.get(), path, "");
+                        setCachedData(path, "");
                     }
                 }
 
@@ -557,6 +630,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 for (String domain : zkSet) {
                     String path = CONTAINER_DOMAIN.getPath(containerId, domain);
                     deleteSafe(curator.get(), path);
+                    refreshCachedNode(path);
                 }
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
@@ -566,7 +640,7 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
                 //                if (value == null) {
                 //                    deleteSafe(zk, getAttributePath(containerId, attribute));
                 //                } else {
-                setData(curator.get(), getAttributePath(containerId, attribute), value);
+                setCachedData(getAttributePath(containerId, attribute), value);
                 //                }
             } catch (KeeperException.NoNodeException e) {
                 // Ignore
@@ -576,6 +650,98 @@ public final class ZkDataStoreImpl extends AbstractComponent implements DataStor
         }
     }
 
+    /**
+     * Returns the cache which holds the given node; nodes below the path of a cache are loaded when it starts and
+     * any other node when it is first read, after which its watcher keeps it up to date.
+     */
+    private TreeCache getCache(String path) {
+        return path.startsWith(ZkPath.CONFIGS.getPath()) ? configCache : containerCache;
+    }
+
+    /**
+     * Returns the cached data of the given node or null if the node does not exist. The node is looked up in the
+     * children of its parent first so that a node which does not exist is not read from the ensemble on every call.
+     */
+    private ChildData getCachedData(String path) {
+        TreeCache cache = getCache(path);
+        ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(path);
+        if (!cache.getChildrenNames(pathAndNode.getPath()).contains(pathAndNode.getNode())) {
+            return null;
+        }
+        return cache.getCurrentData(path);
+    }
+
+    private String getCachedStringData(String path) {
+        ChildData childData = getCachedData(path);
+        byte[] data = childData != null ? childData.getData() : null;
+        return data != null ? new String(data, UTF_8) : null;
+    }
+
+    /**
+     * Sets the data of the given node and updates the cache straight away so that this container reads its own
+     * writes rather than the previous value until the watcher of the cache fires.
+     */
+    private void setCachedData(String path, String value) throws Exception {
+        setData(curator.get(), path, value);
+        refreshCachedNode(path);
+    }
+
+    private void refreshCachedNode(String path) {
+        TreeCache cache = getCache(path);
+        try {
+            cache.refreshNode(path);
+            // parents created along with the node are not in the children of their cached parents yet
+            String child = path;
+            ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(child);
+            while (!pathAndNode.getPath().equals("/") && cache.getCurrentData(child) != null
+                    && !cache.getChildrenNames(pathAndNode.getPath()).contains(pathAndNode.getNode())) {
+                cache.refreshNode(pathAndNode.getPath());
+                child = pathAndNode.getPath();
+                pathAndNode = ZKPaths.getPathAndNode(child);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to refresh cached node " + path + " due " + e.getMessage() + ". This exception is ignored.");
+        }
+        profileIndex.invalidate(path);
+    }
+
+    /**
+     * Replaces the ${zk:...} references in the given data, reading the referenced nodes from the cache like
+     * {@link io.fabric8.zookeeper.utils.ZooKeeperUtils#getSubstitutedData(CuratorFramework, String)} reads them
+     * from the ensemble.
+     */
+    private String getSubstitutedData(String data) {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("data", data);
+        InterpolationHelper.performSubstitution(props, new InterpolationHelper.SubstitutionCallback() {
+            @Override
+            public String getValue(String key) {
+                if (key.startsWith("zk:")) {
+                    try {
+                        return loadURL(key);
+                    } catch (Exception e) {
+                        //ignore and just return null.
+                    }
+                }
+                return null;
+            }
+        });
+        return props.get("data");
+    }
+
+    private String loadURL(String url) throws Exception {
+        URI uri = new URI(url);
+        if (uri.getFragment() != null) {
+            // a property of a properties or json node, which are rarely referenced so they are not cached
+            return new String(ZkPath.loadURL(curator.get(), url), UTF_8);
+        }
+        String path = uri.getSchemeSpecificPart().trim();
+        if (!path.startsWith("/")) {
+            path = ZkPath.CONTAINER.getPath(path);
+        }
+        return getCachedStringData(path);
+    }
+
     private String getAttributePath(String containerId, ContainerAttribute attribute) {
         switch (attribute) {
         case BlueprintStatus:
@@ -0,0 +1,199 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Constants;
+import io.fabric8.api.Profile;
+import io.fabric8.api.Version;
+import io.fabric8.utils.DataStoreUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * A simple benchmark of the time taken to compute the overlay of a profile at the bottom of a deep inheritance
+ * hierarchy using the parsed {@link ProfileConfiguration}s compared with the previous approach of parsing every
+ * properties file of every ancestor, serializing the merged result and parsing it again.
+ * <p/>
+ * The root profile has all the configurations and every level below it only overrides a few keys of a few of
+ * them. The overlay is measured both with a new version each time, so every file has to be parsed once, and with
+ * the same version, when the parsed files of the ancestors are reused.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class OverlayProfileBenchmark {
+    private static final int LEVELS = 12;
+    private static final int PIDS = 200;
+    private static final int KEYS_PER_PID = 20;
+    private static final int OVERRIDDEN_PIDS_PER_LEVEL = 10;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    @Test
+    public void testDeepHierarchyOverlay() throws Exception {
+        System.out.println(String.format("levels: %d pids: %d keys per pid: %d overridden pids per level: %d",
+                LEVELS, PIDS, KEYS_PER_PID, OVERRIDDEN_PIDS_PER_LEVEL));
+
+        Version version = createVersion();
+        Profile leaf = version.getRequiredProfile(getProfileId(LEVELS - 1));
+        Map<String, Map<String, String>> expected = legacyOverlay(version, leaf).getConfigurations();
+        if (!expected.equals(overlay(createVersion()).getConfigurations())) {
+            throw new IllegalStateException("The overlay is different from the legacy overlay");
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            legacyOverlay(createVersion(), leaf);
+            overlay(createVersion());
+            overlay(version);
+        }
+        long legacyNanos = 0;
+        long coldNanos = 0;
+        long warmNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            // the versions are created outside of the measurement
+            Version legacyVersion = createVersion();
+            Version coldVersion = createVersion();
+            long start = System.nanoTime();
+            legacyOverlay(legacyVersion, legacyVersion.getRequiredProfile(getProfileId(LEVELS - 1)));
+            legacyNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            overlay(coldVersion);
+            coldNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            overlay(version);
+            warmNanos += System.nanoTime() - start;
+        }
+        System.out.println(String.format("legacy: %8.2f ms new version: %8.2f ms same version: %8.2f ms",
+                millis(legacyNanos), millis(coldNanos), millis(warmNanos)));
+    }
+
+    protected static double millis(long nanos) {
+        return nanos / 1000000.0 / ROUNDS;
+    }
+
+    /**
+     * Computes the overlay of the leaf profile and reads all its configurations
+     */
+    protected static Profile overlay(Version version) {
+        Profile leaf = version.getRequiredProfile(getProfileId(LEVELS - 1));
+        ProfileServiceImpl.OverlayOptionsProvider optionsProvider = new ProfileServiceImpl.OverlayOptionsProvider(version, leaf, null);
+        DefaultProfileBuilder builder = new DefaultProfileBuilder();
+        builder.version(version.getId()).identity(leaf.getId());
+        Profile answer = optionsProvider.addOptions(builder).getProfile();
+        answer.getConfigurations();
+        return answer;
+    }
+
+    /**
+     * Computes the overlay the way the profile service used to; the properties files of every ancestor are parsed,
+     * the merged files serialized and then parsed again by the overlay profile
+     */
+    protected static Profile legacyOverlay(Version version, Profile self) {
+        List<Profile> profiles = new ArrayList<>();
+        fillParentProfiles(version, self, profiles);
+        Map<String, Properties> aggregate = new HashMap<>();
+        for (Profile profile : profiles) {
+            for (Map.Entry<String, byte[]> entry : profile.getFileConfigurations().entrySet()) {
+                if (!entry.getKey().endsWith(Profile.PROPERTIES_SUFFIX)) {
+                    continue;
+                }
+                Properties childMap = DataStoreUtils.toProperties(entry.getValue());
+                Properties props = aggregate.get(entry.getKey());
+                if (props == null) {
+                    aggregate.put(entry.getKey(), childMap);
+                } else {
+                    if (childMap.remove(Profile.DELETED) != null) {
+                        props.clear();
+                    }
+                    for (Map.Entry<Object, Object> p : childMap.entrySet()) {
+                        if (Profile.DELETED.equals(p.getValue())) {
+                            props.remove(p.getKey());
+                        } else {
+                            props.put(p.getKey(), p.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        // the file configurations and the configurations were each computed from their own walk of the hierarchy
+        Map<String, byte[]> fileConfigurations = new HashMap<>();
+        Map<String, Map<String, String>> configurations = new HashMap<>();
+        for (Map.Entry<String, Properties> entry : aggregate.entrySet()) {
+            fileConfigurations.put(entry.getKey(), DataStoreUtils.toBytes(entry.getValue()));
+            configurations.put(DataStoreUtils.stripSuffix(entry.getKey(), Profile.PROPERTIES_SUFFIX), DataStoreUtils.toMap(entry.getValue()));
+        }
+        Map<String, byte[]> files = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : configurations.entrySet()) {
+            files.put(entry.getKey() + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(entry.getValue()));
+        }
+        // the profile used to parse all its properties files when it was created
+        Profile answer = new ProfileImpl(version.getId(), self.getId(), self.getParentIds(), files, null, true);
+        for (byte[] bytes : answer.getFileConfigurations().values()) {
+            DataStoreUtils.toMap(bytes);
+        }
+        return answer;
+    }
+
+    private static void fillParentProfiles(Version version, Profile profile, List<Profile> profiles) {
+        if (!profiles.contains(profile)) {
+            for (String parentId : profile.getParentIds()) {
+                fillParentProfiles(version, version.getRequiredProfile(parentId), profiles);
+            }
+            profiles.add(profile);
+        }
+    }
+
+    /**
+     * Creates a version with a chain of profiles where each level overrides a few keys of a few configurations
+     */
+    protected static Version createVersion() {
+        DefaultVersionBuilder versionBuilder = new DefaultVersionBuilder();
+        versionBuilder.identity("1.0");
+        for (int level = 0; level < LEVELS; level++) {
+            DefaultProfileBuilder builder = new DefaultProfileBuilder();
+            builder.version("1.0").identity(getProfileId(level));
+            Map<String, byte[]> files = new HashMap<>();
+            for (int pid = 0; pid < PIDS; pid++) {
+                if (level == 0 || (pid + level) % (PIDS / OVERRIDDEN_PIDS_PER_LEVEL) == 0) {
+                    Properties properties = new Properties();
+                    int keys = level == 0 ? KEYS_PER_PID : 2;
+                    for (int key = 0; key < keys; key++) {
+                        properties.put("key" + key, "value " + key + " of level " + level);
+                    }
+                    files.put("io.fabric8.pid" + pid + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(properties));
+                }
+            }
+            Properties agent = new Properties();
+            if (level > 0) {
+                agent.put(Profile.ATTRIBUTE_PREFIX + Profile.PARENTS, getProfileId(level - 1));
+            }
+            files.put(Constants.AGENT_PID + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(agent));
+            builder.setFileConfigurations(files);
+            builder.setLastModified("commit" + level);
+            versionBuilder.addProfile(builder.getProfile());
+        }
+        return versionBuilder.getVersion();
+    }
+
+    protected static String getProfileId(int level) {
+        return "level" + level;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Profile;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class OverlayProfileCacheTest {
+
+    @Test
+    public void testOverlayIsComputedOncePerHashChain() throws Exception {
+        OverlayProfileCache cache = new OverlayProfileCache();
+        CountingOverlay overlay = new CountingOverlay();
+
+        Profile first = cache.getOverlayProfile("1.0", "default", null, "default=abc;", overlay);
+        assertSame(first, cache.getOverlayProfile("1.0", "default", null, "default=abc;", overlay));
+        assertEquals("computations", 1, overlay.count.get());
+
+        // a changed ancestor replaces the cached overlay
+        Profile second = cache.getOverlayProfile("1.0", "default", null, "default=abd;", overlay);
+        assertEquals("computations", 2, overlay.count.get());
+        assertSame(second, cache.getOverlayProfile("1.0", "default", null, "default=abd;", overlay));
+
+        // the environment is part of the key
+        cache.getOverlayProfile("1.0", "default", "docker", "default=abd;", overlay);
+        assertEquals("computations", 3, overlay.count.get());
+
+        assertEquals("size", 2, cache.getSize());
+        assertEquals("hits", 2, cache.getHitCount());
+        assertEquals("misses", 3, cache.getMissCount());
+        assertEquals("hit ratio", 0.4, cache.getHitRatio(), 0.0001);
+
+        cache.clear();
+        assertEquals("size", 0, cache.getSize());
+        assertEquals("hits", 0, cache.getHitCount());
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws Exception {
+        OverlayProfileCache cache = new OverlayProfileCache();
+        try {
+            cache.getOverlayProfile("1.0", "default", null, "default=abc;", new Callable<Profile>() {
+                @Override
+                public Profile call() throws Exception {
+                    throw new IllegalStateException("Cannot find parent profile");
+                }
+            });
+            fail("Expected the failure of the overlay");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals("size", 0, cache.getSize());
+
+        CountingOverlay overlay = new CountingOverlay();
+        cache.getOverlayProfile("1.0", "default", null, "default=abc;", overlay);
+        assertEquals("computations", 1, overlay.count.get());
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneComputation() throws Exception {
+        final OverlayProfileCache cache = new OverlayProfileCache();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountingOverlay overlay = new CountingOverlay() {
+            @Override
+            public Profile call() throws Exception {
+                started.countDown();
+                Thread.sleep(100);
+                return super.call();
+            }
+        };
+        final Profile[] results = new Profile[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results[index] = cache.getOverlayProfile("1.0", "default", null, "default=abc;", overlay);
+                }
+            });
+            threads[i].start();
+            if (i == 0) {
+                started.await();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("computations", 1, overlay.count.get());
+        for (Profile result : results) {
+            assertSame(results[0], result);
+        }
+    }
+
+    static class CountingOverlay implements Callable<Profile> {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Profile call() throws Exception {
+            count.incrementAndGet();
+            return new ProfileImpl("1.0", "default", Collections.<String>emptyList(), Collections.<String, byte[]>emptyMap(), null, true);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Constants;
+import io.fabric8.api.Profile;
+import io.fabric8.api.Version;
+import io.fabric8.utils.DataStoreUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OverlayProfileTest {
+
+    private static final int LEVELS = 5;
+    private static final int PIDS = 20;
+    private static final int KEYS_PER_PID = 5;
+    private static final int OVERRIDDEN_PIDS_PER_LEVEL = 4;
+
+    @Test
+    public void testOverlayIsTheSameAsMergingEveryPropertiesFile() throws Exception {
+        Version version = createVersion();
+        Map<String, Map<String, String>> expected = legacyOverlay(version, getLeaf(version));
+
+        assertEquals(expected, overlay(createVersion()).getConfigurations());
+        // the parsed files of the ancestors are reused by a second overlay of the same version
+        assertEquals(expected, overlay(version).getConfigurations());
+        assertEquals(expected, overlay(version).getConfigurations());
+    }
+
+    @Test
+    public void testDeletedKeysAndConfigurations() throws Exception {
+        Version version = createVersion();
+        Map<String, Map<String, String>> configurations = overlay(version).getConfigurations();
+
+        // level 2 deletes key1 of pid0 and level 3 replaces all the keys of pid1
+        assertNull(configurations.get("io.fabric8.pid0").get("key1"));
+        assertEquals("value 2 of level 0", configurations.get("io.fabric8.pid0").get("key2"));
+        assertEquals(1, configurations.get("io.fabric8.pid1").size());
+        assertEquals("value of level 3", configurations.get("io.fabric8.pid1").get("only"));
+        assertFalse(configurations.get("io.fabric8.pid1").containsKey(Profile.DELETED));
+    }
+
+    @Test
+    public void testUnchangedFilesAreSharedWithTheOverlay() throws Exception {
+        Version version = createVersion();
+        Profile root = version.getRequiredProfile(getProfileId(0));
+        Profile overlay = overlay(version);
+
+        String fileName = getUnchangedPid() + Profile.PROPERTIES_SUFFIX;
+        assertSame(root.getFileConfigurations().get(fileName), overlay.getFileConfigurations().get(fileName));
+        assertSame(root.getConfigurations().get(getUnchangedPid()), overlay.getConfigurations().get(getUnchangedPid()));
+        assertEquals(DataStoreUtils.toMap(overlay.getFileConfigurations().get("io.fabric8.pid0.properties")),
+                overlay.getConfigurations().get("io.fabric8.pid0"));
+    }
+
+    private static Profile getLeaf(Version version) {
+        return version.getRequiredProfile(getProfileId(LEVELS - 1));
+    }
+
+    /**
+     * Returns a pid which no level below the root overrides
+     */
+    private static String getUnchangedPid() {
+        for (int pid = 2; pid < PIDS; pid++) {
+            boolean overridden = false;
+            for (int level = 1; level < LEVELS; level++) {
+                overridden |= isOverridden(pid, level);
+            }
+            if (!overridden) {
+                return "io.fabric8.pid" + pid;
+            }
+        }
+        throw new IllegalStateException("Every pid is overridden");
+    }
+
+    private static boolean isOverridden(int pid, int level) {
+        // the first two pids are only changed by the levels which delete their keys
+        return pid > 1 && (pid + level) % (PIDS / OVERRIDDEN_PIDS_PER_LEVEL) == 0;
+    }
+
+    private static Profile overlay(Version version) {
+        Profile leaf = getLeaf(version);
+        ProfileServiceImpl.OverlayOptionsProvider optionsProvider = new ProfileServiceImpl.OverlayOptionsProvider(version, leaf, null);
+        DefaultProfileBuilder builder = new DefaultProfileBuilder();
+        builder.version(version.getId()).identity(leaf.getId());
+        return optionsProvider.addOptions(builder).getProfile();
+    }
+
+    /**
+     * Computes the configurations of the overlay the way the profile service used to, by parsing the properties
+     * files of every ancestor into {@link Properties} and merging them
+     */
+    private static Map<String, Map<String, String>> legacyOverlay(Version version, Profile self) {
+        List<Profile> profiles = new ArrayList<>();
+        fillParentProfiles(version, self, profiles);
+        Map<String, Properties> aggregate = new HashMap<>();
+        for (Profile profile : profiles) {
+            for (Map.Entry<String, byte[]> entry : profile.getFileConfigurations().entrySet()) {
+                if (!entry.getKey().endsWith(Profile.PROPERTIES_SUFFIX)) {
+                    continue;
+                }
+                Properties childMap = DataStoreUtils.toProperties(entry.getValue());
+                Properties props = aggregate.get(entry.getKey());
+                if (props == null) {
+                    aggregate.put(entry.getKey(), childMap);
+                } else {
+                    if (childMap.remove(Profile.DELETED) != null) {
+                        props.clear();
+                    }
+                    for (Map.Entry<Object, Object> p : childMap.entrySet()) {
+                        if (Profile.DELETED.equals(p.getValue())) {
+                            props.remove(p.getKey());
+                        } else {
+                            props.put(p.getKey(), p.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        Map<String, Map<String, String>> answer = new HashMap<>();
+        for (Map.Entry<String, Properties> entry : aggregate.entrySet()) {
+            answer.put(DataStoreUtils.stripSuffix(entry.getKey(), Profile.PROPERTIES_SUFFIX), DataStoreUtils.toMap(entry.getValue()));
+        }
+        return answer;
+    }
+
+    private static void fillParentProfiles(Version version, Profile profile, List<Profile> profiles) {
+        if (!profiles.contains(profile)) {
+            for (String parentId : profile.getParentIds()) {
+                fillParentProfiles(version, version.getRequiredProfile(parentId), profiles);
+            }
+            profiles.add(profile);
+        }
+    }
+
+    /**
+     * Creates a version with a chain of profiles where each level overrides a few keys of a few configurations
+     */
+    private static Version createVersion() {
+        DefaultVersionBuilder versionBuilder = new DefaultVersionBuilder();
+        versionBuilder.identity("1.0");
+        for (int level = 0; level < LEVELS; level++) {
+            DefaultProfileBuilder builder = new DefaultProfileBuilder();
+            builder.version("1.0").identity(getProfileId(level));
+            Map<String, byte[]> files = new HashMap<>();
+            for (int pid = 0; pid < PIDS; pid++) {
+                if (level == 0 || isOverridden(pid, level)) {
+                    Properties properties = new Properties();
+                    int keys = level == 0 ? KEYS_PER_PID : 2;
+                    for (int key = 0; key < keys; key++) {
+                        properties.put("key" + key, "value " + key + " of level " + level);
+                    }
+                    files.put("io.fabric8.pid" + pid + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(properties));
+                }
+            }
+            if (level == 2) {
+                Properties properties = new Properties();
+                properties.put("key1", Profile.DELETED);
+                files.put("io.fabric8.pid0" + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(properties));
+            } else if (level == 3) {
+                Properties properties = new Properties();
+                properties.put(Profile.DELETED, "true");
+                properties.put("only", "value of level 3");
+                files.put("io.fabric8.pid1" + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(properties));
+            }
+            Properties agent = new Properties();
+            if (level > 0) {
+                agent.put(Profile.ATTRIBUTE_PREFIX + Profile.PARENTS, getProfileId(level - 1));
+            }
+            files.put(Constants.AGENT_PID + Profile.PROPERTIES_SUFFIX, DataStoreUtils.toBytes(agent));
+            builder.setFileConfigurations(files);
+            builder.setLastModified("commit" + level);
+            versionBuilder.addProfile(builder.getProfile());
+        }
+        return versionBuilder.getVersion();
+    }
+
+    private static String getProfileId(int level) {
+        return "level" + level;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeNotificationCoalescerTest {
+
+    ScheduledExecutorService executor;
+    Semaphore deliveries;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        deliveries = new Semaphore(0);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBurstIsDeliveredOnce() throws Exception {
+        ChangeNotificationCoalescer coalescer = createCoalescer(200, 10000);
+        for (int i = 0; i < 100; i++) {
+            coalescer.fire();
+        }
+        assertTrue(deliveries.tryAcquire(5, TimeUnit.SECONDS));
+        Thread.sleep(400);
+        assertEquals(0, deliveries.availablePermits());
+        assertEquals(100, coalescer.getFiredCount());
+        assertEquals(1, coalescer.getDeliveredCount());
+
+        coalescer.fire();
+        assertTrue(deliveries.tryAcquire(5, TimeUnit.SECONDS));
+        assertEquals(2, coalescer.getDeliveredCount());
+    }
+
+    @Test
+    public void testSteadyStreamIsDeliveredAfterMaxDelay() throws Exception {
+        ChangeNotificationCoalescer coalescer = createCoalescer(200, 500);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+        while (System.nanoTime() < end) {
+            coalescer.fire();
+            Thread.sleep(20);
+        }
+        // the quiet period never passed while firing, so only the max delay made the deliveries
+        assertTrue(deliveries.tryAcquire(2, 5, TimeUnit.SECONDS));
+    }
+
+    private ChangeNotificationCoalescer createCoalescer(long quietPeriod, long maxDelay) {
+        return new ChangeNotificationCoalescer(executor, new Runnable() {
+            @Override
+            public void run() {
+                deliveries.release();
+            }
+        }, quietPeriod, maxDelay);
+    }
+}
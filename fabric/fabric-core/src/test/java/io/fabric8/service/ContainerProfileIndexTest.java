@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.createMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.easymock.classextension.EasyMock.reset;
+import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import io.fabric8.api.DataStore;
+import io.fabric8.zookeeper.ZkPath;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContainerProfileIndexTest {
+
+    DataStore dataStore;
+    ContainerProfileIndex index;
+
+    @Before
+    public void setUp() {
+        dataStore = createMock(DataStore.class);
+        index = new ContainerProfileIndex();
+    }
+
+    @Test
+    public void testBuildIndex() {
+        expect(dataStore.getContainers()).andReturn(Arrays.asList("a", "b", "c"));
+        expect(dataStore.getContainerVersion("a")).andReturn("1.0");
+        expect(dataStore.getContainerProfiles("a")).andReturn(Arrays.asList("mq", "web"));
+        expect(dataStore.getContainerVersion("b")).andReturn("1.1");
+        expect(dataStore.getContainerProfiles("b")).andReturn(Arrays.asList("web"));
+        expect(dataStore.getContainerVersion("c")).andReturn("1.0");
+        expect(dataStore.getContainerProfiles("c")).andReturn(Collections.<String>emptyList());
+        replay(dataStore);
+
+        assertEquals(Arrays.asList("a", "b"), index.getContainers(dataStore, null, "web"));
+        assertEquals(Arrays.asList("a"), index.getContainers(dataStore, "1.0", "web"));
+        assertEquals(Arrays.asList("c"), index.getContainers(dataStore, "1.0", "default"));
+        assertEquals(Collections.<String>emptyList(), index.getContainers(dataStore, "1.1", "mq"));
+
+        verify(dataStore);
+    }
+
+    @Test
+    public void testOnlyInvalidatedContainersAreReadAgain() {
+        expect(dataStore.getContainers()).andReturn(Arrays.asList("a", "b"));
+        expect(dataStore.getContainerVersion("a")).andReturn("1.0");
+        expect(dataStore.getContainerProfiles("a")).andReturn(Arrays.asList("web"));
+        expect(dataStore.getContainerVersion("b")).andReturn("1.0");
+        expect(dataStore.getContainerProfiles("b")).andReturn(Arrays.asList("web"));
+        replay(dataStore);
+        assertEquals(Arrays.asList("a", "b"), index.getContainers(dataStore, "1.0", "web"));
+        verify(dataStore);
+
+        reset(dataStore);
+        expect(dataStore.getContainerVersion("a")).andReturn("1.0");
+        expect(dataStore.getContainerProfiles("a")).andReturn(Arrays.asList("mq"));
+        expect(dataStore.getContainerVersion("b")).andReturn(null);
+        replay(dataStore);
+        index.invalidate(ZkPath.CONFIG_VERSIONS_CONTAINER.getPath("1.0", "a"));
+        index.invalidate(ZkPath.CONFIG_CONTAINER.getPath("b"));
+        assertEquals(Collections.<String>emptyList(), index.getContainers(dataStore, "1.0", "web"));
+        assertEquals(Arrays.asList("a"), index.getContainers(dataStore, null, "mq"));
+        verify(dataStore);
+    }
+}
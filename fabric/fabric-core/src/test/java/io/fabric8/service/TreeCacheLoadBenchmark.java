@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
+import io.fabric8.common.util.Files;
+import io.fabric8.zookeeper.spring.ZKServerFactoryBean;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.retry.RetryOneTime;
+import org.junit.Test;
+
+/**
+ * A simple benchmark of the time taken to load a tree into a {@link TreeCache} with the synchronous node by node
+ * refresh compared with the pipelined loading.
+ * <p/>
+ * By default an embedded server is used, which hides most of the latency the pipelined loading saves; set the
+ * <code>zookeeper.url</code> system property to the connection string of a remote ensemble to load the tree from
+ * there. The tree is created below <code>/benchmark</code> and deleted afterwards.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class TreeCacheLoadBenchmark {
+    private static final String ROOT = "/benchmark/tree-cache";
+    private static final int BRANCHES = 50;
+    private static final int NODES_PER_BRANCH = 200;
+    private static final int WINDOW = 200;
+
+    @Test
+    public void testLoad() throws Exception {
+        File directory = null;
+        ZKServerFactoryBean server = null;
+        String connectString = System.getProperty("zookeeper.url");
+        if (connectString == null) {
+            directory = File.createTempFile("tree-cache", "");
+            directory.delete();
+            server = new ZKServerFactoryBean();
+            server.setDataDir(new File(directory, "data"));
+            server.setDataLogDir(new File(directory, "log"));
+            server.setClientPortAddress(new InetSocketAddress("localhost", 0));
+            server.afterPropertiesSet();
+            connectString = "localhost:" + server.getConnectionFactory().getLocalPort();
+        }
+        CuratorFramework curator = CuratorFrameworkFactory.builder()
+                .connectString(connectString)
+                .retryPolicy(new RetryOneTime(500))
+                .build();
+        curator.start();
+        try {
+            curator.getZookeeperClient().blockUntilConnectedOrTimedOut();
+            int nodes = createTree(curator);
+
+            double synchronousMillis = load(curator, nodes, TreeCache.LoadMode.SYNCHRONOUS);
+            double pipelinedMillis = load(curator, nodes, TreeCache.LoadMode.PIPELINED);
+
+            System.out.println(String.format("nodes: %d", nodes));
+            System.out.println(String.format("synchronous: %8.1f ms pipelined: %8.1f ms", synchronousMillis, pipelinedMillis));
+        } finally {
+            deleteSafe(curator, "/benchmark");
+            curator.close();
+            if (server != null) {
+                server.destroy();
+                Files.recursiveDelete(directory);
+            }
+        }
+    }
+
+    /**
+     * Starts a new cache and returns the time in milliseconds until it holds all the nodes of the tree
+     */
+    protected static double load(CuratorFramework curator, int nodes, TreeCache.LoadMode mode) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TreeCache cache = new TreeCache(curator, ROOT, true, false, true, executor);
+        cache.setLoadMode(mode, WINDOW);
+        try {
+            long start = System.nanoTime();
+            cache.start(TreeCache.StartMode.NORMAL);
+            // the children of the root are cached, the root itself is only cached by the pipelined loading
+            while (cache.getCurrentData().size() < nodes - 1) {
+                Thread.sleep(1);
+            }
+            double millis = (System.nanoTime() - start) / 1000000.0;
+            if (mode == TreeCache.LoadMode.PIPELINED) {
+                while (cache.getLoadTime() < 0) {
+                    Thread.sleep(1);
+                }
+                System.out.println(String.format("pipelined load: %d ms with at most %d requests in flight",
+                        cache.getLoadTime(), cache.getPeakInFlightRequests()));
+            }
+            return millis;
+        } finally {
+            cache.close();
+        }
+    }
+
+    protected static int createTree(CuratorFramework curator) throws Exception {
+        if (exists(curator, ROOT) != null) {
+            deleteSafe(curator, ROOT);
+        }
+        curator.create().creatingParentsIfNeeded().forPath(ROOT);
+        int nodes = 1;
+        for (int i = 0; i < BRANCHES; i++) {
+            String branch = ROOT + "/branch" + i;
+            curator.create().forPath(branch, ("branch " + i).getBytes("UTF-8"));
+            nodes++;
+            for (int j = 0; j < NODES_PER_BRANCH; j++) {
+                curator.create().forPath(branch + "/node" + j, ("node " + j).getBytes("UTF-8"));
+                nodes++;
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedPath;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.setData;
+import io.fabric8.api.DataStore;
+import io.fabric8.api.RuntimeProperties;
+import io.fabric8.api.scr.AbstractRuntimeProperties;
+import io.fabric8.common.util.Files;
+import io.fabric8.zookeeper.ZkPath;
+import io.fabric8.zookeeper.spring.ZKServerFactoryBean;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the reads of the verbose <code>container-list</code> command are served from the caches of the
+ * {@link ZkDataStoreImpl} once they are loaded, rather than from the ensemble on every call.
+ * <p/>
+ * The requests are counted by the embedded server so they may include the odd ping of the session.
+ */
+public class ZkDataStoreReadTest {
+    private static final int CONTAINERS = 50;
+    private static final int CHILDREN_PER_ROOT = 9;
+    private static final String VERSION = "1.0";
+    private static final int MAX_PINGS = 2;
+
+    private File directory;
+    private ZKServerFactoryBean server;
+    private CuratorFramework curator;
+    private ZkDataStoreImpl dataStore;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("zk-data-store", "");
+        directory.delete();
+        server = new ZKServerFactoryBean();
+        server.setDataDir(new File(directory, "data"));
+        server.setDataLogDir(new File(directory, "log"));
+        server.setClientPortAddress(new InetSocketAddress("localhost", 0));
+        server.afterPropertiesSet();
+        curator = CuratorFrameworkFactory.builder()
+                .connectString("localhost:" + server.getConnectionFactory().getLocalPort())
+                .retryPolicy(new RetryOneTime(500))
+                .build();
+        curator.start();
+        curator.getZookeeperClient().blockUntilConnectedOrTimedOut();
+        createContainers(curator);
+
+        dataStore = new ZkDataStoreImpl();
+        dataStore.bindCurator(curator);
+        dataStore.bindRuntimeProperties(createRuntimeProperties(directory));
+        dataStore.activate(Collections.<String, Object>emptyMap());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (dataStore.isValid()) {
+            dataStore.deactivate();
+        }
+        curator.close();
+        server.destroy();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testCachedReadsMatchTheEnsemble() throws Exception {
+        List<String> expected = legacyListContainers(curator);
+        assertEquals(CONTAINERS, expected.size());
+        assertEquals(expected, listContainers(dataStore));
+        assertEquals(expected, listContainers(dataStore));
+    }
+
+    @Test
+    public void testWarmListingDoesNotReadFromTheEnsemble() throws Exception {
+        ZooKeeperServer zooKeeperServer = server.getZooKeeperServer();
+
+        long requests = awaitQuiet(zooKeeperServer);
+        legacyListContainers(curator);
+        long legacyRequests = zooKeeperServer.serverStats().getPacketsReceived() - requests;
+        assertTrue("requests reading from the ensemble: " + legacyRequests, legacyRequests >= CONTAINERS);
+
+        // the first listing loads the nodes which are not below the path of a cache
+        listContainers(dataStore);
+        requests = awaitQuiet(zooKeeperServer);
+        listContainers(dataStore);
+        long cachedRequests = zooKeeperServer.serverStats().getPacketsReceived() - requests;
+        assertTrue("requests of a warm listing: " + cachedRequests, cachedRequests <= MAX_PINGS);
+    }
+
+    @Test
+    public void testReadsItsOwnWrites() throws Exception {
+        listContainers(dataStore);
+        // the change is visible without waiting for the watcher to fire
+        dataStore.setContainerAttribute("container0", DataStore.ContainerAttribute.ProvisionStatus, "downloading");
+        assertEquals("downloading", dataStore.getContainerAttribute("container0", DataStore.ContainerAttribute.ProvisionStatus, "", false, false));
+        dataStore.setContainerAttribute("container1", DataStore.ContainerAttribute.Resolver, "manualip");
+        dataStore.setContainerAttribute("container1", DataStore.ContainerAttribute.ManualIp, "10.1.1.1");
+        assertEquals("10.1.1.1", dataStore.getContainerAttribute("container1", DataStore.ContainerAttribute.Ip, null, true, true));
+        dataStore.setContainerAlive("container2", false);
+        assertFalse(dataStore.isContainerAlive("container2"));
+        dataStore.setContainerAlive("container2", true);
+        assertTrue(dataStore.isContainerAlive("container2"));
+    }
+
+    /**
+     * Waits until the caches have finished loading and returns the number of requests received so far
+     */
+    private static long awaitQuiet(ZooKeeperServer zooKeeperServer) throws InterruptedException {
+        long requests = zooKeeperServer.serverStats().getPacketsReceived();
+        while (true) {
+            Thread.sleep(200);
+            long current = zooKeeperServer.serverStats().getPacketsReceived();
+            if (current == requests) {
+                return current;
+            }
+            requests = current;
+        }
+    }
+
+    /**
+     * Does the reads of the verbose container-list command and returns what was read for each container
+     */
+    private static List<String> listContainers(DataStore dataStore) {
+        List<String> answer = new ArrayList<String>();
+        for (String containerId : dataStore.getContainers()) {
+            answer.add(containerId
+                    + " parent=" + dataStore.getContainerParent(containerId)
+                    + " version=" + dataStore.getContainerVersion(containerId)
+                    + " profiles=" + dataStore.getContainerProfiles(containerId)
+                    + " alive=" + dataStore.isContainerAlive(containerId)
+                    + " provision=" + dataStore.getContainerAttribute(containerId, DataStore.ContainerAttribute.ProvisionStatus, "", false, false)
+                    + " exception=" + dataStore.getContainerAttribute(containerId, DataStore.ContainerAttribute.ProvisionException, null, false, false)
+                    + " blueprint=" + dataStore.getContainerAttribute(containerId, DataStore.ContainerAttribute.BlueprintStatus, "", false, false)
+                    + " spring=" + dataStore.getContainerAttribute(containerId, DataStore.ContainerAttribute.SpringStatus, "", false, false)
+                    + " ip=" + dataStore.getContainerAttribute(containerId, DataStore.ContainerAttribute.Ip, null, true, true));
+        }
+        Collections.sort(answer);
+        return answer;
+    }
+
+    /**
+     * Does the same reads the way the data store used to, straight from the ensemble
+     */
+    private static List<String> legacyListContainers(CuratorFramework curator) throws Exception {
+        List<String> answer = new ArrayList<String>();
+        for (String containerId : getChildrenSafe(curator, ZkPath.CONFIGS_CONTAINERS.getPath())) {
+            String parent = legacyGetStringData(curator, ZkPath.CONTAINER_PARENT.getPath(containerId));
+            answer.add(containerId
+                    + " parent=" + (parent != null ? parent.trim() : "")
+                    + " version=" + legacyGetStringData(curator, ZkPath.CONFIG_CONTAINER.getPath(containerId))
+                    + " profiles=" + Collections.singletonList(legacyGetStringData(curator, ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(VERSION, containerId)))
+                    + " alive=" + (exists(curator, ZkPath.CONTAINER_ALIVE.getPath(containerId)) != null)
+                    + " provision=" + defaultValue(legacyGetStringData(curator, ZkPath.CONTAINER_PROVISION_RESULT.getPath(containerId)), "")
+                    + " exception=" + legacyGetStringData(curator, ZkPath.CONTAINER_PROVISION_EXCEPTION.getPath(containerId))
+                    + " blueprint=" + defaultValue(legacyGetStringData(curator, ZkPath.CONTAINER_EXTENDER_STATUS.getPath(containerId, "blueprint")), "")
+                    + " spring=" + defaultValue(legacyGetStringData(curator, ZkPath.CONTAINER_EXTENDER_STATUS.getPath(containerId, "spring")), "")
+                    + " ip=" + getSubstitutedPath(curator, ZkPath.CONTAINER_IP.getPath(containerId)));
+        }
+        Collections.sort(answer);
+        return answer;
+    }
+
+    private static String defaultValue(String value, String def) {
+        return value != null ? value : def;
+    }
+
+    private static String legacyGetStringData(CuratorFramework curator, String path) throws Exception {
+        try {
+            return getStringData(curator, path);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    private static void createContainers(CuratorFramework curator) throws Exception {
+        String parentId = null;
+        for (int i = 0; i < CONTAINERS; i++) {
+            String containerId = "container" + i;
+            if (i % (CHILDREN_PER_ROOT + 1) == 0) {
+                parentId = containerId;
+                setData(curator, ZkPath.CONTAINER_PARENT.getPath(containerId), "");
+            } else {
+                setData(curator, ZkPath.CONTAINER_PARENT.getPath(containerId), parentId);
+            }
+            setData(curator, ZkPath.CONFIG_CONTAINER.getPath(containerId), VERSION);
+            setData(curator, ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(VERSION, containerId), "default");
+            setData(curator, ZkPath.CONTAINER_ALIVE.getPath(containerId), "alive");
+            setData(curator, ZkPath.CONTAINER_PROVISION_RESULT.getPath(containerId), "success");
+            setData(curator, ZkPath.CONTAINER_EXTENDER_STATUS.getPath(containerId, "blueprint"), "STARTED");
+            setData(curator, ZkPath.CONTAINER_EXTENDER_STATUS.getPath(containerId, "spring"), "STARTED");
+            setData(curator, ZkPath.CONTAINER_LOCAL_IP.getPath(containerId), "10.0.0." + (i % 250));
+            setData(curator, ZkPath.CONTAINER_RESOLVER.getPath(containerId), "localip");
+            setData(curator, ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/localip}");
+        }
+    }
+
+    private static RuntimeProperties createRuntimeProperties(final File directory) {
+        AbstractRuntimeProperties runtimeProperties = new AbstractRuntimeProperties() {
+            @Override
+            public Path getDataPath() {
+                return Paths.get(directory.getPath());
+            }
+
+            @Override
+            protected String getPropertyInternal(String key, String defaultValue) {
+                if (RUNTIME_IDENTITY.equals(key)) {
+                    return "container0";
+                } else if (RUNTIME_HOME_DIR.equals(key) || RUNTIME_DATA_DIR.equals(key) || RUNTIME_CONF_DIR.equals(key)) {
+                    return directory.getPath();
+                }
+                return defaultValue;
+            }
+        };
+        runtimeProperties.activateComponent();
+        return runtimeProperties;
+    }
+}
@@ -53,6 +53,17 @@ public interface PullPushPolicy {
      */
     PullPolicyResult doPull(GitContext context, CredentialsProvider credentialsProvider, boolean allowVersionDelete);
 
+    /**
+     * Fetch the version/profile state from the remote repository without changing the local branches.
+     * Only the remote tracking branches are updated so this does not need exclusive access to the local versions.
+     */
+    PullPolicyResult doFetch(GitContext context, CredentialsProvider credentialsProvider);
+
+    /**
+     * Update the local branches from the version/profile state last fetched from the remote repository
+     */
+    PullPolicyResult doMerge(GitContext context, boolean allowVersionDelete);
+
     /**
      * Push the version/profile state to the remote repository
      */
@@ -41,7 +41,6 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
-import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.FetchResult;
@@ -63,6 +62,7 @@ public final class DefaultPullPushPolicy implements PullPushPolicy  {
     private final Git git;
     private final String remoteRef;
     private final int gitTimeout;
+    private final Object fetchLock = new Object();
 
     @VisibleForExternal
     public DefaultPullPushPolicy(Git git, String remoteRef, int gitTimeout) {
@@ -73,29 +73,41 @@ public final class DefaultPullPushPolicy implements PullPushPolicy  {
 
     @Override
     public synchronized PullPolicyResult doPull(GitContext context, CredentialsProvider credentialsProvider, boolean allowVersionDelete) {
-        Repository repository = git.getRepository();
-        StoredConfig config = repository.getConfig();
-        String remoteUrl = config.getString("remote", remoteRef, "url");
+        PullPolicyResult fetchResult = doFetch(context, credentialsProvider);
+        if (fetchResult.getLastException() != null || getRemoteUrl() == null) {
+            return fetchResult;
+        }
+        return doMerge(context, allowVersionDelete);
+    }
+
+    @Override
+    public PullPolicyResult doFetch(GitContext context, CredentialsProvider credentialsProvider) {
+        String remoteUrl = getRemoteUrl();
         if (remoteUrl == null) {
             LOGGER.debug("No remote repository defined, so not doing a pull");
             return new AbstractPullPolicyResult();
         }
-        
-        LOGGER.info("Performing a pull on remote URL: {}", remoteUrl);
-        
-        Exception lastException = null;
-        try {
-            git.fetch().setTimeout(gitTimeout).setCredentialsProvider(credentialsProvider).setRemote(remoteRef).call();
-        } catch (GitAPIException | JGitInternalException ex) {
-            lastException = ex;
+
+        // A fetch only updates the remote tracking branches so it does not need to wait for a merge, only for a
+        // push which updates them too
+        synchronized (fetchLock) {
+            LOGGER.info("Performing a pull on remote URL: {}", remoteUrl);
+            try {
+                git.fetch().setTimeout(gitTimeout).setCredentialsProvider(credentialsProvider).setRemote(remoteRef).call();
+            } catch (GitAPIException | JGitInternalException ex) {
+                LOGGER.warn("Pull failed because of: {}", ex.toString());
+                return new AbstractPullPolicyResult(ex);
+            }
+            return new AbstractPullPolicyResult();
         }
+    }
 
-        // No meaningful processing after GitAPIException
-        if (lastException != null) {
-            LOGGER.warn("Pull failed because of: {}", lastException.toString());
-            return new AbstractPullPolicyResult(lastException);
+    @Override
+    public synchronized PullPolicyResult doMerge(GitContext context, boolean allowVersionDelete) {
+        if (getRemoteUrl() == null) {
+            return new AbstractPullPolicyResult();
         }
-        
+
         // Get local and remote branches
         Map<String, Ref> localBranches = new HashMap<String, Ref>();
         Map<String, Ref> remoteBranches = new HashMap<String, Ref>();
@@ -201,9 +213,20 @@ public final class DefaultPullPushPolicy implements PullPushPolicy  {
         }
     }
     
+    private String getRemoteUrl() {
+        return git.getRepository().getConfig().getString("remote", remoteRef, "url");
+    }
+
     @Override
     public synchronized PushPolicyResult doPush(GitContext context, CredentialsProvider credentialsProvider) {
-        
+        // A push updates the remote tracking branches and a rejected push fetches and resets its branch, so it
+        // must not overlap a fetch which is only guarded by the fetch lock
+        synchronized (fetchLock) {
+            return doPushInternal(credentialsProvider);
+        }
+    }
+
+    private PushPolicyResult doPushInternal(CredentialsProvider credentialsProvider) {
         StoredConfig config = git.getRepository().getConfig();
         String remoteUrl = config.getString("remote", remoteRef, "url");
         if (remoteUrl == null) {
@@ -76,6 +76,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -99,6 +101,7 @@ import org.apache.felix.scr.annotations.Service;
 import org.apache.zookeeper.KeeperException;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -178,7 +181,9 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     @Property(name = "gitRemotePollInterval", label = "Remote poll Interval", description = "The interval between remote repo polling operations")
     private long gitRemotePollInterval = 60 * 1000L;
 
-    private final LoadingCache<String, Version> versionCache = CacheBuilder.newBuilder().build(new VersionCacheLoader());
+    private final ProfileCommitIndex profileCommitIndex = new ProfileCommitIndex();
+    private final VersionCacheLoader versionCacheLoader = new VersionCacheLoader();
+    private final LoadingCache<String, Version> versionCache = CacheBuilder.newBuilder().build(versionCacheLoader);
     private final Set<String> versions = new HashSet<String>();
 
     @Activate
@@ -265,7 +270,6 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
             threadPool.scheduleWithFixedDelay(new Runnable() {
                 @Override
                 public void run() {
-                    LockHandle writeLock = aquireWriteLock();
                     try {
                         LOGGER.trace("Performing timed pull");
                         doPullInternal();
@@ -273,8 +277,6 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                     } catch (Throwable e) {
                         LOGGER.debug("Error during performed timed pull/push due " + e.getMessage(), e);
                         LOGGER.warn("Error during performed timed pull/push due " + e.getMessage() + ". This exception is ignored.");
-                    } finally {
-                        writeLock.unlock();
                     }
                 }
 
@@ -447,7 +449,14 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
 
     private Version getVersionFromCache(String versionId, String profileId) {
-        LockHandle writeLock = aquireWriteLock();
+        // A cached version is an immutable snapshot of the commits it was loaded from and it is only invalidated
+        // while holding the write lock, so a reader only needs the lock when the version has to be loaded
+        assertValid();
+        Version version = versionCache.getIfPresent(versionId);
+        if (version != null) {
+            return version;
+        }
+        LockHandle readLock = aquireReadLock();
         try {
             assertValid();
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
@@ -459,7 +468,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -958,11 +967,13 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                 doPullInternal(context, getCredentialsProvider(), false);
             }
 
+            Map<String, ObjectId> branchCommits = context.isRequireCommit() ? getBranchCommits(repository) : null;
+
             T result = operation.call(git, context);
 
             if (context.isRequireCommit()) {
                 doCommit(git, context);
-                versionCache.invalidateAll();
+                invalidateChangedVersions(branchCommits, getBranchCommits(repository));
                 notificationRequired = true;
             }
 
@@ -1018,20 +1029,65 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
 
+    /**
+     * Returns the commit of every local branch keyed by the branch name
+     */
+    private Map<String, ObjectId> getBranchCommits(Repository repository) throws IOException {
+        Map<String, ObjectId> answer = new HashMap<>();
+        for (Map.Entry<String, Ref> entry : repository.getRefDatabase().getRefs(org.eclipse.jgit.lib.Constants.R_HEADS).entrySet()) {
+            answer.put(entry.getKey(), entry.getValue().getObjectId());
+        }
+        return answer;
+    }
+
+    /**
+     * Invalidates the cached versions whose branch was created, moved or deleted. Every version contains
+     * the profiles of the master branch so a change of master invalidates all of them.
+     */
+    private void invalidateChangedVersions(Map<String, ObjectId> oldCommits, Map<String, ObjectId> newCommits) {
+        Set<String> branches = new HashSet<>(oldCommits.keySet());
+        branches.addAll(newCommits.keySet());
+        for (String branch : branches) {
+            ObjectId oldCommit = oldCommits.get(branch);
+            ObjectId newCommit = newCommits.get(branch);
+            if (oldCommit == null ? newCommit != null : !oldCommit.equals(newCommit)) {
+                if (GitHelpers.MASTER_BRANCH.equals(branch)) {
+                    versionCache.invalidateAll();
+                    return;
+                }
+                versionCache.invalidate(branch);
+            }
+        }
+    }
+
     private void doPullInternal() {
-        LockHandle writeLock = aquireWriteLock();
         try {
-           doPullInternal(new GitContext(), getCredentialsProvider(), true);
+            // Fetching from the remote can take a long time, it only updates the remote tracking branches
+            // so it runs without the lock and only the update of the local branches is exclusive
+            CredentialsProvider credentialsProvider = getCredentialsProvider();
+            PullPolicyResult fetchResult = pullPushPolicy.doFetch(new GitContext(), credentialsProvider);
+            if (fetchResult.getLastException() != null) {
+                return;
+            }
+            LockHandle writeLock = aquireWriteLock();
+            try {
+                GitContext context = new GitContext();
+                handlePullResult(context, credentialsProvider, pullPushPolicy.doMerge(context, true));
+            } finally {
+                writeLock.unlock();
+            }
         } catch (Throwable e) {
             LOGGER.debug("Error during pull due " + e.getMessage(), e);
             LOGGER.warn("Error during pull due " + e.getMessage() + ". This exception is ignored.");
-        } finally {
-            writeLock.unlock();
         }
     }
     
     private PullPolicyResult doPullInternal(GitContext context, CredentialsProvider credentialsProvider, boolean allowVersionDelete) {
-        PullPolicyResult pullResult = pullPushPolicy.doPull(context, getCredentialsProvider(), allowVersionDelete);
+        return handlePullResult(context, credentialsProvider, pullPushPolicy.doPull(context, getCredentialsProvider(), allowVersionDelete));
+    }
+
+    private PullPolicyResult handlePullResult(GitContext context, CredentialsProvider credentialsProvider, PullPolicyResult pullResult) {
+        assertWriteLock();
         if (pullResult.getLastException() == null) {
             if (pullResult.localUpdateRequired()) {
                 versionCache.invalidateAll();
@@ -1098,15 +1154,6 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return relativePath.replace(File.separatorChar, '/');
     }
     
-    private Map<String, String> getVersionAttributes(Git git, GitContext context, String versionId) throws IOException {
-        File rootDirectory = GitHelpers.getRootGitDirectory(git);
-        File file = new File(rootDirectory, GitHelpers.VERSION_ATTRIBUTES);
-        if (!file.exists()) {
-            return Collections.emptyMap();
-        }
-        return DataStoreUtils.toMap(Files.readBytes(file));
-    }
-
     private void setVersionAttributes(Git git, GitContext context, String versionId, Map<String, String> attributes) throws IOException, GitAPIException {
         File rootDirectory = GitHelpers.getRootGitDirectory(git);
         File file = new File(rootDirectory, GitHelpers.VERSION_ATTRIBUTES);
@@ -1181,6 +1228,8 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
 
     private void removeVersionFromCaches(String versionId) {
         versionCache.invalidate(versionId);
+        versionCacheLoader.forget(versionId);
+        profileCommitIndex.remove(getGit().getRepository(), versionId);
         versions.remove(versionId);
     }
     
@@ -1675,112 +1724,119 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
     
+    /**
+     * Loads the versions while holding the read lock; see {@link ProfileVersionLoader}
+     */
     class VersionCacheLoader extends CacheLoader<String, Version> {
+
+        private final ProfileVersionLoader versionLoader = new ProfileVersionLoader(profileCommitIndex);
         
         @Override
         public Version load(final String versionId) {
-            assertWriteLock();
+            assertReadLock();
             GitOperation<Version> gitop = new GitOperation<Version>() {
                 public Version call(Git git, GitContext context) throws Exception {
-                    String revision = git.getRepository().getRefDatabase().getRef(versionId).getObjectId().getName();
-                    return loadVersion(git, context, versionId, revision);
+                    return versionLoader.loadVersion(git, versionId);
                 }
             };
             GitContext context = new GitContext();
             return executeInternal(context, null, gitop);
         }
+
+        void forget(String versionId) {
+            versionLoader.forget(versionId);
+        }
+    }
+
+    /**
+     * Loads the versions by reading the profile trees of the version and master branch commits; nothing is checked
+     * out so several versions may be loaded concurrently by threads which only hold the read lock.
+     * <p/>
+     * The cache is invalidated on every commit and pull, so the loader remembers the commits each version was last
+     * loaded from and only reloads the profiles which changed since then, reusing the other immutable profiles.
+     * The last commit of each profile comes from the {@link ProfileCommitIndex} of its branch.
+     */
+    static class ProfileVersionLoader {
+
+        private final ConcurrentMap<String, LoadedVersion> loadedVersions = new ConcurrentHashMap<String, LoadedVersion>();
+        private final ProfileCommitIndex profileCommitIndex;
+
+        ProfileVersionLoader(ProfileCommitIndex profileCommitIndex) {
+            this.profileCommitIndex = profileCommitIndex;
+        }
+
+        void forget(String versionId) {
+            loadedVersions.remove(versionId);
+        }
         
-        private Version loadVersion(Git git, GitContext context, String versionId, String revision) throws Exception {
-            VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(revision);
-            vbuilder.setAttributes(getVersionAttributes(git, context, versionId));
-            populateVersionBuilder(git, context, vbuilder, "master", versionId);
-            populateVersionBuilder(git, context, vbuilder, versionId, versionId);
-            return vbuilder.getVersion();
-        }
-
-        private void populateVersionBuilder(Git git, GitContext context, VersionBuilder builder, String branch, String versionId) throws GitAPIException, IOException {
-            checkoutRequiredProfileBranch(git, context, branch, null);
-            File profilesDir = GitHelpers.getProfilesDirectory(git);
-            if (profilesDir.exists()) {
-                String[] files = profilesDir.list();
-                if (files != null) {
-                    for (String childName : files) {
-                        Path childPath = profilesDir.toPath().resolve(childName);
-                        if (childPath.toFile().isDirectory()) {
-                            RevCommit lastCommit = GitHelpers.getProfileLastCommit(git, branch, childName);
-                            if (lastCommit != null) {
-                                populateProfile(git, builder, branch, versionId, childPath.toFile(), "");
-                            }
-                        }
-                    }
+        Version loadVersion(Git git, String versionId) throws Exception {
+            ProfileTreeLoader loader = new ProfileTreeLoader(git.getRepository());
+            RevCommit versionCommit = loader.getBranchCommit(versionId);
+            IllegalStateAssertion.assertNotNull(versionCommit, "Cannot find version branch: " + versionId);
+            RevCommit masterCommit = loader.getBranchCommit(GitHelpers.MASTER_BRANCH);
+            IllegalStateAssertion.assertNotNull(masterCommit, "Cannot find master branch");
+            VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(versionCommit.getId().getName());
+            vbuilder.setAttributes(loader.loadVersionAttributes(versionCommit));
+
+            LoadedVersion previous = loadedVersions.get(versionId);
+            if (previous != null && previous.isAncestorOf(loader, masterCommit, versionCommit)) {
+                Set<String> changedPaths = new HashSet<String>();
+                changedPaths.addAll(loader.getChangedProfilePaths(previous.masterCommit, masterCommit));
+                changedPaths.addAll(loader.getChangedProfilePaths(previous.versionCommit, versionCommit));
+                LOGGER.debug("Reloading {} changed profile directories of version {}", changedPaths.size(), versionId);
+                
+                // the version branch profiles override those of the master branch with the same id
+                vbuilder.addProfiles(previous.version.getProfiles());
+                for (String profilePath : changedPaths) {
+                    vbuilder.removeProfile(ProfileTreeLoader.getProfileId(profilePath));
                 }
+                populateVersionBuilder(git, vbuilder, GitHelpers.MASTER_BRANCH, masterCommit, loader.loadProfiles(masterCommit, changedPaths), versionId);
+                populateVersionBuilder(git, vbuilder, versionId, versionCommit, loader.loadProfiles(versionCommit, changedPaths), versionId);
+            } else {
+                populateVersionBuilder(git, vbuilder, GitHelpers.MASTER_BRANCH, masterCommit, loader.loadProfiles(masterCommit), versionId);
+                populateVersionBuilder(git, vbuilder, versionId, versionCommit, loader.loadProfiles(versionCommit), versionId);
             }
+            Version version = vbuilder.getVersion();
+            loadedVersions.put(versionId, new LoadedVersion(masterCommit, versionCommit, version));
+            return version;
         }
 
-        private void populateProfile(Git git, VersionBuilder versionBuilder, String branch, String versionId, File profileFile, String prefix) throws IOException {
-            String profileName = profileFile.getName();
-            String profileId = profileName;
-            if (profileId.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
-                profileId = prefix + profileId.substring(0, profileId.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = profileFile.listFiles();
-                if (files != null) {
-                    for (File childFile : files) {
-                        if (childFile.isDirectory()) {
-                            populateProfile(git, versionBuilder, branch, versionId, childFile, prefix + profileFile.getName() + "-");
-                        }
-                    }
-                }
+        private void populateVersionBuilder(Git git, VersionBuilder versionBuilder, String branch, RevCommit commit, List<ProfileTreeLoader.ProfileFiles> profiles, String versionId) throws IOException {
+            if (profiles.isEmpty()) {
                 return;
             }
-
-            RevCommit lastCommit = GitHelpers.getProfileLastCommit(git, branch, profileName);
-            String lastModified = lastCommit != null ? lastCommit.getId().abbreviate(GIT_COMMIT_SHORT_LENGTH).name() : "";
-            Map<String, byte[]> fileConfigurations = doGetFileConfigurations(git, profileId);
-            
-            ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
-            profileBuilder.setFileConfigurations(fileConfigurations).setLastModified(lastModified);
-            versionBuilder.addProfile(profileBuilder.getProfile());
-        }
-
-        private Map<String, byte[]> doGetFileConfigurations(Git git, String profileId) throws IOException {
-            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
-            File profileDirectory = GitHelpers.getProfileDirectory(git, profileId);
-            populateFileConfigurations(configurations, profileDirectory, profileDirectory);
-            return configurations;
-        }
-
-        private void populateFileConfigurations(Map<String, byte[]> configurations, File profileDirectory, File directory) throws IOException {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String relativePath = getFilePattern(profileDirectory, file);
-                        configurations.put(relativePath, loadFileConfiguration(file));
-                    } else if (file.isDirectory()) {
-                        populateFileConfigurations(configurations, profileDirectory, file);
-                    }
-                }
+            Map<String, ObjectId> lastCommits = profileCommitIndex.getLastCommits(git.getRepository(), branch, commit);
+            for (ProfileTreeLoader.ProfileFiles profileFiles : profiles) {
+                ObjectId lastCommit = lastCommits.get(profileFiles.getPath());
+                String lastModified = lastCommit != null ? lastCommit.abbreviate(GIT_COMMIT_SHORT_LENGTH).name() : "";
+                
+                ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileFiles.getProfileId());
+                profileBuilder.setFileConfigurations(profileFiles.getFileConfigurations()).setLastModified(lastModified);
+                versionBuilder.addProfile(profileBuilder.getProfile());
             }
         }
+    }
 
-        private byte[] loadFileConfiguration(File file) throws IOException {
-            if (file.isDirectory()) {
-                // Not sure why we do this, but for directory pids, lets recurse...
-                StringBuilder buf = new StringBuilder();
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        String value = Files.toString(child);
-                        buf.append(String.format("%s = %s\n", child.getName(), value));
-                    }
-                }
-                return buf.toString().getBytes();
-            } else if (file.exists() && file.isFile()) {
-                return Files.readBytes(file);
-            }
-            return null;
+    /**
+     * A version together with the master and version branch commits it was loaded from
+     */
+    static class LoadedVersion {
+        private final RevCommit masterCommit;
+        private final RevCommit versionCommit;
+        private final Version version;
+
+        LoadedVersion(RevCommit masterCommit, RevCommit versionCommit, Version version) {
+            this.masterCommit = masterCommit;
+            this.versionCommit = versionCommit;
+            this.version = version;
+        }
+
+        /**
+         * Returns true if the given commits only add history on top of the commits this version was loaded from, in
+         * which case the last commit of any profile which did not change is still the same
+         */
+        boolean isAncestorOf(ProfileTreeLoader loader, RevCommit newMasterCommit, RevCommit newVersionCommit) throws IOException {
+            return loader.isAncestor(masterCommit, newMasterCommit) && loader.isAncestor(versionCommit, newVersionCommit);
         }
     }
 }
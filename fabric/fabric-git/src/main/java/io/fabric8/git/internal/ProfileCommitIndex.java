@@ -0,0 +1,234 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.gravia.IllegalStateAssertion;
+import io.fabric8.common.util.Closeables;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the last commit which changed each profile directory of a branch with a single walk of its history, rather
+ * than a separate path filtered walk per profile.
+ * <p/>
+ * The commit of a profile is the first one found walking back from the tip in commit time order which changed any of
+ * its files; a merge only counts if the profile differs from every parent. The results are cached per branch keyed by
+ * the tip commit, in memory and in the git directory so they survive restarts; when a branch moves forward only the
+ * new commits are walked.
+ */
+public class ProfileCommitIndex {
+
+    private static final transient Logger LOGGER = LoggerFactory.getLogger(ProfileCommitIndex.class);
+
+    static final String INDEX_DIRECTORY = "fabric-profile-commits";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the last commit which changed each profile directory of the given branch tip keyed by the path of the
+     * profile directory relative to the profiles directory
+     */
+    public Map<String, ObjectId> getLastCommits(Repository repository, String branch, RevCommit tip) throws IOException {
+        Entry previous = entries.get(branch);
+        if (previous == null) {
+            previous = readEntry(repository, branch);
+        }
+        if (previous != null && previous.tip.equals(tip)) {
+            entries.put(branch, previous);
+            return previous.lastCommits;
+        }
+
+        ProfileTreeLoader loader = new ProfileTreeLoader(repository);
+        if (previous != null && !loader.isAncestor(previous.tip, tip)) {
+            LOGGER.debug("Branch {} was rewritten so walking its whole history", branch);
+            previous = null;
+        }
+        Set<String> unresolved = loader.getProfilePaths(tip);
+        Map<String, ObjectId> lastCommits = new HashMap<String, ObjectId>();
+        int commits = 0;
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            RevWalk revWalk = new RevWalk(reader);
+            try {
+                revWalk.markStart(revWalk.parseCommit(tip));
+                if (previous != null) {
+                    revWalk.markUninteresting(revWalk.parseCommit(previous.tip));
+                }
+                for (RevCommit commit : revWalk) {
+                    if (unresolved.isEmpty()) {
+                        break;
+                    }
+                    commits++;
+                    for (String profilePath : getChangedProfilePaths(revWalk, reader, commit)) {
+                        if (unresolved.remove(profilePath)) {
+                            lastCommits.put(profilePath, commit.copy());
+                        }
+                    }
+                }
+            } finally {
+                revWalk.release();
+            }
+        } finally {
+            reader.release();
+        }
+        if (previous != null) {
+            // the remaining profiles did not change in any of the new commits
+            for (String profilePath : unresolved) {
+                ObjectId lastCommit = previous.lastCommits.get(profilePath);
+                if (lastCommit != null) {
+                    lastCommits.put(profilePath, lastCommit);
+                }
+            }
+        }
+        LOGGER.debug("Found the last commits of {} profiles of branch {} walking {} commits", lastCommits.size(), branch, commits);
+
+        Entry entry = new Entry(tip.copy(), Collections.unmodifiableMap(lastCommits));
+        entries.put(branch, entry);
+        writeEntry(repository, branch, entry);
+        return entry.lastCommits;
+    }
+
+    /**
+     * Forgets the cached commits of the given branch
+     */
+    public void remove(Repository repository, String branch) {
+        entries.remove(branch);
+        File file = getIndexFile(repository, branch);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Failed to delete profile commit index " + file);
+        }
+    }
+
+    private Set<String> getChangedProfilePaths(RevWalk revWalk, ObjectReader reader, RevCommit commit) throws IOException {
+        RevCommit[] parents = commit.getParents();
+        Set<String> answer = new HashSet<String>();
+        if (parents.length == 0) {
+            ProfileTreeLoader.addChangedProfilePaths(reader, null, commit.getTree(), answer);
+            return answer;
+        }
+        ProfileTreeLoader.addChangedProfilePaths(reader, revWalk.parseCommit(parents[0]).getTree(), commit.getTree(), answer);
+        for (int i = 1; i < parents.length && !answer.isEmpty(); i++) {
+            Set<String> changed = new HashSet<String>();
+            ProfileTreeLoader.addChangedProfilePaths(reader, revWalk.parseCommit(parents[i]).getTree(), commit.getTree(), changed);
+            answer.retainAll(changed);
+        }
+        return answer;
+    }
+
+    private File getIndexFile(Repository repository, String branch) {
+        return new File(new File(repository.getDirectory(), INDEX_DIRECTORY), branch);
+    }
+
+    private Entry readEntry(Repository repository, String branch) {
+        File file = getIndexFile(repository, branch);
+        if (!file.exists()) {
+            return null;
+        }
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+            BufferedReader lines = new BufferedReader(reader);
+            // the header holds the tip and the number of profiles so that a truncated file is detected
+            String[] header = lines.readLine().split(" ");
+            ObjectId tip = ObjectId.fromString(header[0]);
+            int count = Integer.parseInt(header[1]);
+            Map<String, ObjectId> lastCommits = new HashMap<String, ObjectId>();
+            String line;
+            while ((line = lines.readLine()) != null) {
+                int idx = line.indexOf(' ');
+                IllegalStateAssertion.assertTrue(idx > 0, "Invalid line: " + line);
+                lastCommits.put(line.substring(idx + 1), ObjectId.fromString(line.substring(0, idx)));
+            }
+            IllegalStateAssertion.assertEquals(count, lastCommits.size(), "Number of profiles");
+            return new Entry(tip, Collections.unmodifiableMap(lastCommits));
+        } catch (Exception e) {
+            LOGGER.warn("Ignoring invalid profile commit index " + file + " due " + e.getMessage());
+            return null;
+        } finally {
+            Closeables.closeQuietly(reader);
+        }
+    }
+
+    private void writeEntry(Repository repository, String branch, Entry entry) {
+        File file = getIndexFile(repository, branch);
+        Writer writer = null;
+        try {
+            file.getParentFile().mkdirs();
+            File tmpFile = File.createTempFile(INDEX_DIRECTORY, ".tmp", file.getParentFile());
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), UTF_8));
+                writer.write(entry.tip.name());
+                writer.write(' ');
+                writer.write(Integer.toString(entry.lastCommits.size()));
+                writer.write('\n');
+                for (Map.Entry<String, ObjectId> lastCommit : entry.lastCommits.entrySet()) {
+                    writer.write(lastCommit.getValue().name());
+                    writer.write(' ');
+                    writer.write(lastCommit.getKey());
+                    writer.write('\n');
+                }
+                writer.close();
+                java.nio.file.Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write profile commit index " + file + " due " + e.getMessage() + ". This exception is ignored.");
+        } finally {
+            Closeables.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * The last commits of the profiles of a branch tip
+     */
+    private static class Entry {
+        private final ObjectId tip;
+        private final Map<String, ObjectId> lastCommits;
+
+        Entry(ObjectId tip, Map<String, ObjectId> lastCommits) {
+            this.tip = tip;
+            this.lastCommits = lastCommits;
+        }
+    }
+}
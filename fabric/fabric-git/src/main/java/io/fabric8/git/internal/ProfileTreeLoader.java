@@ -0,0 +1,316 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profiles;
+import io.fabric8.utils.DataStoreUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Reads the profiles of a version straight from the git object database by walking the tree of a branch commit.
+ * <p/>
+ * Nothing is checked out and the working tree is never touched, so any number of threads may load versions
+ * concurrently while only holding the profile read lock.
+ */
+public class ProfileTreeLoader {
+
+    /**
+     * The path of the profiles directory within the tree of a commit; tree paths always use '/'
+     */
+    static final String PROFILES_PATH = GitHelpers.CONFIGS + "/profiles";
+
+    private final Repository repository;
+
+    public ProfileTreeLoader(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Returns the commit the given local branch points to or null if there is no such branch
+     */
+    public RevCommit getBranchCommit(String branch) throws IOException {
+        ObjectId commitId = repository.resolve(Constants.R_HEADS + branch);
+        if (commitId == null) {
+            return null;
+        }
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            return revWalk.parseCommit(commitId);
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /**
+     * Returns the version attributes stored in the given commit
+     */
+    public Map<String, String> loadVersionAttributes(RevCommit commit) throws IOException {
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            TreeWalk treeWalk = TreeWalk.forPath(reader, GitHelpers.VERSION_ATTRIBUTES, commit.getTree());
+            if (treeWalk == null || treeWalk.isSubtree()) {
+                return Collections.emptyMap();
+            }
+            return DataStoreUtils.toMap(reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes());
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * Returns true if the first commit is the same as or an ancestor of the second commit
+     */
+    public boolean isAncestor(ObjectId ancestorId, ObjectId commitId) throws IOException {
+        RevWalk revWalk = new RevWalk(repository);
+        try {
+            return revWalk.isMergedInto(revWalk.parseCommit(ancestorId), revWalk.parseCommit(commitId));
+        } catch (MissingObjectException e) {
+            // the old commit is gone such as after a gc of a branch which was reset
+            return false;
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    /**
+     * Returns the paths of the profile directories in which any file was added, changed or removed between the
+     * given commits; identical subtrees are skipped so this is proportional to the number of changed files.
+     */
+    public Set<String> getChangedProfilePaths(RevCommit oldCommit, RevCommit newCommit) throws IOException {
+        Set<String> answer = new HashSet<String>();
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            addChangedProfilePaths(reader, oldCommit.getTree(), newCommit.getTree(), answer);
+        } finally {
+            reader.release();
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the paths of all the profile directories in the given commit without reading any of their files
+     */
+    public Set<String> getProfilePaths(RevCommit commit) throws IOException {
+        Set<String> answer = new HashSet<String>();
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            TreeWalk profilesWalk = TreeWalk.forPath(reader, PROFILES_PATH, commit.getTree());
+            if (profilesWalk == null || !profilesWalk.isSubtree()) {
+                return answer;
+            }
+            TreeWalk treeWalk = new TreeWalk(reader);
+            try {
+                treeWalk.addTree(profilesWalk.getObjectId(0));
+                treeWalk.setRecursive(false);
+                while (treeWalk.next()) {
+                    if (treeWalk.isSubtree()) {
+                        if (treeWalk.getNameString().endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                            answer.add(treeWalk.getPathString());
+                        } else {
+                            treeWalk.enterSubtree();
+                        }
+                    }
+                }
+            } finally {
+                treeWalk.release();
+            }
+        } finally {
+            reader.release();
+        }
+        return answer;
+    }
+
+    /**
+     * Adds the paths of the profile directories which differ between the given trees; the old tree may be null
+     * for the first commit of a branch
+     */
+    static void addChangedProfilePaths(ObjectReader reader, ObjectId oldTree, ObjectId newTree, Set<String> answer) throws IOException {
+        TreeWalk treeWalk = new TreeWalk(reader);
+        try {
+            if (oldTree != null) {
+                treeWalk.addTree(oldTree);
+            } else {
+                treeWalk.addTree(new EmptyTreeIterator());
+            }
+            treeWalk.addTree(newTree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(AndTreeFilter.create(PathFilter.create(PROFILES_PATH), TreeFilter.ANY_DIFF));
+            while (treeWalk.next()) {
+                String profilePath = getProfilePath(treeWalk.getPathString().substring(PROFILES_PATH.length() + 1));
+                if (profilePath != null) {
+                    answer.add(profilePath);
+                }
+            }
+        } finally {
+            treeWalk.release();
+        }
+    }
+
+    /**
+     * Returns the profiles stored in the given commit.
+     * <p/>
+     * Every directory below the profiles directory which ends with {@link Profiles#PROFILE_FOLDER_SUFFIX} is a
+     * profile whose id is its path with the separators replaced by '-'; all the files below a profile directory
+     * are its file configurations keyed by their path relative to the profile directory.
+     */
+    public List<ProfileFiles> loadProfiles(RevCommit commit) throws IOException {
+        return loadProfiles(commit, TreeFilter.ALL);
+    }
+
+    /**
+     * Returns the profiles stored in the given commit in the given profile directories; directories which do not
+     * exist in the commit are ignored
+     */
+    public List<ProfileFiles> loadProfiles(RevCommit commit, Collection<String> profilePaths) throws IOException {
+        if (profilePaths.isEmpty()) {
+            return new ArrayList<ProfileFiles>();
+        }
+        return loadProfiles(commit, PathFilterGroup.createFromStrings(profilePaths));
+    }
+
+    private List<ProfileFiles> loadProfiles(RevCommit commit, TreeFilter filter) throws IOException {
+        List<ProfileFiles> answer = new ArrayList<ProfileFiles>();
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            TreeWalk profilesWalk = TreeWalk.forPath(reader, PROFILES_PATH, commit.getTree());
+            if (profilesWalk == null || !profilesWalk.isSubtree()) {
+                return answer;
+            }
+            TreeWalk treeWalk = new TreeWalk(reader);
+            try {
+                treeWalk.addTree(profilesWalk.getObjectId(0));
+                treeWalk.setRecursive(false);
+                treeWalk.setFilter(filter);
+                ProfileFiles profile = null;
+                while (treeWalk.next()) {
+                    String path = treeWalk.getPathString();
+                    if (profile != null && !profile.contains(path)) {
+                        answer.add(profile);
+                        profile = null;
+                    }
+                    if (treeWalk.isSubtree()) {
+                        if (profile == null && treeWalk.getNameString().endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                            profile = new ProfileFiles(path);
+                        }
+                        treeWalk.enterSubtree();
+                    } else if (profile != null) {
+                        byte[] bytes = reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes();
+                        profile.fileConfigurations.put(profile.relativize(path), bytes);
+                    }
+                }
+                if (profile != null) {
+                    answer.add(profile);
+                }
+            } finally {
+                treeWalk.release();
+            }
+        } finally {
+            reader.release();
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the path of the profile directory which contains the file with the given path relative to the
+     * profiles directory or null if the file is not part of a profile
+     */
+    static String getProfilePath(String path) {
+        int suffixLength = Profiles.PROFILE_FOLDER_SUFFIX.length();
+        int end = path.indexOf('/');
+        while (end >= 0) {
+            if (path.regionMatches(end - suffixLength, Profiles.PROFILE_FOLDER_SUFFIX, 0, suffixLength)) {
+                return path.substring(0, end);
+            }
+            end = path.indexOf('/', end + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the id of the profile stored in the given profile directory relative to the profiles directory
+     */
+    static String getProfileId(String profilePath) {
+        return profilePath.substring(0, profilePath.length() - Profiles.PROFILE_FOLDER_SUFFIX.length()).replace('/', '-');
+    }
+
+    /**
+     * The file configurations of a profile read from a commit
+     */
+    public static class ProfileFiles {
+        private final String path;
+        private final String profileId;
+        private final Map<String, byte[]> fileConfigurations = new HashMap<String, byte[]>();
+
+        ProfileFiles(String path) {
+            this.path = path;
+            this.profileId = ProfileTreeLoader.getProfileId(path);
+        }
+
+        @Override
+        public String toString() {
+            return "ProfileFiles{" +
+                    "profileId='" + profileId + '\'' +
+                    ", files=" + fileConfigurations.keySet() +
+                    '}';
+        }
+
+        /**
+         * Returns the path of the profile directory relative to the profiles directory
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public String getProfileId() {
+            return profileId;
+        }
+
+        public Map<String, byte[]> getFileConfigurations() {
+            return fileConfigurations;
+        }
+
+        boolean contains(String treePath) {
+            return treePath.length() > path.length() && treePath.charAt(path.length()) == '/' && treePath.startsWith(path);
+        }
+
+        String relativize(String treePath) {
+            return treePath.substring(path.length() + 1);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.GitContext;
+import io.fabric8.common.util.Files;
+import io.fabric8.git.PullPushPolicy.PullPolicyResult;
+import io.fabric8.git.PullPushPolicy.PushPolicyResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultPullPushPolicyTest {
+
+    private static final int ROUNDS = 20;
+
+    private File directory;
+    private Git remote;
+    private Git local;
+    private Git other;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("pull-push-policy", "");
+        directory.delete();
+        File remoteDir = new File(directory, "remote");
+        remote = Git.init().setBare(true).setDirectory(remoteDir).call();
+        other = Git.cloneRepository().setURI(remoteDir.toURI().toString()).setDirectory(new File(directory, "other")).call();
+        writeFile(other, "fabric/profiles/default.profile/io.fabric8.agent.properties", "a = 1");
+        commit(other, "Initial profiles");
+        other.push().call();
+        local = Git.cloneRepository().setURI(remoteDir.toURI().toString()).setDirectory(new File(directory, "local")).call();
+        other.checkout().setName("1.1").setCreateBranch(true).call();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        local.getRepository().close();
+        other.getRepository().close();
+        remote.getRepository().close();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testConcurrentFetchAndPush() throws Exception {
+        final DefaultPullPushPolicy policy = new DefaultPullPushPolicy(local, "origin", 10);
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // commits and pushes master like the data store does while holding its write lock
+            Future<List<PushPolicyResult>> pushes = executor.submit(new Callable<List<PushPolicyResult>>() {
+                @Override
+                public List<PushPolicyResult> call() throws Exception {
+                    List<PushPolicyResult> answer = new ArrayList<PushPolicyResult>();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        writeFile(local, "fabric/profiles/default.profile/io.fabric8.agent.properties", "a = " + i);
+                        commit(local, "Change " + i);
+                        barrier.await(10, TimeUnit.SECONDS);
+                        answer.add(policy.doPush(new GitContext(), null));
+                    }
+                    return answer;
+                }
+            });
+            // fetches the changes another container pushes to a version branch, without any data store lock
+            Future<List<PullPolicyResult>> fetches = executor.submit(new Callable<List<PullPolicyResult>>() {
+                @Override
+                public List<PullPolicyResult> call() throws Exception {
+                    List<PullPolicyResult> answer = new ArrayList<PullPolicyResult>();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        writeFile(other, "fabric/profiles/default.profile/io.fabric8.agent.properties", "a = version " + i);
+                        commit(other, "Version change " + i);
+                        other.push().call();
+                        barrier.await(10, TimeUnit.SECONDS);
+                        answer.add(policy.doFetch(new GitContext(), null));
+                    }
+                    return answer;
+                }
+            });
+            for (PushPolicyResult result : pushes.get(60, TimeUnit.SECONDS)) {
+                assertNull(result.getLastException());
+                assertTrue("rejected " + result.getRejectedUpdates(), result.getRejectedUpdates().isEmpty());
+            }
+            for (PullPolicyResult result : fetches.get(60, TimeUnit.SECONDS)) {
+                assertNull(result.getLastException());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(resolve(remote, "refs/heads/master"), resolve(local, "refs/heads/master"));
+        assertEquals(resolve(remote, "refs/heads/master"), resolve(local, "refs/remotes/origin/master"));
+        assertEquals(resolve(remote, "refs/heads/1.1"), resolve(local, "refs/remotes/origin/1.1"));
+
+        PullPolicyResult result = policy.doPull(new GitContext(), null, false);
+        assertNull(result.getLastException());
+        assertTrue(result.getVersions().contains("1.1"));
+        assertEquals(resolve(remote, "refs/heads/1.1"), resolve(local, "refs/heads/1.1"));
+    }
+
+    private static ObjectId resolve(Git git, String ref) throws Exception {
+        ObjectId answer = git.getRepository().resolve(ref);
+        assertNotNull(ref, answer);
+        return answer;
+    }
+
+    private static void writeFile(Git git, String path, String content) throws Exception {
+        File file = new File(git.getRepository().getWorkTree(), path.replace('/', File.separatorChar));
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes("UTF-8"));
+    }
+
+    private static void commit(Git git, String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage(message).call();
+    }
+}
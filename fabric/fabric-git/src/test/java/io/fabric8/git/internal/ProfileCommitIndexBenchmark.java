@@ -0,0 +1,152 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profiles;
+import io.fabric8.common.util.Files;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.gitective.core.CommitUtils;
+import org.junit.Test;
+
+/**
+ * A simple benchmark of the time taken to find the last commit of every profile of a branch using a single history
+ * walk of the {@link ProfileCommitIndex} compared with the previous approach of a path filtered walk per profile.
+ * <p/>
+ * The synthetic repository has a commit with all the profiles followed by commits which each change a file of a
+ * random profile. The index is measured walking the whole history, reading its cache back from disk and after one
+ * more commit when only the new commit is walked.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class ProfileCommitIndexBenchmark {
+    private static final int PROFILES = 1000;
+    private static final int COMMITS = 10000;
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void testLastCommits() throws Exception {
+        File directory = File.createTempFile("profile-commit-index", "");
+        directory.delete();
+        Random random = new Random(42);
+        Git git = createRepository(directory, random);
+        try {
+            ProfileTreeLoader loader = new ProfileTreeLoader(git.getRepository());
+            RevCommit tip = loader.getBranchCommit(GitHelpers.MASTER_BRANCH);
+            Set<String> profilePaths = loader.getProfilePaths(tip);
+            System.out.println(String.format("profiles: %d commits: %d", profilePaths.size(), COMMITS + 1));
+
+            long start = System.nanoTime();
+            Map<String, ObjectId> expected = legacyLastCommits(git, tip, profilePaths);
+            double legacyMillis = (System.nanoTime() - start) / 1000000.0;
+
+            Map<String, ObjectId> lastCommits = null;
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                // a new index each time so the whole history is walked
+                ProfileCommitIndex index = new ProfileCommitIndex();
+                index.remove(git.getRepository(), GitHelpers.MASTER_BRANCH);
+                lastCommits = index.getLastCommits(git.getRepository(), GitHelpers.MASTER_BRANCH, tip);
+            }
+            double indexMillis = millis(start);
+            if (!expected.equals(lastCommits)) {
+                throw new IllegalStateException("The index found different commits than the path filtered walks");
+            }
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                lastCommits = new ProfileCommitIndex().getLastCommits(git.getRepository(), GitHelpers.MASTER_BRANCH, tip);
+            }
+            double diskMillis = millis(start);
+            if (!expected.equals(lastCommits)) {
+                throw new IllegalStateException("The index read from disk is different");
+            }
+
+            ProfileCommitIndex index = new ProfileCommitIndex();
+            index.getLastCommits(git.getRepository(), GitHelpers.MASTER_BRANCH, tip);
+            changeProfile(git, random, COMMITS);
+            tip = loader.getBranchCommit(GitHelpers.MASTER_BRANCH);
+            start = System.nanoTime();
+            lastCommits = index.getLastCommits(git.getRepository(), GitHelpers.MASTER_BRANCH, tip);
+            double incrementalMillis = (System.nanoTime() - start) / 1000000.0;
+            if (!legacyLastCommits(git, tip, profilePaths).equals(lastCommits)) {
+                throw new IllegalStateException("The incremental index found different commits than the path filtered walks");
+            }
+
+            System.out.println(String.format("walk per profile: %8.1f ms single walk: %8.1f ms cached on disk: %8.1f ms one new commit: %8.1f ms",
+                    legacyMillis, indexMillis, diskMillis, incrementalMillis));
+        } finally {
+            git.getRepository().close();
+            Files.recursiveDelete(directory);
+        }
+    }
+
+    protected static double millis(long start) {
+        return (System.nanoTime() - start) / 1000000.0 / ROUNDS;
+    }
+
+    /**
+     * Finds the last commits the way the data store used to; a path filtered history walk per profile
+     */
+    protected static Map<String, ObjectId> legacyLastCommits(Git git, RevCommit tip, Set<String> profilePaths) {
+        Map<String, ObjectId> answer = new HashMap<String, ObjectId>();
+        for (String profilePath : profilePaths) {
+            RevCommit lastCommit = CommitUtils.getLastCommit(git.getRepository(), tip.getName(), ProfileTreeLoader.PROFILES_PATH + "/" + profilePath);
+            if (lastCommit != null) {
+                answer.put(profilePath, lastCommit.copy());
+            }
+        }
+        return answer;
+    }
+
+    protected static Git createRepository(File directory, Random random) throws Exception {
+        Git git = Git.init().setDirectory(directory).call();
+        File profilesDir = GitHelpers.getProfilesDirectory(git);
+        for (int i = 0; i < PROFILES; i++) {
+            File profileDir = new File(profilesDir, getProfilePath(i));
+            profileDir.mkdirs();
+            Files.writeToFile(new File(profileDir, "io.fabric8.agent.properties"), ("# profile " + i + "\n").getBytes("UTF-8"));
+        }
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("Initial profiles").call();
+        for (int i = 0; i < COMMITS; i++) {
+            changeProfile(git, random, i);
+        }
+        // the data store periodically runs a gc so the objects of a real repository are mostly packed
+        git.gc().call();
+        return git;
+    }
+
+    protected static void changeProfile(Git git, Random random, int change) throws Exception {
+        String profilePath = getProfilePath(random.nextInt(PROFILES));
+        File file = new File(GitHelpers.getProfilesDirectory(git), profilePath + File.separator + "io.fabric8.agent.properties");
+        Files.writeToFile(file, ("# change " + change + "\n").getBytes("UTF-8"));
+        git.add().addFilepattern(ProfileTreeLoader.PROFILES_PATH + "/" + profilePath + "/io.fabric8.agent.properties").call();
+        git.commit().setMessage("Change " + change).call();
+    }
+
+    protected static String getProfilePath(int profile) {
+        return "group" + (profile % 20) + "/profile" + profile + Profiles.PROFILE_FOLDER_SUFFIX;
+    }
+}
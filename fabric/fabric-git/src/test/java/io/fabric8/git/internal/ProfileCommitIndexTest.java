@@ -0,0 +1,187 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profiles;
+import io.fabric8.common.util.Files;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileCommitIndexTest {
+
+    private static final List<String> PROFILES = Arrays.asList("default", "mq/base", "mq/amq", "example/camel/cbr");
+
+    private File directory;
+    private Git git;
+    private ProfileTreeLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("profile-commit-index", "");
+        directory.delete();
+        git = Git.init().setDirectory(directory).call();
+        loader = new ProfileTreeLoader(git.getRepository());
+        for (String profile : PROFILES) {
+            writeProfile(profile, "io.fabric8.agent.properties", "profile = " + profile);
+        }
+        commit("Initial profiles");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        git.getRepository().close();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testFirstWalk() throws Exception {
+        changeProfiles(10);
+        assertLastCommits(new ProfileCommitIndex());
+    }
+
+    @Test
+    public void testIncrementalWalks() throws Exception {
+        ProfileCommitIndex index = new ProfileCommitIndex();
+        assertLastCommits(index);
+        for (int i = 0; i < 5; i++) {
+            changeProfiles(i + 1);
+            assertLastCommits(index);
+            // a new index reads the previous results back from disk and only walks the new commits
+            changeProfiles(1);
+            assertLastCommits(new ProfileCommitIndex());
+        }
+        writeProfile("mq/amq", "nested/dir/broker.xml", "<broker/>");
+        writeProfile("example/camel", "io.fabric8.agent.properties", "a new profile");
+        commit("Change a nested file and add a profile");
+        assertLastCommits(index);
+    }
+
+    @Test
+    public void testRewrittenBranch() throws Exception {
+        ProfileCommitIndex index = new ProfileCommitIndex();
+        changeProfiles(4);
+        assertLastCommits(index);
+
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef("HEAD~3").call();
+        writeProfile("mq/base", "io.fabric8.agent.properties", "rewritten");
+        commit("Rewritten change");
+        Map<String, ObjectId> lastCommits = assertLastCommits(index);
+        assertEquals(getBranchCommit(), lastCommits.get("mq/base.profile"));
+        assertLastCommits(new ProfileCommitIndex());
+    }
+
+    @Test
+    public void testMergeMatchingOneParent() throws Exception {
+        git.checkout().setName("feature").setCreateBranch(true).call();
+        writeProfile("mq/amq", "io.fabric8.agent.properties", "changed on feature");
+        RevCommit featureCommit = commit("Change mq-amq on feature");
+        git.checkout().setName(GitHelpers.MASTER_BRANCH).call();
+        writeProfile("default", "io.fabric8.agent.properties", "changed on master");
+        RevCommit masterCommit = commit("Change default on master");
+        MergeResult result = git.merge().include(featureCommit).setFastForward(MergeCommand.FastForwardMode.NO_FF).setCommit(false).call();
+        assertTrue(result.getMergeStatus().isSuccessful());
+        writeProfile("mq/base", "io.fabric8.agent.properties", "changed in the merge");
+        RevCommit mergeCommit = commit("Merge feature and change mq-base");
+        assertEquals(2, mergeCommit.getParentCount());
+
+        Map<String, ObjectId> lastCommits = new ProfileCommitIndex().getLastCommits(git.getRepository(), GitHelpers.MASTER_BRANCH, getBranchCommit());
+        assertEquals("matches the feature parent", featureCommit, lastCommits.get("mq/amq.profile"));
+        assertEquals("matches the master parent", masterCommit, lastCommits.get("default.profile"));
+        assertEquals("differs from both parents", mergeCommit, lastCommits.get("mq/base.profile"));
+    }
+
+    @Test
+    public void testTruncatedOrCorruptIndexFile() throws Exception {
+        changeProfiles(4);
+        assertLastCommits(new ProfileCommitIndex());
+        File file = new File(new File(git.getRepository().getDirectory(), ProfileCommitIndex.INDEX_DIRECTORY), GitHelpers.MASTER_BRANCH);
+        assertTrue(file.exists());
+        byte[] bytes = Files.readBytes(file);
+
+        String content = new String(bytes, "UTF-8");
+        Files.writeToFile(file, content.substring(0, content.lastIndexOf('\n', content.length() - 2) + 1).getBytes("UTF-8"));
+        assertLastCommits(new ProfileCommitIndex());
+
+        Files.writeToFile(file, Arrays.copyOf(bytes, 50));
+        assertLastCommits(new ProfileCommitIndex());
+
+        Files.writeToFile(file, "not an index\n".getBytes("UTF-8"));
+        assertLastCommits(new ProfileCommitIndex());
+
+        Files.writeToFile(file, new byte[0]);
+        assertLastCommits(new ProfileCommitIndex());
+    }
+
+    /**
+     * Asserts that the index finds the same commits as a path filtered log of each profile
+     */
+    private Map<String, ObjectId> assertLastCommits(ProfileCommitIndex index) throws Exception {
+        RevCommit tip = getBranchCommit();
+        Map<String, ObjectId> expected = new HashMap<String, ObjectId>();
+        for (String profilePath : loader.getProfilePaths(tip)) {
+            Iterator<RevCommit> log = git.log().add(tip).addPath(ProfileTreeLoader.PROFILES_PATH + "/" + profilePath).setMaxCount(1).call().iterator();
+            assertTrue(log.hasNext());
+            expected.put(profilePath, log.next());
+        }
+        Map<String, ObjectId> lastCommits = index.getLastCommits(git.getRepository(), GitHelpers.MASTER_BRANCH, tip);
+        assertEquals(expected, lastCommits);
+        return lastCommits;
+    }
+
+    private RevCommit getBranchCommit() throws Exception {
+        RevCommit answer = loader.getBranchCommit(GitHelpers.MASTER_BRANCH);
+        assertNotNull(answer);
+        return answer;
+    }
+
+    private void changeProfiles(int commits) throws Exception {
+        for (int i = 0; i < commits; i++) {
+            String profile = PROFILES.get((i * 3 + commits) % PROFILES.size());
+            writeProfile(profile, "io.fabric8.agent.properties", "profile = " + profile + " change " + i + " of " + commits);
+            commit("Change " + profile);
+        }
+    }
+
+    private void writeProfile(String profilePath, String fileName, String content) throws Exception {
+        File file = new File(GitHelpers.getProfilesDirectory(git), profilePath.replace('/', File.separatorChar) + Profiles.PROFILE_FOLDER_SUFFIX + File.separator + fileName.replace('/', File.separatorChar));
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes("UTF-8"));
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(message).call();
+    }
+}
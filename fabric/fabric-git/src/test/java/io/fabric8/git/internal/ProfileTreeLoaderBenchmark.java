@@ -0,0 +1,244 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profiles;
+import io.fabric8.common.util.Files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+/**
+ * A simple benchmark of the time taken to read all the profiles of a version from a large synthetic repository
+ * using the {@link ProfileTreeLoader} compared with the previous approach of checking out the master and version
+ * branches and reading the profiles from the working tree.
+ * <p/>
+ * Looking up the last commit of each profile costs the same with either approach so it is not included.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class ProfileTreeLoaderBenchmark {
+    private static final int PARENTS = 50;
+    private static final int PROFILES_PER_PARENT = 40;
+    private static final int FILES_PER_PROFILE = 5;
+    private static final int VERSIONS = 4;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testLoadVersions() throws Exception {
+        File directory = File.createTempFile("profile-tree-loader", "");
+        directory.delete();
+        final Git git = createRepository(directory);
+        try {
+            final List<String> versions = new ArrayList<String>();
+            for (int i = 0; i < VERSIONS; i++) {
+                versions.add("1." + i);
+            }
+            System.out.println(String.format("profiles per version: %d files per profile: %d versions: %d",
+                    PARENTS * PROFILES_PER_PARENT, FILES_PER_PROFILE, VERSIONS));
+
+            final ProfileTreeLoader loader = new ProfileTreeLoader(git.getRepository());
+            Approach legacy = new Approach() {
+                @Override
+                public int loadVersions() throws Exception {
+                    int answer = 0;
+                    for (String version : versions) {
+                        answer += legacyLoad(git, GitHelpers.MASTER_BRANCH) + legacyLoad(git, version);
+                    }
+                    return answer;
+                }
+            };
+            Approach tree = new Approach() {
+                @Override
+                public int loadVersions() throws Exception {
+                    int answer = 0;
+                    for (String version : versions) {
+                        answer += treeLoad(loader, GitHelpers.MASTER_BRANCH) + treeLoad(loader, version);
+                    }
+                    return answer;
+                }
+            };
+            final ExecutorService executor = Executors.newFixedThreadPool(VERSIONS);
+            Approach concurrentTree = new Approach() {
+                @Override
+                public int loadVersions() throws Exception {
+                    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+                    for (final String version : versions) {
+                        futures.add(executor.submit(new Callable<Integer>() {
+                            @Override
+                            public Integer call() throws Exception {
+                                return treeLoad(loader, GitHelpers.MASTER_BRANCH) + treeLoad(loader, version);
+                            }
+                        }));
+                    }
+                    int answer = 0;
+                    for (Future<Integer> future : futures) {
+                        answer += future.get();
+                    }
+                    return answer;
+                }
+            };
+            try {
+                double legacyMillis = benchmark(legacy);
+                double treeMillis = benchmark(tree);
+                double concurrentTreeMillis = benchmark(concurrentTree);
+                System.out.println(String.format("legacy checkout: %8.1f ms tree walk: %8.1f ms concurrent tree walk: %8.1f ms",
+                        legacyMillis, treeMillis, concurrentTreeMillis));
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            git.getRepository().close();
+            Files.recursiveDelete(directory);
+        }
+    }
+
+    /**
+     * Returns the mean time in milliseconds to load all the versions
+     */
+    protected static double benchmark(Approach approach) throws Exception {
+        int expected = -1;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            expected = approach.loadVersions();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            int files = approach.loadVersions();
+            if (files != expected) {
+                throw new IllegalStateException("Expected " + expected + " files but loaded " + files);
+            }
+        }
+        return (System.nanoTime() - start) / 1000000.0 / ROUNDS;
+    }
+
+    protected static int treeLoad(ProfileTreeLoader loader, String branch) throws Exception {
+        RevCommit commit = loader.getBranchCommit(branch);
+        int answer = 0;
+        for (ProfileTreeLoader.ProfileFiles profile : loader.loadProfiles(commit)) {
+            answer += profile.getFileConfigurations().size();
+        }
+        return answer;
+    }
+
+    /**
+     * Loads the profiles the way the data store used to; checking out the branch and reading the working tree
+     */
+    protected static int legacyLoad(Git git, String branch) throws Exception {
+        GitHelpers.checkoutBranch(git, branch);
+        int answer = 0;
+        File profilesDir = GitHelpers.getProfilesDirectory(git);
+        File[] children = profilesDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    answer += legacyLoadProfile(child);
+                }
+            }
+        }
+        return answer;
+    }
+
+    protected static int legacyLoadProfile(File profileFile) throws Exception {
+        int answer = 0;
+        if (profileFile.getName().endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
+            legacyLoadFiles(configurations, profileFile, profileFile);
+            answer += configurations.size();
+        } else {
+            File[] files = profileFile.listFiles();
+            if (files != null) {
+                for (File childFile : files) {
+                    if (childFile.isDirectory()) {
+                        answer += legacyLoadProfile(childFile);
+                    }
+                }
+            }
+        }
+        return answer;
+    }
+
+    protected static void legacyLoadFiles(Map<String, byte[]> configurations, File profileDirectory, File directory) throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    configurations.put(Files.getRelativePath(profileDirectory, file), Files.readBytes(file));
+                } else if (file.isDirectory()) {
+                    legacyLoadFiles(configurations, profileDirectory, file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a repository with nested profiles on the master branch and a branch per version which changes
+     * every file of every profile so that checking out a version has to update the working tree
+     */
+    protected static Git createRepository(File directory) throws Exception {
+        Git git = Git.init().setDirectory(directory).call();
+        writeProfiles(git, "master");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("Initial profiles").call();
+        for (int i = 0; i < VERSIONS; i++) {
+            String version = "1." + i;
+            git.checkout().setName(version).setCreateBranch(true).setStartPoint(GitHelpers.MASTER_BRANCH).call();
+            writeProfiles(git, version);
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Version " + version).call();
+            git.checkout().setName(GitHelpers.MASTER_BRANCH).call();
+        }
+        // the data store periodically runs a gc so the objects of a real repository are mostly packed
+        git.gc().call();
+        return git;
+    }
+
+    protected static void writeProfiles(Git git, String version) throws Exception {
+        File profilesDir = GitHelpers.getProfilesDirectory(git);
+        for (int i = 0; i < PARENTS; i++) {
+            for (int j = 0; j < PROFILES_PER_PARENT; j++) {
+                File profileDir = new File(profilesDir, "parent" + i + File.separator + "child" + j + Profiles.PROFILE_FOLDER_SUFFIX);
+                profileDir.mkdirs();
+                for (int k = 0; k < FILES_PER_PROFILE; k++) {
+                    StringBuilder buffer = new StringBuilder();
+                    buffer.append("# profile ").append(i).append('-').append(j).append(" version ").append(version).append('\n');
+                    for (int line = 0; line < 20; line++) {
+                        buffer.append("key").append(line).append(" = value").append(line).append('\n');
+                    }
+                    Files.writeToFile(new File(profileDir, "io.fabric8.pid" + k + ".properties"), buffer.toString().getBytes("UTF-8"));
+                }
+            }
+        }
+    }
+
+    protected interface Approach {
+        /**
+         * Loads the master and version branch profiles of every version and returns the number of files read
+         */
+        int loadVersions() throws Exception;
+    }
+}
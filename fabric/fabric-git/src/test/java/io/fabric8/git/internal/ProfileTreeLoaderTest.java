@@ -0,0 +1,190 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profiles;
+import io.fabric8.common.util.Files;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileTreeLoaderTest {
+
+    private File directory;
+    private Git git;
+    private ProfileTreeLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("profile-tree-loader", "");
+        directory.delete();
+        git = Git.init().setDirectory(directory).call();
+        loader = new ProfileTreeLoader(git.getRepository());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        git.getRepository().close();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testLoadsTheSameProfilesAsTheWorkingTree() throws Exception {
+        writeProfile("default", "io.fabric8.agent.properties", "a = 1");
+        writeProfile("mq/base", "io.fabric8.mq.properties", "b = 2");
+        writeProfile("mq/base", "nested/dir/broker.xml", "<broker/>");
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = 3");
+        writeFile("fabric/profiles/README.md", "not a profile");
+        commit("Initial profiles");
+
+        git.checkout().setName("1.1").setCreateBranch(true).setStartPoint(GitHelpers.MASTER_BRANCH).call();
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = 4");
+        writeProfile("example/camel", "io.fabric8.agent.properties", "d = 5");
+        commit("Version 1.1");
+
+        for (String branch : Arrays.asList(GitHelpers.MASTER_BRANCH, "1.1")) {
+            GitHelpers.checkoutBranch(git, branch);
+            Map<String, Map<String, String>> expected = readWorkingTree();
+            Map<String, Map<String, String>> actual = toMap(loader.loadProfiles(loader.getBranchCommit(branch)));
+            assertEquals("profiles of " + branch, expected, actual);
+            assertEquals("profile paths of " + branch, expected.keySet(), loader.getProfilePaths(loader.getBranchCommit(branch)));
+        }
+        assertEquals("c = 4", readProfiles("1.1").get("mq/amq.profile").get("io.fabric8.mq.properties"));
+        assertEquals("<broker/>", readProfiles("1.1").get("mq/base.profile").get("nested/dir/broker.xml"));
+    }
+
+    @Test
+    public void testLoadsOnlyTheGivenProfiles() throws Exception {
+        writeProfile("default", "io.fabric8.agent.properties", "a = 1");
+        writeProfile("mq/base", "io.fabric8.mq.properties", "b = 2");
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = 3");
+        RevCommit commit = commit("Initial profiles");
+
+        List<ProfileTreeLoader.ProfileFiles> profiles = loader.loadProfiles(commit, Arrays.asList("mq/amq.profile", "missing.profile"));
+        assertEquals(1, profiles.size());
+        assertEquals("mq-amq", profiles.get(0).getProfileId());
+        assertEquals("mq/amq.profile", profiles.get(0).getPath());
+        assertTrue(loader.loadProfiles(commit, new HashSet<String>()).isEmpty());
+    }
+
+    @Test
+    public void testLoadsNothingFromABranchWithoutProfiles() throws Exception {
+        writeFile("fabric/version.attributes", "parent=1.0\n");
+        RevCommit commit = commit("No profiles");
+
+        assertTrue(loader.loadProfiles(commit).isEmpty());
+        assertTrue(loader.getProfilePaths(commit).isEmpty());
+        assertNull(loader.getBranchCommit("missing"));
+    }
+
+    @Test
+    public void testProfilePathsAndIds() throws Exception {
+        assertEquals("mq/amq.profile", ProfileTreeLoader.getProfilePath("mq/amq.profile/io.fabric8.mq.properties"));
+        assertEquals("default.profile", ProfileTreeLoader.getProfilePath("default.profile/nested/dir/broker.xml"));
+        assertNull(ProfileTreeLoader.getProfilePath("README.md"));
+        assertNull(ProfileTreeLoader.getProfilePath("mq/README.md"));
+        assertEquals("mq-amq", ProfileTreeLoader.getProfileId("mq/amq.profile"));
+        assertFalse(new ProfileTreeLoader.ProfileFiles("mq/amq.profile").contains("mq/amq.profiles/x"));
+        assertTrue(new ProfileTreeLoader.ProfileFiles("mq/amq.profile").contains("mq/amq.profile/x"));
+    }
+
+    private Map<String, Map<String, String>> readProfiles(String branch) throws Exception {
+        return toMap(loader.loadProfiles(loader.getBranchCommit(branch)));
+    }
+
+    private void writeProfile(String profilePath, String fileName, String content) throws Exception {
+        writeFile(ProfileTreeLoader.PROFILES_PATH + "/" + profilePath + Profiles.PROFILE_FOLDER_SUFFIX + "/" + fileName, content);
+    }
+
+    private void writeFile(String path, String content) throws Exception {
+        File file = new File(directory, path.replace('/', File.separatorChar));
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes("UTF-8"));
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(message).call();
+    }
+
+    private static Map<String, Map<String, String>> toMap(List<ProfileTreeLoader.ProfileFiles> profiles) throws Exception {
+        Map<String, Map<String, String>> answer = new TreeMap<String, Map<String, String>>();
+        for (ProfileTreeLoader.ProfileFiles profile : profiles) {
+            Map<String, String> files = new HashMap<String, String>();
+            for (Map.Entry<String, byte[]> entry : profile.getFileConfigurations().entrySet()) {
+                files.put(entry.getKey(), new String(entry.getValue(), "UTF-8"));
+            }
+            answer.put(profile.getPath(), files);
+        }
+        return answer;
+    }
+
+    /**
+     * Reads the profiles of the checked out branch the way the data store used to
+     */
+    private Map<String, Map<String, String>> readWorkingTree() throws Exception {
+        Map<String, Map<String, String>> answer = new TreeMap<String, Map<String, String>>();
+        readProfileDirectories(answer, GitHelpers.getProfilesDirectory(git), "");
+        return answer;
+    }
+
+    private static void readProfileDirectories(Map<String, Map<String, String>> answer, File directory, String path) throws Exception {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    String childPath = path + child.getName();
+                    if (child.getName().endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                        Map<String, String> files = new HashMap<String, String>();
+                        readFiles(files, child, "");
+                        answer.put(childPath, files);
+                    } else {
+                        readProfileDirectories(answer, child, childPath + "/");
+                    }
+                }
+            }
+        }
+    }
+
+    private static void readFiles(Map<String, String> files, File directory, String path) throws Exception {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isFile()) {
+                    files.put(path + child.getName(), new String(Files.readBytes(child), "UTF-8"));
+                } else if (child.isDirectory()) {
+                    readFiles(files, child, path + child.getName() + "/");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profile;
+import io.fabric8.api.Profiles;
+import io.fabric8.api.Version;
+import io.fabric8.common.util.Files;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reloading only the changed profiles of a version gives the same version as loading it from scratch
+ */
+public class ProfileVersionLoaderTest {
+
+    private static final String VERSION = "1.1";
+
+    private File directory;
+    private Git git;
+    private ProfileVersionLoaderFixture fixture;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("profile-version-loader", "");
+        directory.delete();
+        git = Git.init().setDirectory(directory).call();
+        fixture = new ProfileVersionLoaderFixture();
+
+        writeProfile("default", "io.fabric8.agent.properties", "a = 1");
+        writeProfile("mq/base", "io.fabric8.mq.properties", "b = 1");
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = 1");
+        writeProfile("mq/amq", "nested/dir/broker.xml", "<broker/>");
+        commit("Initial profiles");
+        git.checkout().setName(VERSION).setCreateBranch(true).setStartPoint(GitHelpers.MASTER_BRANCH).call();
+        writeFile("fabric/version.attributes", "parent=1.0\n");
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = version");
+        commit("Version " + VERSION);
+        checkout(GitHelpers.MASTER_BRANCH);
+        fixture.load();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        git.getRepository().close();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testChangeOnMasterOnly() throws Exception {
+        Version before = fixture.load();
+        writeProfile("mq/base", "io.fabric8.mq.properties", "b = 2");
+        commit("Change mq-base");
+
+        Version after = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("b = 2", getFile(after, "mq-base", "io.fabric8.mq.properties"));
+        assertSame("unchanged profiles are reused", before.getProfile("default"), after.getProfile("default"));
+        assertFalse(before.getProfile("mq-base").getProfileHash().equals(after.getProfile("mq-base").getProfileHash()));
+    }
+
+    @Test
+    public void testVersionBranchOverridesMasterProfile() throws Exception {
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = 2");
+        commit("Change mq-amq on master");
+        Version version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("c = version", getFile(version, "mq-amq", "io.fabric8.mq.properties"));
+
+        checkout(VERSION);
+        writeProfile("mq/amq", "io.fabric8.mq.properties", "c = version 2");
+        commit("Change mq-amq on " + VERSION);
+        version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("c = version 2", getFile(version, "mq-amq", "io.fabric8.mq.properties"));
+
+        writeProfile("default", "io.fabric8.agent.properties", "a = version");
+        commit("Override default on " + VERSION);
+        version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("a = version", getFile(version, "default", "io.fabric8.agent.properties"));
+    }
+
+    @Test
+    public void testProfileDeletion() throws Exception {
+        deleteProfile("mq/base");
+        commit("Delete mq-base on master");
+        Version version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertNull(version.getProfile("mq-base"));
+
+        // deleting the override of the version branch reveals the profile of the master branch
+        checkout(VERSION);
+        deleteProfile("mq/amq");
+        commit("Delete mq-amq on " + VERSION);
+        version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("c = 1", getFile(version, "mq-amq", "io.fabric8.mq.properties"));
+
+        checkout(GitHelpers.MASTER_BRANCH);
+        deleteProfile("mq/amq");
+        commit("Delete mq-amq on master");
+        version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertNull(version.getProfile("mq-amq"));
+    }
+
+    @Test
+    public void testNestedProfileDirectories() throws Exception {
+        checkout(VERSION);
+        writeProfile("mq/amq", "nested/dir/broker.xml", "<broker name='amq'/>");
+        writeProfile("mq/amq/child", "io.fabric8.mq.properties", "d = 1");
+        commit("Change nested files on " + VERSION);
+        Version version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("<broker name='amq'/>", getFile(version, "mq-amq", "nested/dir/broker.xml"));
+        assertEquals("c = version", getFile(version, "mq-amq", "io.fabric8.mq.properties"));
+        assertTrue(version.getProfileIds().contains("mq-amq"));
+
+        checkout(GitHelpers.MASTER_BRANCH);
+        writeProfile("example/camel/cbr", "io.fabric8.agent.properties", "e = 1");
+        commit("Add a deeply nested profile on master");
+        version = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("e = 1", getFile(version, "example-camel-cbr", "io.fabric8.agent.properties"));
+    }
+
+    @Test
+    public void testRewrittenBranches() throws Exception {
+        writeProfile("mq/base", "io.fabric8.mq.properties", "b = 2");
+        commit("Change mq-base");
+        Version before = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef("HEAD~1").call();
+        writeProfile("default", "io.fabric8.agent.properties", "a = 2");
+        commit("Change default instead");
+        Version after = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("b = 1", getFile(after, "mq-base", "io.fabric8.mq.properties"));
+        assertEquals("a = 2", getFile(after, "default", "io.fabric8.agent.properties"));
+        assertNotSame("a rewritten branch is loaded from scratch", before.getProfile("mq-amq"), after.getProfile("mq-amq"));
+
+        checkout(VERSION);
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef("HEAD~1").call();
+        writeProfile("mq/base", "io.fabric8.mq.properties", "b = version");
+        commit("Override mq-base on " + VERSION);
+        after = fixture.assertIncrementalLoadIsTheSameAsAFullLoad();
+        assertEquals("c = 1", getFile(after, "mq-amq", "io.fabric8.mq.properties"));
+        assertEquals("b = version", getFile(after, "mq-base", "io.fabric8.mq.properties"));
+    }
+
+    private static String getFile(Version version, String profileId, String fileName) throws Exception {
+        return new String(version.getProfile(profileId).getFileConfigurations().get(fileName), "UTF-8");
+    }
+
+    private void checkout(String branch) throws Exception {
+        git.checkout().setName(branch).call();
+    }
+
+    private void writeProfile(String profilePath, String fileName, String content) throws Exception {
+        writeFile(ProfileTreeLoader.PROFILES_PATH + "/" + profilePath + Profiles.PROFILE_FOLDER_SUFFIX + "/" + fileName, content);
+    }
+
+    private void deleteProfile(String profilePath) throws Exception {
+        Files.recursiveDelete(new File(GitHelpers.getProfilesDirectory(git), profilePath.replace('/', File.separatorChar) + Profiles.PROFILE_FOLDER_SUFFIX));
+    }
+
+    private void writeFile(String path, String content) throws Exception {
+        File file = new File(directory, path.replace('/', File.separatorChar));
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes("UTF-8"));
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+        return git.commit().setMessage(message).call();
+    }
+
+    /**
+     * Keeps one loader for the incremental loads, as the data store does, and compares it with a new loader
+     * and a new profile commit index for every full load
+     */
+    private class ProfileVersionLoaderFixture {
+        private final GitDataStoreImpl.ProfileVersionLoader loader = new GitDataStoreImpl.ProfileVersionLoader(new ProfileCommitIndex());
+
+        Version load() throws Exception {
+            return loader.loadVersion(git, VERSION);
+        }
+
+        Version assertIncrementalLoadIsTheSameAsAFullLoad() throws Exception {
+            Version incremental = load();
+            Files.recursiveDelete(new File(git.getRepository().getDirectory(), ProfileCommitIndex.INDEX_DIRECTORY));
+            Version full = new GitDataStoreImpl.ProfileVersionLoader(new ProfileCommitIndex()).loadVersion(git, VERSION);
+            assertEquals(full.getRevision(), incremental.getRevision());
+            assertEquals(full.getAttributes(), incremental.getAttributes());
+            assertEquals(toMap(full), toMap(incremental));
+            return incremental;
+        }
+
+        private Map<String, String> toMap(Version version) throws Exception {
+            Map<String, String> answer = new TreeMap<String, String>();
+            for (Profile profile : version.getProfiles()) {
+                StringBuilder buffer = new StringBuilder("hash=").append(profile.getProfileHash());
+                for (Map.Entry<String, byte[]> entry : new TreeMap<String, byte[]>(profile.getFileConfigurations()).entrySet()) {
+                    buffer.append('\n').append(entry.getKey()).append('=').append(new String(entry.getValue(), "UTF-8"));
+                }
+                answer.put(profile.getId(), buffer.toString());
+            }
+            return answer;
+        }
+    }
+}
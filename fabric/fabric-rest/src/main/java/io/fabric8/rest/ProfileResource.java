@@ -86,7 +86,7 @@ public class ProfileResource extends ResourceSupport {
     public Map<String, String> containers() {
         FabricService fabricService = getFabricService();
         if (fabricService != null) {
-            List<Container> containers = Containers.containersForProfile(fabricService.getContainers(), profile.getId(), profile.getVersion());
+            Container[] containers = fabricService.getAssociatedContainers(profile.getVersion(), profile.getId());
             List<String> keys = Containers.containerIds(containers);
 
             // lets get the link to the fabric
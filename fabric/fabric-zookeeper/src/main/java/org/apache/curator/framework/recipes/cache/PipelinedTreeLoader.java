@@ -0,0 +1,287 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorEventType;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a tree into a {@link TreeCache} with background reads, keeping up to a window of requests in flight
+ * rather than reading one node at a time. Every node costs a getData and a getChildren request, which are sent
+ * together, or just a getChildren request when the data is not cached; the children of a node are queued as soon
+ * as its children are known.
+ * <p/>
+ * ZooKeeper only supports writes in a multi, so the reads are pipelined rather than batched.
+ */
+class PipelinedTreeLoader implements BackgroundCallback
+{
+    private final TreeCache cache;
+    private final CuratorFramework client;
+    private final Watcher watcher;
+    private final boolean cacheData;
+    private final boolean dataIsCompressed;
+    private final int window;
+    private final int requestsPerNode;
+
+    // guarded by this
+    private final Queue<String> queued = new ArrayDeque<String>();
+    private final Map<String, PendingNode> pending = new HashMap<String, PendingNode>();
+    private int inFlight;
+    private int peakInFlight;
+    private int loaded;
+    private int failed;
+    private long startTime;
+    private long loadTime = -1;
+    private boolean finished;
+
+    PipelinedTreeLoader(TreeCache cache, CuratorFramework client, Watcher watcher, boolean cacheData, boolean dataIsCompressed, int window)
+    {
+        this.cache = cache;
+        this.client = client;
+        this.watcher = watcher;
+        this.cacheData = cacheData;
+        this.dataIsCompressed = dataIsCompressed;
+        this.requestsPerNode = cacheData ? 2 : 1;
+        this.window = Math.max(window, requestsPerNode);
+    }
+
+    /**
+     * Starts loading the tree below the given path; returns without waiting for the reads
+     */
+    void load(String path)
+    {
+        synchronized ( this )
+        {
+            startTime = System.nanoTime();
+            queued.add(path);
+        }
+        sendRequests();
+    }
+
+    /**
+     * Returns the time the load took in milliseconds, or -1 while it is still running
+     */
+    synchronized long getLoadTime()
+    {
+        return loadTime;
+    }
+
+    /**
+     * Returns the largest number of requests which were in flight at the same time
+     */
+    synchronized int getPeakInFlightRequests()
+    {
+        return peakInFlight;
+    }
+
+    /**
+     * Returns the number of nodes loaded so far
+     */
+    synchronized int getLoadedNodes()
+    {
+        return loaded;
+    }
+
+    /**
+     * Returns the number of nodes which failed to load and were left to the synchronous refresh
+     */
+    synchronized int getFailedNodes()
+    {
+        return failed;
+    }
+
+    @Override
+    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception
+    {
+        String path = event.getPath();
+        PendingNode node;
+        synchronized ( this )
+        {
+            inFlight--;
+            node = pending.get(path);
+            if ( node == null )
+            {
+                return;
+            }
+            node.apply(event);
+            if ( node.remaining > 0 )
+            {
+                return;
+            }
+            pending.remove(path);
+        }
+        complete(path, node);
+        sendRequests();
+        checkFinished();
+    }
+
+    private void complete(String path, PendingNode node)
+    {
+        KeeperException.Code code = KeeperException.Code.get(node.resultCode);
+        if ( code == KeeperException.Code.OK )
+        {
+            cache.applyLoadedData(path, cacheData ? node.dataStat : node.childrenStat, node.data, node.children);
+            List<String> childPaths = new ArrayList<String>(node.children.size());
+            for ( String child : node.children )
+            {
+                childPaths.add(ZKPaths.makePath(path, child));
+            }
+            synchronized ( this )
+            {
+                loaded++;
+                queued.addAll(childPaths);
+            }
+        }
+        else if ( code != KeeperException.Code.NONODE )
+        {
+            // leave the node to the synchronous refresh; a node deleted in the meantime is simply skipped
+            cache.handleException(KeeperException.create(code, path));
+            synchronized ( this )
+            {
+                failed++;
+            }
+            cache.refreshInBackground(path);
+        }
+    }
+
+    private void sendRequests()
+    {
+        List<String> paths = new ArrayList<String>();
+        synchronized ( this )
+        {
+            while ( !queued.isEmpty() && inFlight + requestsPerNode <= window )
+            {
+                String path = queued.poll();
+                pending.put(path, new PendingNode(requestsPerNode));
+                inFlight += requestsPerNode;
+                paths.add(path);
+            }
+            peakInFlight = Math.max(peakInFlight, inFlight);
+        }
+        for ( String path : paths )
+        {
+            int sent = 0;
+            try
+            {
+                if ( cacheData )
+                {
+                    if ( dataIsCompressed )
+                    {
+                        client.getData().decompressed().usingWatcher(watcher).inBackground(this).forPath(path);
+                    }
+                    else
+                    {
+                        client.getData().usingWatcher(watcher).inBackground(this).forPath(path);
+                    }
+                    sent++;
+                }
+                client.getChildren().usingWatcher(watcher).inBackground(this).forPath(path);
+            }
+            catch ( Exception e )
+            {
+                cache.handleException(e);
+                PendingNode node;
+                synchronized ( this )
+                {
+                    int unsent = requestsPerNode - sent;
+                    inFlight -= unsent;
+                    node = pending.get(path);
+                    node.remaining -= unsent;
+                    node.resultCode = KeeperException.Code.SYSTEMERROR.intValue();
+                    if ( node.remaining > 0 )
+                    {
+                        node = null;
+                    }
+                    else
+                    {
+                        pending.remove(path);
+                    }
+                }
+                if ( node != null )
+                {
+                    complete(path, node);
+                }
+            }
+        }
+        checkFinished();
+    }
+
+    private void checkFinished()
+    {
+        synchronized ( this )
+        {
+            if ( finished || inFlight > 0 || !queued.isEmpty() || !pending.isEmpty() )
+            {
+                return;
+            }
+            finished = true;
+            loadTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        }
+        cache.loadFinished(this);
+    }
+
+    /**
+     * The replies received so far for a node
+     */
+    private static class PendingNode
+    {
+        private int remaining;
+        private int resultCode = KeeperException.Code.OK.intValue();
+        private byte[] data;
+        private Stat dataStat;
+        private Stat childrenStat;
+        private List<String> children = Collections.emptyList();
+
+        PendingNode(int remaining)
+        {
+            this.remaining = remaining;
+        }
+
+        void apply(CuratorEvent event)
+        {
+            remaining--;
+            if ( event.getResultCode() != KeeperException.Code.OK.intValue() )
+            {
+                resultCode = event.getResultCode();
+            }
+            else if ( event.getType() == CuratorEventType.GET_DATA )
+            {
+                data = event.getData();
+                dataStat = event.getStat();
+            }
+            else if ( event.getType() == CuratorEventType.CHILDREN )
+            {
+                children = event.getChildren();
+                childrenStat = event.getStat();
+            }
+        }
+    }
+}
@@ -96,8 +96,17 @@ public class TreeCache implements Closeable
 
     private final AtomicReference<Map<String, ChildData>> initialSet = new AtomicReference<Map<String, ChildData>>();
 
+    private volatile LoadMode loadMode = LoadMode.SYNCHRONOUS;
+    private volatile int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+    private volatile PipelinedTreeLoader loader;
+    // guarded by this; the initialized event waits for the loader and for the nodes it failed to read
+    private boolean postInitializedEvent;
+    private boolean loaderFinished;
+    private int pendingSubtreeLoads;
+
     private static final ChildData NULL_CHILD_DATA = new ChildData(null, null, null);
     private static final String CHILD_OF_ZNODE_PATTERN = "%s/[^ /]*";
+    private static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 100;
 
     private final Watcher watcher = new Watcher() {
         @Override
@@ -278,6 +287,56 @@ public class TreeCache implements Closeable
         POST_INITIALIZED_EVENT
     }
 
+    /**
+     * Method of loading the tree when the cache is started with {@link StartMode#NORMAL} or
+     * {@link StartMode#POST_INITIALIZED_EVENT}
+     */
+    public enum LoadMode
+    {
+        /**
+         * the nodes are read one at a time by the background thread of the cache
+         */
+        SYNCHRONOUS,
+
+        /**
+         * the nodes are read with background requests, keeping many requests in flight at the same
+         * time, which is much faster on an ensemble with a high latency
+         */
+        PIPELINED
+    }
+
+    /**
+     * Sets how the tree is loaded when the cache is started. This must be called before {@link #start(StartMode)}.
+     *
+     * @param loadMode            the method of loading the tree
+     * @param maxInFlightRequests the maximum number of requests in flight at the same time when pipelined
+     */
+    public void setLoadMode(LoadMode loadMode, int maxInFlightRequests)
+    {
+        Preconditions.checkArgument(maxInFlightRequests > 0, "maxInFlightRequests must be positive");
+        this.loadMode = Preconditions.checkNotNull(loadMode, "loadMode cannot be null");
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    /**
+     * Returns the time in milliseconds the pipelined load of the tree took, or -1 if the tree was not loaded
+     * pipelined or the load has not finished yet
+     */
+    public long getLoadTime()
+    {
+        PipelinedTreeLoader current = loader;
+        return current != null ? current.getLoadTime() : -1;
+    }
+
+    /**
+     * Returns the largest number of requests in flight at the same time during the pipelined load of the tree
+     */
+    public int getPeakInFlightRequests()
+    {
+        PipelinedTreeLoader current = loader;
+        return current != null ? current.getPeakInFlightRequests() : 0;
+    }
+
     /**
      * Start the cache. The cache is not started automatically. You must call this method.
      *
@@ -306,7 +365,14 @@ public class TreeCache implements Closeable
         {
             case NORMAL:
             {
-                offerOperation(new TreeRefreshOperation(this, path, RefreshMode.STANDARD));
+                if ( loadMode == LoadMode.PIPELINED )
+                {
+                    offerOperation(new TreeLoadOperation(this, path));
+                }
+                else
+                {
+                    offerOperation(new TreeRefreshOperation(this, path, RefreshMode.STANDARD));
+                }
                 break;
             }
 
@@ -318,8 +384,20 @@ public class TreeCache implements Closeable
 
             case POST_INITIALIZED_EVENT:
             {
-                initialSet.set(Maps.<String, ChildData>newConcurrentMap());
-                offerOperation(new TreeRefreshOperation(this, path, RefreshMode.POST_INITIALIZED));
+                if ( loadMode == LoadMode.PIPELINED )
+                {
+                    // the event is sent once the loader has finished
+                    synchronized ( this )
+                    {
+                        postInitializedEvent = true;
+                    }
+                    offerOperation(new TreeLoadOperation(this, path));
+                }
+                else
+                {
+                    initialSet.set(Maps.<String, ChildData>newConcurrentMap());
+                    offerOperation(new TreeRefreshOperation(this, path, RefreshMode.POST_INITIALIZED));
+                }
                 break;
             }
         }
@@ -375,6 +453,34 @@ public class TreeCache implements Closeable
         offerOperation(new TreeRefreshOperation(this, path, RefreshMode.FORCE_GET_DATA_AND_STAT));
     }
 
+    /**
+     * NOTE: this is a BLOCKING method. Reads the given node and updates the cache straight away rather than
+     * waiting for the watcher to fire, so that a change made by this client is visible to the readers of the
+     * cache as soon as this method returns. The node does not have to be below the path of the cache. Events
+     * are sent to the listeners as usual.
+     *
+     * @param fullPath full path of the node to refresh
+     * @throws Exception errors
+     */
+    public void refreshNode(String fullPath) throws Exception
+    {
+        Preconditions.checkState(!executorService.isShutdown(), "cache has been closed");
+
+        try
+        {
+            if ( client.checkExists().forPath(fullPath) != null )
+            {
+                getDataAndStat(fullPath);
+                return;
+            }
+        }
+        catch ( KeeperException.NoNodeException ignore )
+        {
+            // deleted in the meantime
+        }
+        remove(fullPath);
+    }
+
     /**
      * Close/end the cache
      *
@@ -525,6 +631,119 @@ public class TreeCache implements Closeable
         updateIfNeeded(path, stat, children);
     }
 
+    void load(final String path) throws Exception
+    {
+        ensurePath.ensure(client.getZookeeperClient());
+        PipelinedTreeLoader current = new PipelinedTreeLoader(this, client, watcher, cacheData, dataIsCompressed, maxInFlightRequests);
+        loader = current;
+        current.load(path);
+    }
+
+    /**
+     * Applies a node read by the pipelined loader, unless the node has already been read since, in which case the
+     * data in the cache is at least as recent
+     */
+    void applyLoadedData(String fullPath, Stat stat, byte[] bytes, List<String> children)
+    {
+        synchronized ( this )
+        {
+            if ( currentData.getIfPresent(fullPath) == null )
+            {
+                applyNewData(fullPath, KeeperException.Code.OK.intValue(), stat, cacheData ? bytes : null, children);
+            }
+        }
+    }
+
+    /**
+     * Reads the given node and all the nodes below it the synchronous way on the background thread; used when the
+     * pipelined loader fails to read a node. The initialized event is not sent before these loads have finished.
+     */
+    void refreshInBackground(String fullPath)
+    {
+        synchronized ( this )
+        {
+            pendingSubtreeLoads++;
+        }
+        offerOperation(new TreeSubtreeLoadOperation(this, fullPath));
+    }
+
+    void loadSubtree(String fullPath)
+    {
+        try
+        {
+            internalLoadSubtree(fullPath);
+        }
+        catch ( Exception e )
+        {
+            handleException(e);
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                pendingSubtreeLoads--;
+            }
+            maybePostInitializedEvent();
+        }
+    }
+
+    private void internalLoadSubtree(String fullPath) throws Exception
+    {
+        try
+        {
+            getDataAndStat(fullPath);
+        }
+        catch ( KeeperException.NoNodeException ignore )
+        {
+            // deleted in the meantime
+            remove(fullPath);
+            return;
+        }
+        TreeData data = currentData.getIfPresent(fullPath);
+        if ( data != null )
+        {
+            List<String> children;
+            synchronized ( this )
+            {
+                children = new ArrayList<String>(data.getChildren());
+            }
+            for ( String child : children )
+            {
+                internalLoadSubtree(ZKPaths.makePath(fullPath, child));
+            }
+        }
+    }
+
+    void loadFinished(PipelinedTreeLoader finished)
+    {
+        log.info("Loaded {} nodes below {} in {} ms with at most {} requests in flight, {} nodes left to the synchronous refresh",
+                finished.getLoadedNodes(), path, finished.getLoadTime(), finished.getPeakInFlightRequests(), finished.getFailedNodes());
+        synchronized ( this )
+        {
+            loaderFinished = true;
+        }
+        maybePostInitializedEvent();
+    }
+
+    private void maybePostInitializedEvent()
+    {
+        synchronized ( this )
+        {
+            if ( !postInitializedEvent || !loaderFinished || pendingSubtreeLoads > 0 )
+            {
+                return;
+            }
+            postInitializedEvent = false;
+        }
+        Map<String, ChildData> localInitialSet = Maps.newConcurrentMap();
+        for ( TreeData data : currentData.asMap().values() )
+        {
+            localInitialSet.put(data.getPath(), data);
+        }
+        initialSet.set(localInitialSet);
+        maybeOfferInitializedEvent(localInitialSet);
+    }
+
     void callListeners(final PathChildrenCacheEvent event)
     {
         listeners.forEach
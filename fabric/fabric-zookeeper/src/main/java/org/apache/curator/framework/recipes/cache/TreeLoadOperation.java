@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import com.google.common.base.Preconditions;
+
+class TreeLoadOperation implements Operation
+{
+    private final TreeCache cache;
+    private final String path;
+
+    TreeLoadOperation(TreeCache cache, String path)
+    {
+        this.cache = Preconditions.checkNotNull(cache, "cache");
+        this.path = Preconditions.checkNotNull(path, "path");
+    }
+
+    @Override
+    public void invoke() throws Exception
+    {
+        cache.load(path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TreeLoadOperation that = (TreeLoadOperation) o;
+
+        return path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoadOperation(" + path + "){}";
+    }
+}
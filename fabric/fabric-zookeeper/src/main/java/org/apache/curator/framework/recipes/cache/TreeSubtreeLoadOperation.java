@@ -0,0 +1,47 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Loads a node the pipelined loader failed to read, and all the nodes below it, in a single operation. Every
+ * operation is counted by the cache until it has run, so it must not be merged with an equal one; equals is
+ * therefore left to identity.
+ */
+class TreeSubtreeLoadOperation implements Operation
+{
+    private final TreeCache cache;
+    private final String fullPath;
+
+    TreeSubtreeLoadOperation(TreeCache cache, String fullPath)
+    {
+        this.cache = Preconditions.checkNotNull(cache, "cache");
+        this.fullPath = Preconditions.checkNotNull(fullPath, "fullPath");
+    }
+
+    @Override
+    public void invoke() throws Exception
+    {
+        cache.loadSubtree(fullPath);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SubtreeLoadOperation(" + fullPath + "){}";
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import io.fabric8.common.util.Files;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedTreeLoaderTest {
+
+    private static final String ROOT = "/tree-cache";
+    private static final int BRANCHES = 5;
+    private static final int NODES_PER_BRANCH = 20;
+    private static final int WINDOW = 50;
+    private static final long TIMEOUT = 30;
+
+    private File directory;
+    private NIOServerCnxnFactory cnxnFactory;
+    private CuratorFramework curator;
+    // changes the tree while the cache is loading it
+    private CuratorFramework other;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("tree-cache", "");
+        directory.delete();
+        int port = findFreePort();
+        cnxnFactory = startZooKeeper(port);
+        curator = connect(port);
+        other = connect(port);
+        executor = Executors.newSingleThreadExecutor();
+
+        curator.create().forPath(ROOT, "root".getBytes("UTF-8"));
+        for (int i = 0; i < BRANCHES; i++) {
+            String branch = getBranch(i);
+            curator.create().forPath(branch, ("branch " + i).getBytes("UTF-8"));
+            for (int j = 0; j < NODES_PER_BRANCH; j++) {
+                curator.create().forPath(branch + "/node" + j, ("node " + j).getBytes("UTF-8"));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        other.close();
+        curator.close();
+        cnxnFactory.shutdown();
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testPipelinedLoadIsTheSameAsSynchronousLoad() throws Exception {
+        Map<String, String> expected = readTree(ROOT);
+
+        TreeCache cache = new TreeCache(curator, ROOT, true, false, true, executor);
+        try {
+            cache.setLoadMode(TreeCache.LoadMode.SYNCHRONOUS, WINDOW);
+            cache.start(TreeCache.StartMode.NORMAL);
+            // the synchronous refresh only caches the nodes below the root
+            Map<String, String> belowRoot = new TreeMap<String, String>(expected);
+            belowRoot.remove(ROOT);
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+            while (!belowRoot.equals(toMapBelowRoot(cache)) && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(belowRoot, toMapBelowRoot(cache));
+        } finally {
+            cache.close();
+        }
+
+        executor = Executors.newSingleThreadExecutor();
+        cache = new TreeCache(curator, ROOT, true, false, true, executor);
+        try {
+            cache.setLoadMode(TreeCache.LoadMode.PIPELINED, WINDOW);
+            assertEquals(expected, toMap(startAndAwaitInitialized(cache)));
+            assertEquals(expected, toMap(cache.getCurrentData()));
+            assertTrue(cache.getLoadTime() >= 0);
+            assertTrue(cache.getPeakInFlightRequests() <= WINDOW);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testNodeDeletedDuringTheLoad() throws Exception {
+        final AtomicReference<String> deleted = new AtomicReference<String>();
+        TreeCache cache = new TreeCache(curator, ROOT, true, false, true, executor) {
+            @Override
+            void applyLoadedData(String fullPath, Stat stat, byte[] bytes, List<String> children) {
+                super.applyLoadedData(fullPath, stat, bytes, children);
+                // with a window of one node the loader has not sent the requests of the other branches yet
+                if (isBranch(fullPath) && deleted.compareAndSet(null, getOtherBranch(fullPath))) {
+                    try {
+                        deleteSafe(other, deleted.get());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        };
+        try {
+            cache.setLoadMode(TreeCache.LoadMode.PIPELINED, 2);
+            Map<String, String> initialData = toMap(startAndAwaitInitialized(cache));
+            assertNotNull(deleted.get());
+            Map<String, String> expected = readTree(ROOT);
+            assertFalse(expected.containsKey(deleted.get()));
+            assertEquals(expected, initialData);
+            assertEquals(1 + (BRANCHES - 1) * (NODES_PER_BRANCH + 1), initialData.size());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadOfANodeTheLoaderHasNotReached() throws Exception {
+        final AtomicReference<String> notReached = new AtomicReference<String>();
+        final CountDownLatch reached = new CountDownLatch(1);
+        final CountDownLatch read = new CountDownLatch(1);
+        TreeCache cache = new TreeCache(curator, ROOT, true, false, true, executor) {
+            @Override
+            void applyLoadedData(String fullPath, Stat stat, byte[] bytes, List<String> children) {
+                super.applyLoadedData(fullPath, stat, bytes, children);
+                // hold the loader on the first branch until another branch has been read by the test
+                if (isBranch(fullPath) && notReached.compareAndSet(null, getOtherBranch(fullPath))) {
+                    reached.countDown();
+                    try {
+                        read.await(TIMEOUT, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        try {
+            Map<String, String> expected = readTree(ROOT);
+            cache.setLoadMode(TreeCache.LoadMode.PIPELINED, 2);
+            AtomicReference<List<ChildData>> initialData = listenForInitialized(cache);
+            cache.start(TreeCache.StartMode.POST_INITIALIZED_EVENT);
+            assertTrue(reached.await(TIMEOUT, TimeUnit.SECONDS));
+            TreeData data = cache.getCurrentData(notReached.get());
+            read.countDown();
+            assertNotNull(data);
+            assertEquals(expected.get(notReached.get()), toString(data.getData()));
+            assertEquals(NODES_PER_BRANCH, data.getChildren().size());
+
+            awaitInitialized(initialData);
+            // the children of the node read by the test are loaded all the same
+            assertEquals(expected, toMap(initialData.get()));
+            assertEquals(expected, toMap(cache.getCurrentData()));
+        } finally {
+            read.countDown();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testInitializedEventWaitsForTheFallbackOfAFailedNode() throws Exception {
+        final String failing = getBranch(2);
+        // the node can not be read until the loader has failed to read it once
+        curator.setACL().withACL(Collections.singletonList(new ACL(ZooDefs.Perms.ALL & ~ZooDefs.Perms.READ, ZooDefs.Ids.ANYONE_ID_UNSAFE))).forPath(failing);
+        final CountDownLatch failed = new CountDownLatch(1);
+        TreeCache cache = new TreeCache(curator, ROOT, true, false, true, executor) {
+            @Override
+            protected void handleException(Throwable e) {
+                if (e instanceof KeeperException.NoAuthException && failing.equals(((KeeperException) e).getPath())) {
+                    try {
+                        other.setACL().withACL(ZooDefs.Ids.OPEN_ACL_UNSAFE).forPath(failing);
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                    failed.countDown();
+                } else {
+                    super.handleException(e);
+                }
+            }
+        };
+        try {
+            cache.setLoadMode(TreeCache.LoadMode.PIPELINED, WINDOW);
+            Map<String, String> initialData = toMap(startAndAwaitInitialized(cache));
+            assertEquals(0, failed.getCount());
+            // the failed node and all the nodes below it are loaded by the fallback before the event is sent
+            assertEquals(readTree(ROOT), initialData);
+            assertEquals("branch 2", initialData.get(failing));
+            assertEquals("node 0", initialData.get(failing + "/node0"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    private List<ChildData> startAndAwaitInitialized(TreeCache cache) throws Exception {
+        AtomicReference<List<ChildData>> initialData = listenForInitialized(cache);
+        cache.start(TreeCache.StartMode.POST_INITIALIZED_EVENT);
+        return awaitInitialized(initialData);
+    }
+
+    private static AtomicReference<List<ChildData>> listenForInitialized(TreeCache cache) {
+        final AtomicReference<List<ChildData>> initialData = new AtomicReference<List<ChildData>>();
+        cache.getListenable().addListener(new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                if (event.getType() == PathChildrenCacheEvent.Type.INITIALIZED) {
+                    synchronized (initialData) {
+                        assertTrue("a single initialized event", initialData.compareAndSet(null, event.getInitialData()));
+                        initialData.notifyAll();
+                    }
+                }
+            }
+        });
+        return initialData;
+    }
+
+    private static List<ChildData> awaitInitialized(AtomicReference<List<ChildData>> initialData) throws Exception {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        synchronized (initialData) {
+            while (initialData.get() == null && System.currentTimeMillis() < end) {
+                initialData.wait(100);
+            }
+        }
+        assertNotNull("initialized event", initialData.get());
+        return initialData.get();
+    }
+
+    private Map<String, String> readTree(String path) throws Exception {
+        Map<String, String> answer = new TreeMap<String, String>();
+        readTree(answer, path);
+        return answer;
+    }
+
+    private void readTree(Map<String, String> answer, String path) throws Exception {
+        answer.put(path, toString(curator.getData().forPath(path)));
+        for (String child : curator.getChildren().forPath(path)) {
+            readTree(answer, path + "/" + child);
+        }
+    }
+
+    private static Map<String, String> toMap(List<? extends ChildData> nodes) throws Exception {
+        Map<String, String> answer = new TreeMap<String, String>();
+        for (ChildData node : nodes) {
+            answer.put(node.getPath(), toString(node.getData()));
+        }
+        return answer;
+    }
+
+    private static String toString(byte[] data) throws Exception {
+        return data != null ? new String(data, "UTF-8") : null;
+    }
+
+    private static Map<String, String> toMapBelowRoot(TreeCache cache) throws Exception {
+        Map<String, String> answer = toMap(cache.getCurrentData());
+        answer.remove(ROOT);
+        return answer;
+    }
+
+    private static String getBranch(int i) {
+        return ROOT + "/branch" + i;
+    }
+
+    private static boolean isBranch(String fullPath) {
+        return fullPath.startsWith(ROOT + "/branch") && fullPath.indexOf('/', ROOT.length() + 1) < 0;
+    }
+
+    /**
+     * Returns a branch other than the given one; the loader reads the branches in the order of the children of the
+     * root, which is not sorted
+     */
+    private static String getOtherBranch(String branch) {
+        return branch.equals(getBranch(0)) ? getBranch(1) : getBranch(0);
+    }
+
+    private static CuratorFramework connect(int port) throws Exception {
+        CuratorFramework answer = CuratorFrameworkFactory.builder()
+            .connectString("localhost:" + port)
+            .retryPolicy(new RetryOneTime(1000))
+            .build();
+        answer.start();
+        answer.getZookeeperClient().blockUntilConnectedOrTimedOut();
+        return answer;
+    }
+
+    private int findFreePort() throws Exception {
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+        return port;
+    }
+
+    private NIOServerCnxnFactory startZooKeeper(int port) throws Exception {
+        ZooKeeperServer zkServer = new ZooKeeperServer();
+        zkServer.setTxnLogFactory(new FileTxnSnapLog(new File(directory, "log"), new File(directory, "data")));
+        zkServer.setTickTime(ZooKeeperServer.DEFAULT_TICK_TIME);
+        NIOServerCnxnFactory cnxnFactory = new NIOServerCnxnFactory();
+        cnxnFactory.configure(new InetSocketAddress("localhost", port), 60);
+        cnxnFactory.startup(zkServer);
+        return cnxnFactory;
+    }
+}
@@ -0,0 +1,477 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency and outcome of the calls made through a gateway per mapped route and back end service.
+ * <p/>
+ * Recording is cheap enough to do for every call on the event loop; each thread records into its own
+ * {@link LatencyHistogram} so there is no contention or allocation on the hot path. The histograms are periodically
+ * aggregated on a background thread into {@link RouteStatistics} which are exposed via JMX and JSON.
+ * <p/>
+ * As routes and back ends come and go, the histograms of a route and back end without calls for longer than the
+ * idle timeout are evicted when aggregating, as are the least recently used ones once there are more than the
+ * maximum number of histograms. The calls of the evicted histograms are added to totals which are kept, so the
+ * total number of calls and errors and the time of the last call never go back.
+ */
+public class CallMetrics {
+    private static final transient Logger LOG = LoggerFactory.getLogger(CallMetrics.class);
+
+    /**
+     * The route used for requests which did not match any mapping rule
+     */
+    public static final String UNMAPPED_ROUTE = "<unmapped>";
+    /**
+     * The back end used for requests which were not proxied to a service
+     */
+    public static final String NO_BACKEND = "<none>";
+
+    public static final long DEFAULT_AGGREGATION_INTERVAL = 5000L;
+    public static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_RECORDERS = 1000;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteRecorder>> routes = new ConcurrentHashMap<String, ConcurrentMap<String, RouteRecorder>>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private long aggregationInterval = DEFAULT_AGGREGATION_INTERVAL;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private int maxRecorders = DEFAULT_MAX_RECORDERS;
+    private volatile ScheduledExecutorService executor;
+    private volatile Snapshot snapshot = new Snapshot(Collections.<RouteStatistics>emptyList(), new Totals());
+    // the calls recorded by the evicted recorders; only updated while holding the lock of this
+    private volatile Totals evicted = new Totals();
+
+    @Override
+    public String toString() {
+        return "CallMetrics{" +
+                "routes=" + routes.size() +
+                ", aggregationInterval=" + aggregationInterval +
+                '}';
+    }
+
+    /**
+     * Starts aggregating the recorded calls in the background
+     */
+    public synchronized void start() {
+        if (executor == null && aggregationInterval > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "gateway-call-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        aggregate();
+                    } catch (Throwable e) {
+                        LOG.warn("Failed to aggregate call metrics: " + e, e);
+                    }
+                }
+            }, aggregationInterval, aggregationInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Records a call via the given route to the given back end which took the given number of nanoseconds
+     */
+    public void record(String route, String backend, long latencyNanos, boolean error) {
+        getRecorder(route != null ? route : UNMAPPED_ROUTE, backend != null ? backend : NO_BACKEND)
+                .getHistogram().recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos), error);
+    }
+
+    /**
+     * Evicts the idle histograms and aggregates the histograms of all the threads into a new snapshot of the statistics
+     */
+    public synchronized void aggregate() {
+        evict(System.currentTimeMillis());
+        List<RouteStatistics> statistics = new ArrayList<RouteStatistics>();
+        for (Map.Entry<String, ConcurrentMap<String, RouteRecorder>> route : routes.entrySet()) {
+            for (Map.Entry<String, RouteRecorder> backend : route.getValue().entrySet()) {
+                statistics.add(backend.getValue().createStatistics(route.getKey(), backend.getKey()));
+            }
+        }
+        snapshot = new Snapshot(Collections.unmodifiableList(statistics), evicted);
+    }
+
+    /**
+     * Removes the recorders of the routes and back ends which have not been called for longer than the idle timeout
+     * and then the least recently called ones until there are at most the maximum number of recorders; a call
+     * recorded concurrently with the eviction of its recorder may not be included in the statistics. The calls of
+     * the evicted recorders are added to the evicted totals.
+     */
+    protected synchronized void evict(long now) {
+        List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>();
+        for (Map.Entry<String, ConcurrentMap<String, RouteRecorder>> route : routes.entrySet()) {
+            ConcurrentMap<String, RouteRecorder> backends = route.getValue();
+            for (Map.Entry<String, RouteRecorder> backend : backends.entrySet()) {
+                RouteRecorder recorder = backend.getValue();
+                long lastUsed = recorder.getLastUsed();
+                if (idleTimeout > 0 && now - lastUsed > idleTimeout) {
+                    remove(backends, backend.getKey(), recorder);
+                } else {
+                    candidates.add(new EvictionCandidate(backends, backend.getKey(), recorder, lastUsed));
+                }
+            }
+        }
+        if (maxRecorders > 0 && candidates.size() > maxRecorders) {
+            Collections.sort(candidates, new Comparator<EvictionCandidate>() {
+                @Override
+                public int compare(EvictionCandidate c1, EvictionCandidate c2) {
+                    return c1.lastUsed < c2.lastUsed ? -1 : (c1.lastUsed == c2.lastUsed ? 0 : 1);
+                }
+            });
+            for (EvictionCandidate candidate : candidates.subList(0, candidates.size() - maxRecorders)) {
+                remove(candidate.backends, candidate.backend, candidate.recorder);
+            }
+        }
+        for (Map.Entry<String, ConcurrentMap<String, RouteRecorder>> route : routes.entrySet()) {
+            if (route.getValue().isEmpty()) {
+                routes.remove(route.getKey(), route.getValue());
+            }
+        }
+    }
+
+    private void remove(ConcurrentMap<String, RouteRecorder> backends, String backend, RouteRecorder recorder) {
+        // add the calls to the evicted totals first so the time of the last call never goes back
+        evicted = evicted.add(recorder.getTotals());
+        backends.remove(backend, recorder);
+    }
+
+    /**
+     * Returns the number of routes and back ends which currently have a histogram
+     */
+    public int getRecorderCount() {
+        int answer = 0;
+        for (ConcurrentMap<String, RouteRecorder> backends : routes.values()) {
+            answer += backends.size();
+        }
+        return answer;
+    }
+
+    /**
+     * Resets the statistics so that only calls recorded from now on are included
+     */
+    public synchronized void reset() {
+        for (ConcurrentMap<String, RouteRecorder> backends : routes.values()) {
+            for (RouteRecorder recorder : backends.values()) {
+                recorder.reset();
+            }
+        }
+        evicted = new Totals(0, 0, 0, evicted.lastCallTime);
+        aggregate();
+    }
+
+    /**
+     * Returns the statistics of each route and back end as of the last aggregation
+     */
+    public List<RouteStatistics> getRouteStatistics() {
+        if (executor == null) {
+            // we are not aggregating in the background so lets make sure the statistics are up to date
+            aggregate();
+        }
+        return snapshot.statistics;
+    }
+
+    /**
+     * Returns the statistics of each route and back end as a JSON array
+     */
+    public String getRouteStatisticsJson() throws IOException {
+        return mapper.writeValueAsString(getRouteStatistics());
+    }
+
+    /**
+     * Returns the total number of calls as of the last aggregation
+     */
+    public long getCount() {
+        getRouteStatistics();
+        return snapshot.count;
+    }
+
+    /**
+     * Returns the total number of failed calls as of the last aggregation
+     */
+    public long getErrorCount() {
+        getRouteStatistics();
+        return snapshot.errorCount;
+    }
+
+    /**
+     * Returns the mean latency of all calls in nanoseconds as of the last aggregation
+     */
+    public long getMeanLatencyNanos() {
+        getRouteStatistics();
+        return snapshot.meanNanos;
+    }
+
+    /**
+     * Returns the time in milliseconds of the last call or 0 if there have not been any calls
+     */
+    public long getLastCallTime() {
+        long answer = evicted.lastCallTime;
+        for (ConcurrentMap<String, RouteRecorder> backends : routes.values()) {
+            for (RouteRecorder recorder : backends.values()) {
+                answer = Math.max(answer, recorder.getLastCallTime());
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of milliseconds between aggregations of the recorded calls
+     */
+    public long getAggregationInterval() {
+        return aggregationInterval;
+    }
+
+    public void setAggregationInterval(long aggregationInterval) {
+        this.aggregationInterval = aggregationInterval;
+    }
+
+    /**
+     * Returns the number of milliseconds without calls after which the histogram of a route and back end
+     * is evicted or 0 to keep them until there are too many
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the maximum number of routes and back ends whose calls are recorded or 0 for no limit
+     */
+    public int getMaxRecorders() {
+        return maxRecorders;
+    }
+
+    public void setMaxRecorders(int maxRecorders) {
+        this.maxRecorders = maxRecorders;
+    }
+
+    protected RouteRecorder getRecorder(String route, String backend) {
+        ConcurrentMap<String, RouteRecorder> backends = routes.get(route);
+        if (backends == null) {
+            ConcurrentMap<String, RouteRecorder> newBackends = new ConcurrentHashMap<String, RouteRecorder>();
+            backends = routes.putIfAbsent(route, newBackends);
+            if (backends == null) {
+                backends = newBackends;
+            }
+        }
+        RouteRecorder answer = backends.get(backend);
+        if (answer == null) {
+            RouteRecorder newRecorder = new RouteRecorder();
+            answer = backends.putIfAbsent(backend, newRecorder);
+            if (answer == null) {
+                answer = newRecorder;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Records the calls of a single route and back end with a histogram per recording thread
+     */
+    protected static class RouteRecorder {
+        private final List<LatencyHistogram> histograms = new CopyOnWriteArrayList<LatencyHistogram>();
+        private final ThreadLocal<LatencyHistogram> threadHistogram = new ThreadLocal<LatencyHistogram>() {
+            @Override
+            protected LatencyHistogram initialValue() {
+                LatencyHistogram histogram = new LatencyHistogram();
+                histograms.add(histogram);
+                return histogram;
+            }
+        };
+        private final long created = System.currentTimeMillis();
+        private volatile Baseline baseline = new Baseline(new long[LatencyHistogram.BUCKET_COUNT], 0, 0, 0);
+
+        LatencyHistogram getHistogram() {
+            return threadHistogram.get();
+        }
+
+        long getLastCallTime() {
+            long answer = 0;
+            for (LatencyHistogram histogram : histograms) {
+                answer = Math.max(answer, histogram.getLastRecordTime());
+            }
+            return answer;
+        }
+
+        /**
+         * Returns the time of the last call or of the creation of the recorder if there has not been a call yet
+         */
+        long getLastUsed() {
+            return Math.max(created, getLastCallTime());
+        }
+
+        synchronized void reset() {
+            baseline = createBaseline();
+        }
+
+        /**
+         * Returns the totals of the calls recorded since the last reset
+         */
+        synchronized Totals getTotals() {
+            Baseline current = createBaseline();
+            Baseline start = baseline;
+            return new Totals(current.count - start.count, current.errorCount - start.errorCount,
+                    current.totalMicros - start.totalMicros, getLastCallTime());
+        }
+
+        synchronized RouteStatistics createStatistics(String route, String backend) {
+            Baseline current = createBaseline();
+            Baseline start = baseline;
+            long[] buckets = current.buckets;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] -= start.buckets[i];
+            }
+            long count = current.count - start.count;
+            long errorCount = current.errorCount - start.errorCount;
+            long totalMicros = current.totalMicros - start.totalMicros;
+            return new RouteStatistics(route, backend, count, errorCount, count > 0 ? totalMicros / count : 0,
+                    LatencyHistogram.valueAtPercentile(buckets, 50.0),
+                    LatencyHistogram.valueAtPercentile(buckets, 99.0),
+                    LatencyHistogram.valueAtPercentile(buckets, 99.9),
+                    LatencyHistogram.valueAtPercentile(buckets, 100.0));
+        }
+
+        private Baseline createBaseline() {
+            long[] buckets = new long[LatencyHistogram.BUCKET_COUNT];
+            long count = 0;
+            long errorCount = 0;
+            long totalMicros = 0;
+            for (LatencyHistogram histogram : histograms) {
+                // read the count first; the buckets may then include a few more calls which is fine for reporting
+                count += histogram.getCount();
+                errorCount += histogram.getErrorCount();
+                totalMicros += histogram.getTotalMicros();
+                histogram.addTo(buckets);
+            }
+            return new Baseline(buckets, count, errorCount, totalMicros);
+        }
+    }
+
+    private static class EvictionCandidate {
+        private final ConcurrentMap<String, RouteRecorder> backends;
+        private final String backend;
+        private final RouteRecorder recorder;
+        private final long lastUsed;
+
+        EvictionCandidate(ConcurrentMap<String, RouteRecorder> backends, String backend, RouteRecorder recorder, long lastUsed) {
+            this.backends = backends;
+            this.backend = backend;
+            this.recorder = recorder;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * The cumulative counts of a recorder at a point in time
+     */
+    private static class Baseline {
+        private final long[] buckets;
+        private final long count;
+        private final long errorCount;
+        private final long totalMicros;
+
+        Baseline(long[] buckets, long count, long errorCount, long totalMicros) {
+            this.buckets = buckets;
+            this.count = count;
+            this.errorCount = errorCount;
+            this.totalMicros = totalMicros;
+        }
+    }
+
+    /**
+     * The totals of the calls of some recorders
+     */
+    private static class Totals {
+        private final long count;
+        private final long errorCount;
+        private final long totalMicros;
+        private final long lastCallTime;
+
+        Totals() {
+            this(0, 0, 0, 0);
+        }
+
+        Totals(long count, long errorCount, long totalMicros, long lastCallTime) {
+            this.count = count;
+            this.errorCount = errorCount;
+            this.totalMicros = totalMicros;
+            this.lastCallTime = lastCallTime;
+        }
+
+        Totals add(Totals totals) {
+            return new Totals(count + totals.count, errorCount + totals.errorCount, totalMicros + totals.totalMicros,
+                    Math.max(lastCallTime, totals.lastCallTime));
+        }
+    }
+
+    /**
+     * The aggregated statistics of all the routes
+     */
+    private static class Snapshot {
+        private final List<RouteStatistics> statistics;
+        private final long count;
+        private final long errorCount;
+        private final long meanNanos;
+
+        Snapshot(List<RouteStatistics> statistics, Totals evicted) {
+            this.statistics = statistics;
+            long count = evicted.count;
+            long errorCount = evicted.errorCount;
+            long totalMicros = evicted.totalMicros;
+            for (RouteStatistics routeStatistics : statistics) {
+                count += routeStatistics.getCount();
+                errorCount += routeStatistics.getErrorCount();
+                totalMicros += routeStatistics.getMeanMicros() * routeStatistics.getCount();
+            }
+            this.count = count;
+            this.errorCount = errorCount;
+            this.meanNanos = count > 0 ? TimeUnit.MICROSECONDS.toNanos(totalMicros / count) : 0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.ReadStream;
+import org.vertx.java.core.streams.WriteStream;
+
+/**
+ * Pumps data from a {@link ReadStream} to a {@link WriteStream} pausing the read stream whenever
+ * the write queue of the write stream is full and resuming it once the write stream has drained,
+ * so that a slow consumer cannot make the gateway buffer an unbounded amount of data.
+ * <p/>
+ * This is similar to {@link org.vertx.java.core.streams.Pump} but it only resumes the read stream if this
+ * pump paused it and it records how often and for how long the read stream was paused in a {@link PumpStatistics}.
+ */
+public class FlowControlledPump {
+    /**
+     * The default maximum number of bytes queued on a write stream before the read stream is paused
+     */
+    public static final int DEFAULT_WRITE_QUEUE_MAX_SIZE = 64 * 1024;
+
+    private final ReadStream<?> readStream;
+    private final WriteStream<?> writeStream;
+    private final PumpStatistics statistics;
+    private StripedCounter[] byteCounters = new StripedCounter[0];
+    // only written by the event loop of the streams but may be read by JMX
+    private volatile long bytesPumped;
+    private boolean paused;
+    private long pausedAt;
+
+    private final Handler<Void> drainHandler = new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+            if (paused) {
+                paused = false;
+                if (statistics != null) {
+                    statistics.resumed(System.nanoTime() - pausedAt);
+                }
+                readStream.resume();
+            }
+        }
+    };
+
+    private final Handler<Buffer> dataHandler = new Handler<Buffer>() {
+        @Override
+        public void handle(Buffer buffer) {
+            writeStream.write(buffer);
+            bytesPumped += buffer.length();
+            if (statistics != null) {
+                statistics.pumped(buffer.length());
+            }
+            for (StripedCounter byteCounter : byteCounters) {
+                byteCounter.add(buffer.length());
+            }
+            if (!paused && writeStream.writeQueueFull()) {
+                paused = true;
+                pausedAt = System.nanoTime();
+                if (statistics != null) {
+                    statistics.paused();
+                }
+                readStream.pause();
+                writeStream.drainHandler(drainHandler);
+            }
+        }
+    };
+
+    public FlowControlledPump(ReadStream<?> readStream, WriteStream<?> writeStream, int writeQueueMaxSize, PumpStatistics statistics) {
+        this.readStream = readStream;
+        this.writeStream = writeStream;
+        this.statistics = statistics;
+        if (writeQueueMaxSize > 0) {
+            writeStream.setWriteQueueMaxSize(writeQueueMaxSize);
+        }
+    }
+
+    /**
+     * Creates and starts a pump from the read stream to the write stream
+     */
+    public static FlowControlledPump pump(ReadStream<?> readStream, WriteStream<?> writeStream, int writeQueueMaxSize, PumpStatistics statistics) {
+        FlowControlledPump answer = new FlowControlledPump(readStream, writeStream, writeQueueMaxSize, statistics);
+        answer.start();
+        return answer;
+    }
+
+    @Override
+    public String toString() {
+        return "FlowControlledPump{" +
+                "bytesPumped=" + bytesPumped +
+                ", paused=" + paused +
+                '}';
+    }
+
+    public void start() {
+        readStream.dataHandler(dataHandler);
+    }
+
+    public void stop() {
+        readStream.dataHandler(null);
+        writeStream.drainHandler(null);
+        drainHandler.handle(null);
+    }
+
+    /**
+     * Sets the counters which should also count the bytes pumped, such as the counters of the virtual host
+     * and the protocol of the connection; must be called before the pump is started
+     */
+    public void setByteCounters(StripedCounter... byteCounters) {
+        this.byteCounters = byteCounters;
+    }
+
+    public long getBytesPumped() {
+        return bytesPumped;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of latencies in microseconds using log linear buckets in the style of HdrHistogram;
+ * each power of two range is split into {@link #SUB_BUCKET_COUNT} linear buckets so values are recorded with
+ * a relative precision of about 3% without allocating.
+ * <p/>
+ * A histogram is written by a single thread (such as an event loop) and may be read by any other thread;
+ * counts are published using lazy sets so recording does not need any locking or atomic read-modify-write.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    /**
+     * The largest value which is tracked precisely; about 19 hours in microseconds
+     */
+    static final long MAX_VALUE = (1L << 36) - 1;
+    static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long count;
+    private volatile long errorCount;
+    private volatile long totalMicros;
+    private volatile long lastRecordTime;
+
+    /**
+     * Records a call which took the given number of microseconds; must only be called from the owning thread
+     */
+    public void recordValue(long micros, boolean error) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        int index = bucketIndex(value);
+        counts.lazySet(index, counts.get(index) + 1);
+        totalMicros = totalMicros + value;
+        if (error) {
+            errorCount = errorCount + 1;
+        }
+        count = count + 1;
+        lastRecordTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds the counts of this histogram to the given buckets
+     */
+    public void addTo(long[] buckets) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] += counts.get(i);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    /**
+     * Returns the time in milliseconds a value was last recorded or 0 if no values have been recorded
+     */
+    public long getLastRecordTime() {
+        return lastRecordTime;
+    }
+
+    /**
+     * Returns the value at the given percentile (0 to 100) of the given bucket counts; values are reported as the
+     * highest value which is equivalent to the bucket they were recorded in
+     */
+    public static long valueAtPercentile(long[] buckets, double percentile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total), 1);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(buckets.length - 1);
+    }
+
+    /**
+     * Returns the index of the bucket the given value is recorded in
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the lowest value which is recorded in the given bucket
+     */
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index - shift * HALF_SUB_BUCKET_COUNT;
+        return subBucket << shift;
+    }
+
+    /**
+     * Returns the highest value which is recorded in the given bucket
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+}
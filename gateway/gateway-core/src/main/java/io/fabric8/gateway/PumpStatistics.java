@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics shared by the {@link FlowControlledPump} instances of a gateway so we can see how much data was pumped
+ * and how often and for how long reads were paused because a peer could not keep up.
+ */
+public class PumpStatistics {
+    private final StripedCounter bytesPumped = new StripedCounter();
+    private final AtomicLong pauseCount = new AtomicLong();
+    private final AtomicLong pausedNanos = new AtomicLong();
+    private final AtomicLong currentlyPaused = new AtomicLong();
+
+    @Override
+    public String toString() {
+        return "PumpStatistics{" +
+                "bytesPumped=" + getBytesPumped() +
+                ", pauseCount=" + getPauseCount() +
+                ", pausedTimeMillis=" + getPausedTimeMillis() +
+                ", currentlyPaused=" + getCurrentlyPaused() +
+                '}';
+    }
+
+    void pumped(int bytes) {
+        bytesPumped.add(bytes);
+    }
+
+    void paused() {
+        pauseCount.incrementAndGet();
+        currentlyPaused.incrementAndGet();
+    }
+
+    void resumed(long nanos) {
+        pausedNanos.addAndGet(nanos);
+        currentlyPaused.decrementAndGet();
+    }
+
+    public void reset() {
+        bytesPumped.reset();
+        pauseCount.set(0);
+        pausedNanos.set(0);
+    }
+
+    /**
+     * Returns the total number of bytes pumped between the clients and the services
+     */
+    public long getBytesPumped() {
+        return bytesPumped.sum();
+    }
+
+    /**
+     * Returns the number of times a read stream was paused because the write stream was full
+     */
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+
+    /**
+     * Returns the total time read streams have been paused in milliseconds
+     */
+    public long getPausedTimeMillis() {
+        return pausedNanos.get() / 1000000L;
+    }
+
+    /**
+     * Returns the number of read streams which are currently paused
+     */
+    public long getCurrentlyPaused() {
+        return currentlyPaused.get();
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+/**
+ * An immutable snapshot of the calls made via a mapped route to a back end service aggregated by {@link CallMetrics}.
+ * All latencies are in microseconds.
+ */
+public class RouteStatistics {
+    private final String route;
+    private final String backend;
+    private final long count;
+    private final long errorCount;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    public RouteStatistics(String route, String backend, long count, long errorCount, long meanMicros,
+                           long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+        this.route = route;
+        this.backend = backend;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteStatistics{" +
+                "route='" + route + '\'' +
+                ", backend='" + backend + '\'' +
+                ", count=" + count +
+                ", errorRate=" + getErrorRate() +
+                ", p50Micros=" + p50Micros +
+                ", p99Micros=" + p99Micros +
+                ", p999Micros=" + p999Micros +
+                '}';
+    }
+
+    /**
+     * Returns the URI prefix of the mapping rule used for the calls
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Returns the host and port of the back end service the calls were proxied to
+     */
+    public String getBackend() {
+        return backend;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns the ratio of calls which failed between 0 and 1
+     */
+    public double getErrorRate() {
+        return count > 0 ? (double) errorCount / count : 0.0;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+}
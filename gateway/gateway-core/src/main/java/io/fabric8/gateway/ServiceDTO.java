@@ -53,6 +53,27 @@ public class ServiceDTO implements ServiceDetails {
                 '}';
     }
 
+    /**
+     * Services are equal if they expose the same URLs, so that the state kept per service, such as its load,
+     * survives the services being read again from the registry
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ServiceDTO that = (ServiceDTO) o;
+        return services != null ? services.equals(that.services) : that.services == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return services != null ? services.hashCode() : 0;
+    }
+
     public String getId() {
         return id;
     }
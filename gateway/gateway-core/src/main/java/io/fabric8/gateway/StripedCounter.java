@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which can be updated from many event loop threads without them contending on a single memory
+ * location, in the style of the JDK 8 <code>LongAdder</code>; each thread adds to one of a number of cells
+ * which are each on their own cache line and the cells are only summed when the counter is read.
+ * <p/>
+ * Reads are not atomic with respect to concurrent updates, which is fine for statistics.
+ */
+public class StripedCounter {
+    /**
+     * The number of longs in a cache line so that each cell is on its own line
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    public void add(long value) {
+        cells.getAndAdd(cellIndex(), value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * Returns the sum of all the values added so far
+     */
+    public long sum() {
+        long answer = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            answer += cells.get(i);
+        }
+        return answer;
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            cells.set(i, 0);
+        }
+    }
+
+    private static int cellIndex() {
+        // event loop threads are created together so their ids are usually consecutive and map to different cells
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+    }
+
+    /**
+     * Returns a power of two of about twice the number of processors capped at 64
+     */
+    static int stripes(int processors) {
+        int answer = 1;
+        while (answer < processors * 2 && answer < 64) {
+            answer <<= 1;
+        }
+        return answer;
+    }
+}
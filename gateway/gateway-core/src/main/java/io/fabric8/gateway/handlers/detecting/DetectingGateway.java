@@ -17,6 +17,8 @@ package io.fabric8.gateway.handlers.detecting;
 
 import io.fabric8.common.util.ShutdownTracker;
 import io.fabric8.common.util.Strings;
+import io.fabric8.gateway.FlowControlledPump;
+import io.fabric8.gateway.PumpStatistics;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.SocketWrapper;
@@ -26,6 +28,7 @@ import io.fabric8.gateway.handlers.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
@@ -35,14 +38,17 @@ import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetServer;
 import org.vertx.java.core.net.NetSocket;
-import org.vertx.java.core.streams.Pump;
 import org.vertx.java.core.streams.ReadStream;
 
 import javax.net.ssl.SSLContext;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -60,28 +66,34 @@ public class DetectingGateway implements DetectingGatewayMBean {
     LoadBalancer serviceLoadBalancer;
     String defaultVirtualHost;
     ArrayList<Protocol> protocols;
-    int maxProtocolIdentificationLength;
+    ProtocolDetector protocolDetector;
     ClientRequestFacadeFactory clientRequestFacadeFactory = new ClientRequestFacadeFactory("PROTOCOL_SESSION_ID, PROTOCOL_CLIENT_ID, REMOTE_ADDRESS");
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
     long connectionTimeout = 5000;
+    int writeQueueMaxSize = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+    final PumpStatistics pumpStatistics = new PumpStatistics();
+    final TrafficMetrics trafficMetrics = new TrafficMetrics();
+    int busiestClientCount = TrafficMetrics.DEFAULT_BUSIEST_CLIENT_COUNT;
 
     final AtomicLong receivedConnectionAttempts = new AtomicLong();
     final AtomicLong successfulConnectionAttempts = new AtomicLong();
     final AtomicLong failedConnectionAttempts = new AtomicLong();
-    HashSet<SocketWrapper> socketsConnecting = new HashSet<SocketWrapper>();
-    HashSet<ConnectedSocketInfo> socketsConnected = new HashSet<ConnectedSocketInfo>();
+    // each connection is handled on the event loop of the server instance which accepted it
+    final Set<SocketWrapper> socketsConnecting = Collections.newSetFromMap(new ConcurrentHashMap<SocketWrapper, Boolean>());
+    final Set<ConnectedSocketInfo> socketsConnected = Collections.newSetFromMap(new ConcurrentHashMap<ConnectedSocketInfo, Boolean>());
     private ShutdownTracker shutdownTacker = new ShutdownTracker();
 
     private int port;
     private String host;
-    private NetServer server;
+    private int instances = Runtime.getRuntime().availableProcessors();
+    private final List<NetServer> servers = new CopyOnWriteArrayList<NetServer>();
 
     private FutureHandler<AsyncResult<NetServer>> listenFuture = new FutureHandler<AsyncResult<NetServer>>() {
         @Override
         public void handle(AsyncResult<NetServer> event) {
             if( event.succeeded() ) {
-                LOG.info(String.format("Gateway listening on %s:%d for protocols: %s", server.host(), server.port(), getProtocolNames()));
+                LOG.info(String.format("Gateway listening on %s:%d for protocols: %s", event.result().host(), event.result().port(), getProtocolNames()));
             }
             super.handle(event);
         }
@@ -97,17 +109,53 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
 
+    /**
+     * Starts listening for connections. Each of the {@link #getInstances()} servers is created on its own event
+     * loop; vert.x shares the port between them and spreads the accepted connections across their event loops.
+     * <p/>
+     * Must not be called from an event loop thread as the servers would then all share that event loop.
+     */
     public void init() {
-        server = vertx.createNetServer().connectHandler(new DetectingGatewayNetSocketHandler(this));
+        listen(port, listenFuture);
+        if (instances > 1) {
+            int sharedPort = port;
+            if (sharedPort == 0) {
+                // the other instances need to share the port the first one was bound to
+                try {
+                    sharedPort = getBoundPort();
+                } catch (Exception e) {
+                    LOG.warn("Not starting more gateway instances as the first one failed to listen: " + e, e);
+                    return;
+                }
+            }
+            for (int i = 1; i < instances; i++) {
+                listen(sharedPort, new Handler<AsyncResult<NetServer>>() {
+                    @Override
+                    public void handle(AsyncResult<NetServer> event) {
+                        if (event.failed()) {
+                            LOG.warn("Gateway instance failed to listen: " + event.cause(), event.cause());
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    protected void listen(int listenPort, Handler<AsyncResult<NetServer>> listenHandler) {
+        NetServer server = vertx.createNetServer().connectHandler(new DetectingGatewayNetSocketHandler(this));
+        servers.add(server);
         if (host != null) {
-            server = server.listen(port, host, listenFuture);
+            server.listen(listenPort, host, listenHandler);
         } else {
-            server = server.listen(port, listenFuture);
+            server.listen(listenPort, listenHandler);
         }
     }
 
     public void destroy() {
-        server.close();
+        for (NetServer server : servers) {
+            server.close();
+        }
+        servers.clear();
         for (SocketWrapper socket : new ArrayList<>(socketsConnecting)) {
             handleConnectFailure(socket, null);
         }
@@ -162,13 +210,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     public void setProtocols(ArrayList<Protocol> protocols) {
         this.protocols = new ArrayList<Protocol>(protocols);
-        int max = 0;
-        for (Protocol protocol : protocols) {
-            if( protocol.getMaxIdentificationLength() > max ) {
-                max = protocol.getMaxIdentificationLength();
-            }
-        }
-        maxProtocolIdentificationLength = max;
+        this.protocolDetector = new ProtocolDetector(this.protocols);
     }
 
     public Collection<String> getProtocolNames() {
@@ -182,6 +224,23 @@ public class DetectingGateway implements DetectingGatewayMBean {
     SSLContext sslContext;
     SslSocketWrapper.ClientAuth clientAuth = SslSocketWrapper.ClientAuth.WANT;
 
+    /**
+     * Lazily creates the SSL context; connections on any of the event loops may need it first
+     */
+    synchronized SSLContext getSslContext() throws Exception {
+        if (sslContext == null) {
+            SSLContext context;
+            if (sslConfig != null) {
+                context = SSLContext.getInstance(sslConfig.getProtocol());
+                context.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
+            } else {
+                context = SSLContext.getDefault();
+            }
+            sslContext = context;
+        }
+        return sslContext;
+    }
+
     public void setShutdownTacker(ShutdownTracker shutdownTacker) {
 
         this.shutdownTacker = shutdownTacker;
@@ -193,12 +252,36 @@ public class DetectingGateway implements DetectingGatewayMBean {
         private final URI url;
         private final SocketWrapper from;
         private final NetSocket to;
-
-        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to) {
+        private final ServiceDetails service;
+        private final long connectLatencyNanos;
+        private final TrafficCounters virtualHostCounters;
+        private final TrafficCounters protocolCounters;
+        private final int headerBytes;
+        private final FlowControlledPump fromClient;
+        private final FlowControlledPump toClient;
+
+        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to, ServiceDetails service, long connectLatencyNanos,
+                                   TrafficCounters virtualHostCounters, TrafficCounters protocolCounters, int headerBytes,
+                                   FlowControlledPump fromClient, FlowControlledPump toClient) {
             this.params = params;
             this.url = url;
             this.from = from;
             this.to = to;
+            this.service = service;
+            this.connectLatencyNanos = connectLatencyNanos;
+            this.virtualHostCounters = virtualHostCounters;
+            this.protocolCounters = protocolCounters;
+            this.headerBytes = headerBytes;
+            this.fromClient = fromClient;
+            this.toClient = toClient;
+        }
+
+        long getBytesIn() {
+            return headerBytes + fromClient.getBytesPumped();
+        }
+
+        long getBytesOut() {
+            return toClient.getBytesPumped();
         }
     }
 
@@ -231,79 +314,71 @@ public class DetectingGateway implements DetectingGatewayMBean {
             }
         });
         readStream.dataHandler(new Handler<Buffer>() {
-            Buffer received = new Buffer();
+            final ProtocolDetector.Detection detection = protocolDetector.createDetection();
 
             @Override
             public void handle(Buffer event) {
-                received.appendBuffer(event);
-                for (final Protocol protocol : protocols) {
-                    if (protocol.matches(received)) {
-                        if ("ssl".equals(protocol.getProtocolName())) {
-
-                            LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    handleConnectFailure(socket, "Could initialize SSL: " + e);
-                                    return;
-                                }
-                            }
-
-                            // lets wrap it up in a SslSocketWrapper.
-                            SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
-                            sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
-                            DetectingGateway.this.handle(sslSocketWrapper);
+                final Protocol protocol = detection.detect(event);
+                final Buffer received = detection.getReceived();
+                if (protocol != null) {
+                    if ("ssl".equals(protocol.getProtocolName())) {
+
+                        LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
+                        String disabledCypherSuites=null;
+                        String enabledCipherSuites=null;
+                        if (sslConfig != null) {
+                            disabledCypherSuites = sslConfig.getDisabledCypherSuites();
+                            enabledCipherSuites = sslConfig.getEnabledCipherSuites();
+                        }
+                        SSLContext sslContext;
+                        try {
+                            sslContext = getSslContext();
+                        } catch (Exception e) {
+                            handleConnectFailure(socket, "Could initialize SSL: " + e);
                             return;
+                        }
 
-                        } else if ("http".equals(protocol.getProtocolName())) {
-                            InetSocketAddress target = getHttpGateway();
-                            if (target != null) {
-                                try {
-                                    URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
-                                    LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
-                                            socket.remoteAddress(), url.getHost(), url.getPort()));
-                                    ConnectionParameters params = new ConnectionParameters();
-                                    params.protocol = "http";
-                                    createClient(params, socket, url, received);
-                                    return;
-                                } catch (URISyntaxException e) {
-                                    handleConnectFailure(socket, "Could not build valid connect URI: "+e);
-                                    return;
-                                }
-                            } else {
-                                handleConnectFailure(socket, "No http gateway available for the http protocol");
+                        // lets wrap it up in a SslSocketWrapper.
+                        SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
+                        sslSocketWrapper.putBackHeader(received);
+                        sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                        DetectingGateway.this.handle(sslSocketWrapper);
+                        return;
+
+                    } else if ("http".equals(protocol.getProtocolName())) {
+                        InetSocketAddress target = getHttpGateway();
+                        if (target != null) {
+                            try {
+                                URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
+                                LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
+                                        socket.remoteAddress(), url.getHost(), url.getPort()));
+                                ConnectionParameters params = new ConnectionParameters();
+                                params.protocol = "http";
+                                createClient(params, socket, url, received, null);
+                                return;
+                            } catch (URISyntaxException e) {
+                                handleConnectFailure(socket, "Could not build valid connect URI: "+e);
                                 return;
                             }
                         } else {
-                            protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
-                                @Override
-                                public void handle(ConnectionParameters connectionParameters) {
-                                    // this will install a new dataHandler on the socket.
-                                    if (connectionParameters.protocol == null)
-                                        connectionParameters.protocol = protocol.getProtocolName();
-                                    if (connectionParameters.protocolSchemes == null)
-                                        connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
-                                    route(socket, connectionParameters, received);
-                                }
-                            });
+                            handleConnectFailure(socket, "No http gateway available for the http protocol");
                             return;
                         }
+                    } else {
+                        protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
+                            @Override
+                            public void handle(ConnectionParameters connectionParameters) {
+                                // this will install a new dataHandler on the socket.
+                                if (connectionParameters.protocol == null)
+                                    connectionParameters.protocol = protocol.getProtocolName();
+                                if (connectionParameters.protocolSchemes == null)
+                                    connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
+                                route(socket, connectionParameters, received);
+                            }
+                        });
+                        return;
                     }
-                }
-                if (received.length() >= maxProtocolIdentificationLength) {
+                } else if (detection.isFailed()) {
                     handleConnectFailure(socket, "Connection did not use one of the enabled protocols " + getProtocolNames());
                 }
             }
@@ -362,7 +437,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
                                           ));
                                     }
 
-                                    client = createClient(params, socket, uri, received);
+                                    client = createClient(params, socket, uri, received, serviceDetails);
                                     break;
                                 }
                             } catch (URISyntaxException e) {
@@ -370,6 +445,10 @@ public class DetectingGateway implements DetectingGatewayMBean {
                             }
                         }
                     }
+                    if (client == null) {
+                        // none of the service URLs could be used so let the load balancer know
+                        LoadBalancers.requestCompleted(serviceLoadBalancer, serviceDetails, 0, true);
+                    }
                 }
             }
         }
@@ -381,21 +460,39 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Creates a new client for the given URL and handler; the outcome of the connection is reported to the
+     * load balancer if the connection is to a service chosen by the load balancer
      */
-    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received) {
+    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received, final ServiceDetails service) {
         NetClient netClient = vertx.createNetClient();
+        final long connectStart = System.nanoTime();
         return netClient.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
-
+                long connectLatency = System.nanoTime() - connectStart;
                 if( !asyncSocket.succeeded() ) {
+                    if (service != null) {
+                        LoadBalancers.requestCompleted(serviceLoadBalancer, service, connectLatency, true);
+                    }
                     handleConnectFailure(socketFromClient, String.format("Could not connect to '%s'", url));
                 } else {
                     final NetSocket socketToServer = asyncSocket.result();
 
                     successfulConnectionAttempts.incrementAndGet();
                     socketsConnecting.remove(socketFromClient);
-                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer);
+
+                    TrafficCounters virtualHostCounters = trafficMetrics.getVirtualHostCounters(params.protocolVirtualHost);
+                    TrafficCounters protocolCounters = trafficMetrics.getProtocolCounters(params.protocol);
+                    virtualHostCounters.connected(connectLatency);
+                    protocolCounters.connected(connectLatency);
+                    virtualHostCounters.getBytesIn().add(received.length());
+                    protocolCounters.getBytesIn().add(received.length());
+                    FlowControlledPump toClient = new FlowControlledPump(socketToServer, socketFromClient.writeStream(), writeQueueMaxSize, pumpStatistics);
+                    toClient.setByteCounters(virtualHostCounters.getBytesOut(), protocolCounters.getBytesOut());
+                    FlowControlledPump fromClient = new FlowControlledPump(socketFromClient.readStream(), socketToServer, writeQueueMaxSize, pumpStatistics);
+                    fromClient.setByteCounters(virtualHostCounters.getBytesIn(), protocolCounters.getBytesIn());
+
+                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer, service, connectLatency,
+                            virtualHostCounters, protocolCounters, received.length(), fromClient, toClient);
                     socketsConnected.add(connectedInfo);
 
                     Handler<Void> endHandler = new Handler<Void>() {
@@ -416,8 +513,8 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     socketToServer.exceptionHandler(exceptionHandler);
 
                     socketToServer.write(received);
-                    Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
-                    Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                    toClient.start();
+                    fromClient.start();
                 }
             }
         });
@@ -425,8 +522,17 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     private void handleShutdown(ConnectedSocketInfo connectedInfo) {
         if( socketsConnected.remove(connectedInfo) ) {
+            // a pump paused when its socket closed would otherwise stay paused
+            connectedInfo.fromClient.stop();
+            connectedInfo.toClient.stop();
             connectedInfo.from.close();
             connectedInfo.to.close();
+            if (connectedInfo.service != null) {
+                // the connection is no longer in flight; its latency is the time it took to connect
+                LoadBalancers.requestCompleted(serviceLoadBalancer, connectedInfo.service, connectedInfo.connectLatencyNanos, false);
+            }
+            connectedInfo.virtualHostCounters.disconnected();
+            connectedInfo.protocolCounters.disconnected();
             shutdownTacker.release();
         }
     }
@@ -477,6 +583,106 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc.toArray(new String[rc.size()]);
     }
 
+    public long getActiveConnections() {
+        return socketsConnected.size();
+    }
+
+    public long getBytesIn() {
+        long answer = 0;
+        for (TrafficStatistics statistics : trafficMetrics.getProtocolStatistics()) {
+            answer += statistics.getBytesIn();
+        }
+        return answer;
+    }
+
+    public long getBytesOut() {
+        long answer = 0;
+        for (TrafficStatistics statistics : trafficMetrics.getProtocolStatistics()) {
+            answer += statistics.getBytesOut();
+        }
+        return answer;
+    }
+
+    public String[] getBusiestClients() {
+        ArrayList<String> rc = new ArrayList<>();
+        for (TrafficStatistics statistics : getBusiestClientStatistics()) {
+            rc.add(statistics.toString());
+        }
+        return rc.toArray(new String[rc.size()]);
+    }
+
+    /**
+     * Returns the traffic of the currently connected clients which have sent and received the most bytes,
+     * combining the connections from the same address
+     */
+    public List<TrafficStatistics> getBusiestClientStatistics() {
+        Map<String, long[]> clients = new HashMap<String, long[]>();
+        for (ConnectedSocketInfo info : socketsConnected) {
+            String client = info.from.remoteAddress().getHostString();
+            long[] totals = clients.get(client);
+            if (totals == null) {
+                totals = new long[4];
+                clients.put(client, totals);
+            }
+            totals[0]++;
+            totals[1] += info.getBytesIn();
+            totals[2] += info.getBytesOut();
+            totals[3] += info.connectLatencyNanos;
+        }
+        List<TrafficStatistics> statistics = new ArrayList<TrafficStatistics>(clients.size());
+        for (Map.Entry<String, long[]> entry : clients.entrySet()) {
+            long[] totals = entry.getValue();
+            statistics.add(new TrafficStatistics(entry.getKey(), totals[0], totals[0], totals[1], totals[2],
+                    TimeUnit.NANOSECONDS.toMicros(totals[3] / totals[0])));
+        }
+        return TrafficMetrics.busiest(statistics, busiestClientCount);
+    }
+
+    public String getTrafficStatistics() throws IOException {
+        return trafficMetrics.toJson(getBusiestClientStatistics());
+    }
+
+    public void resetTrafficStatistics() {
+        trafficMetrics.reset();
+        pumpStatistics.reset();
+    }
+
+    public TrafficMetrics getTrafficMetrics() {
+        return trafficMetrics;
+    }
+
+    public int getBusiestClientCount() {
+        return busiestClientCount;
+    }
+
+    public void setBusiestClientCount(int busiestClientCount) {
+        this.busiestClientCount = busiestClientCount;
+    }
+
+    public long getBytesPumped() {
+        return pumpStatistics.getBytesPumped();
+    }
+
+    public long getPauseCount() {
+        return pumpStatistics.getPauseCount();
+    }
+
+    public long getPausedTimeMillis() {
+        return pumpStatistics.getPausedTimeMillis();
+    }
+
+    public long getCurrentlyPausedStreams() {
+        return pumpStatistics.getCurrentlyPaused();
+    }
+
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -489,6 +695,17 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return port;
     }
 
+    /**
+     * Returns the number of servers, and so event loops, used to accept and proxy connections
+     */
+    public int getInstances() {
+        return instances;
+    }
+
+    public void setInstances(int instances) {
+        this.instances = instances;
+    }
+
     public void setPort(int port) {
         this.port = port;
     }
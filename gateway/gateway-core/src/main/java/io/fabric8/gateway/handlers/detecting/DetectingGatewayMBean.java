@@ -17,6 +17,7 @@ package io.fabric8.gateway.handlers.detecting;
 
 import io.fabric8.gateway.SocketWrapper;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -34,5 +35,20 @@ public interface DetectingGatewayMBean {
     public String[] getConnectedClients();
     public long getConnectionTimeout();
     public void setConnectionTimeout(long connectionTimeout);
+    public long getBytesPumped();
+    public long getPauseCount();
+    public long getPausedTimeMillis();
+    public long getCurrentlyPausedStreams();
+    public int getWriteQueueMaxSize();
+    public void setWriteQueueMaxSize(int writeQueueMaxSize);
+    public int getInstances();
+    public long getActiveConnections();
+    public long getBytesIn();
+    public long getBytesOut();
+    public String[] getBusiestClients();
+    public int getBusiestClientCount();
+    public void setBusiestClientCount(int busiestClientCount);
+    public String getTrafficStatistics() throws IOException;
+    public void resetTrafficStatistics();
 
 }
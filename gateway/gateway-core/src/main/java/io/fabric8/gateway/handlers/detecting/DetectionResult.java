@@ -0,0 +1,34 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+/**
+ * The outcome of inspecting the bytes a client has sent so far with an {@link IncrementalProtocol}.
+ */
+public enum DetectionResult {
+    /**
+     * The bytes received so far are a valid prefix of the protocol's header; more bytes are needed to decide
+     */
+    NEED_MORE,
+    /**
+     * The bytes received so far identify the protocol
+     */
+    MATCH,
+    /**
+     * The bytes received so far can never identify the protocol no matter how many more bytes are received
+     */
+    NO_MATCH
+}
@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+/**
+ * A {@link Protocol} which can tell as soon as the first bytes of a connection rule it out, so that the
+ * {@link ProtocolDetector} can stop considering it rather than re-checking it on every read until
+ * {@link #getMaxIdentificationLength()} bytes have been received.
+ * <p/>
+ * Protocol instances are shared between connections so implementations must not keep any per connection state.
+ */
+public interface IncrementalProtocol extends Protocol {
+
+    /**
+     * Inspects the bytes received so far on a connection; must return {@link DetectionResult#MATCH} exactly
+     * when {@link #matches(Buffer)} would return true.
+     */
+    public DetectionResult detect(Buffer header);
+
+}
@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.List;
+
+/**
+ * Detects the protocol used by client connections from the bytes they send.
+ * <p/>
+ * A detector is shared by all the connections of a gateway; each connection feeds its reads to its own
+ * {@link Detection}. Protocols which have ruled themselves out for a connection are not checked again, and the
+ * received bytes are only accumulated if the header arrives in more than one read. Protocols which are not
+ * {@link IncrementalProtocol}s are checked with {@link Protocol#matches(Buffer)} until
+ * {@link Protocol#getMaxIdentificationLength()} bytes have been received.
+ */
+public class ProtocolDetector {
+
+    private final Protocol[] protocols;
+    /**
+     * The protocols which implement {@link IncrementalProtocol} or null; resolved once up front as interface
+     * type checks are surprisingly expensive when done for every protocol on every read
+     */
+    private final IncrementalProtocol[] incrementalProtocols;
+    private final int maxIdentificationLength;
+
+    public ProtocolDetector(List<Protocol> protocols) {
+        if (protocols.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " protocols can be detected");
+        }
+        this.protocols = protocols.toArray(new Protocol[protocols.size()]);
+        this.incrementalProtocols = new IncrementalProtocol[this.protocols.length];
+        int max = 0;
+        for (int i = 0; i < this.protocols.length; i++) {
+            Protocol protocol = this.protocols[i];
+            if (protocol instanceof IncrementalProtocol) {
+                incrementalProtocols[i] = (IncrementalProtocol) protocol;
+            }
+            max = Math.max(max, protocol.getMaxIdentificationLength());
+        }
+        this.maxIdentificationLength = max;
+    }
+
+    /**
+     * Returns the number of bytes after which detection fails if no protocol has matched
+     */
+    public int getMaxIdentificationLength() {
+        return maxIdentificationLength;
+    }
+
+    /**
+     * Starts detecting the protocol of a new connection
+     */
+    public Detection createDetection() {
+        return new Detection();
+    }
+
+    protected DetectionResult detect(int index, Buffer received) {
+        IncrementalProtocol incrementalProtocol = incrementalProtocols[index];
+        if (incrementalProtocol != null) {
+            return incrementalProtocol.detect(received);
+        }
+        Protocol protocol = protocols[index];
+        if (protocol.matches(received)) {
+            return DetectionResult.MATCH;
+        } else if (received.length() >= protocol.getMaxIdentificationLength()) {
+            return DetectionResult.NO_MATCH;
+        }
+        return DetectionResult.NEED_MORE;
+    }
+
+    /**
+     * The state of detecting the protocol of a single connection
+     */
+    public class Detection {
+        private long ruledOut;
+        private Buffer received;
+        private boolean copied;
+
+        /**
+         * Adds the next bytes read from the connection and returns the detected protocol or null if
+         * the protocol is not known yet or if detection {@link #isFailed() failed}.
+         */
+        public Protocol detect(Buffer data) {
+            if (received == null) {
+                received = data;
+            } else {
+                if (!copied) {
+                    // the first buffer belongs to the caller so copy it before appending to it
+                    received = received.copy();
+                    copied = true;
+                }
+                received.appendBuffer(data);
+            }
+            for (int i = 0; i < protocols.length; i++) {
+                long bit = 1L << i;
+                if ((ruledOut & bit) != 0) {
+                    continue;
+                }
+                DetectionResult result = ProtocolDetector.this.detect(i, received);
+                if (result == DetectionResult.MATCH) {
+                    return protocols[i];
+                } else if (result == DetectionResult.NO_MATCH) {
+                    ruledOut |= bit;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns true if none of the protocols can match the bytes received so far
+         */
+        public boolean isFailed() {
+            return Long.bitCount(ruledOut) == protocols.length
+                    || (received != null && received.length() >= maxIdentificationLength);
+        }
+
+        /**
+         * Returns all the bytes received so far
+         */
+        public Buffer getReceived() {
+            return received;
+        }
+    }
+}
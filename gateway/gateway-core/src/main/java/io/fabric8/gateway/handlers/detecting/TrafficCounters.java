@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.StripedCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The live counters of the connections proxied for a virtual host or protocol; they are updated by the event
+ * loops of the connections without locking and may be read at any time.
+ */
+public class TrafficCounters {
+    private final StripedCounter connections = new StripedCounter();
+    private final StripedCounter activeConnections = new StripedCounter();
+    private final StripedCounter bytesIn = new StripedCounter();
+    private final StripedCounter bytesOut = new StripedCounter();
+    private final StripedCounter connectLatencyNanos = new StripedCounter();
+
+    /**
+     * Records a connection to a service which took the given number of nanoseconds to establish
+     */
+    public void connected(long latencyNanos) {
+        connections.increment();
+        activeConnections.increment();
+        connectLatencyNanos.add(latencyNanos);
+    }
+
+    public void disconnected() {
+        activeConnections.decrement();
+    }
+
+    /**
+     * Returns the counter of the bytes sent by clients
+     */
+    public StripedCounter getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Returns the counter of the bytes sent to clients
+     */
+    public StripedCounter getBytesOut() {
+        return bytesOut;
+    }
+
+    public void reset() {
+        connections.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        connectLatencyNanos.reset();
+    }
+
+    public TrafficStatistics createStatistics(String name) {
+        long count = connections.sum();
+        long meanLatency = count > 0 ? TimeUnit.NANOSECONDS.toMicros(connectLatencyNanos.sum() / count) : 0;
+        return new TrafficStatistics(name, count, activeConnections.sum(), bytesIn.sum(), bytesOut.sum(), meanLatency);
+    }
+}
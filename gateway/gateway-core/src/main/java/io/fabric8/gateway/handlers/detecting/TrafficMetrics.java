@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The traffic of the connections proxied by a {@link DetectingGateway} per virtual host and per protocol.
+ * <p/>
+ * Recording only touches {@link io.fabric8.gateway.StripedCounter}s so it can be done on the event loops for
+ * every read, and taking a snapshot never blocks them so the metrics can be scraped as often as required.
+ */
+public class TrafficMetrics {
+    /**
+     * The name used when a connection did not request a virtual host
+     */
+    public static final String NONE = "<none>";
+
+    public static final int DEFAULT_BUSIEST_CLIENT_COUNT = 10;
+
+    private static final Comparator<TrafficStatistics> BUSIEST_FIRST = new Comparator<TrafficStatistics>() {
+        @Override
+        public int compare(TrafficStatistics o1, TrafficStatistics o2) {
+            long b1 = o1.getBytes();
+            long b2 = o2.getBytes();
+            return b1 > b2 ? -1 : (b1 < b2 ? 1 : 0);
+        }
+    };
+
+    private final ConcurrentMap<String, TrafficCounters> virtualHosts = new ConcurrentHashMap<String, TrafficCounters>();
+    private final ConcurrentMap<String, TrafficCounters> protocols = new ConcurrentHashMap<String, TrafficCounters>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public TrafficCounters getVirtualHostCounters(String virtualHost) {
+        return getCounters(virtualHosts, virtualHost != null ? virtualHost : NONE);
+    }
+
+    public TrafficCounters getProtocolCounters(String protocol) {
+        return getCounters(protocols, protocol != null ? protocol : NONE);
+    }
+
+    public List<TrafficStatistics> getVirtualHostStatistics() {
+        return createStatistics(virtualHosts);
+    }
+
+    public List<TrafficStatistics> getProtocolStatistics() {
+        return createStatistics(protocols);
+    }
+
+    /**
+     * Resets the connection and byte counts; the active connection counts are kept
+     */
+    public void reset() {
+        for (TrafficCounters counters : virtualHosts.values()) {
+            counters.reset();
+        }
+        for (TrafficCounters counters : protocols.values()) {
+            counters.reset();
+        }
+    }
+
+    /**
+     * Returns the statistics of each virtual host and protocol and of the given busiest clients as JSON
+     */
+    public String toJson(List<TrafficStatistics> busiestClients) throws IOException {
+        Map<String, Object> answer = new LinkedHashMap<String, Object>();
+        answer.put("virtualHosts", getVirtualHostStatistics());
+        answer.put("protocols", getProtocolStatistics());
+        answer.put("busiestClients", busiestClients);
+        return mapper.writeValueAsString(answer);
+    }
+
+    /**
+     * Returns up to the given number of statistics with the most bytes sent in both directions, busiest first
+     */
+    public static List<TrafficStatistics> busiest(Collection<TrafficStatistics> statistics, int count) {
+        List<TrafficStatistics> answer = new ArrayList<TrafficStatistics>(statistics);
+        Collections.sort(answer, BUSIEST_FIRST);
+        return answer.size() > count ? new ArrayList<TrafficStatistics>(answer.subList(0, Math.max(count, 0))) : answer;
+    }
+
+    protected static TrafficCounters getCounters(ConcurrentMap<String, TrafficCounters> map, String name) {
+        TrafficCounters answer = map.get(name);
+        if (answer == null) {
+            TrafficCounters newCounters = new TrafficCounters();
+            answer = map.putIfAbsent(name, newCounters);
+            if (answer == null) {
+                answer = newCounters;
+            }
+        }
+        return answer;
+    }
+
+    protected static List<TrafficStatistics> createStatistics(Map<String, TrafficCounters> map) {
+        List<TrafficStatistics> answer = new ArrayList<TrafficStatistics>(map.size());
+        for (Map.Entry<String, TrafficCounters> entry : map.entrySet()) {
+            answer.add(entry.getValue().createStatistics(entry.getKey()));
+        }
+        return answer;
+    }
+}
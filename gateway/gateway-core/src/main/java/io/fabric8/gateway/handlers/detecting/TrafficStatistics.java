@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+/**
+ * An immutable snapshot of the connections proxied by a {@link DetectingGateway} for a virtual host,
+ * protocol or client. Bytes in are the bytes sent by clients and bytes out are the bytes sent to them.
+ */
+public class TrafficStatistics {
+    private final String name;
+    private final long connections;
+    private final long activeConnections;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long meanConnectLatencyMicros;
+
+    public TrafficStatistics(String name, long connections, long activeConnections, long bytesIn, long bytesOut, long meanConnectLatencyMicros) {
+        this.name = name;
+        this.connections = connections;
+        this.activeConnections = activeConnections;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.meanConnectLatencyMicros = meanConnectLatencyMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficStatistics{" +
+                "name='" + name + '\'' +
+                ", connections=" + connections +
+                ", activeConnections=" + activeConnections +
+                ", bytesIn=" + bytesIn +
+                ", bytesOut=" + bytesOut +
+                ", meanConnectLatencyMicros=" + meanConnectLatencyMicros +
+                '}';
+    }
+
+    /**
+     * Returns the name of the virtual host, protocol or client address
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of connections which have been proxied
+     */
+    public long getConnections() {
+        return connections;
+    }
+
+    public long getActiveConnections() {
+        return activeConnections;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * Returns the total number of bytes sent in both directions
+     */
+    public long getBytes() {
+        return bytesIn + bytesOut;
+    }
+
+    /**
+     * Returns the mean time it took to connect to the services in microseconds
+     */
+    public long getMeanConnectLatencyMicros() {
+        return meanConnectLatencyMicros;
+    }
+}
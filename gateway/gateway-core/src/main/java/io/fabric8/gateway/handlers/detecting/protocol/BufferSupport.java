@@ -15,6 +15,7 @@
  */
 package io.fabric8.gateway.handlers.detecting.protocol;
 
+import io.fabric8.gateway.handlers.detecting.DetectionResult;
 import io.netty.buffer.ByteBuf;
 import org.vertx.java.core.buffer.Buffer;
 
@@ -108,6 +109,29 @@ public class BufferSupport {
         return true;
     }
 
+    /**
+     * Checks whether the bytes received so far start with, or are the start of, one of the given prefixes.
+     */
+    static public DetectionResult detectPrefix(Buffer self, Buffer[] prefixes) {
+        DetectionResult answer = DetectionResult.NO_MATCH;
+        int length = self.length();
+        for (Buffer prefix : prefixes) {
+            int prefixLength = prefix.length();
+            int checked = Math.min(length, prefixLength);
+            int i = 0;
+            while (i < checked && self.getByte(i) == prefix.getByte(i)) {
+                i++;
+            }
+            if (i == checked) {
+                if (checked == prefixLength) {
+                    return DetectionResult.MATCH;
+                }
+                answer = DetectionResult.NEED_MORE;
+            }
+        }
+        return answer;
+    }
+
     static private final Field bufferField;
     static {
         try {
@@ -151,6 +175,13 @@ public class BufferSupport {
     }
 
 
+    /**
+     * Returns a NIO view of the readable bytes of the buffer without copying them.
+     */
+    public static ByteBuffer toByteBuffer(Buffer self) {
+        return getNettyByteBuf(self).nioBuffer();
+    }
+
     public static Buffer toBuffer(ByteBuffer buff) {
         Buffer self = new Buffer(buff.remaining());
         while( buff.hasRemaining() ) {
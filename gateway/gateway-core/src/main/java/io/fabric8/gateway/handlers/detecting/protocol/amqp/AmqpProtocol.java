@@ -16,7 +16,8 @@
 package io.fabric8.gateway.handlers.detecting.protocol.amqp;
 
 import io.fabric8.gateway.SocketWrapper;
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectionResult;
+import io.fabric8.gateway.handlers.detecting.IncrementalProtocol;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.engine.impl.EngineFactoryImpl;
@@ -32,10 +33,11 @@ import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.*;
 
 /**
  */
-public class AmqpProtocol implements Protocol {
+public class AmqpProtocol implements IncrementalProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(AmqpProtocol.class);
 
     static final Buffer PROTOCOL_MAGIC = new Buffer(new byte []{ 'A', 'M', 'Q', 'P' });
+    static final Buffer[] PROTOCOL_MAGICS = new Buffer[]{ PROTOCOL_MAGIC };
     int maxFrameSize = 1024*1024*100;
 
     @Override
@@ -54,6 +56,11 @@ public class AmqpProtocol implements Protocol {
         return PROTOCOL_MAGIC.length();
     }
 
+    @Override
+    public DetectionResult detect(Buffer header) {
+        return detectPrefix(header, PROTOCOL_MAGICS);
+    }
+
     @Override
     public boolean matches(Buffer header) {
       if (header.length() < PROTOCOL_MAGIC.length()) {
@@ -15,7 +15,8 @@
  */
 package io.fabric8.gateway.handlers.detecting.protocol.http;
 
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectionResult;
+import io.fabric8.gateway.handlers.detecting.IncrementalProtocol;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.detecting.protocol.Ascii;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
@@ -25,11 +26,12 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
 import static io.fabric8.gateway.handlers.detecting.protocol.Ascii.ascii;
+import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.detectPrefix;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 
 /**
  */
-public class HttpProtocol implements Protocol {
+public class HttpProtocol implements IncrementalProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(HttpProtocol.class);
 
     final Ascii CONNECT = ascii("CONNECT ");
@@ -40,6 +42,10 @@ public class HttpProtocol implements Protocol {
     final Ascii OPTIONS = ascii("OPTIONS ");
     final Ascii HEAD = ascii("HEAD ");
     final Ascii TRACE = ascii("TRACE ");
+    final Buffer[] METHODS = new Buffer[]{
+        GET.toBuffer(), HEAD.toBuffer(), POST.toBuffer(), PUT.toBuffer(),
+        DELETE.toBuffer(), OPTIONS.toBuffer(), TRACE.toBuffer(), CONNECT.toBuffer()
+    };
 
     @Override
     public String getProtocolName() {
@@ -58,6 +64,11 @@ public class HttpProtocol implements Protocol {
         return CONNECT.toBuffer().length();
     }
 
+    @Override
+    public DetectionResult detect(Buffer header) {
+        return detectPrefix(header, METHODS);
+    }
+
     @Override
     public boolean matches(Buffer header) {
         return
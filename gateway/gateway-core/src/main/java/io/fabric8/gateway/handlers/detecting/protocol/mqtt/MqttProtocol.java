@@ -16,7 +16,8 @@
 package io.fabric8.gateway.handlers.detecting.protocol.mqtt;
 
 import io.fabric8.gateway.SocketWrapper;
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectionResult;
+import io.fabric8.gateway.handlers.detecting.IncrementalProtocol;
 import io.fabric8.gateway.handlers.detecting.protocol.BufferSupport;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.fusesource.hawtbuf.UTF8Buffer;
@@ -30,7 +31,7 @@ import org.vertx.java.core.buffer.Buffer;
 /**
  * Implements protocol decoding for the MQTT protocol.
  */
-public class MqttProtocol implements Protocol {
+public class MqttProtocol implements IncrementalProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(MqttProtocol.class);
 
     static final Buffer HEAD_MAGIC = new Buffer(new byte []{ 0x10 });
@@ -56,6 +57,17 @@ public class MqttProtocol implements Protocol {
         return 13;
     }
 
+    @Override
+    public DetectionResult detect(Buffer header) {
+        if (header.length() > 0 && header.getByte(0) != HEAD_MAGIC.getByte(0)) {
+            // not a CONNECT frame
+            return DetectionResult.NO_MATCH;
+        } else if (matches(header)) {
+            return DetectionResult.MATCH;
+        }
+        return header.length() < getMaxIdentificationLength() ? DetectionResult.NEED_MORE : DetectionResult.NO_MATCH;
+    }
+
     @Override
     public boolean matches(Buffer header) {
         if (header.length() < 10) {
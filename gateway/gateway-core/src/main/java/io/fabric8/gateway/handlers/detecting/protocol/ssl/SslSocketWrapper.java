@@ -16,6 +16,7 @@
 package io.fabric8.gateway.handlers.detecting.protocol.ssl;
 
 import io.fabric8.gateway.SocketWrapper;
+import io.fabric8.gateway.handlers.detecting.protocol.BufferSupport;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.streams.ReadStream;
@@ -35,6 +36,13 @@ import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
  */
 public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSocketWrapper>, WriteStream<SslSocketWrapper> {
 
+    /**
+     * The engine output buffers are only used while wrapping or unwrapping, and their contents are copied out before
+     * any handler is called, so each event loop thread can reuse one for all its connections.
+     */
+    private static final ThreadLocal<ByteBuffer> unwrapBuffers = new ThreadLocal<ByteBuffer>();
+    private static final ThreadLocal<ByteBuffer> wrapBuffers = new ThreadLocal<ByteBuffer>();
+
     private Handler<Void> plainDrainHandler;
 
     public enum ClientAuth {
@@ -81,8 +89,8 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( encryptedReadBuffer!=null && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
-                ByteBuffer input = ByteBuffer.wrap(encryptedReadBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                ByteBuffer input = BufferSupport.toByteBuffer(encryptedReadBuffer);
+                ByteBuffer output = getOutputBuffer(unwrapBuffers, engine.getSession().getApplicationBufferSize());
 
                 try {
                     boolean done = false;
@@ -130,9 +138,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     int len = input.remaining();
                     if( len > 0 ) {
                         // we need to compact the encryptedReadBuffer
-                        if( input.position()!=0  ) {
-                            encryptedReadBuffer = new Buffer(len);
-                            encryptedReadBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        int consumed = encryptedReadBuffer.length() - len;
+                        if( consumed!=0  ) {
+                            encryptedReadBuffer = encryptedReadBuffer.getBuffer(consumed, encryptedReadBuffer.length());
                         }
                     } else {
                         // everything was consumed.
@@ -220,6 +228,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     //////////////////////////////////////////////////////////////////////////
 
     private boolean writeOverflow;
+    private boolean drainPending;
     private Buffer plainWriteBuffer;
     private Buffer encryptedWriteBuffer;
 
@@ -231,7 +240,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
     @Override
     public boolean writeQueueFull() {
-        return plainWriteBuffer != null;
+        return plainWriteBuffer != null || writeOverflow;
     }
 
     @Override
@@ -242,6 +251,10 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             plainWriteBuffer.appendBuffer(buffer);
         }
         pumpWrites();
+        if( writeQueueFull() ) {
+            // the writer may pause until the queued data has been written.
+            drainPending = true;
+        }
         return this;
     }
 
@@ -272,8 +285,8 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( plainWriteBuffer!=null ) {
-                ByteBuffer input = ByteBuffer.wrap(plainWriteBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                ByteBuffer input = BufferSupport.toByteBuffer(plainWriteBuffer);
+                ByteBuffer output = getOutputBuffer(wrapBuffers, engine.getSession().getPacketBufferSize());
 
                 try {
                     boolean done = false;
@@ -317,9 +330,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     int len = input.remaining();
                     if( len > 0 ) {
                         // we need to compact the plainWriteBuffer
-                        if( input.position()!=0  ) {
-                            plainWriteBuffer = new Buffer(len);
-                            plainWriteBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        int consumed = plainWriteBuffer.length() - len;
+                        if( consumed!=0  ) {
+                            plainWriteBuffer = plainWriteBuffer.getBuffer(consumed, plainWriteBuffer.length());
                         }
                     } else {
                         // everything was consumed.
@@ -347,6 +360,26 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                 return;
             }
         }
+
+        // let the writer know it can write again now that the queued data has been written.
+        if( drainPending && plainWriteBuffer==null && !writeOverflow ) {
+            drainPending = false;
+            Handler<Void> handler = plainDrainHandler;
+            if( handler!=null ) {
+                handler.handle(null);
+            }
+        }
+    }
+
+    private static ByteBuffer getOutputBuffer(ThreadLocal<ByteBuffer> pool, int size) {
+        ByteBuffer answer = pool.get();
+        if( answer == null || answer.capacity() < size ) {
+            // heap buffers as the JDK SSLEngine works on arrays and would copy to and from direct buffers
+            answer = ByteBuffer.allocate(size);
+            pool.set(answer);
+        }
+        answer.clear();
+        return answer;
     }
 
     //////////////////////////////////////////////////////////////////////////
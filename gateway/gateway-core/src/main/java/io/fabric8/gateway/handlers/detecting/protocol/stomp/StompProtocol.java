@@ -15,7 +15,8 @@
  */
 package io.fabric8.gateway.handlers.detecting.protocol.stomp;
 
-import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.DetectionResult;
+import io.fabric8.gateway.handlers.detecting.IncrementalProtocol;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import org.slf4j.Logger;
@@ -23,18 +24,20 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
+import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.detectPrefix;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.*;
 
 /**
  */
-public class StompProtocol implements Protocol {
+public class StompProtocol implements IncrementalProtocol {
     private static final transient Logger LOG = LoggerFactory.getLogger(StompProtocol.class);
 
     public static final int maxCommandLength = 20;
     public int maxHeaderLength = 1024 * 10;
     public int maxHeaders = 1000;
     public int maxDataLength = 1024 * 1024 * 100;
+    private static final Buffer[] CONNECT_COMMANDS = new Buffer[]{ CONNECT.toBuffer(), STOMP.toBuffer() };
 
     @Override
     public String getProtocolName() {
@@ -53,6 +56,11 @@ public class StompProtocol implements Protocol {
         return 10;
     }
 
+    @Override
+    public DetectionResult detect(Buffer header) {
+        return detectPrefix(header, CONNECT_COMMANDS);
+    }
+
     @Override
     public boolean matches(Buffer header) {
         return startsWith(header, 0, CONNECT.toBuffer()) ||
@@ -0,0 +1,343 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of keep alive {@link HttpClient} instances to the back end services, one per event loop context, host and
+ * port, so that proxied requests reuse the connections to a back end rather than opening a new connection for each
+ * request.
+ * <p/>
+ * A vert.x client belongs to the context which created it, so each context gets its own clients and a client is
+ * only ever used and closed on its own context. Each pooled client keeps up to {@link #getMaxConnectionsPerHost()}
+ * connections open; clients which have not been used for {@link #getIdleTimeout()} milliseconds are closed.
+ */
+public class HttpClientPool {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    private final Vertx vertx;
+    private final ConcurrentMap<Context, ConcurrentMap<String, PooledHttpClient>> contexts = new ConcurrentHashMap<Context, ConcurrentMap<String, PooledHttpClient>>();
+    private final AtomicLong createdClients = new AtomicLong();
+    private final AtomicLong evictedClients = new AtomicLong();
+    private boolean keepAlive = true;
+    private int maxConnectionsPerHost = 5;
+    private boolean pipelining;
+    private long idleTimeout = 60000L;
+    private long evictionTimerId = -1;
+
+    public HttpClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientPool{" +
+                "keepAlive=" + keepAlive +
+                ", maxConnectionsPerHost=" + maxConnectionsPerHost +
+                ", pipelining=" + pipelining +
+                ", idleTimeout=" + idleTimeout +
+                '}';
+    }
+
+    public synchronized void start() {
+        if (keepAlive && idleTimeout > 0 && evictionTimerId < 0) {
+            long period = Math.max(idleTimeout / 2, 1000L);
+            evictionTimerId = vertx.setPeriodic(period, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    public synchronized void stop() {
+        if (evictionTimerId >= 0) {
+            vertx.cancelTimer(evictionTimerId);
+            evictionTimerId = -1;
+        }
+        for (ConcurrentMap<String, PooledHttpClient> clients : contexts.values()) {
+            for (PooledHttpClient client : clients.values()) {
+                if (clients.remove(client.getKey(), client)) {
+                    client.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a client of the current context for the host and port of the given URL which must be released via
+     * {@link PooledHttpClient#release()} when the request is completed; clients acquired outside of a context
+     * are not pooled
+     */
+    public PooledHttpClient acquire(URL url) {
+        String host = url.getHost();
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String key = host + ":" + port;
+        Context context = vertx.currentContext();
+        if (!keepAlive || context == null) {
+            PooledHttpClient answer = new PooledHttpClient(key, createClient(host, port), context, false);
+            answer.tryAcquire();
+            return answer;
+        }
+        ConcurrentMap<String, PooledHttpClient> clients = contexts.get(context);
+        if (clients == null) {
+            ConcurrentMap<String, PooledHttpClient> newClients = new ConcurrentHashMap<String, PooledHttpClient>();
+            clients = contexts.putIfAbsent(context, newClients);
+            if (clients == null) {
+                clients = newClients;
+            }
+        }
+        while (true) {
+            PooledHttpClient answer = clients.get(key);
+            if (answer == null) {
+                PooledHttpClient newClient = new PooledHttpClient(key, createClient(host, port), context, true);
+                answer = clients.putIfAbsent(key, newClient);
+                if (answer == null) {
+                    answer = newClient;
+                } else {
+                    newClient.close();
+                }
+            }
+            if (answer.tryAcquire()) {
+                return answer;
+            }
+            // the client has just been evicted so lets try again
+            clients.remove(key, answer);
+        }
+    }
+
+    /**
+     * Closes any pooled clients which have no requests in flight and which have been idle for longer than the idle
+     * timeout; each client is closed on its own context
+     */
+    public void evictIdleClients() {
+        long now = System.currentTimeMillis();
+        for (ConcurrentMap<String, PooledHttpClient> clients : contexts.values()) {
+            for (PooledHttpClient client : clients.values()) {
+                if (now - client.getLastUsed() > idleTimeout && client.tryEvict()) {
+                    clients.remove(client.getKey(), client);
+                    evictedClients.incrementAndGet();
+                    LOG.debug("Closing idle HTTP client to {}", client.getKey());
+                    client.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the currently pooled clients
+     */
+    public List<PooledHttpClient> getPooledClients() {
+        List<PooledHttpClient> answer = new ArrayList<PooledHttpClient>();
+        for (ConcurrentMap<String, PooledHttpClient> clients : contexts.values()) {
+            answer.addAll(clients.values());
+        }
+        return answer;
+    }
+
+    public long getCreatedClients() {
+        return createdClients.get();
+    }
+
+    public long getEvictedClients() {
+        return evictedClients.get();
+    }
+
+    protected HttpClient createClient(String host, int port) {
+        HttpClient client = vertx.createHttpClient();
+        client.setHost(host);
+        client.setPort(port);
+        client.setKeepAlive(keepAlive);
+        client.setPipelining(keepAlive && pipelining);
+        client.setMaxPoolSize(maxConnectionsPerHost);
+        createdClients.incrementAndGet();
+        return client;
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public Vertx getVertx() {
+        return vertx;
+    }
+
+    /**
+     * Returns whether connections to the back end services are kept alive and reused between requests
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the maximum number of connections opened to each back end host and port
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns whether HTTP pipelining is used on the kept alive connections
+     */
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    /**
+     * Returns the number of milliseconds after which a back end client with no requests in flight is closed
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * A client of a single context to a single back end host and port
+     */
+    public static class PooledHttpClient {
+        private final String key;
+        private final HttpClient client;
+        private final Context context;
+        private final boolean pooled;
+        /**
+         * The number of requests in flight or -1 if the client has been evicted
+         */
+        private final AtomicInteger activeRequests = new AtomicInteger();
+        private final AtomicLong totalRequests = new AtomicLong();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledHttpClient(String key, HttpClient client, Context context, boolean pooled) {
+            this.key = key;
+            this.client = client;
+            this.context = context;
+            this.pooled = pooled;
+        }
+
+        @Override
+        public String toString() {
+            return "PooledHttpClient{" +
+                    "key='" + key + '\'' +
+                    ", activeRequests=" + getActiveRequests() +
+                    ", totalRequests=" + getTotalRequests() +
+                    '}';
+        }
+
+        /**
+         * Releases the client once the request has completed
+         */
+        public void release() {
+            lastUsed = System.currentTimeMillis();
+            activeRequests.decrementAndGet();
+            if (!pooled) {
+                close();
+            }
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int count = activeRequests.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (activeRequests.compareAndSet(count, count + 1)) {
+                    totalRequests.incrementAndGet();
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        boolean tryEvict() {
+            return activeRequests.compareAndSet(0, -1);
+        }
+
+        /**
+         * Closes the client on the context which created it
+         */
+        void close() {
+            if (context != null) {
+                context.runOnContext(new Handler<Void>() {
+                    @Override
+                    public void handle(Void event) {
+                        closeClient();
+                    }
+                });
+            } else {
+                closeClient();
+            }
+        }
+
+        private void closeClient() {
+            try {
+                client.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close HTTP client to " + key + ". " + e, e);
+            }
+        }
+
+        public HttpClient getClient() {
+            return client;
+        }
+
+        /**
+         * Returns the host and port of the back end service
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public int getActiveRequests() {
+            return Math.max(activeRequests.get(), 0);
+        }
+
+        public long getTotalRequests() {
+            return totalRequests.get();
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+    }
+}
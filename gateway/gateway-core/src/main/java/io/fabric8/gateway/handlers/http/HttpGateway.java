@@ -39,7 +39,10 @@ public interface HttpGateway {
     void removeMappingRuleConfiguration(HttpMappingRule mappingRule);
 
     /**
-     * Returns the currently mapped services indexed by URI prefix on this HTTP gateway
+     * Returns the currently mapped services indexed by URI prefix on this HTTP gateway.
+     * <p/>
+     * Implementations should return the same map instance until the mapped services change and then
+     * return a new instance, so that the {@link HttpGatewayHandler} only rebuilds its prefix index on changes.
      */
     Map<String, MappedServices> getMappedServices();
 
@@ -22,14 +22,16 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
-import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.HttpServerResponse;
 
 import io.fabric8.gateway.CallDetailRecord;
+import io.fabric8.gateway.CallMetrics;
+import io.fabric8.gateway.FlowControlledPump;
+import io.fabric8.gateway.PumpStatistics;
+import io.fabric8.gateway.support.PathTrie;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -39,8 +41,11 @@ import java.net.URL;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  */
@@ -50,16 +55,30 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
     private final Vertx vertx;
     private final HttpGateway httpGateway;
     private final ObjectMapper mapper = new ObjectMapper();
+    private CallMetrics callMetrics = new CallMetrics();
+    private final HttpClientPool clientPool;
+    private final PumpStatistics pumpStatistics = new PumpStatistics();
+    private int writeQueueMaxSize = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+    private volatile MappingIndex mappingIndex;
 
+    /**
+     * Creates a handler with its own started client pool, which should be stopped via
+     * {@link #getClientPool()} when the handler is no longer used
+     */
     public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway) {
+        this(vertx, httpGateway, createClientPool(vertx));
+    }
+
+    public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway, HttpClientPool clientPool) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientPool = clientPool;
     }
 
     @Override
     public void handle(final HttpServerRequest request) {
-    	long callStart = System.nanoTime();
-        String uri = request.uri();
+        final long callStart = System.nanoTime();
+        final String uri = request.uri();
         String uri2 = null;
         if (!uri.endsWith("/")) {
             uri2 = uri + "/";
@@ -70,11 +89,15 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
         // lets map the request URI to map to the service URI and then the renaming URI
         // using mapping rules...
-        HttpClient client = null;
+        HttpClientPool.PooledHttpClient client = null;
         String remaining = null;
         String prefix = null;
         String proxyServiceUrl = null;
         String reverseServiceUrl = null;
+        String route = null;
+        MappedServices mappedServices = null;
+        // guards the release of the client and the completion of the call which may happen on several paths
+        final AtomicBoolean released = new AtomicBoolean();
         Map<String, MappedServices> mappingRules = httpGateway.getMappedServices();
         try {
             if (isMappingIndexRequest(request)) {
@@ -85,38 +108,37 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                 response.end(json);
                 response.setStatusCode(200);
             } else {
-                MappedServices mappedServices = null;
                 URL clientURL = null;
-                Set<Map.Entry<String, MappedServices>> entries = mappingRules.entrySet();
-                for (Map.Entry<String, MappedServices> entry : entries) {
-                    String path = entry.getKey();
+                List<Map.Entry<String, MappedServices>> candidates = getMappingIndex(mappingRules).findPrefixMatches(uri2 != null ? uri2 : uri);
+                for (Map.Entry<String, MappedServices> entry : candidates) {
+                    String pathPrefix = entry.getKey();
                     mappedServices = entry.getValue();
 
-                    String pathPrefix = path;
-                    if (uri.startsWith(pathPrefix) || (uri2 != null && uri2.startsWith(pathPrefix))) {
-                        int pathPrefixLength = pathPrefix.length();
-                        if (pathPrefixLength < uri.length()) {
-                            remaining = uri.substring(pathPrefixLength);
-                        } else {
-                            remaining = null;
-                        }
+                    int pathPrefixLength = pathPrefix.length();
+                    if (pathPrefixLength < uri.length()) {
+                        remaining = uri.substring(pathPrefixLength);
+                    } else {
+                        remaining = null;
+                    }
 
-                        // now lets pick a service for this path
-                        proxyServiceUrl = mappedServices.chooseService(request);
-                        if (proxyServiceUrl != null) {
-                            // lets create a client for this request...
-                            try {
-                                clientURL = new URL(proxyServiceUrl);
-                                client = createClient(clientURL);
-                                prefix = clientURL.getPath();
-                                reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
-                                if (reverseServiceUrl.endsWith("/")) {
-                                    reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
-                                }
-                                break;
-                            } catch (MalformedURLException e) {
-                                LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                    // now lets pick a service for this path
+                    proxyServiceUrl = mappedServices.chooseService(request);
+                    if (proxyServiceUrl != null) {
+                        // lets create a client for this request...
+                        try {
+                            clientURL = new URL(proxyServiceUrl);
+                            client = clientPool.acquire(clientURL);
+                            prefix = clientURL.getPath();
+                            route = pathPrefix;
+                            reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
+                            if (reverseServiceUrl.endsWith("/")) {
+                                reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
                             }
+                            break;
+                        } catch (MalformedURLException e) {
+                            LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                            // the load balancer counted the request in flight when choosing the service
+                            mappedServices.requestCompleted(proxyServiceUrl, System.nanoTime() - callStart, true);
                         }
                     }
                 }
@@ -132,66 +154,126 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     }
 
                     LOG.info("Proxying request " + uri + " to service path: " + servicePath + " on service: " + proxyServiceUrl + " reverseServiceUrl: " + reverseServiceUrl);
-                    final HttpClient finalClient = client;
+                    final HttpClientPool.PooledHttpClient finalClient = client;
+                    final MappedServices finalMappedServices = mappedServices;
+                    final String finalProxyServiceUrl = proxyServiceUrl;
+                    final String finalRoute = route;
+                    final long requestStart = System.nanoTime();
+                    final AtomicBoolean requestEnded = new AtomicBoolean();
+                    final AtomicReference<FlowControlledPump> responsePump = new AtomicReference<FlowControlledPump>();
                     Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
                         public void handle(HttpClientResponse clientResponse) {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Proxying response: " + clientResponse.statusCode());
                             }
-                            request.response().setStatusCode(clientResponse.statusCode());
-                            request.response().headers().set(clientResponse.headers());
-                            request.response().setChunked(true);
-                            clientResponse.dataHandler(new Handler<Buffer>() {
-                                public void handle(Buffer data) {
-                                    if (LOG.isDebugEnabled()) {
-                                        LOG.debug("Proxying response body:" + data);
-                                    }
-                                    request.response().write(data);
-                                }
-                            });
+                            final boolean failed = clientResponse.statusCode() >= 500;
                             clientResponse.endHandler(new VoidHandler() {
                                 public void handle() {
-                                    request.response().end();
-                                    finalClient.close();
+                                    if (released.compareAndSet(false, true)) {
+                                        request.response().end();
+                                        finalClient.release();
+                                        finalMappedServices.requestCompleted(finalProxyServiceUrl, System.nanoTime() - requestStart, failed);
+                                        callMetrics.record(finalRoute, finalClient.getKey(), System.nanoTime() - callStart, failed);
+                                    }
                                 }
                             });
+                            if (released.get()) {
+                                // the client went away before the response arrived so lets just drain it
+                                clientResponse.dataHandler(null);
+                                return;
+                            }
+                            request.response().setStatusCode(clientResponse.statusCode());
+                            request.response().headers().set(clientResponse.headers());
+                            request.response().setChunked(true);
+                            FlowControlledPump pump = FlowControlledPump.pump(clientResponse, request.response(), writeQueueMaxSize, pumpStatistics);
+                            responsePump.set(pump);
+                            if (released.get()) {
+                                // the client went away while the pump was being started
+                                pump.stop();
+                            }
                         }
                     };
                     if (mappedServices != null) {
                         ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
                         responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
                     }
-                    final HttpClientRequest clientRequest = client.request(request.method(), servicePath, responseHandler);
-                    clientRequest.headers().set(request.headers());
-                    clientRequest.setChunked(true);
-                    request.dataHandler(new Handler<Buffer>() {
-                        public void handle(Buffer data) {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug("Proxying request body:" + data);
+                    final HttpClientRequest clientRequest = client.getClient().request(request.method(), servicePath, responseHandler);
+                    clientRequest.exceptionHandler(new Handler<Throwable>() {
+                        public void handle(Throwable e) {
+                            LOG.warn("Failed to proxy request " + uri + " to " + finalClient.getKey() + ". " + e, e);
+                            if (released.compareAndSet(false, true)) {
+                                finalClient.release();
+                                finalMappedServices.requestCompleted(finalProxyServiceUrl, System.nanoTime() - requestStart, true);
+                                callMetrics.record(finalRoute, finalClient.getKey(), System.nanoTime() - callStart, true);
                             }
-                            clientRequest.write(data);
+                            request.response().close();
                         }
                     });
+                    clientRequest.headers().set(request.headers());
+                    clientRequest.setChunked(true);
+                    final FlowControlledPump requestPump = FlowControlledPump.pump(request, clientRequest, writeQueueMaxSize, pumpStatistics);
                     request.endHandler(new VoidHandler() {
                         public void handle() {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("end of the request");
                             }
-                            clientRequest.end();
+                            if (requestEnded.compareAndSet(false, true)) {
+                                clientRequest.end();
+                            }
+                        }
+                    });
+
+                    // if the client goes away, possibly while a pump is paused, the end handlers above may never be called
+                    // so lets stop pumping, finish the back end request and release the back end client here
+                    final Handler<Throwable> frontEndFailedHandler = new Handler<Throwable>() {
+                        public void handle(Throwable e) {
+                            if (!released.compareAndSet(false, true)) {
+                                return;
+                            }
+                            if (e != null) {
+                                LOG.debug("Client of " + uri + " failed. " + e, e);
+                            } else {
+                                LOG.debug("Client of {} closed the connection before the response was sent", uri);
+                            }
+                            requestPump.stop();
+                            FlowControlledPump pump = responsePump.get();
+                            if (pump != null) {
+                                // stopping the pump resumes the back end response so that it is drained and its connection reused
+                                pump.stop();
+                            }
+                            // the Vert.x client request can not be aborted, so lets end it to close the chunked body
+                            if (requestEnded.compareAndSet(false, true)) {
+                                clientRequest.end();
+                            }
+                            finalClient.release();
+                            finalMappedServices.requestCompleted(finalProxyServiceUrl, System.nanoTime() - requestStart, true);
+                            callMetrics.record(finalRoute, finalClient.getKey(), System.nanoTime() - callStart, true);
+                        }
+                    };
+                    request.response().closeHandler(new VoidHandler() {
+                        public void handle() {
+                            frontEndFailedHandler.handle(null);
                         }
                     });
+                    request.response().exceptionHandler(frontEndFailedHandler);
+                    request.exceptionHandler(frontEndFailedHandler);
 
                 } else {
                     //  lets return a 404
                     LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingRules.keySet());
                     request.response().setStatusCode(404);
                     request.response().close();
+                    callMetrics.record(null, null, System.nanoTime() - callStart, true);
                 }
             }
-            CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, null);
-            httpGateway.addCallDetailRecord(cdr);
         } catch (Throwable e) {
             LOG.error("Caught: " + e, e);
+            if (client != null && released.compareAndSet(false, true)) {
+                client.release();
+                mappedServices.requestCompleted(proxyServiceUrl, System.nanoTime() - callStart, true);
+            }
+            callMetrics.record(route, client != null ? client.getKey() : null, System.nanoTime() - callStart, true);
+            // only failed calls are reported as detail records as they are rare and need the error message
             CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, new Date() + ":" + e.getMessage());
             httpGateway.addCallDetailRecord(cdr);
             request.response().setStatusCode(404);
@@ -202,6 +284,25 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         }
     }
 
+    private static HttpClientPool createClientPool(Vertx vertx) {
+        HttpClientPool answer = new HttpClientPool(vertx);
+        answer.start();
+        return answer;
+    }
+
+    /**
+     * Returns the prefix index of the given mapping rules; the index is only rebuilt when the gateway
+     * returns a different map of mapped services
+     */
+    protected PathTrie<MappedServices> getMappingIndex(Map<String, MappedServices> mappingRules) {
+        MappingIndex index = mappingIndex;
+        if (index == null || index.mappingRules != mappingRules || index.trie.size() != mappingRules.size()) {
+            index = new MappingIndex(mappingRules);
+            mappingIndex = index;
+        }
+        return index.trie;
+    }
+
     protected String mappingRulesToJson(Map<String, MappedServices> rules) throws IOException {
         Map<String, Collection<String>> data = new HashMap<String, Collection<String>>();
 
@@ -219,17 +320,54 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         if (httpGateway == null || !httpGateway.isEnableIndex()) {
             return false;
         }
-        String uri = request.uri();
+        final String uri = request.uri();
         return uri == null || uri.length() == 0 || uri.equals("/");
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+    public HttpClientPool getClientPool() {
+        return clientPool;
+    }
+
+    /**
+     * Returns the latency and error metrics of the proxied calls per route and back end
+     */
+    public CallMetrics getCallMetrics() {
+        return callMetrics;
+    }
 
+    public void setCallMetrics(CallMetrics callMetrics) {
+        this.callMetrics = callMetrics;
     }
 
+    /**
+     * Returns the statistics of the streaming of the request and response bodies
+     */
+    public PumpStatistics getPumpStatistics() {
+        return pumpStatistics;
+    }
+
+    /**
+     * Returns the maximum number of bytes buffered for a request or response body
+     * before reading from the other side is paused
+     */
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
+
+    /**
+     * An immutable snapshot of the mapped services indexed by URI prefix
+     */
+    private static final class MappingIndex {
+        private final Map<String, MappedServices> mappingRules;
+        private final PathTrie<MappedServices> trie;
+
+        private MappingIndex(Map<String, MappedServices> mappingRules) {
+            this.mappingRules = mappingRules;
+            this.trie = new PathTrie<MappedServices>(mappingRules);
+        }
+    }
 }
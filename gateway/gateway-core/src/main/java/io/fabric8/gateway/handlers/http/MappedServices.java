@@ -18,6 +18,7 @@ package io.fabric8.gateway.handlers.http;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -56,6 +57,14 @@ public class MappedServices {
         return loadBalancer.choose(serviceUrls, new HttpClientRequestFacade(request));
     }
 
+    /**
+     * Notifies the load balancer that a request to the given service has completed so that load aware
+     * load balancers can take the latency and failures of each service into account
+     */
+    public void requestCompleted(String serviceUrl, long latencyNanos, boolean failed) {
+        LoadBalancers.requestCompleted(loadBalancer, serviceUrl, latencyNanos, failed);
+    }
+
     /**
      * Provides a hook so we can wrap a client response handler in a policy such
      * as to reverse the URIs {@link io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy} or
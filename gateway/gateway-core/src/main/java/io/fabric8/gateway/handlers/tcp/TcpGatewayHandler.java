@@ -17,8 +17,11 @@ package io.fabric8.gateway.handlers.tcp;
 
 import io.fabric8.common.util.Objects;
 import io.fabric8.common.util.Strings;
+import io.fabric8.gateway.FlowControlledPump;
+import io.fabric8.gateway.PumpStatistics;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
 import io.fabric8.gateway.ServiceMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,12 +30,12 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetSocket;
-import org.vertx.java.core.streams.Pump;
 
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A TCP gateway implementation
@@ -45,6 +48,8 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
     private final String protocol;
     private final LoadBalancer pathLoadBalancer;
     private final LoadBalancer serviceLoadBalancer;
+    private final PumpStatistics pumpStatistics = new PumpStatistics();
+    private int writeQueueMaxSize = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE;
 
     public TcpGatewayHandler(Vertx vertx, ServiceMap serviceMap, String protocol, LoadBalancer pathLoadBalancer, LoadBalancer serviceLoadBalancer) {
         this.vertx = vertx;
@@ -63,7 +68,7 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
         if (path != null) {
             List<ServiceDetails> services = serviceMap.getServices(path);
             if (!services.isEmpty()) {
-                ServiceDetails serviceDetails = serviceLoadBalancer.choose(services, requestFacade);
+                final ServiceDetails serviceDetails = serviceLoadBalancer.choose(services, requestFacade);
                 if (serviceDetails != null) {
                     List<String> urlStrings = serviceDetails.getServices();
                     for (String urlString : urlStrings) {
@@ -74,11 +79,36 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
                                 //URL url = new URL(urlString);
                                 String urlProtocol = uri.getScheme();
                                 if (Objects.equal(protocol, urlProtocol)) {
+                                    final long connectStart = System.nanoTime();
                                     Handler<AsyncResult<NetSocket>> handler = new Handler<AsyncResult<NetSocket>>() {
                                         public void handle(final AsyncResult<NetSocket> asyncSocket) {
-                                            NetSocket clientSocket = asyncSocket.result();
-                                            Pump.createPump(clientSocket, socket).start();
-                                            Pump.createPump(socket, clientSocket).start();
+                                            final long connectLatency = System.nanoTime() - connectStart;
+                                            if (!asyncSocket.succeeded()) {
+                                                LOG.info("Failed to connect " + socket.remoteAddress() + " to " + serviceDetails + ". " + asyncSocket.cause());
+                                                LoadBalancers.requestCompleted(serviceLoadBalancer, serviceDetails, connectLatency, true);
+                                                socket.close();
+                                                return;
+                                            }
+                                            final NetSocket clientSocket = asyncSocket.result();
+                                            final FlowControlledPump toClient = new FlowControlledPump(clientSocket, socket, writeQueueMaxSize, pumpStatistics);
+                                            final FlowControlledPump fromClient = new FlowControlledPump(socket, clientSocket, writeQueueMaxSize, pumpStatistics);
+                                            final AtomicBoolean completed = new AtomicBoolean();
+                                            Handler<Void> closeHandler = new Handler<Void>() {
+                                                public void handle(Void event) {
+                                                    if (completed.compareAndSet(false, true)) {
+                                                        // a pump paused when its socket closed would otherwise stay paused
+                                                        toClient.stop();
+                                                        fromClient.stop();
+                                                        socket.close();
+                                                        clientSocket.close();
+                                                        LoadBalancers.requestCompleted(serviceLoadBalancer, serviceDetails, connectLatency, false);
+                                                    }
+                                                }
+                                            };
+                                            socket.closeHandler(closeHandler);
+                                            clientSocket.closeHandler(closeHandler);
+                                            toClient.start();
+                                            fromClient.start();
                                         }
                                     };
                                     client = createClient(socket, uri, handler);
@@ -91,6 +121,9 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
                             }
                         }
                     }
+                    if (client == null) {
+                        LoadBalancers.requestCompleted(serviceLoadBalancer, serviceDetails, 0, true);
+                    }
                 }
             }
         }
@@ -111,4 +144,29 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
         LOG.info("Connecting " + socket.remoteAddress() + " to host " + host + " port " + port + " protocol " + protocol);
         return client.connect(port, host, handler);
     }
+
+    /**
+     * Returns the protocol of the services this handler connects the clients to
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Returns the statistics of the data pumped between the clients and the services
+     */
+    public PumpStatistics getPumpStatistics() {
+        return pumpStatistics;
+    }
+
+    /**
+     * Returns the maximum number of bytes buffered for a socket before reading from its peer is paused
+     */
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
 }
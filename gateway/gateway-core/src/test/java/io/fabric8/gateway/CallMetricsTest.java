@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class CallMetricsTest {
+
+    @Test
+    public void testBucketsCoverAllValues() throws Exception {
+        long previousHighest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lowest = LatencyHistogram.lowestEquivalentValue(i);
+            long highest = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals("lowest value of bucket " + i, previousHighest + 1, lowest);
+            assertEquals("bucket of " + lowest, i, LatencyHistogram.bucketIndex(lowest));
+            assertEquals("bucket of " + highest, i, LatencyHistogram.bucketIndex(highest));
+            assertTrue("bucket " + i + " is too wide", highest - lowest <= Math.max(lowest / 32, 1));
+            previousHighest = highest;
+        }
+        assertEquals("highest value", LatencyHistogram.MAX_VALUE, previousHighest);
+    }
+
+    @Test
+    public void testPercentilesAndErrorRatesPerRoute() throws Exception {
+        CallMetrics metrics = new CallMetrics();
+        for (int i = 1; i <= 1000; i++) {
+            metrics.record("/cxf/crm/", "localhost:8181", TimeUnit.MILLISECONDS.toNanos(i), i % 10 == 0);
+        }
+        metrics.record(null, null, TimeUnit.MILLISECONDS.toNanos(1), true);
+
+        List<RouteStatistics> statistics = metrics.getRouteStatistics();
+        assertEquals("routes " + statistics, 2, statistics.size());
+        RouteStatistics crm = findRoute(statistics, "/cxf/crm/");
+        assertEquals("localhost:8181", crm.getBackend());
+        assertEquals("count", 1000, crm.getCount());
+        assertEquals("errors", 100, crm.getErrorCount());
+        assertEquals("error rate", 0.1, crm.getErrorRate(), 0.0001);
+        assertWithinPrecision("p50", 500000, crm.getP50Micros());
+        assertWithinPrecision("p99", 990000, crm.getP99Micros());
+        assertWithinPrecision("p999", 999000, crm.getP999Micros());
+        assertWithinPrecision("max", 1000000, crm.getMaxMicros());
+
+        RouteStatistics unmapped = findRoute(statistics, CallMetrics.UNMAPPED_ROUTE);
+        assertEquals(CallMetrics.NO_BACKEND, unmapped.getBackend());
+        assertEquals("error rate", 1.0, unmapped.getErrorRate(), 0.0001);
+
+        assertEquals("total count", 1001, metrics.getCount());
+        assertEquals("total errors", 101, metrics.getErrorCount());
+        assertTrue("last call time", metrics.getLastCallTime() > 0);
+    }
+
+    @Test
+    public void testCallsFromMultipleThreadsAreAggregated() throws Exception {
+        final CallMetrics metrics = new CallMetrics();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        metrics.record("/foo/", "localhost:8080", 1000, false);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("count", threads.length * 10000, metrics.getCount());
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        CallMetrics metrics = new CallMetrics();
+        metrics.record("/foo/", "localhost:8080", TimeUnit.SECONDS.toNanos(10), true);
+        metrics.reset();
+        metrics.record("/foo/", "localhost:8080", TimeUnit.MILLISECONDS.toNanos(1), false);
+
+        RouteStatistics foo = findRoute(metrics.getRouteStatistics(), "/foo/");
+        assertEquals("count", 1, foo.getCount());
+        assertEquals("errors", 0, foo.getErrorCount());
+        assertWithinPrecision("max", 1000, foo.getMaxMicros());
+    }
+
+    @Test
+    public void testIdleRecordersAreEvicted() throws Exception {
+        CallMetrics metrics = new CallMetrics();
+        metrics.setIdleTimeout(10);
+        metrics.record("/foo/", "localhost:8080", 1000, false);
+        assertEquals("recorders", 1, metrics.getRecorderCount());
+
+        Thread.sleep(50);
+        metrics.record("/bar/", "localhost:8081", 1000, false);
+        List<RouteStatistics> statistics = metrics.getRouteStatistics();
+        assertEquals("routes " + statistics, 1, statistics.size());
+        assertEquals("/bar/", statistics.get(0).getRoute());
+        assertEquals("recorders", 1, metrics.getRecorderCount());
+    }
+
+    @Test
+    public void testTotalsIncludeTheEvictedRecorders() throws Exception {
+        CallMetrics metrics = new CallMetrics();
+        metrics.setIdleTimeout(10);
+        metrics.record("/foo/", "localhost:8080", TimeUnit.MILLISECONDS.toNanos(1), false);
+        metrics.record("/foo/", "localhost:8080", TimeUnit.MILLISECONDS.toNanos(3), true);
+        long lastCallTime = metrics.getLastCallTime();
+        assertEquals("total count", 2, metrics.getCount());
+
+        Thread.sleep(50);
+        metrics.aggregate();
+        assertEquals("recorders", 0, metrics.getRecorderCount());
+        assertEquals("total count", 2, metrics.getCount());
+        assertEquals("total errors", 1, metrics.getErrorCount());
+        assertEquals("last call time", lastCallTime, metrics.getLastCallTime());
+        assertEquals("mean latency", TimeUnit.MILLISECONDS.toNanos(2), metrics.getMeanLatencyNanos());
+
+        metrics.record("/bar/", "localhost:8081", TimeUnit.MILLISECONDS.toNanos(1), false);
+        assertEquals("total count", 3, metrics.getCount());
+        assertEquals("total errors", 1, metrics.getErrorCount());
+
+        metrics.reset();
+        assertEquals("total count", 0, metrics.getCount());
+        assertEquals("total errors", 0, metrics.getErrorCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRecordersAreEvicted() throws Exception {
+        CallMetrics metrics = new CallMetrics();
+        metrics.setMaxRecorders(2);
+        for (int i = 0; i < 4; i++) {
+            metrics.record("/foo/", "localhost:" + (8080 + i), 1000, false);
+            Thread.sleep(5);
+        }
+        metrics.aggregate();
+        assertEquals("recorders", 2, metrics.getRecorderCount());
+        for (RouteStatistics statistics : metrics.getRouteStatistics()) {
+            assertTrue("should have evicted " + statistics.getBackend(),
+                    statistics.getBackend().equals("localhost:8082") || statistics.getBackend().equals("localhost:8083"));
+        }
+    }
+
+    protected RouteStatistics findRoute(List<RouteStatistics> statistics, String route) {
+        for (RouteStatistics routeStatistics : statistics) {
+            if (route.equals(routeStatistics.getRoute())) {
+                return routeStatistics;
+            }
+        }
+        throw new AssertionError("No statistics for route " + route + " in " + statistics);
+    }
+
+    protected void assertWithinPrecision(String message, long expected, long actual) {
+        assertTrue(message + " expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 32);
+    }
+}
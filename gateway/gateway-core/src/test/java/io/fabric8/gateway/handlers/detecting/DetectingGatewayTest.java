@@ -41,8 +41,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VertxFactory;
+import org.vertx.java.core.net.NetServer;
+import org.vertx.java.core.net.NetSocket;
 
 import javax.jms.Connection;
 import java.io.File;
@@ -55,6 +59,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
@@ -394,6 +399,81 @@ public class DetectingGatewayTest {
 
     }
 
+    /**
+     * A connection closed while reading from the client is paused, as the service does not keep up,
+     * should not leave the pump paused.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void stopsPausedPumpsWhenTheServiceCloses() throws Exception {
+        final List<NetSocket> serviceSockets = new CopyOnWriteArrayList<NetSocket>();
+        NetServer service = vertx.createNetServer().connectHandler(new Handler<NetSocket>() {
+            @Override
+            public void handle(NetSocket socket) {
+                // never read so that the gateway has to pause reading from the client
+                socket.pause();
+                serviceSockets.add(socket);
+            }
+        });
+        FutureHandler<AsyncResult<NetServer>> listening = new FutureHandler<AsyncResult<NetServer>>();
+        service.listen(0, "localhost", listening);
+        int servicePort = FutureHandler.result(listening).port();
+        try {
+            ServiceDTO details = new ServiceDTO();
+            details.setId("slow");
+            details.setVersion("1.0");
+            details.setContainer("testing");
+            details.setBundleName("none");
+            details.setBundleVersion("1.0");
+            details.setServices(Arrays.asList("stomp://localhost:" + servicePort));
+            serviceMap.serviceUpdated("slow", details);
+
+            final DetectingGateway gateway = createGateway();
+            gateway.setWriteQueueMaxSize(1024);
+            final Socket socket = new Socket("localhost", gateway.getBoundPort());
+            final OutputStream outputStream = socket.getOutputStream();
+            outputStream.write("CONNECT\naccept-version:1.2\nhost:slow\n\n\0".getBytes());
+            Thread writer = new Thread("writer") {
+                @Override
+                public void run() {
+                    byte[] data = new byte[64 * 1024];
+                    try {
+                        while (true) {
+                            outputStream.write(data);
+                        }
+                    } catch (IOException e) {
+                        // closed by the gateway
+                    }
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+
+            within(10, TimeUnit.SECONDS, new Callable<Object>(){
+                @Override
+                public Object call() throws Exception {
+                    assertEquals(1, serviceSockets.size());
+                    assertEquals(1, gateway.getCurrentlyPausedStreams());
+                    return null;
+                }
+            });
+            serviceSockets.get(0).close();
+            within(5, TimeUnit.SECONDS, new Callable<Object>(){
+                @Override
+                public Object call() throws Exception {
+                    assertEquals(0, gateway.getConnectedClients().length);
+                    assertEquals(0, gateway.getCurrentlyPausedStreams());
+                    assertEquals(1, gateway.getPauseCount());
+                    return null;
+                }
+            });
+            socket.close();
+        } finally {
+            service.close();
+        }
+    }
+
     private <T> T within(int timeout, TimeUnit unit, Callable<T> action) throws Exception {
         long remaining = unit.toMillis(timeout);
         Throwable lastError=null;
@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple benchmark of how many connections per second can have their protocol detected by the
+ * {@link ProtocolDetector} compared with the previous approach of accumulating every read into a new buffer
+ * and checking every protocol against it, for different mixes of protocols and read sizes.
+ * <p/>
+ * Detection runs on the event loop for every accepted connection so this is the part of the accept path
+ * the gateway controls; the sockets themselves are left out so the numbers are not dominated by the TCP stack.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class ProtocolDetectionBenchmark {
+    private static final int WARMUP_CONNECTIONS = 200000;
+    private static final int CONNECTIONS = 1000000;
+
+    @Test
+    public void testDetection() throws Exception {
+        List<Protocol> protocols = ProtocolDetectorTest.createProtocols();
+        Map<String, byte[]> headers = ProtocolDetectorTest.createHeaders();
+        String[][] mixes = {
+                {"mqtt"},
+                {"amqp"},
+                {"openwire"},
+                {"stomp"},
+                {"http"},
+                {"mqtt", "amqp", "openwire", "stomp", "http"}
+        };
+        for (String[] mix : mixes) {
+            for (int readSize : new int[]{1, 4, Integer.MAX_VALUE}) {
+                List<Buffer[]> connections = new ArrayList<Buffer[]>();
+                for (String protocol : mix) {
+                    connections.add(split(headers.get(protocol), readSize));
+                }
+                double legacy = benchmark(new LegacyApproach(protocols), connections);
+                double detector = benchmark(new DetectorApproach(protocols), connections);
+                System.out.println(String.format("%-40s read size: %4s legacy: %10.0f conn/s detector: %10.0f conn/s",
+                        Arrays.toString(mix), readSize == Integer.MAX_VALUE ? "all" : readSize, legacy, detector));
+            }
+        }
+    }
+
+    protected static double benchmark(Approach approach, List<Buffer[]> connections) {
+        run(approach, connections, WARMUP_CONNECTIONS);
+        long start = System.nanoTime();
+        run(approach, connections, CONNECTIONS);
+        return CONNECTIONS / ((System.nanoTime() - start) / 1000000000.0);
+    }
+
+    protected static void run(Approach approach, List<Buffer[]> connections, int count) {
+        for (int i = 0; i < count; i++) {
+            if (approach.detect(connections.get(i % connections.size())) == null) {
+                throw new IllegalStateException("No protocol detected");
+            }
+        }
+    }
+
+    protected static Buffer[] split(byte[] header, int readSize) {
+        List<Buffer> answer = new ArrayList<Buffer>();
+        for (int i = 0; i < header.length; i += readSize) {
+            int end = (int) Math.min((long) i + readSize, header.length);
+            answer.add(new Buffer(Arrays.copyOfRange(header, i, end)));
+        }
+        return answer.toArray(new Buffer[answer.size()]);
+    }
+
+    /**
+     * The reads are reused for every connection so each approach is given its own copy of them, like a
+     * socket would.
+     */
+    protected interface Approach {
+        Protocol detect(Buffer[] reads);
+    }
+
+    /**
+     * Detects the protocol the way the gateway used to
+     */
+    protected static class LegacyApproach implements Approach {
+        private final List<Protocol> protocols;
+
+        public LegacyApproach(List<Protocol> protocols) {
+            this.protocols = protocols;
+        }
+
+        @Override
+        public Protocol detect(Buffer[] reads) {
+            Buffer received = new Buffer();
+            for (Buffer read : reads) {
+                received.appendBuffer(read.copy());
+                for (Protocol protocol : protocols) {
+                    if (protocol.matches(received)) {
+                        return protocol;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    protected static class DetectorApproach implements Approach {
+        private final ProtocolDetector detector;
+
+        public DetectorApproach(List<Protocol> protocols) {
+            this.detector = new ProtocolDetector(protocols);
+        }
+
+        @Override
+        public Protocol detect(Buffer[] reads) {
+            ProtocolDetector.Detection detection = detector.createDetection();
+            for (Buffer read : reads) {
+                Protocol protocol = detection.detect(read.copy());
+                if (protocol != null) {
+                    return protocol;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ProtocolDetectorTest {
+
+    @Test
+    public void testDetectsHeadersReceivedInOneRead() throws Exception {
+        List<Protocol> protocols = createProtocols();
+        for (Map.Entry<String, byte[]> entry : createHeaders().entrySet()) {
+            ProtocolDetector.Detection detection = new ProtocolDetector(protocols).createDetection();
+            Buffer header = new Buffer(entry.getValue());
+            Protocol protocol = detection.detect(header);
+            assertNotNull("no protocol detected for " + entry.getKey(), protocol);
+            assertEquals(entry.getKey(), protocol.getProtocolName());
+            assertSame("the received bytes should not be copied", header, detection.getReceived());
+        }
+    }
+
+    @Test
+    public void testDetectsHeadersReceivedAByteAtATime() throws Exception {
+        List<Protocol> protocols = createProtocols();
+        for (Map.Entry<String, byte[]> entry : createHeaders().entrySet()) {
+            byte[] bytes = entry.getValue();
+            ProtocolDetector.Detection detection = new ProtocolDetector(protocols).createDetection();
+            Protocol protocol = null;
+            int length = 0;
+            while (protocol == null && length < bytes.length) {
+                assertFalse("detection of " + entry.getKey() + " failed after " + length + " bytes", detection.isFailed());
+                protocol = detection.detect(new Buffer(new byte[]{bytes[length++]}));
+            }
+            assertNotNull("no protocol detected for " + entry.getKey(), protocol);
+            assertEquals(entry.getKey(), protocol.getProtocolName());
+            assertEquals("bytes needed to detect " + entry.getKey(), bytesNeededToMatch(protocols, bytes), length);
+        }
+    }
+
+    @Test
+    public void testDoesNotModifyTheBuffersRead() throws Exception {
+        ProtocolDetector.Detection detection = new ProtocolDetector(createProtocols()).createDetection();
+        Buffer first = new Buffer("CON");
+        Buffer second = new Buffer("NECT\n");
+        assertNull(detection.detect(first));
+        assertNotNull(detection.detect(second));
+        assertEquals("CON", first.toString());
+        assertEquals("NECT\n", second.toString());
+        assertEquals("CONNECT\n", detection.getReceived().toString());
+    }
+
+    @Test
+    public void testDetectsInterleavedConnectionsReadInSeveralBytes() throws Exception {
+        // one detector is shared by all the connections accepted by a gateway
+        ProtocolDetector detector = new ProtocolDetector(createProtocols());
+        Map<String, byte[]> headers = createHeaders();
+        Map<String, ProtocolDetector.Detection> connections = new LinkedHashMap<String, ProtocolDetector.Detection>();
+        for (String name : headers.keySet()) {
+            connections.put(name, detector.createDetection());
+        }
+        for (int offset = 0; connections.size() > 0; offset += 4) {
+            for (Iterator<Map.Entry<String, ProtocolDetector.Detection>> it = connections.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, ProtocolDetector.Detection> entry = it.next();
+                byte[] bytes = headers.get(entry.getKey());
+                assertTrue("no protocol detected for " + entry.getKey(), offset < bytes.length);
+                Buffer read = new Buffer(Arrays.copyOfRange(bytes, offset, Math.min(offset + 4, bytes.length)));
+                Protocol protocol = entry.getValue().detect(read);
+                if (protocol != null) {
+                    assertEquals(entry.getKey(), protocol.getProtocolName());
+                    assertEquals("received bytes of " + entry.getKey(), Math.min(offset + 4, bytes.length),
+                            entry.getValue().getReceived().length());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFailsOnceNoProtocolCanMatch() throws Exception {
+        List<Protocol> protocols = new ArrayList<Protocol>();
+        protocols.add(new StompProtocol());
+        protocols.add(new AmqpProtocol());
+        protocols.add(new HttpProtocol());
+        ProtocolDetector.Detection detection = new ProtocolDetector(protocols).createDetection();
+        assertNull(detection.detect(new Buffer("CONN")));
+        assertFalse(detection.isFailed());
+        assertNull(detection.detect(new Buffer("X")));
+        assertTrue("should fail as soon as every protocol is ruled out", detection.isFailed());
+    }
+
+    @Test
+    public void testFailsAfterMaxIdentificationLength() throws Exception {
+        List<Protocol> protocols = createProtocols();
+        ProtocolDetector detector = new ProtocolDetector(protocols);
+        int maxIdentificationLength = detector.getMaxIdentificationLength();
+        ProtocolDetector.Detection detection = detector.createDetection();
+        int length = 0;
+        while (!detection.isFailed() && length < maxIdentificationLength) {
+            assertNull(detection.detect(new Buffer(new byte[]{0})));
+            length++;
+        }
+        assertTrue("should fail after at most " + maxIdentificationLength + " bytes", detection.isFailed());
+    }
+
+    /**
+     * Returns the number of bytes the previous approach of checking every protocol against all the
+     * bytes received so far needed to detect a protocol
+     */
+    protected static int bytesNeededToMatch(List<Protocol> protocols, byte[] bytes) {
+        Buffer received = new Buffer();
+        for (byte b : bytes) {
+            received.appendByte(b);
+            for (Protocol protocol : protocols) {
+                if (protocol.matches(received)) {
+                    return received.length();
+                }
+            }
+        }
+        return -1;
+    }
+
+    static List<Protocol> createProtocols() {
+        List<Protocol> protocols = new ArrayList<Protocol>();
+        protocols.add(new StompProtocol());
+        protocols.add(new MqttProtocol());
+        protocols.add(new AmqpProtocol());
+        protocols.add(new OpenwireProtocol());
+        protocols.add(new HttpProtocol());
+        protocols.add(new SslProtocol());
+        return protocols;
+    }
+
+    /**
+     * Returns the first bytes sent by a client of each protocol
+     */
+    static Map<String, byte[]> createHeaders() {
+        Map<String, byte[]> answer = new LinkedHashMap<String, byte[]>();
+        answer.put("stomp", "CONNECT\naccept-version:1.2\nhost:broker1\n\n\0".getBytes());
+        answer.put("mqtt", new byte[]{0x10, 0x16, 0x00, 0x04, 'M', 'Q', 'T', 'T', 0x04, 0x02, 0x00, 0x3c,
+                0x00, 0x0a, 'c', 'l', 'i', 'e', 'n', 't', '-', '1', '2', '3'});
+        answer.put("amqp", new byte[]{'A', 'M', 'Q', 'P', 0x00, 0x01, 0x00, 0x00});
+        answer.put("openwire", new byte[]{0x00, 0x00, 0x00, 0x10, 0x01, 'A', 'c', 't', 'i', 'v', 'e', 'M', 'Q',
+                0x00, 0x00, 0x00, 0x0a});
+        answer.put("http", "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+        answer.put("ssl", new byte[]{0x16, 0x03, 0x01, 0x00, 0x40, 0x01, 0x00, 0x00, 0x3c, 0x03, 0x03});
+        return answer;
+    }
+}
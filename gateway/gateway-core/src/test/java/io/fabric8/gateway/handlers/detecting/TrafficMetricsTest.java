@@ -0,0 +1,111 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.StripedCounter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ */
+public class TrafficMetricsTest {
+
+    @Test
+    public void testCountersUpdatedFromManyThreads() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        counter.add(2);
+                        counter.decrement();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * 100000L, counter.sum());
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void testStatisticsPerVirtualHostAndProtocol() throws Exception {
+        TrafficMetrics metrics = new TrafficMetrics();
+        for (String virtualHost : new String[]{"broker1", "broker1", "broker2", null}) {
+            TrafficCounters virtualHostCounters = metrics.getVirtualHostCounters(virtualHost);
+            TrafficCounters protocolCounters = metrics.getProtocolCounters("mqtt");
+            virtualHostCounters.connected(2000);
+            protocolCounters.connected(2000);
+            virtualHostCounters.getBytesIn().add(100);
+            protocolCounters.getBytesIn().add(100);
+            virtualHostCounters.getBytesOut().add(1000);
+            protocolCounters.getBytesOut().add(1000);
+        }
+        metrics.getVirtualHostCounters("broker2").disconnected();
+        metrics.getProtocolCounters("mqtt").disconnected();
+
+        TrafficStatistics broker1 = find(metrics.getVirtualHostStatistics(), "broker1");
+        assertEquals("connections", 2, broker1.getConnections());
+        assertEquals("active connections", 2, broker1.getActiveConnections());
+        assertEquals("bytes in", 200, broker1.getBytesIn());
+        assertEquals("bytes out", 2000, broker1.getBytesOut());
+        assertEquals("connect latency", 2, broker1.getMeanConnectLatencyMicros());
+        assertEquals("active connections", 0, find(metrics.getVirtualHostStatistics(), "broker2").getActiveConnections());
+        assertEquals("connections", 1, find(metrics.getVirtualHostStatistics(), TrafficMetrics.NONE).getConnections());
+
+        TrafficStatistics mqtt = find(metrics.getProtocolStatistics(), "mqtt");
+        assertEquals("connections", 4, mqtt.getConnections());
+        assertEquals("active connections", 3, mqtt.getActiveConnections());
+        assertEquals("bytes", 4400, mqtt.getBytes());
+
+        metrics.reset();
+        mqtt = find(metrics.getProtocolStatistics(), "mqtt");
+        assertEquals("connections", 0, mqtt.getConnections());
+        assertEquals("active connections are not reset", 3, mqtt.getActiveConnections());
+    }
+
+    @Test
+    public void testBusiest() throws Exception {
+        List<TrafficStatistics> clients = Arrays.asList(
+                new TrafficStatistics("a", 1, 1, 10, 10, 0),
+                new TrafficStatistics("b", 1, 1, 500, 0, 0),
+                new TrafficStatistics("c", 1, 1, 0, 100, 0));
+        List<TrafficStatistics> busiest = TrafficMetrics.busiest(clients, 2);
+        assertEquals(2, busiest.size());
+        assertEquals("b", busiest.get(0).getName());
+        assertEquals("c", busiest.get(1).getName());
+        assertEquals(3, TrafficMetrics.busiest(clients, 10).size());
+    }
+
+    protected TrafficStatistics find(List<TrafficStatistics> statistics, String name) {
+        for (TrafficStatistics answer : statistics) {
+            if (name.equals(answer.getName())) {
+                return answer;
+            }
+        }
+        throw new AssertionError("No statistics for " + name + " in " + statistics);
+    }
+}
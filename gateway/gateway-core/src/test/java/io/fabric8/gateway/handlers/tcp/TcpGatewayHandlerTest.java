@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.tcp;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.handlers.detecting.FutureHandler;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+import org.vertx.java.core.net.NetServer;
+import org.vertx.java.core.net.NetSocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TcpGatewayHandlerTest {
+
+    private static final long TIMEOUT = 10;
+
+    private Vertx vertx;
+    private final List<NetServer> servers = new CopyOnWriteArrayList<NetServer>();
+    private final List<NetSocket> serviceSockets = new CopyOnWriteArrayList<NetSocket>();
+
+    @Before
+    public void setUp() {
+        vertx = VertxFactory.newVertx();
+    }
+
+    @After
+    public void tearDown() {
+        for (NetServer server : servers) {
+            server.close();
+        }
+        vertx.stop();
+    }
+
+    @Test
+    public void testClosingAConnectionStopsItsPausedPump() throws Exception {
+        // the service never reads so that the gateway has to pause reading from the client
+        int servicePort = listen(new Handler<NetSocket>() {
+            @Override
+            public void handle(NetSocket socket) {
+                socket.pause();
+                serviceSockets.add(socket);
+            }
+        });
+        ServiceDTO details = new ServiceDTO();
+        details.setId("broker");
+        details.setServices(Arrays.asList("tcp://localhost:" + servicePort));
+        ServiceMap serviceMap = new ServiceMap();
+        serviceMap.serviceUpdated("broker", details);
+
+        TcpGatewayHandler handler = new TcpGatewayHandler(vertx, serviceMap, "tcp",
+                LoadBalancers.createLoadBalancer(LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, 0),
+                LoadBalancers.createLoadBalancer(LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, 0));
+        handler.setWriteQueueMaxSize(1024);
+        Socket socket = new Socket("localhost", listen(handler));
+        try {
+            final OutputStream outputStream = socket.getOutputStream();
+            Thread writer = new Thread("writer") {
+                @Override
+                public void run() {
+                    byte[] data = new byte[64 * 1024];
+                    try {
+                        while (true) {
+                            outputStream.write(data);
+                        }
+                    } catch (IOException e) {
+                        // closed by the gateway
+                    }
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+            while (handler.getPumpStatistics().getCurrentlyPaused() == 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, handler.getPumpStatistics().getCurrentlyPaused());
+            assertEquals(1, serviceSockets.size());
+
+            serviceSockets.get(0).close();
+            writer.join(TimeUnit.SECONDS.toMillis(TIMEOUT));
+            assertFalse("the client connection should be closed", writer.isAlive());
+            assertEquals(0, handler.getPumpStatistics().getCurrentlyPaused());
+            assertEquals(1, handler.getPumpStatistics().getPauseCount());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private int listen(Handler<NetSocket> handler) throws Exception {
+        NetServer server = vertx.createNetServer().connectHandler(handler);
+        servers.add(server);
+        FutureHandler<AsyncResult<NetServer>> listening = new FutureHandler<AsyncResult<NetServer>>();
+        server.listen(0, "localhost", listening);
+        return FutureHandler.result(listening).port();
+    }
+}
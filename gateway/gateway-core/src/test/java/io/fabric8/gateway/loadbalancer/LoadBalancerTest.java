@@ -15,8 +15,13 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
+import io.fabric8.gateway.ServiceDTO;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.ConcurrentStickyLoadBalancer;
+import io.fabric8.gateway.loadbalancer.EwmaLoadBalancer;
+import io.fabric8.gateway.loadbalancer.LeastConnectionsLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
 import io.fabric8.gateway.loadbalancer.RandomLoadBalancer;
 import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
 import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
@@ -28,9 +33,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -103,7 +112,172 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    public void testConcurrentStickyLoadBalancer() throws Exception {
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(new ConcurrentStickyLoadBalancer());
+
+        LoadBalancer loadBalancer = new ConcurrentStickyLoadBalancer();
+        Set<String> allRequests = new HashSet<String>();
+        int numberOfClients = 10;
+        for (int i = 0; i < numberOfClients; i++) {
+            clientRequestKey = "newClient:" + i;
+
+            List<String> results = performRequests(loadBalancer);
+            Set<String> set = asSet(results);
+            assertTrue("All values should be the same for client: " + clientRequestKey + " but got: " + set, set.size() == 1);
+            allRequests.addAll(set);
+        }
+
+        // now we should have a reasonable number of different overall answers.
+        assertTrue("Across " + numberOfClients + " we should have most of the values: " + allRequests, allRequests.size() > 1);
+    }
+
+    @Test
+    public void testConcurrentStickyLoadBalancerIsStickyAcrossThreads() throws Exception {
+        final ConcurrentStickyLoadBalancer loadBalancer = new ConcurrentStickyLoadBalancer(10000);
+        final ConcurrentMap<String, String> chosen = new ConcurrentHashMap<String, String>();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] threads = new Thread[16];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        final String clientKey = "client:" + ((seed * 7919 + i * 31) % 1000);
+                        String service = loadBalancer.choose(services, new ClientRequestFacade() {
+                            @Override
+                            public String getClientRequestKey() {
+                                return clientKey;
+                            }
+                        });
+                        String previous = chosen.putIfAbsent(clientKey, service);
+                        if (previous != null && !previous.equals(service)) {
+                            failure.compareAndSet(null, clientKey + " moved from " + previous + " to " + service);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals("clients", 1000, loadBalancer.size());
+    }
+
+    @Test
+    public void testConcurrentStickyLoadBalancerEvictsOldClients() throws Exception {
+        ConcurrentStickyLoadBalancer loadBalancer = new ConcurrentStickyLoadBalancer(100);
+        for (int i = 0; i < 1000; i++) {
+            clientRequestKey = "newClient:" + i;
+            loadBalancer.choose(services, clientRequestFacade);
+        }
+        assertTrue("Should have evicted old clients but has: " + loadBalancer.size(), loadBalancer.size() < 500);
+    }
+
+    @Test
+    public void testLeastConnectionsLoadBalancer() throws Exception {
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(new LeastConnectionsLoadBalancer());
+
+        LeastConnectionsLoadBalancer loadBalancer = new LeastConnectionsLoadBalancer();
+        String busy = services.get(0);
+        for (int i = 0; i < 100; i++) {
+            loadBalancer.getLoad(busy).started();
+        }
+        List<String> results = performRequests(loadBalancer);
+        assertTrue("Should not have chosen the busy service: " + results, !results.contains(busy));
+
+        // once the requests complete the service should be chosen again
+        for (int i = 0; i < 100; i++) {
+            loadBalancer.requestCompleted(busy, 1000, false);
+        }
+        assertEquals("in flight requests of " + busy, 0, loadBalancer.getLoad(busy).getInFlight());
+        Set<String> set = asSet(performRequests(loadBalancer, 100));
+        assertTrue("Should have chosen the idle service: " + set, set.contains(busy));
+    }
+
+    @Test
+    public void testEwmaLoadBalancerAvoidsSlowAndFailingServices() throws Exception {
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(new EwmaLoadBalancer());
+
+        EwmaLoadBalancer loadBalancer = new EwmaLoadBalancer();
+        String slow = services.get(0);
+        String failing = services.get(1);
+        for (String service : services) {
+            long latency = service.equals(slow) ? 500000000 : 1000000;
+            loadBalancer.getLoad(service).started();
+            LoadBalancers.requestCompleted(loadBalancer, service, latency, service.equals(failing));
+        }
+
+        // the slow and failing services are only chosen when they are the two random choices
+        List<String> results = performRequests(loadBalancer, 100);
+        int slowOrFailing = Collections.frequency(results, slow) + Collections.frequency(results, failing);
+        assertTrue("Should have mostly chosen the fast services but chose the slow or failing services "
+                + slowOrFailing + " times: " + results, slowOrFailing < 40);
+    }
+
+    @Test
+    public void testEwmaLoadBalancerDoesNotFloodUnsampledServices() throws Exception {
+        EwmaLoadBalancer loadBalancer = new EwmaLoadBalancer();
+        String added = services.get(0);
+        for (String service : services) {
+            if (!service.equals(added)) {
+                loadBalancer.getLoad(service).started();
+                loadBalancer.requestCompleted(service, 1000000, false);
+            }
+        }
+        // the new service has no latency yet but its requests in flight should still count
+        for (int i = 0; i < 100; i++) {
+            loadBalancer.getLoad(added).started();
+        }
+        List<String> results = performRequests(loadBalancer, 100);
+        assertTrue("Should not have chosen the busy unsampled service: " + results, !results.contains(added));
+    }
+
+    @Test
+    public void testLoadIsKeptWhenServicesAreRefreshed() throws Exception {
+        LeastConnectionsLoadBalancer loadBalancer = new LeastConnectionsLoadBalancer(1);
+        ServiceDTO service = createService("http://localhost:8182/foo");
+        assertEquals(service, loadBalancer.choose(Arrays.asList(service), clientRequestFacade));
+
+        // the same service read again from the registry
+        ServiceDTO refreshed = createService("http://localhost:8182/foo");
+        assertEquals("in flight requests", 1, loadBalancer.getLoad(refreshed).getInFlight());
+        loadBalancer.requestCompleted(refreshed, 1000, false);
+        assertEquals("in flight requests", 0, loadBalancer.getLoad(service).getInFlight());
+    }
+
+    @Test
+    public void testLoadOfRemovedServicesIsPruned() throws Exception {
+        LeastConnectionsLoadBalancer loadBalancer = new LeastConnectionsLoadBalancer(1);
+        List<String> removed = Arrays.asList("http://localhost:8190/foo", "http://localhost:8191/foo");
+        loadBalancer.choose(removed, clientRequestFacade);
+        for (String service : removed) {
+            loadBalancer.requestCompleted(service, 1000, false);
+        }
+        assertEquals(2, loadBalancer.getServiceCount());
+
+        // once idle for a while the load of services which are no longer chosen from is removed
+        Thread.sleep(50);
+        performRequests(loadBalancer);
+        assertTrue("Should have pruned the removed services but have " + loadBalancer.getServiceCount(),
+                loadBalancer.getServiceCount() <= services.size());
+    }
+
+    protected ServiceDTO createService(String url) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setContainer("container1");
+        answer.setServices(Arrays.asList(url));
+        return answer;
+    }
+
     protected List<String> performRequests(LoadBalancer loadBalancer) {
+        return performRequests(loadBalancer, requestCount);
+    }
+
+    protected List<String> performRequests(LoadBalancer loadBalancer, int requestCount) {
         List<String> answer = new ArrayList<String>();
         for (int i = 0; i < requestCount; i++) {
             String result = loadBalancer.choose(services, clientRequestFacade);
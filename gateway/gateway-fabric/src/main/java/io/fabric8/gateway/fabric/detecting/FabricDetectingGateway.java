@@ -21,6 +21,7 @@ import io.fabric8.api.scr.Configurer;
 import io.fabric8.common.util.JMXUtils;
 import io.fabric8.common.util.ShutdownTracker;
 import io.fabric8.common.util.Strings;
+import io.fabric8.gateway.FlowControlledPump;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.fabric.http.FabricHTTPGateway;
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
@@ -118,7 +119,10 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.CONCURRENT_STICKY_LOAD_BALANCER, value = "Concurrent Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.EWMA_LOAD_BALANCER, value = "EWMA Latency")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy to use when multiple endpoints can service the client conneciton")
     private String loadBalancerType;
@@ -169,6 +173,14 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             label = "SSL Cipher Suites Disabled", description = "Comma separated list of cipher suites to disable on the SSL sessions.")
     String disabledCypherSuites;
 
+    @Property(name = "writeQueueMaxSize", intValue = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE,
+            label = "Write Queue Max Size", description = "The maximum number of bytes buffered for a connection before reading from its peer is paused")
+    private int writeQueueMaxSize = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+
+    @Property(name = "instances", intValue = 0,
+            label = "Instances", description = "The number of event loops used to accept and proxy connections. If zero then the number of processors is used")
+    private int instances;
+
     private DetectingGateway detectingGateway;
     private GatewayServiceTreeCache cache;
     private ServiceMap serviceMap = new ServiceMap();
@@ -274,6 +286,10 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         gateway.setShutdownTacker(shutdownTacker);
         gateway.setServiceLoadBalancer(serviceLoadBalancer);
         gateway.setDefaultVirtualHost(defaultVirtualHost);
+        gateway.setWriteQueueMaxSize(writeQueueMaxSize);
+        if (instances > 0) {
+            gateway.setInstances(instances);
+        }
         return gateway;
     }
 
@@ -24,6 +24,7 @@ import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.ShutdownTracker;
 
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +33,9 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import javax.management.MBeanServer;
 
 import io.fabric8.gateway.CallDetailRecord;
+import io.fabric8.gateway.CallMetrics;
+import io.fabric8.gateway.FlowControlledPump;
+import io.fabric8.gateway.PumpStatistics;
 import io.fabric8.gateway.fabric.detecting.FabricDetectingGatewayService;
 
 import org.apache.curator.framework.CuratorFramework;
@@ -48,6 +52,7 @@ import org.apache.felix.scr.annotations.Service;
 
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.detecting.DetectingGatewayWebSocketHandler;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
 import io.fabric8.gateway.handlers.http.HttpGateway;
 import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
@@ -84,6 +89,24 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Property(name = "websocketGatewayPrefix", label = "Web Socket Path Prefix", description = "The prefix a websocket requests must have")
     private String websocketGatewayPrefix = "";
 
+    @Property(name = "backendKeepAlive", boolValue = true, label = "Back end keep alive", description = "If enabled then the connections to the back end services are kept alive and reused between requests")
+    private boolean backendKeepAlive = true;
+
+    @Property(name = "backendMaxConnections", intValue = 5, label = "Back end max connections", description = "The maximum number of connections to open to each back end host and port")
+    private int backendMaxConnections = 5;
+
+    @Property(name = "backendPipelining", boolValue = false, label = "Back end pipelining", description = "If enabled then HTTP pipelining is used on the kept alive back end connections")
+    private boolean backendPipelining;
+
+    @Property(name = "backendIdleTimeout", longValue = 60000L, label = "Back end idle timeout", description = "The number of milliseconds after which idle connections to a back end service are closed")
+    private long backendIdleTimeout = 60000L;
+
+    @Property(name = "metricsAggregationInterval", longValue = CallMetrics.DEFAULT_AGGREGATION_INTERVAL, label = "Metrics aggregation interval", description = "The number of milliseconds between aggregations of the per route latency histograms reported via JMX")
+    private long metricsAggregationInterval = CallMetrics.DEFAULT_AGGREGATION_INTERVAL;
+
+    @Property(name = "writeQueueMaxSize", intValue = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE, label = "Write queue max size", description = "The maximum number of bytes of a request or response body buffered before reading from the other side is paused")
+    private int writeQueueMaxSize = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+
     @Reference
     private Configurer configurer;
 
@@ -100,9 +123,18 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     
     private HttpGatewayServer server;
     private HttpGatewayHandler handler;
+    private HttpClientPool clientPool;
+    private final CallMetrics callMetrics = new CallMetrics();
     private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
+    private volatile Map<String, MappedServices> mappedServices = Collections.emptyMap();
+    private final Runnable mappingRulesChangeListener = new Runnable() {
+        @Override
+        public void run() {
+            updateMappedServices();
+        }
+    };
 
     ShutdownTracker shutdownTracker = new ShutdownTracker();
     private FabricHTTPGatewayInfo fabricHTTPGatewayInfoMBean;
@@ -131,7 +163,17 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         configurer.configure(configuration, this);
 
         Vertx vertx = getVertx();
-        handler = new HttpGatewayHandler(vertx, this);
+        clientPool = new HttpClientPool(vertx);
+        clientPool.setKeepAlive(backendKeepAlive);
+        clientPool.setMaxConnectionsPerHost(backendMaxConnections);
+        clientPool.setPipelining(backendPipelining);
+        clientPool.setIdleTimeout(backendIdleTimeout);
+        clientPool.start();
+        handler = new HttpGatewayHandler(vertx, this, clientPool);
+        handler.setWriteQueueMaxSize(writeQueueMaxSize);
+        callMetrics.setAggregationInterval(metricsAggregationInterval);
+        callMetrics.start();
+        handler.setCallMetrics(callMetrics);
         websocketHandler.setPathPrefix(websocketGatewayPrefix);
         server = new HttpGatewayServer(vertx, handler, enableWebSocketGateway ? websocketHandler : null, port);
         server.init();
@@ -141,37 +183,54 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         if (server != null) {
             server.destroy();
         }
+        if (clientPool != null) {
+            clientPool.stop();
+        }
+        callMetrics.stop();
     }
     
     @Override
     public void addCallDetailRecord(CallDetailRecord cdr) {
-    	fabricHTTPGatewayInfoMBean.setLastCallDate(cdr.getCallDate().toString());
-    	fabricHTTPGatewayInfoMBean.registerCall(cdr.getCallTimeNanos());
-    	if (cdr.getError()!=null) {
-    		fabricHTTPGatewayInfoMBean.setLastError(cdr.getError());
-    	}
+        // the latencies of all calls are recorded by the CallMetrics so we only need to keep the last error
+        if (cdr.getError() != null && fabricHTTPGatewayInfoMBean != null) {
+            fabricHTTPGatewayInfoMBean.setLastError(cdr.getError());
+        }
     }
 
     @Override
     public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.add(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.add(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.addChangeListener(mappingRulesChangeListener);
+        }
+        updateMappedServices();
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.remove(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.removeChangeListener(mappingRulesChangeListener);
+        }
+        updateMappedServices();
     }
 
     @Override
     public Map<String, MappedServices> getMappedServices() {
         assertValid();
+        return mappedServices;
+    }
+
+    /**
+     * Rebuilds the immutable snapshot of the mapped services whenever a mapping rule changes
+     * so that requests do not have to merge the mapping rules each time
+     */
+    private synchronized void updateMappedServices() {
         Map<String, MappedServices> answer = new HashMap<String, MappedServices>();
         for (HttpMappingRule mappingRuleConfiguration : mappingRuleConfigurations) {
             mappingRuleConfiguration.appendMappedServices(answer);
         }
-        return answer;
+        mappedServices = Collections.unmodifiableMap(answer);
     }
 
     @Override
@@ -206,6 +265,27 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         return null;
     }
 
+    /**
+     * Returns the pool of clients to the back end services
+     */
+    HttpClientPool getClientPool() {
+        return clientPool;
+    }
+
+    /**
+     * Returns the statistics of the streaming of the request and response bodies
+     */
+    PumpStatistics getPumpStatistics() {
+        return handler != null ? handler.getPumpStatistics() : null;
+    }
+
+    /**
+     * Returns the latency and error metrics of the proxied calls per route and back end
+     */
+    CallMetrics getCallMetrics() {
+        return callMetrics;
+    }
+
     int getPort() {
         return port;
     }
@@ -16,13 +16,19 @@
 package io.fabric8.gateway.fabric.http;
 
 import io.fabric8.common.util.ShutdownTracker;
+import io.fabric8.gateway.CallMetrics;
+import io.fabric8.gateway.PumpStatistics;
 import io.fabric8.gateway.fabric.jmx.FabricGatewayInfoMBean;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
 
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
 
+import java.io.IOException;
+import java.util.Date;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,10 +40,7 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
 
     private final FabricHTTPGateway fabricHTTPGateway;
     private ObjectName objectName;
-    private long numberOfInvocations = 0l;
-    private long averageCallTimeNanos = 0l;
-    private String lastError;
-    private String lastCallDate;
+    private volatile String lastError;
     
     public FabricHTTPGatewayInfo(FabricHTTPGateway fabricHTTPGateway) {
 		super();
@@ -86,13 +89,10 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
 
     @Override
 	public long getNumberOfInvocations() {
-		return numberOfInvocations;
+		CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+		return callMetrics != null ? callMetrics.getCount() : 0L;
 	}
-    
-    public void registerCall(long callTimeNanos) {
-    	averageCallTimeNanos = (averageCallTimeNanos * numberOfInvocations + callTimeNanos)/++numberOfInvocations;
-    }
-    
+
     public void setLastError(String error) {
     	lastError = error;
     }
@@ -102,29 +102,109 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
     	return lastError;
     }
     
-    public void setLastCallDate(String callDate) {
-    	lastCallDate = callDate;
-    }
-    
     @Override
     public String getLastCallDate() {
-    	if (lastCallDate!=null)
-    		return lastCallDate.toString();
-    	else
-    		return null;
+        CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+        long lastCallTime = callMetrics != null ? callMetrics.getLastCallTime() : 0L;
+        return lastCallTime > 0 ? new Date(lastCallTime).toString() : null;
     }
     
     @Override 
     public long getAvarageCallTimeNanos() {
-    	return averageCallTimeNanos;
+        CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+        return callMetrics != null ? callMetrics.getMeanLatencyNanos() : 0L;
+    }
+
+    @Override
+    public long getNumberOfErrors() {
+        CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+        return callMetrics != null ? callMetrics.getErrorCount() : 0L;
+    }
+
+    @Override
+    public double getErrorRate() {
+        CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+        if (callMetrics == null) {
+            return 0.0;
+        }
+        long count = callMetrics.getCount();
+        return count > 0 ? (double) callMetrics.getErrorCount() / count : 0.0;
+    }
+
+    @Override
+    public String getRouteStatistics() {
+        CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+        if (callMetrics == null) {
+            return "[]";
+        }
+        try {
+            return callMetrics.getRouteStatisticsJson();
+        } catch (IOException e) {
+            LOG.warn("Failed to marshal the route statistics to JSON: " + e, e);
+            return null;
+        }
     }
     
+    @Override
+    public String getBackendConnectionPools() {
+        String pools = "";
+        HttpClientPool clientPool = getFabricHTTPGateway().getClientPool();
+        if (clientPool != null) {
+            for (HttpClientPool.PooledHttpClient client : clientPool.getPooledClients()) {
+                pools += client.getKey() + ": activeRequests=" + client.getActiveRequests()
+                        + " totalRequests=" + client.getTotalRequests() + "<BR>";
+            }
+        }
+        return pools;
+    }
+
+    @Override
+    public int getBackendConnectionPoolCount() {
+        HttpClientPool clientPool = getFabricHTTPGateway().getClientPool();
+        return clientPool != null ? clientPool.getPooledClients().size() : 0;
+    }
+
+    @Override
+    public long getBackendClientsCreated() {
+        HttpClientPool clientPool = getFabricHTTPGateway().getClientPool();
+        return clientPool != null ? clientPool.getCreatedClients() : 0L;
+    }
+
+    @Override
+    public long getBackendClientsEvicted() {
+        HttpClientPool clientPool = getFabricHTTPGateway().getClientPool();
+        return clientPool != null ? clientPool.getEvictedClients() : 0L;
+    }
+
+    @Override
+    public long getBytesPumped() {
+        PumpStatistics statistics = getFabricHTTPGateway().getPumpStatistics();
+        return statistics != null ? statistics.getBytesPumped() : 0L;
+    }
+
+    @Override
+    public long getPauseCount() {
+        PumpStatistics statistics = getFabricHTTPGateway().getPumpStatistics();
+        return statistics != null ? statistics.getPauseCount() : 0L;
+    }
+
+    @Override
+    public long getPausedTimeMillis() {
+        PumpStatistics statistics = getFabricHTTPGateway().getPumpStatistics();
+        return statistics != null ? statistics.getPausedTimeMillis() : 0L;
+    }
+
     @Override
     public void resetStatistics() {
-    	averageCallTimeNanos = 0l;
-    	numberOfInvocations = 0l;
-    	lastCallDate = null;
-    	lastError = null;
+        CallMetrics callMetrics = getFabricHTTPGateway().getCallMetrics();
+        if (callMetrics != null) {
+            callMetrics.reset();
+        }
+        PumpStatistics pumpStatistics = getFabricHTTPGateway().getPumpStatistics();
+        if (pumpStatistics != null) {
+            pumpStatistics.reset();
+        }
+        lastError = null;
     }
    
     public ObjectName getObjectName() throws MalformedObjectNameException {
@@ -30,5 +30,15 @@ public interface FabricGatewayInfoMBean {
     String getLastError();
     String getLastCallDate();
     long getAvarageCallTimeNanos();
+    String getBackendConnectionPools();
+    int getBackendConnectionPoolCount();
+    long getBackendClientsCreated();
+    long getBackendClientsEvicted();
+    long getBytesPumped();
+    long getPauseCount();
+    long getPausedTimeMillis();
+    long getNumberOfErrors();
+    double getErrorRate();
+    String getRouteStatistics();
     void resetStatistics();
 }
@@ -19,6 +19,7 @@ import io.fabric8.api.FabricService;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.Configurer;
 import io.fabric8.common.util.Strings;
+import io.fabric8.gateway.FlowControlledPump;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.tcp.TcpGateway;
@@ -39,9 +40,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Vertx;
 
+import javax.management.MBeanServer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * An MQ gateway which listens to a part of the ZooKeeper tree for messaging services and exposes those over protocol specific ports.
@@ -63,6 +66,9 @@ public class FabricMQGateway extends AbstractComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY, bind = "setCurator", unbind = "unsetCurator")
     private CuratorFramework curator;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY, bind = "setMBeanServer", unbind = "unsetMBeanServer")
+    private MBeanServer mbeanServer;
+
     @Property(name = "zooKeeperPath", value = "/fabric/registry/clusters/amq",
             label = "ZooKeeper path", description = "The path in ZooKeeper which is monitored to discover the available message brokers")
     private String zooKeeperPath;
@@ -111,7 +117,10 @@ public class FabricMQGateway extends AbstractComponent {
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.CONCURRENT_STICKY_LOAD_BALANCER, value = "Concurrent Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.EWMA_LOAD_BALANCER, value = "EWMA Latency")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy used")
     private String loadBalancerType;
@@ -120,7 +129,13 @@ public class FabricMQGateway extends AbstractComponent {
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "writeQueueMaxSize", intValue = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE,
+            label = "Write Queue Max Size", description = "The maximum number of bytes buffered for a connection before reading from its peer is paused")
+    private int writeQueueMaxSize = FlowControlledPump.DEFAULT_WRITE_QUEUE_MAX_SIZE;
+
     private GatewayServiceTreeCache gatewayServiceTreeCache;
+    private final List<TcpGatewayHandler> handlers = new CopyOnWriteArrayList<TcpGatewayHandler>();
+    private FabricMQGatewayInfo fabricMQGatewayInfoMBean;
 
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
@@ -133,6 +148,8 @@ public class FabricMQGateway extends AbstractComponent {
         if (gatewayServiceTreeCache != null) {
             gatewayServiceTreeCache.init();
         }
+        fabricMQGatewayInfoMBean = new FabricMQGatewayInfo(this);
+        fabricMQGatewayInfoMBean.registerMBeanServer(mbeanServer);
     }
 
     @Deactivate
@@ -141,6 +158,10 @@ public class FabricMQGateway extends AbstractComponent {
         if (gatewayServiceTreeCache != null) {
             gatewayServiceTreeCache.destroy();
         }
+        if (fabricMQGatewayInfoMBean != null) {
+            fabricMQGatewayInfoMBean.unregisterMBeanServer(mbeanServer);
+        }
+        handlers.clear();
     }
 
     protected GatewayServiceTreeCache createListener() {
@@ -178,6 +199,8 @@ public class FabricMQGateway extends AbstractComponent {
     protected TcpGateway addGateway(List<TcpGateway> gateways, Vertx vertx, ServiceMap serviceMap, String protocolName, boolean enabled, int listenPort, LoadBalancer pathLoadBalancer, LoadBalancer serviceLoadBalancer) {
         if (enabled) {
             TcpGatewayHandler handler = new TcpGatewayHandler(vertx, serviceMap, protocolName, pathLoadBalancer, serviceLoadBalancer);
+            handler.setWriteQueueMaxSize(writeQueueMaxSize);
+            handlers.add(handler);
             TcpGateway gateway = new TcpGateway(vertx, serviceMap, listenPort, protocolName, handler);
             if (Strings.isNotBlank(host)) {
                 gateway.setHost(host);
@@ -216,6 +239,18 @@ public class FabricMQGateway extends AbstractComponent {
         this.curator = null;
     }
 
+    public MBeanServer getMBeanServer() {
+        return mbeanServer;
+    }
+
+    public void setMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public void unsetMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = null;
+    }
+
     public FabricService getFabricService() {
         return fabricService;
     }
@@ -323,4 +358,19 @@ public class FabricMQGateway extends AbstractComponent {
     public void setWebsocketPort(int websocketPort) {
         this.websocketPort = websocketPort;
     }
+
+    public int getWriteQueueMaxSize() {
+        return writeQueueMaxSize;
+    }
+
+    public void setWriteQueueMaxSize(int writeQueueMaxSize) {
+        this.writeQueueMaxSize = writeQueueMaxSize;
+    }
+
+    /**
+     * Returns the handlers of the enabled protocols
+     */
+    public List<TcpGatewayHandler> getHandlers() {
+        return handlers;
+    }
 }
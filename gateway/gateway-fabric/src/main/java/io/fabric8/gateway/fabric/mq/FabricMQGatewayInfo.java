@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.fabric.mq;
+
+import io.fabric8.gateway.fabric.jmx.FabricMQGatewayInfoMBean;
+import io.fabric8.gateway.handlers.tcp.TcpGatewayHandler;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the statistics of the data pumped by the handlers of each protocol of the {@link FabricMQGateway}
+ */
+public class FabricMQGatewayInfo implements FabricMQGatewayInfoMBean {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(FabricMQGatewayInfo.class);
+
+    private final FabricMQGateway fabricMQGateway;
+    private ObjectName objectName;
+
+    public FabricMQGatewayInfo(FabricMQGateway fabricMQGateway) {
+        this.fabricMQGateway = fabricMQGateway;
+    }
+
+    protected FabricMQGateway getFabricMQGateway() {
+        return fabricMQGateway;
+    }
+
+    @Override
+    public String getHost() {
+        return getFabricMQGateway().getHost();
+    }
+
+    @Override
+    public String getZooKeeperPath() {
+        return getFabricMQGateway().getZooKeeperPath();
+    }
+
+    @Override
+    public String getProtocols() {
+        String protocols = "";
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            protocols += (protocols.length() > 0 ? "," : "") + handler.getProtocol();
+        }
+        return protocols;
+    }
+
+    @Override
+    public int getWriteQueueMaxSize() {
+        return getFabricMQGateway().getWriteQueueMaxSize();
+    }
+
+    @Override
+    public long getBytesPumped() {
+        long answer = 0;
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            answer += handler.getPumpStatistics().getBytesPumped();
+        }
+        return answer;
+    }
+
+    @Override
+    public long getPauseCount() {
+        long answer = 0;
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            answer += handler.getPumpStatistics().getPauseCount();
+        }
+        return answer;
+    }
+
+    @Override
+    public long getPausedTimeMillis() {
+        long answer = 0;
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            answer += handler.getPumpStatistics().getPausedTimeMillis();
+        }
+        return answer;
+    }
+
+    @Override
+    public long getCurrentlyPausedStreams() {
+        long answer = 0;
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            answer += handler.getPumpStatistics().getCurrentlyPaused();
+        }
+        return answer;
+    }
+
+    @Override
+    public String getPumpStatistics() {
+        String statistics = "";
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            statistics += handler.getProtocol() + ": " + handler.getPumpStatistics() + "<BR>";
+        }
+        return statistics;
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (TcpGatewayHandler handler : getFabricMQGateway().getHandlers()) {
+            handler.getPumpStatistics().reset();
+        }
+    }
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("io.fabric8.gateway-fabric:service=FabricMQGatewayInfo");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                StandardMBean mbean = new StandardMBean(this, FabricMQGatewayInfoMBean.class);
+                mbeanServer.registerMBean(mbean, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occurred during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occurred during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sticky load balancer like {@link StickyLoadBalancer} which can be used concurrently from many threads.
+ * <p/>
+ * Rather than a single LRU cache guarded by one lock the client keys are spread over a number of segments,
+ * each being a small LRU cache with its own lock, so that concurrent requests rarely contend on the same lock.
+ * Eviction is therefore an approximate LRU; the least recently used entry of a segment is evicted once the
+ * segment is full. Entries can optionally expire after a time to live so clients are rebalanced periodically.
+ */
+public class ConcurrentStickyLoadBalancer implements LoadBalancer {
+    private final LoadBalancer firstRequestLoadBalancer;
+    private final int maximumCacheSize;
+    private final long timeToLiveMillis;
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public ConcurrentStickyLoadBalancer() {
+        this(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
+    }
+
+    public ConcurrentStickyLoadBalancer(int maximumCacheSize) {
+        this(maximumCacheSize, 0);
+    }
+
+    public ConcurrentStickyLoadBalancer(int maximumCacheSize, long timeToLiveMillis) {
+        this(maximumCacheSize, timeToLiveMillis, defaultSegmentCount(), new RoundRobinLoadBalancer());
+    }
+
+    /**
+     * @param maximumCacheSize         the maximum number of client keys to keep
+     * @param timeToLiveMillis         the number of milliseconds after which a client is rebalanced or 0 to keep clients until evicted
+     * @param segmentCount             the number of segments which is rounded up to a power of 2
+     * @param firstRequestLoadBalancer the load balancer used to choose a service for a new client
+     */
+    public ConcurrentStickyLoadBalancer(int maximumCacheSize, long timeToLiveMillis, int segmentCount, LoadBalancer firstRequestLoadBalancer) {
+        this.firstRequestLoadBalancer = firstRequestLoadBalancer;
+        this.maximumCacheSize = maximumCacheSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        int size = 1;
+        int bits = 0;
+        while (size < segmentCount && size < maximumCacheSize) {
+            size <<= 1;
+            bits++;
+        }
+        this.segments = new Segment[size];
+        this.segmentShift = 32 - bits;
+        int segmentCacheSize = Math.max(1, (maximumCacheSize + size - 1) / size);
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment(segmentCacheSize);
+        }
+    }
+
+    private static int defaultSegmentCount() {
+        return Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentStickyLoadBalancer{" +
+                "maximumCacheSize=" + maximumCacheSize +
+                ", timeToLiveMillis=" + timeToLiveMillis +
+                ", segments=" + segments.length +
+                '}';
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        String clientKey = requestFacade.getClientRequestKey();
+        if (clientKey == null) {
+            return firstRequestLoadBalancer.choose(services, requestFacade);
+        }
+        Segment segment = segmentFor(clientKey);
+        long now = timeToLiveMillis > 0 ? System.nanoTime() : 0L;
+        Object cached = segment.get(clientKey, now);
+        if (cached != null) {
+            // return the matching element of the list rather than casting the cached service
+            int index = indexOf(services, cached);
+            if (index >= 0) {
+                return services.get(index);
+            }
+        }
+        T answer = firstRequestLoadBalancer.choose(services, requestFacade);
+        if (answer != null) {
+            long expires = timeToLiveMillis > 0 ? now + TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis) : 0L;
+            // another request of the same client may have chosen a service concurrently so lets use the same one
+            Object winner = segment.putIfAbsent(clientKey, answer, expires, now, cached);
+            if (winner != answer) {
+                int index = indexOf(services, winner);
+                if (index >= 0) {
+                    return services.get(index);
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the index of the cached service in the available services or -1 if it is no longer available;
+     * checking identity first as typically the same service instances are passed in on each request
+     */
+    private static int indexOf(List<?> services, Object cached) {
+        for (int i = 0, size = services.size(); i < size; i++) {
+            if (services.get(i) == cached) {
+                return i;
+            }
+        }
+        return services.indexOf(cached);
+    }
+
+    /**
+     * Clears the cache of request client IDs to the bound service
+     */
+    public void flush() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the number of client keys currently cached
+     */
+    public int size() {
+        int answer = 0;
+        for (Segment segment : segments) {
+            answer += segment.size();
+        }
+        return answer;
+    }
+
+    private Segment segmentFor(String clientKey) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        // use the high bits of the mixed hash code as the segment's hash map uses the low bits
+        int hash = clientKey.hashCode() * 0x9E3779B9;
+        return segments[hash >>> segmentShift];
+    }
+
+    private static final class CacheEntry {
+        private final Object service;
+        private final long expires;
+
+        private CacheEntry(Object service, long expires) {
+            this.service = service;
+            this.expires = expires;
+        }
+    }
+
+    private static final class Segment {
+        private final Map<String, CacheEntry> cache;
+
+        private Segment(final int maximumSize) {
+            this.cache = new LinkedHashMap<String, CacheEntry>(Math.min(maximumSize, 1024) + 1, .75F, true) {
+                // This method is called just after a new entry has been added
+                public boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > maximumSize;
+                }
+            };
+        }
+
+        synchronized Object get(String clientKey, long now) {
+            CacheEntry entry = cache.get(clientKey);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expires != 0L && now - entry.expires > 0) {
+                cache.remove(clientKey);
+                return null;
+            }
+            return entry.service;
+        }
+
+        /**
+         * Caches the given service unless another service which has not expired, other than the given unavailable
+         * service, is already cached for the client, returning the cached service
+         */
+        synchronized Object putIfAbsent(String clientKey, Object service, long expires, long now, Object unavailable) {
+            CacheEntry entry = cache.get(clientKey);
+            if (entry != null && entry.service != unavailable && (entry.expires == 0L || now - entry.expires <= 0)) {
+                return entry.service;
+            }
+            cache.put(clientKey, new CacheEntry(service, expires));
+            return service;
+        }
+
+        synchronized void clear() {
+            cache.clear();
+        }
+
+        synchronized int size() {
+            return cache.size();
+        }
+    }
+}
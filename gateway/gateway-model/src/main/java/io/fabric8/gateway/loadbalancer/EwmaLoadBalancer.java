@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+/**
+ * A load balancer which picks two services at random and chooses the one with the lowest
+ * exponentially weighted moving average latency multiplied by the number of requests in flight,
+ * so that both slow and busy services receive less traffic.
+ * <p/>
+ * Services without any completed requests, such as a new or restarted service, have no latency yet so the mean latency
+ * of the other services is used for them; they get their share of the traffic without being flooded until sampled.
+ */
+public class EwmaLoadBalancer extends LoadTrackingLoadBalancerSupport {
+
+    public EwmaLoadBalancer() {
+    }
+
+    public EwmaLoadBalancer(long decayTimeMillis) {
+        super(decayTimeMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "EwmaLoadBalancer{}";
+    }
+
+    @Override
+    protected double cost(ServiceLoad load) {
+        double latency = load.isSampled() ? load.getEwmaLatencyNanos() : getMeanLatencyNanos();
+        if (latency <= 0) {
+            // no service has been sampled yet so lets compare the requests in flight
+            latency = 1;
+        }
+        return latency * (load.getInFlight() + 1);
+    }
+}
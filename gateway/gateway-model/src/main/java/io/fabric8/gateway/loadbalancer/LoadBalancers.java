@@ -28,6 +28,9 @@ public class LoadBalancers {
     public static final String RANDOM_LOAD_BALANCER = "random";
     public static final String ROUND_ROBIN_LOAD_BALANCER = "roundrobin";
     public static final String STICKY_LOAD_BALANCER = "sticky";
+    public static final String CONCURRENT_STICKY_LOAD_BALANCER = "concurrentsticky";
+    public static final String LEAST_CONNECTIONS_LOAD_BALANCER = "leastconnections";
+    public static final String EWMA_LOAD_BALANCER = "ewma";
 
     public static final int STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE = 10000;
 
@@ -38,6 +41,12 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer();
         } else if (STICKY_LOAD_BALANCER.equals(loadBalancerType)) {
             return new StickyLoadBalancer(stickyLoadBalancerCacheSize);
+        } else if (CONCURRENT_STICKY_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new ConcurrentStickyLoadBalancer(stickyLoadBalancerCacheSize);
+        } else if (LEAST_CONNECTIONS_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new LeastConnectionsLoadBalancer();
+        } else if (EWMA_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new EwmaLoadBalancer();
         } else {
             if (Strings.isNotBlank(loadBalancerType)) {
                 LOG.warn("Ignored invalid load balancer type: " + loadBalancerType);
@@ -47,4 +56,13 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer();
         }
     }
+
+    /**
+     * Notifies the load balancer that a request it chose the service for has completed if it tracks the load of its services
+     */
+    public static void requestCompleted(LoadBalancer loadBalancer, Object service, long latencyNanos, boolean failed) {
+        if (loadBalancer instanceof LoadTrackingLoadBalancer) {
+            ((LoadTrackingLoadBalancer) loadBalancer).requestCompleted(service, latencyNanos, failed);
+        }
+    }
 }
@@ -0,0 +1,33 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+/**
+ * A {@link LoadBalancer} which keeps track of the load of each service so it must be told when a
+ * request (or connection) it chose a service for has completed.
+ */
+public interface LoadTrackingLoadBalancer extends LoadBalancer {
+
+    /**
+     * Invoked when a request or connection which was routed to the given service by a call to
+     * {@link #choose(java.util.List, ClientRequestFacade)} has completed
+     *
+     * @param service the service which was chosen
+     * @param latencyNanos the time in nanoseconds the service took to respond to the request or to accept the connection
+     * @param failed whether the service failed to process the request
+     */
+    void requestCompleted(Object service, long latencyNanos, boolean failed);
+}
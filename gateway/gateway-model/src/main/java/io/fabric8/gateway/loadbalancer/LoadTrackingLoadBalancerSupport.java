@@ -0,0 +1,246 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for load balancers which track the number of requests in flight and an exponentially weighted
+ * moving average (EWMA) of the latency of each service and which choose a service using the
+ * <i>power of two choices</i>; picking two services at random and using the one with the lowest cost.
+ * <p/>
+ * The load is keyed by the service itself, so services must implement equals and hashCode, as the service
+ * URLs and the gateway ServiceDTO do, to keep their load when the list of services is refreshed.
+ * The load of services which are no longer passed to {@link #choose(List, ClientRequestFacade)} and have no
+ * requests in flight is removed after a while.
+ */
+public abstract class LoadTrackingLoadBalancerSupport implements LoadTrackingLoadBalancer {
+    /**
+     * The default time in milliseconds over which latency samples decay
+     */
+    public static final long DEFAULT_DECAY_TIME = 10000L;
+
+    /**
+     * The latency in nanoseconds recorded for a failed request so that failing services are avoided
+     */
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The number of decay times after which the load of a service which is no longer chosen is removed
+     */
+    private static final int IDLE_DECAY_TIMES = 10;
+
+    private final ConcurrentMap<Object, ServiceLoad> loads = new ConcurrentHashMap<Object, ServiceLoad>();
+    private final long decayNanos;
+    private final AtomicLong nextPrune = new AtomicLong(System.nanoTime());
+
+    protected LoadTrackingLoadBalancerSupport() {
+        this(DEFAULT_DECAY_TIME);
+    }
+
+    protected LoadTrackingLoadBalancerSupport(long decayTimeMillis) {
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(decayTimeMillis, 1));
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        T answer;
+        if (size == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long prune = nextPrune.get();
+        if (now - prune >= 0 && nextPrune.compareAndSet(prune, now + decayNanos)) {
+            prune(services, now);
+        }
+        if (size == 1) {
+            answer = services.get(0);
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            T a = services.get(first);
+            T b = services.get(second);
+            answer = cost(getLoad(b)) < cost(getLoad(a)) ? b : a;
+        }
+        getLoad(answer).started();
+        return answer;
+    }
+
+    @Override
+    public void requestCompleted(Object service, long latencyNanos, boolean failed) {
+        if (service != null) {
+            ServiceLoad load = loads.get(service);
+            if (load != null) {
+                load.completed(failed ? Math.max(latencyNanos, FAILURE_PENALTY_NANOS) : latencyNanos, decayNanos);
+            }
+        }
+    }
+
+    /**
+     * Returns the cost of routing a new request to the service with the given load; the service with the lowest cost is chosen
+     */
+    protected abstract double cost(ServiceLoad load);
+
+    /**
+     * Returns the current load of the given service
+     */
+    public ServiceLoad getLoad(Object service) {
+        ServiceLoad answer = loads.get(service);
+        if (answer == null) {
+            ServiceLoad newLoad = new ServiceLoad();
+            answer = loads.putIfAbsent(service, newLoad);
+            if (answer == null) {
+                answer = newLoad;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of services whose load is tracked
+     */
+    public int getServiceCount() {
+        return loads.size();
+    }
+
+    /**
+     * Removes the load statistics of services which are no longer used
+     */
+    public void retainAll(List<?> services) {
+        loads.keySet().retainAll(services);
+    }
+
+    /**
+     * Removes the load of the services which are not in the current list of services, have no requests in flight
+     * and have not been used for a while; as a load balancer may be shared by several lists of services, such as
+     * the mapped services of a rule, the load of services which are only in the other lists is kept while they are used
+     */
+    protected void prune(List<?> services, long now) {
+        long idleNanos = decayNanos * IDLE_DECAY_TIMES;
+        Set<Object> current = null;
+        for (Map.Entry<Object, ServiceLoad> entry : loads.entrySet()) {
+            ServiceLoad load = entry.getValue();
+            if (load.getInFlight() == 0 && now - load.getLastUsed() > idleNanos) {
+                if (current == null) {
+                    current = new HashSet<Object>(services);
+                }
+                if (!current.contains(entry.getKey())) {
+                    loads.remove(entry.getKey(), load);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the mean latency of the services which completed a request, or 0 if none has yet
+     */
+    protected double getMeanLatencyNanos() {
+        double total = 0;
+        int count = 0;
+        for (ServiceLoad load : loads.values()) {
+            if (load.isSampled()) {
+                total += load.getEwmaLatencyNanos();
+                count++;
+            }
+        }
+        return count > 0 ? total / count : 0;
+    }
+
+    /**
+     * The load of a single service
+     */
+    public static class ServiceLoad {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long lastUsed = System.nanoTime();
+        private long lastUpdate = lastUsed;
+        private double ewmaLatencyNanos;
+        private boolean sampled;
+
+        void started() {
+            inFlight.incrementAndGet();
+            lastUsed = System.nanoTime();
+        }
+
+        void completed(long latencyNanos, long decayNanos) {
+            // guard against completions without a matching choose() such as after a retainAll()
+            while (true) {
+                int count = inFlight.get();
+                if (count <= 0 || inFlight.compareAndSet(count, count - 1)) {
+                    break;
+                }
+            }
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (sampled) {
+                    double weight = Math.exp(-(double) Math.max(now - lastUpdate, 0) / decayNanos);
+                    ewmaLatencyNanos = ewmaLatencyNanos * weight + latencyNanos * (1 - weight);
+                } else {
+                    ewmaLatencyNanos = latencyNanos;
+                    sampled = true;
+                }
+                lastUpdate = now;
+                lastUsed = now;
+            }
+        }
+
+        /**
+         * Returns the number of requests or connections in flight
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Returns the exponentially weighted moving average of the latency in nanoseconds
+         */
+        public synchronized double getEwmaLatencyNanos() {
+            return ewmaLatencyNanos;
+        }
+
+        /**
+         * Returns true if a request to the service has completed so it has a latency
+         */
+        public synchronized boolean isSampled() {
+            return sampled;
+        }
+
+        long getLastUsed() {
+            return lastUsed;
+        }
+
+        @Override
+        public String toString() {
+            return "ServiceLoad{" +
+                    "inFlight=" + getInFlight() +
+                    ", ewmaLatencyNanos=" + getEwmaLatencyNanos() +
+                    '}';
+        }
+    }
+}
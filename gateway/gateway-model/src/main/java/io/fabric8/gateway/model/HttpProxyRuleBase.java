@@ -25,6 +25,7 @@ import java.util.Map;
  */
 public class HttpProxyRuleBase {
     private Map<String, HttpProxyRule> mappingRules = new HashMap<String, HttpProxyRule>();
+    private volatile int modificationCount;
 
     public Map<String, HttpProxyRule> getMappingRules() {
         return mappingRules;
@@ -32,6 +33,22 @@ public class HttpProxyRuleBase {
 
     public void setMappingRules(Map<String, HttpProxyRule> mappingRules) {
         this.mappingRules = mappingRules;
+        modified();
+    }
+
+    /**
+     * Returns a counter which is incremented whenever the mapping rules are changed so that
+     * any indexes built from the rules can be rebuilt
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Should be invoked if a mapping rule is changed directly rather than via the DSL
+     */
+    public void modified() {
+        modificationCount++;
     }
 
     /**
@@ -42,6 +59,7 @@ public class HttpProxyRuleBase {
         if (answer == null) {
             answer = new HttpProxyRule(uriTemplate);
             getMappingRules().put(uriTemplate, answer);
+            modified();
         }
         return answer;
     }
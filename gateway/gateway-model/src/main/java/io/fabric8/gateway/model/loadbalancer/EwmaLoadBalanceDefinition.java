@@ -0,0 +1,42 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.model.loadbalancer;
+
+import io.fabric8.gateway.loadbalancer.EwmaLoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadTrackingLoadBalancerSupport;
+
+/**
+ */
+public class EwmaLoadBalanceDefinition extends LoadBalancerDefinition {
+    private long decayTime = LoadTrackingLoadBalancerSupport.DEFAULT_DECAY_TIME;
+
+    /**
+     * Returns the number of milliseconds over which latency samples decay
+     */
+    public long getDecayTime() {
+        return decayTime;
+    }
+
+    public void setDecayTime(long decayTime) {
+        this.decayTime = decayTime;
+    }
+
+    @Override
+    protected LoadBalancer createLoadBalancer() {
+        return new EwmaLoadBalancer(decayTime);
+    }
+}
@@ -18,23 +18,34 @@ package io.fabric8.gateway.support;
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
- * A helper class to map a request URI to a mapping rule
+ * A helper class to map a request URI to a mapping rule.
+ * <p/>
+ * The rules are indexed in a {@link PathTrie} by the literal prefix of their URI templates so that only the
+ * rules whose literal prefix matches the request URI are checked; starting with the longest prefix.
+ * The index is rebuilt whenever the {@link HttpProxyRuleBase} is modified.
  */
 public class MappingRuleResolver {
     private HttpProxyRuleBase mappingRules = new HttpProxyRuleBase();
+    private volatile RuleIndex ruleIndex;
 
     public MappingResult findMappingRule(String requestURI) {
         String[] paths = Paths.splitPaths(requestURI);
-        MappingResult answer = null;
-        // TODO we could build a path based tree to do more efficient matching?
-        for (HttpProxyRule mappingRule : mappingRules.getMappingRules().values()) {
-            answer = mappingRule.matches(paths);
-            if (answer != null) {
-                break;
+        List<Map.Entry<String, List<HttpProxyRule>>> candidates = getRuleIndex().trie.findPrefixMatches(Paths.joinPaths(paths));
+        for (Map.Entry<String, List<HttpProxyRule>> candidate : candidates) {
+            for (HttpProxyRule mappingRule : candidate.getValue()) {
+                MappingResult answer = mappingRule.matches(paths);
+                if (answer != null) {
+                    return answer;
+                }
             }
         }
-        return answer;
+        return null;
     }
 
     public HttpProxyRuleBase getMappingRules() {
@@ -43,6 +54,58 @@ public class MappingRuleResolver {
 
     public void setMappingRules(HttpProxyRuleBase mappingRules) {
         this.mappingRules = mappingRules;
+        this.ruleIndex = null;
     }
 
+    /**
+     * Returns the index of the current mapping rules, rebuilding it if the rules have changed since it was built
+     */
+    protected RuleIndex getRuleIndex() {
+        HttpProxyRuleBase ruleBase = mappingRules;
+        Map<String, HttpProxyRule> rules = ruleBase.getMappingRules();
+        RuleIndex index = ruleIndex;
+        if (index == null || !index.isValid(ruleBase, rules)) {
+            index = new RuleIndex(ruleBase, rules);
+            ruleIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * An immutable snapshot of the mapping rules indexed by the literal prefix of their URI template
+     */
+    protected static class RuleIndex {
+        private final HttpProxyRuleBase ruleBase;
+        private final Map<String, HttpProxyRule> rules;
+        private final int modificationCount;
+        private final int size;
+        private final PathTrie<List<HttpProxyRule>> trie;
+
+        RuleIndex(HttpProxyRuleBase ruleBase, Map<String, HttpProxyRule> rules) {
+            this.ruleBase = ruleBase;
+            this.rules = rules;
+            this.modificationCount = ruleBase.getModificationCount();
+            this.size = rules.size();
+            Map<String, List<HttpProxyRule>> prefixes = new LinkedHashMap<String, List<HttpProxyRule>>();
+            for (HttpProxyRule rule : rules.values()) {
+                UriTemplate template = rule.getUriTemplateObject();
+                if (template == null) {
+                    continue;
+                }
+                String prefix = template.getLiteralPrefix();
+                List<HttpProxyRule> list = prefixes.get(prefix);
+                if (list == null) {
+                    list = new ArrayList<HttpProxyRule>();
+                    prefixes.put(prefix, list);
+                }
+                list.add(rule);
+            }
+            this.trie = new PathTrie<List<HttpProxyRule>>(prefixes);
+        }
+
+        boolean isValid(HttpProxyRuleBase ruleBase, Map<String, HttpProxyRule> rules) {
+            return this.ruleBase == ruleBase && this.rules == rules
+                    && modificationCount == ruleBase.getModificationCount() && size == rules.size();
+        }
+    }
 }
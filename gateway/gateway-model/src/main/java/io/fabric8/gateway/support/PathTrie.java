@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, compiled prefix tree of URI path prefixes so that the prefixes matching a request URI
+ * can be found in O(length of URI) rather than comparing the URI against every prefix.
+ * <p/>
+ * A trie is created from a snapshot of the prefixes; when the prefixes change a new trie should be
+ * built and swapped in so that readers never see a partially updated trie.
+ */
+public class PathTrie<T> {
+    private static final char[] NO_KEYS = new char[0];
+
+    private final Node<T> root;
+    private final int size;
+
+    public PathTrie(Map<String, T> prefixes) {
+        BuildNode<T> buildRoot = new BuildNode<T>();
+        int count = 0;
+        for (Map.Entry<String, T> entry : prefixes.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix == null) {
+                continue;
+            }
+            BuildNode<T> node = buildRoot;
+            for (int i = 0, length = prefix.length(); i < length; i++) {
+                Character key = prefix.charAt(i);
+                BuildNode<T> child = node.children.get(key);
+                if (child == null) {
+                    child = new BuildNode<T>();
+                    node.children.put(key, child);
+                }
+                node = child;
+            }
+            node.entry = new AbstractMap.SimpleImmutableEntry<String, T>(prefix, entry.getValue());
+            count++;
+        }
+        this.root = buildRoot.compile();
+        this.size = count;
+    }
+
+    @Override
+    public String toString() {
+        return "PathTrie{" +
+                "size=" + size +
+                '}';
+    }
+
+    /**
+     * Returns all the prefixes which the given text starts with, ordered from the longest prefix to the shortest
+     */
+    public List<Map.Entry<String, T>> findPrefixMatches(String text) {
+        List<Map.Entry<String, T>> answer = null;
+        Node<T> node = root;
+        int i = 0;
+        int length = text != null ? text.length() : 0;
+        while (node != null) {
+            if (node.entry != null) {
+                if (answer == null) {
+                    answer = new ArrayList<Map.Entry<String, T>>(2);
+                }
+                answer.add(node.entry);
+            }
+            if (i >= length) {
+                break;
+            }
+            node = node.child(text.charAt(i++));
+        }
+        if (answer == null) {
+            return Collections.emptyList();
+        }
+        Collections.reverse(answer);
+        return answer;
+    }
+
+    /**
+     * Returns the longest prefix which the given text starts with or null if there is no matching prefix
+     */
+    public Map.Entry<String, T> findLongestPrefix(String text) {
+        Map.Entry<String, T> answer = null;
+        Node<T> node = root;
+        int i = 0;
+        int length = text != null ? text.length() : 0;
+        while (node != null) {
+            if (node.entry != null) {
+                answer = node.entry;
+            }
+            if (i >= length) {
+                break;
+            }
+            node = node.child(text.charAt(i++));
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of prefixes in this trie
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * A compiled node using sorted parallel arrays so that lookups do not allocate
+     */
+    private static final class Node<T> {
+        private final char[] keys;
+        private final Node<T>[] children;
+        private final Map.Entry<String, T> entry;
+
+        private Node(char[] keys, Node<T>[] children, Map.Entry<String, T> entry) {
+            this.keys = keys;
+            this.children = children;
+            this.entry = entry;
+        }
+
+        Node<T> child(char key) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midKey = keys[mid];
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A mutable node only used while building the trie
+     */
+    private static final class BuildNode<T> {
+        private final TreeMap<Character, BuildNode<T>> children = new TreeMap<Character, BuildNode<T>>();
+        private Map.Entry<String, T> entry;
+
+        @SuppressWarnings("unchecked")
+        Node<T> compile() {
+            int count = children.size();
+            if (count == 0) {
+                return new Node<T>(NO_KEYS, new Node[0], entry);
+            }
+            char[] keys = new char[count];
+            Node<T>[] compiled = new Node[count];
+            int i = 0;
+            for (Map.Entry<Character, BuildNode<T>> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                compiled[i] = child.getValue().compile();
+                i++;
+            }
+            return new Node<T>(keys, compiled, entry);
+        }
+    }
+}
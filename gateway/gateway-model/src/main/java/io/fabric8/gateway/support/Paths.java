@@ -44,4 +44,16 @@ public class Paths {
         }
         return paths;
     }
+
+    /**
+     * Joins the paths into a path which starts and ends with "/" such that { "foo", "bar" } is turned
+     * into "/foo/bar/" and an empty array into "/"
+     */
+    public static String joinPaths(String[] paths) {
+        StringBuilder builder = new StringBuilder("/");
+        for (String path : paths) {
+            builder.append(path).append("/");
+        }
+        return builder.toString();
+    }
 }
@@ -78,6 +78,22 @@ public class UriTemplate {
     }
 
 
+    /**
+     * Returns the literal path segments before the first wildcard segment as a path which
+     * starts and ends with "/" such as "/customers/" for the template "/customers/{id}/address"
+     * so that candidate templates can be indexed by prefix
+     */
+    public String getLiteralPrefix() {
+        StringBuilder builder = new StringBuilder("/");
+        for (int i = 0; i < paths.length; i++) {
+            if (getWildcardParameterName(i) != null) {
+                break;
+            }
+            builder.append(paths[i]).append("/");
+        }
+        return builder.toString();
+    }
+
     public List<String> getParameterNames() {
         return Collections.unmodifiableList(parameters);
     }
@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * A simple multi threaded benchmark comparing the throughput of the {@link StickyLoadBalancer}
+ * with the {@link ConcurrentStickyLoadBalancer}.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class StickyLoadBalancerBenchmark {
+    private static final int CLIENTS = 50000;
+    private static final long DURATION_MILLIS = 3000;
+
+    @Test
+    public void testThroughput() throws Exception {
+        List<String> services = new ArrayList<String>();
+        for (int i = 0; i < 8; i++) {
+            services.add("tcp://broker" + i + ":61616");
+        }
+        for (int threads : new int[]{1, 4, 16, 32}) {
+            long sticky = benchmark(new StickyLoadBalancer(CLIENTS / 2), services, threads);
+            long concurrent = benchmark(new ConcurrentStickyLoadBalancer(CLIENTS / 2), services, threads);
+            System.out.println("threads: " + threads
+                    + " sticky: " + sticky / (DURATION_MILLIS / 1000) + " ops/sec"
+                    + " concurrent sticky: " + concurrent / (DURATION_MILLIS / 1000) + " ops/sec");
+        }
+    }
+
+    protected static long benchmark(final LoadBalancer loadBalancer, final List<String> services, int threads) throws Exception {
+        final String[] clientKeys = new String[CLIENTS];
+        for (int i = 0; i < clientKeys.length; i++) {
+            clientKeys[i] = "client:" + i;
+        }
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.currentTimeMillis() + DURATION_MILLIS;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            Thread worker = new Thread("benchmark-" + t) {
+                @Override
+                public void run() {
+                    long count = 0;
+                    int index = seed * 7919;
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (System.currentTimeMillis() < end) {
+                        for (int i = 0; i < 1000; i++) {
+                            index = (index + 31) % clientKeys.length;
+                            final String clientKey = clientKeys[index];
+                            loadBalancer.choose(services, new ClientRequestFacade() {
+                                @Override
+                                public String getClientRequestKey() {
+                                    return clientKey;
+                                }
+                            });
+                        }
+                        count += 1000;
+                    }
+                    operations.addAndGet(count);
+                }
+            };
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.get();
+    }
+}
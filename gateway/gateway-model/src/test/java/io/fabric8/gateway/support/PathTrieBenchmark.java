@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * A simple benchmark comparing the {@link PathTrie} lookup with a linear scan of the prefixes
+ * using {@link String#startsWith(String)} as the HTTP gateway used to do.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class PathTrieBenchmark {
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    @Test
+    public void testLookup() {
+        for (int rules : new int[]{10, 1000, 10000}) {
+            benchmark(rules);
+        }
+    }
+
+    protected static void benchmark(int ruleCount) {
+        Map<String, String> rules = new HashMap<String, String>();
+        for (int i = 0; i < ruleCount; i++) {
+            rules.put("/service" + i + "/api/", "http://localhost:" + (8000 + i) + "/api");
+        }
+        PathTrie<String> trie = new PathTrie<String>(rules);
+        String[] uris = new String[64];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = "/service" + ((i * 7919) % ruleCount) + "/api/customers/" + i;
+        }
+
+        long hits = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            hits += linearScan(rules, uris[i % uris.length]) != null ? 1 : 0;
+            hits += trieLookup(trie, uris[i % uris.length]) != null ? 1 : 0;
+        }
+
+        int iterations = Math.max(ITERATIONS / ruleCount, 1000);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            hits += linearScan(rules, uris[i % uris.length]) != null ? 1 : 0;
+        }
+        long linearNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            hits += trieLookup(trie, uris[i % uris.length]) != null ? 1 : 0;
+        }
+        long trieNanos = System.nanoTime() - start;
+
+        System.out.println("rules: " + ruleCount
+                + " linear scan: " + (linearNanos / iterations) + " ns/op"
+                + " trie: " + (trieNanos / iterations) + " ns/op"
+                + " (hits " + hits + ")");
+    }
+
+    protected static String linearScan(Map<String, String> rules, String uri) {
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            if (uri.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    protected static String trieLookup(PathTrie<String> trie, String uri) {
+        List<Map.Entry<String, String>> matches = trie.findPrefixMatches(uri);
+        return matches.isEmpty() ? null : matches.get(0).getValue();
+    }
+}
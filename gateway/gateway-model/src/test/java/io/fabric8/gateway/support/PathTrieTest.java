@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class PathTrieTest {
+
+    @Test
+    public void testPrefixMatchesAreLongestFirst() throws Exception {
+        PathTrie<String> trie = createTrie("/", "/cxf/", "/cxf/crm/", "/cxf/HelloWorld/", "/foo");
+
+        assertPrefixMatches(trie, "/cxf/crm/customers/123", "/cxf/crm/", "/cxf/", "/");
+        assertPrefixMatches(trie, "/cxf/HelloWorld/", "/cxf/HelloWorld/", "/cxf/", "/");
+        assertPrefixMatches(trie, "/foobar", "/foo", "/");
+        assertPrefixMatches(trie, "/other", "/");
+        assertEquals("size", 5, trie.size());
+    }
+
+    @Test
+    public void testLongestPrefix() throws Exception {
+        PathTrie<String> trie = createTrie("/cxf/", "/cxf/crm/");
+
+        assertEquals("/cxf/crm/", trie.findLongestPrefix("/cxf/crm/customers").getKey());
+        assertEquals("/cxf/", trie.findLongestPrefix("/cxf/cr").getKey());
+        assertNull(trie.findLongestPrefix("/cx"));
+        assertNull(trie.findLongestPrefix(null));
+    }
+
+    @Test
+    public void testEmptyTrie() throws Exception {
+        PathTrie<String> trie = createTrie();
+
+        assertEquals("size", 0, trie.size());
+        assertPrefixMatches(trie, "/cxf/crm/");
+    }
+
+    @Test
+    public void testMatchesAreTheSameAsALinearScan() throws Exception {
+        for (int ruleCount : new int[]{10, 1000, 10000}) {
+            Map<String, String> rules = new HashMap<String, String>();
+            for (int i = 0; i < ruleCount; i++) {
+                rules.put("/service" + i + "/api/", "http://localhost:" + (8000 + i) + "/api");
+            }
+            rules.put("/service1/", "http://localhost:7999/");
+            PathTrie<String> trie = new PathTrie<String>(rules);
+            for (int i = 0; i < 100; i++) {
+                String uri = "/service" + ((i * 7919) % (ruleCount + 10)) + "/api/customers/" + i;
+                List<String> expected = new ArrayList<String>();
+                for (String prefix : rules.keySet()) {
+                    if (uri.startsWith(prefix)) {
+                        expected.add(prefix);
+                    }
+                }
+                // the longest prefix first
+                Collections.sort(expected, new Comparator<String>() {
+                    @Override
+                    public int compare(String s1, String s2) {
+                        return s2.length() - s1.length();
+                    }
+                });
+                List<String> actual = new ArrayList<String>();
+                for (Map.Entry<String, String> entry : trie.findPrefixMatches(uri)) {
+                    assertEquals("value of " + entry.getKey(), rules.get(entry.getKey()), entry.getValue());
+                    actual.add(entry.getKey());
+                }
+                assertEquals("prefix matches of " + uri + " with " + ruleCount + " rules", expected, actual);
+            }
+        }
+    }
+
+    protected PathTrie<String> createTrie(String... prefixes) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String prefix : prefixes) {
+            map.put(prefix, "value:" + prefix);
+        }
+        return new PathTrie<String>(map);
+    }
+
+    protected void assertPrefixMatches(PathTrie<String> trie, String uri, String... expectedPrefixes) {
+        List<String> actual = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : trie.findPrefixMatches(uri)) {
+            assertEquals("value of " + entry.getKey(), "value:" + entry.getKey(), entry.getValue());
+            actual.add(entry.getKey());
+        }
+        assertEquals("prefix matches of " + uri, Arrays.asList(expectedPrefixes), actual);
+    }
+}
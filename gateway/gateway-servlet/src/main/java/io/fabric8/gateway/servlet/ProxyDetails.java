@@ -17,8 +17,6 @@ package io.fabric8.gateway.servlet;
 
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.model.HttpProxyRule;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpMethod;
 
 /**
  */
@@ -93,11 +91,6 @@ public class ProxyDetails {
         return stringProxyURL;
     }
 
-    public HttpClient createHttpClient(HttpMethod httpMethodProxyRequest) {
-        HttpClient client = new HttpClient();
-        return client;
-    }
-
     public String getProxyHostAndPort() {
         return proxyHostAndPort;
     }
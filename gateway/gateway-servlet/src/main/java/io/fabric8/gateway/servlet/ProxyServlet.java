@@ -15,7 +15,6 @@
  */
 package io.fabric8.gateway.servlet;
 
-import io.fabric8.common.util.IOHelpers;
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 import io.fabric8.gateway.servlet.support.NonBindingSocketFactory;
@@ -28,20 +27,22 @@ import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.OptionsMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
 import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +52,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -104,6 +104,16 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private int intMaxFileUploadSize = 5 * 1024 * 1024;
 
+    /**
+     * The size of the buffer used to stream request and response bodies
+     */
+    private int bufferSize = 32 * 1024;
+
+    private int maxConnectionsPerHost = 20;
+    private int maxTotalConnections = 200;
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private HttpClient httpClient;
+
     /**
      * Initialize the <code>ProxyServlet</code>
      *
@@ -116,6 +126,42 @@ public abstract class ProxyServlet extends HttpServlet {
         resolver.setMappingRules(ruleBase);
         Protocol.registerProtocol("http", new Protocol("http", new NonBindingSocketFactory(), 80));
         Protocol.registerProtocol("https", new Protocol("https", new NonBindingSocketFactory(), 443));
+
+        bufferSize = getIntInitParameter(config, "bufferSize", bufferSize);
+        maxConnectionsPerHost = getIntInitParameter(config, "maxConnectionsPerHost", maxConnectionsPerHost);
+        maxTotalConnections = getIntInitParameter(config, "maxTotalConnections", maxTotalConnections);
+
+        // lets share a pool of kept alive connections to the back end services across all requests
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setMaxTotalConnections(maxTotalConnections);
+        params.setSendBufferSize(bufferSize);
+        params.setReceiveBufferSize(bufferSize);
+        params.setTcpNoDelay(true);
+        httpClient = new HttpClient(connectionManager);
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        httpClient = null;
+        super.destroy();
+    }
+
+    protected int getIntInitParameter(ServletConfig config, String name, int defaultValue) throws ServletException {
+        String value = config.getInitParameter(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid value for init parameter " + name + ": " + value, e);
+        }
     }
 
     /**
@@ -336,39 +382,35 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     @SuppressWarnings("unchecked")
     private void handleEntity(EntityEnclosingMethod entityEnclosingMethod, HttpServletRequest httpServletRequest) throws IOException {
-        // Get the client POST data as a Map
-        Map<String, String[]> mapPostParameters = (Map<String, String[]>) httpServletRequest.getParameterMap();
-        // Create a List to hold the NameValuePairs to be passed to the PostMethod
-        List<NameValuePair> listNameValuePairs = new ArrayList<NameValuePair>();
-        // Iterate the parameter names
-        for (String stringParameterName : mapPostParameters.keySet()) {
-            // Iterate the values for each parameter name
-            String[] stringArrayParameterValues = mapPostParameters.get(stringParameterName);
-            for (String stringParamterValue : stringArrayParameterValues) {
-                // Create a NameValuePair and store in list
-                NameValuePair nameValuePair = new NameValuePair(stringParameterName, stringParamterValue);
-                listNameValuePairs.add(nameValuePair);
-            }
-        }
-        RequestEntity entity = null;
         String contentType = httpServletRequest.getContentType();
         if (contentType != null) {
-            contentType = contentType.toLowerCase();
-            if (contentType.contains("json") || contentType.contains("xml") || contentType.contains("application") || contentType.contains("text")) {
-                String body = IOHelpers.readFully(httpServletRequest.getReader());
-                entity = new StringRequestEntity(body, contentType, httpServletRequest.getCharacterEncoding());
+            String lowerContentType = contentType.toLowerCase();
+            if (lowerContentType.contains("json") || lowerContentType.contains("xml") || lowerContentType.contains("application") || lowerContentType.contains("text")) {
+                // stream the body straight through rather than reading it into memory first; if the
+                // content length is not known the body is sent using chunked encoding
+                RequestEntity entity = new InputStreamRequestEntity(httpServletRequest.getInputStream(),
+                        httpServletRequest.getContentLength(), contentType);
                 entityEnclosingMethod.setRequestEntity(entity);
+                return;
             }
         }
-        NameValuePair[] parameters = listNameValuePairs.toArray(new NameValuePair[]{});
-        if (entity != null) {
-            // TODO add as URL parameters?
-            //postMethodProxyRequest.addParameters(parameters);
-        } else {
-            // Set the proxy request POST data
-            if (entityEnclosingMethod instanceof PostMethod) {
-                ((PostMethod)entityEnclosingMethod).setRequestBody(parameters);
+        if (entityEnclosingMethod instanceof PostMethod) {
+            // Get the client POST data as a Map
+            Map<String, String[]> mapPostParameters = (Map<String, String[]>) httpServletRequest.getParameterMap();
+            // Create a List to hold the NameValuePairs to be passed to the PostMethod
+            List<NameValuePair> listNameValuePairs = new ArrayList<NameValuePair>();
+            // Iterate the parameter names
+            for (String stringParameterName : mapPostParameters.keySet()) {
+                // Iterate the values for each parameter name
+                String[] stringArrayParameterValues = mapPostParameters.get(stringParameterName);
+                for (String stringParamterValue : stringArrayParameterValues) {
+                    // Create a NameValuePair and store in list
+                    NameValuePair nameValuePair = new NameValuePair(stringParameterName, stringParamterValue);
+                    listNameValuePairs.add(nameValuePair);
+                }
             }
+            // Set the proxy request POST data
+            ((PostMethod) entityEnclosingMethod).setRequestBody(listNameValuePairs.toArray(new NameValuePair[listNameValuePairs.size()]));
         }
     }
 
@@ -391,11 +433,21 @@ public abstract class ProxyServlet extends HttpServlet {
         httpMethodProxyRequest.setDoAuthentication(false);
         httpMethodProxyRequest.setFollowRedirects(false);
 
-        // Create a default HttpClient
-        HttpClient httpClient = proxyDetails.createHttpClient(httpMethodProxyRequest);
+        try {
+            // Execute the request using the shared pool of connections
+            int intProxyResponseCode = getHttpClient().executeMethod(httpMethodProxyRequest);
+            sendProxyResponse(proxyDetails, intProxyResponseCode, httpMethodProxyRequest, httpServletRequest, httpServletResponse);
+        } finally {
+            // return the connection to the pool
+            httpMethodProxyRequest.releaseConnection();
+        }
+    }
 
-        // Execute the request
-        int intProxyResponseCode = httpClient.executeMethod(httpMethodProxyRequest);
+    private void sendProxyResponse(
+            ProxyDetails proxyDetails, int intProxyResponseCode, HttpMethod httpMethodProxyRequest,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse)
+            throws IOException, ServletException {
 
         // Check if the proxy response is a redirect
         // The following code is adapted from org.tigris.noodle.filters.CheckForRedirect
@@ -452,8 +504,8 @@ public abstract class ProxyServlet extends HttpServlet {
         int code = httpMethodProxyRequest.getStatusCode();
         boolean noData = code == HttpStatus.SC_NO_CONTENT;
         if (!noData) {
-            String length = httpServletRequest.getHeader(STRING_CONTENT_LENGTH_HEADER_NAME);
-            if (length != null && "0".equals(length.trim())) {
+            Header length = httpMethodProxyRequest.getResponseHeader(STRING_CONTENT_LENGTH_HEADER_NAME);
+            if (length != null && "0".equals(length.getValue().trim())) {
                 noData = true;
             }
         }
@@ -462,15 +514,28 @@ public abstract class ProxyServlet extends HttpServlet {
         if (!noData) {
             // Send the content to the client
             InputStream inputStreamProxyResponse = httpMethodProxyRequest.getResponseBodyAsStream();
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStreamProxyResponse);
-            OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
-            int intNextByte;
-            while ((intNextByte = bufferedInputStream.read()) != -1) {
-                outputStreamClientResponse.write(intNextByte);
+            if (inputStreamProxyResponse != null) {
+                copy(inputStreamProxyResponse, httpServletResponse.getOutputStream());
             }
         }
     }
 
+    /**
+     * Streams the given input to the output a buffer at a time, flushing the output at the end
+     * without closing either stream
+     */
+    protected long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long count = 0;
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+            count += length;
+        }
+        out.flush();
+        return count;
+    }
+
     public String getServletInfo() {
         return "Fabric8 Gateway Proxy Servlet";
     }
@@ -480,6 +545,35 @@ public abstract class ProxyServlet extends HttpServlet {
         return resolver;
     }
 
+    /**
+     * Returns the client used to invoke the back end services which is shared by all requests
+     */
+    public HttpClient getHttpClient() {
+        if (httpClient == null) {
+            throw new IllegalStateException("The servlet has not been initialised");
+        }
+        return httpClient;
+    }
+
+    /**
+     * Returns the size of the buffer used to stream request and response bodies
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
     /**
      * Retrieves all of the headers from the servlet request and sets them on
      * the proxy request
@@ -0,0 +1,144 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.fabric8.gateway.servlet.ProxyServletTest.CountingOutputStream;
+import io.fabric8.gateway.servlet.ProxyServletTest.TestProxyServlet;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+import static io.fabric8.gateway.servlet.ProxyServletTest.createConfig;
+import static io.fabric8.gateway.servlet.ProxyServletTest.createRequest;
+import static io.fabric8.gateway.servlet.ProxyServletTest.createResponse;
+
+/**
+ * A simple benchmark of the throughput in MB/s of large response bodies proxied through the {@link ProxyServlet}
+ * compared with the previous approach of creating a new client per request and copying the body a byte at a time.
+ * It uses the stub requests and responses of {@link ProxyServletTest}.
+ * <p/>
+ * It is not run as part of the build; run it with: mvn -P benchmark test
+ */
+public class ProxyServletBenchmark {
+    private static final int WARMUP_REQUESTS = 5;
+    private static final int REQUESTS = 20;
+
+    @Test
+    public void testThroughput() throws Exception {
+        int maxSize = 64 * 1024 * 1024;
+        final byte[] payload = new byte[maxSize];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + (i % 26));
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                int size = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                exchange.sendResponseHeaders(200, size);
+                OutputStream out = exchange.getResponseBody();
+                out.write(payload, 0, size);
+                out.close();
+            }
+        });
+        server.start();
+        int port = server.getAddress().getPort();
+        try {
+            TestProxyServlet servlet = new TestProxyServlet(port);
+            servlet.init(createConfig(Collections.<String, String>emptyMap()));
+            try {
+                for (int size : new int[]{64 * 1024, 1024 * 1024, 16 * 1024 * 1024, maxSize}) {
+                    int requests = Math.max(REQUESTS * (1024 * 1024) / size, REQUESTS);
+                    double legacy = benchmarkLegacy(port, size, requests);
+                    double servletThroughput = benchmarkServlet(servlet, size, requests);
+                    System.out.println(String.format("payload: %8d KB legacy: %8.1f MB/s proxy servlet: %8.1f MB/s",
+                            size / 1024, legacy, servletThroughput));
+                }
+            } finally {
+                servlet.destroy();
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    protected static double benchmarkServlet(ProxyServlet servlet, int size, int requests) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            proxy(servlet, size);
+        }
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            bytes += proxy(servlet, size);
+        }
+        return throughput(bytes, System.nanoTime() - start);
+    }
+
+    protected static long proxy(ProxyServlet servlet, int size) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        servlet.doGet(createRequest("GET", "/proxy/" + size, null), createResponse(out));
+        if (out.count != size) {
+            throw new IllegalStateException("Expected " + size + " bytes but received " + out.count);
+        }
+        return out.count;
+    }
+
+    /**
+     * Performs the requests the way the servlet used to; a new client per request and a byte at a time copy
+     */
+    protected static double benchmarkLegacy(int port, int size, int requests) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            legacyProxy(port, size);
+        }
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            bytes += legacyProxy(port, size);
+        }
+        return throughput(bytes, System.nanoTime() - start);
+    }
+
+    protected static long legacyProxy(int port, int size) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        GetMethod method = new GetMethod("http://localhost:" + port + "/" + size);
+        try {
+            new HttpClient().executeMethod(method);
+            InputStream in = new BufferedInputStream(method.getResponseBodyAsStream());
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+        } finally {
+            method.releaseConnection();
+        }
+        return out.count;
+    }
+
+    protected static double throughput(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+    }
+}
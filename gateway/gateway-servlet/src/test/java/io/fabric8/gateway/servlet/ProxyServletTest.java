@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the streaming of bodies through the {@link ProxyServlet} and its shared pool of back end connections.
+ * The servlet is invoked directly with stub requests and responses so no servlet container is required; the
+ * back end is a JDK HTTP server on a local port which returns a body of the requested size or echoes the posted body.
+ */
+public class ProxyServletTest {
+
+    private HttpServer server;
+    private TestProxyServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] buffer = new byte[8192];
+                OutputStream out;
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, 0);
+                    out = exchange.getResponseBody();
+                    InputStream in = exchange.getRequestBody();
+                    int count;
+                    while ((count = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, count);
+                    }
+                } else {
+                    String path = exchange.getRequestURI().getPath();
+                    int size = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                    exchange.sendResponseHeaders(200, size);
+                    out = exchange.getResponseBody();
+                    for (int remaining = size; remaining > 0; remaining -= buffer.length) {
+                        out.write(buffer, 0, Math.min(remaining, buffer.length));
+                    }
+                }
+                out.close();
+            }
+        });
+        server.start();
+        servlet = new TestProxyServlet(server.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        servlet.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void largeResponseBodyIsProxiedCompletely() throws Exception {
+        servlet.init(createConfig(Collections.<String, String>emptyMap()));
+        int size = 8 * 1024 * 1024;
+        assertThat(get(size), is(equalTo((long) size)));
+    }
+
+    @Test
+    public void emptyResponseBodyIsProxied() throws Exception {
+        servlet.init(createConfig(Collections.<String, String>emptyMap()));
+        assertThat(get(0), is(equalTo(0L)));
+    }
+
+    @Test(timeout = 30000)
+    public void connectionsAreReleasedToThePool() throws Exception {
+        // with a single connection the requests would block if a connection was not released
+        servlet.init(createConfig(Collections.singletonMap("maxConnectionsPerHost", "1")));
+        for (int i = 0; i < 10; i++) {
+            assertThat(get(64 * 1024), is(equalTo(64L * 1024)));
+        }
+    }
+
+    @Test
+    public void requestBodyIsStreamedToTheBackEnd() throws Exception {
+        servlet.init(createConfig(Collections.<String, String>emptyMap()));
+        byte[] body = new byte[1024 * 1024];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + (i % 26));
+        }
+        CountingOutputStream out = new CountingOutputStream();
+        servlet.doPost(createRequest("POST", "/proxy/echo", body), createResponse(out));
+        assertThat(out.count, is(equalTo((long) body.length)));
+    }
+
+    protected long get(int size) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        servlet.doGet(createRequest("GET", "/proxy/" + size, null), createResponse(out));
+        return out.count;
+    }
+
+    protected static ServletConfig createConfig(final Map<String, String> initParameters) {
+        return stub(ServletConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getInitParameter")) {
+                    return initParameters.get(args[0]);
+                } else if (method.getName().equals("getInitParameterNames")) {
+                    return Collections.enumeration(initParameters.keySet());
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    protected static HttpServletRequest createRequest(String httpMethod, String uri, byte[] body) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getRequestURI", uri);
+        values.put("getContextPath", "");
+        values.put("getMethod", httpMethod);
+        values.put("getServerName", "localhost");
+        values.put("getServerPort", 8080);
+        values.put("getHeaderNames", Collections.enumeration(Collections.<String>emptyList()));
+        if (body != null) {
+            final InputStream in = new ByteArrayInputStream(body);
+            values.put("getContentType", "text/plain");
+            values.put("getContentLength", body.length);
+            values.put("getInputStream", new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return in.read(b, off, len);
+                }
+            });
+        }
+        return stub(HttpServletRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (values.containsKey(method.getName())) {
+                    return values.get(method.getName());
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    protected static HttpServletResponse createResponse(final ServletOutputStream out) {
+        return stub(HttpServletResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getOutputStream")) {
+                    return out;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    protected static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(ProxyServletTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    protected static Object defaultValue(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) {
+            return false;
+        } else if (returnType == int.class) {
+            return 0;
+        } else if (returnType == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    protected static class TestProxyServlet extends ProxyServlet {
+        private final int port;
+
+        public TestProxyServlet(int port) {
+            this.port = port;
+        }
+
+        @Override
+        protected void loadRuleBase(ServletConfig config, HttpProxyRuleBase ruleBase) throws ServletException {
+            ruleBase.rule("/proxy/{path}").to("http://localhost:" + port + "/{path}");
+        }
+    }
+
+    protected static class CountingOutputStream extends ServletOutputStream {
+        protected long count;
+
+        @Override
+        public void write(int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+    }
+}